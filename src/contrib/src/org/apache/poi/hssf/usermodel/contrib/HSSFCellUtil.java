@@ -55,7 +55,6 @@
 package org.apache.poi.hssf.usermodel.contrib;
 
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.exception.NestableException;
 import org.apache.poi.hssf.usermodel.*;
@@ -199,49 +198,17 @@ public class HSSFCellUtil
      *      changed.
      *@param  cell                   The cell that needs it's style changes
      *@exception  NestableException  Thrown if an error happens.
+     *@see HSSFWorkbook#deriveCellStyle(HSSFCellStyle, String, Object)
      */
     public static void setCellStyleProperty( HSSFCell cell, HSSFWorkbook workbook, String propertyName, Object propertyValue )
             throws NestableException
     {
         try
         {
-            HSSFCellStyle originalStyle = cell.getCellStyle();
-            HSSFCellStyle newStyle = null;
-            Map values = PropertyUtils.describe( originalStyle );
-            values.put( propertyName, propertyValue );
-            values.remove( "index" );
-
-            // index seems like what  index the cellstyle is in the list of styles for a workbook.
-            // not good to compare on!
-            short numberCellStyles = workbook.getNumCellStyles();
-
-            for ( short i = 0; i < numberCellStyles; i++ )
-            {
-                HSSFCellStyle wbStyle = workbook.getCellStyleAt( i );
-                Map wbStyleMap = PropertyUtils.describe( wbStyle );
-                wbStyleMap.remove( "index" );
-
-                if ( wbStyleMap.equals( values ) )
-                {
-                    newStyle = wbStyle;
-                    break;
-                }
-            }
-
-            if ( newStyle == null )
-            {
-                newStyle = workbook.createCellStyle();
-                newStyle.setFont( workbook.getFontAt( originalStyle.getFontIndex() ) );
-                PropertyUtils.copyProperties( newStyle, originalStyle );
-                PropertyUtils.setProperty( newStyle, propertyName, propertyValue );
-            }
-
-            cell.setCellStyle( newStyle );
+            cell.setCellStyle( workbook.deriveCellStyle( cell.getCellStyle(), propertyName, propertyValue ) );
         }
-        catch ( Exception e )
+        catch ( RuntimeException e )
         {
-            e.printStackTrace();
-
             throw new NestableException( "Couldn't setCellStyleProperty.", e );
         }
     }
@@ -0,0 +1,228 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.dev;
+
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordCreator;
+import org.apache.poi.hssf.record.RecordCreators;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.util.LittleEndian;
+
+/**
+ * Measures record construction throughput for the records in an XLS file,
+ * comparing the sid-indexed RecordCreators table with construction through
+ * reflection (the way RecordFactory used to work).  Only record construction
+ * is timed; the stream is read into memory up front.
+ * <P>
+ * usage: RecordFactoryBenchmark file.xls [iterations]
+ */
+
+public class RecordFactoryBenchmark
+{
+    private short[]  sids;
+    private short[]  sizes;
+    private byte[][] datas;
+
+    public RecordFactoryBenchmark(InputStream in)
+        throws Exception
+    {
+        POIFSFileSystem fs     = new POIFSFileSystem(in);
+        InputStream     stream = fs.createDocumentInputStream("Workbook");
+        List            raw    = new ArrayList();
+
+        while (stream.available() >= 4)
+        {
+            short sid  = LittleEndian.readShort(stream);
+            short size = LittleEndian.readShort(stream);
+
+            if (sid == 0)
+            {
+                break;
+            }
+            byte[] data = new byte[ size ];
+
+            stream.read(data);
+            raw.add(new Object[]
+            {
+                new Short(sid), new Short(size), data
+            });
+        }
+        sids  = new short[ raw.size() ];
+        sizes = new short[ raw.size() ];
+        datas = new byte[ raw.size() ][];
+        for (int k = 0; k < raw.size(); k++)
+        {
+            Object[] rec = ( Object [] ) raw.get(k);
+
+            sids[ k ]  = (( Short ) rec[ 0 ]).shortValue();
+            sizes[ k ] = (( Short ) rec[ 1 ]).shortValue();
+            datas[ k ] = ( byte [] ) rec[ 2 ];
+        }
+    }
+
+    /**
+     * @return the time in milliseconds taken to create every record
+     *         iterations times through the RecordCreators table
+     */
+
+    public long timeTable(int iterations)
+    {
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            for (int k = 0; k < sids.length; k++)
+            {
+                RecordCreators.createRecord(sids[ k ], sizes[ k ], datas[ k ]);
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * @return the time in milliseconds taken to create every record
+     *         iterations times through reflection
+     */
+
+    public long timeReflection(int iterations)
+        throws Exception
+    {
+        Map constructors = new HashMap();
+
+        for (int k = 0; k < sids.length; k++)
+        {
+            RecordCreator creator = RecordCreators.getCreator(sids[ k ]);
+
+            if (creator != null)
+            {
+                Record rec = creator.createRecord(sids[ k ], sizes[ k ],
+                                                  datas[ k ], 0);
+
+                constructors.put(new Short(sids[ k ]),
+                                 rec.getClass().getConstructor(new Class[]
+                {
+                    short.class, short.class, byte [].class
+                }));
+            }
+        }
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            for (int k = 0; k < sids.length; k++)
+            {
+                Constructor constructor =
+                    ( Constructor ) constructors.get(new Short(sids[ k ]));
+
+                if (constructor != null)
+                {
+                    constructor.newInstance(new Object[]
+                    {
+                        new Short(sids[ k ]), new Short(sizes[ k ]), datas[ k ]
+                    });
+                }
+                else
+                {
+                    RecordCreators.createRecord(sids[ k ], sizes[ k ], datas[ k ]);
+                }
+            }
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    public int getNumRecords()
+    {
+        return sids.length;
+    }
+
+    public static void main(String [] args)
+        throws Exception
+    {
+        if (args.length < 1)
+        {
+            System.out.println("usage: RecordFactoryBenchmark file.xls [iterations]");
+            return;
+        }
+        int iterations = (args.length > 1) ? Integer.parseInt(args[ 1 ]) : 20;
+        FileInputStream        in    = new FileInputStream(args[ 0 ]);
+        RecordFactoryBenchmark bench = new RecordFactoryBenchmark(in);
+
+        in.close();
+
+        // warm up both paths before measuring
+        bench.timeTable(iterations);
+        bench.timeReflection(iterations);
+        long   table      = bench.timeTable(iterations);
+        long   reflection = bench.timeReflection(iterations);
+        double total      = (( double ) bench.getNumRecords()) * iterations;
+
+        System.out.println(bench.getNumRecords() + " records x " + iterations
+                           + " iterations");
+        System.out.println("sid table:  " + table + " ms ("
+                           + ( long ) (total * 1000 / Math.max(table, 1))
+                           + " records/s)");
+        System.out.println("reflection: " + reflection + " ms ("
+                           + ( long ) (total * 1000 / Math.max(reflection, 1))
+                           + " records/s)");
+    }
+}
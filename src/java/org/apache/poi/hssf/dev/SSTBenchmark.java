@@ -0,0 +1,192 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.dev;
+
+import org.apache.poi.hssf.record.SSTStringTable;
+import org.apache.poi.hssf.record.UnicodeString;
+import org.apache.poi.util.BinaryTree;
+
+/**
+ * Compares the hash-indexed SSTStringTable with the BinaryTree the SST
+ * record used to keep its strings in.  Each run interns a set of strings,
+ * every one of them added several times over the way HSSFCell.setCellValue
+ * does, and then reads every string back by its index the way
+ * HSSFCell.getStringCellValue does.  The heap taken by each filled table is
+ * reported as well.
+ * <P>
+ * usage: SSTBenchmark [strings] [repeats]
+ */
+
+public class SSTBenchmark
+{
+    // keeps the filled table reachable while its heap is measured
+    private static Object retained;
+
+    private String[] strings;
+    private int      repeats;
+
+    public SSTBenchmark(int count, int repeats)
+    {
+        this.strings = new String[ count ];
+        this.repeats = repeats;
+        for (int k = 0; k < count; k++)
+        {
+            strings[ k ] = "Row " + k + " text";
+        }
+    }
+
+    /**
+     * @return a filled SSTStringTable
+     */
+
+    public Object fillTable()
+    {
+        SSTStringTable table = new SSTStringTable();
+
+        for (int r = 0; r < repeats; r++)
+        {
+            for (int k = 0; k < strings.length; k++)
+            {
+                if (table.indexOf(strings[ k ]) == -1)
+                {
+                    table.add(makeString(strings[ k ]));
+                }
+            }
+        }
+        for (int k = 0; k < table.size(); k++)
+        {
+            table.getString(k);
+        }
+        return table;
+    }
+
+    /**
+     * @return a filled BinaryTree
+     */
+
+    public Object fillTree()
+    {
+        BinaryTree tree = new BinaryTree();
+
+        for (int r = 0; r < repeats; r++)
+        {
+            for (int k = 0; k < strings.length; k++)
+            {
+                UnicodeString string = makeString(strings[ k ]);
+
+                if (tree.getKeyForValue(string) == null)
+                {
+                    tree.put(new Integer(tree.size()), string);
+                }
+            }
+        }
+        for (int k = 0; k < tree.size(); k++)
+        {
+            (( UnicodeString ) tree.get(new Integer(k))).getString();
+        }
+        return tree;
+    }
+
+    private static UnicodeString makeString(String s)
+    {
+        UnicodeString rval = new UnicodeString();
+
+        rval.setString(s);
+        rval.setCharCount(( short ) s.length());
+        rval.setOptionFlags(( byte ) 0);
+        return rval;
+    }
+
+    private static long usedMemory()
+    {
+        Runtime runtime = Runtime.getRuntime();
+
+        for (int k = 0; k < 4; k++)
+        {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void report(String name, boolean table, SSTBenchmark bench)
+    {
+        long before = usedMemory();
+        long start  = System.currentTimeMillis();
+
+        retained = table ? bench.fillTable()
+                         : bench.fillTree();
+        long time = System.currentTimeMillis() - start;
+        long heap = usedMemory() - before;
+
+        retained = null;
+        System.out.println(name + time + " ms, " + (heap / 1024) + " KB");
+    }
+
+    public static void main(String [] args)
+    {
+        int          count   = (args.length > 0) ? Integer.parseInt(args[ 0 ])
+                                                 : 200000;
+        int          repeats = (args.length > 1) ? Integer.parseInt(args[ 1 ])
+                                                 : 5;
+        SSTBenchmark bench   = new SSTBenchmark(count, repeats);
+
+        // warm up both paths before measuring
+        bench.fillTable();
+        bench.fillTree();
+        System.out.println(count + " strings x " + repeats + " repeats");
+        report("hash table:  ", true, bench);
+        report("binary tree: ", false, bench);
+    }
+}
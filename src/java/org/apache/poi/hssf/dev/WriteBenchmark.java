@@ -0,0 +1,154 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.dev;
+
+import java.util.Arrays;
+
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * Times HSSFWorkbook.getBytes on a workbook of many sheets written on one
+ * thread and then on two, four and so on up to the given number of
+ * threads, checking each time that the output is the same.  Each sheet
+ * holds rows of numbers, strings and formulas.
+ * <P>
+ * usage: WriteBenchmark [sheets] [rows] [threads] [repeats]
+ */
+
+public class WriteBenchmark
+{
+    private HSSFWorkbook workbook;
+    private int          repeats;
+
+    public WriteBenchmark(int sheets, int rows, int repeats)
+    {
+        this.repeats = repeats;
+        workbook     = new HSSFWorkbook();
+        for (int s = 0; s < sheets; s++)
+        {
+            HSSFSheet sheet = workbook.createSheet("Sheet" + s);
+
+            for (int r = 0; r < rows; r++)
+            {
+                HSSFRow row = sheet.createRow(r);
+
+                row.createCell(( short ) 0).setCellValue(r * 1.5);
+                row.createCell(( short ) 1).setCellValue("Row " + (r % 1000));
+                row.createCell(( short ) 2).setCellFormula("A" + (r + 1) + "*2");
+                row.createCell(( short ) 3).setCellValue(s);
+            }
+        }
+    }
+
+    /**
+     * @return the best time in milliseconds of writing the workbook on
+     *         the given number of threads
+     */
+
+    public long time(int threads, byte[] expected)
+    {
+        long best = Long.MAX_VALUE;
+
+        workbook.setThreads(threads);
+        for (int k = 0; k < repeats; k++)
+        {
+            long   start = System.currentTimeMillis();
+            byte[] bytes = workbook.getBytes();
+
+            best = Math.min(best, System.currentTimeMillis() - start);
+            if ((expected != null) && !Arrays.equals(expected, bytes))
+            {
+                throw new IllegalStateException(threads
+                                                + " threads wrote different bytes");
+            }
+        }
+        return best;
+    }
+
+    public static void main(String [] args)
+    {
+        int sheets  = (args.length > 0) ? Integer.parseInt(args[ 0 ])
+                                        : 40;
+        int rows    = (args.length > 1) ? Integer.parseInt(args[ 1 ])
+                                        : 5000;
+        int threads = (args.length > 2) ? Integer.parseInt(args[ 2 ])
+                                        : Runtime.getRuntime().availableProcessors();
+        int repeats = (args.length > 3) ? Integer.parseInt(args[ 3 ])
+                                        : 5;
+        WriteBenchmark bench = new WriteBenchmark(sheets, rows, repeats);
+
+        bench.workbook.setThreads(1);
+        byte[] expected = bench.workbook.getBytes();
+
+        // warm up both paths before measuring
+        bench.time(1, null);
+        bench.time(threads, null);
+        System.out.println(sheets + " sheets x " + rows + " rows, "
+                           + expected.length + " bytes");
+        long single = bench.time(1, expected);
+
+        System.out.println("1 thread:   " + single + " ms");
+        for (int t = 2; t <= threads; t *= 2)
+        {
+            long time = bench.time(t, expected);
+
+            System.out.println(t + " threads:  " + time + " ms, x"
+                               + ((time == 0) ? "-"
+                                              : String.valueOf(( float ) single / time)));
+        }
+    }
+}
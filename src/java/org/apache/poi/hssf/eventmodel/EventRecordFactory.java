@@ -56,88 +56,13 @@ package org.apache.poi.hssf.eventmodel;
 
 import java.io.InputStream;
 import java.io.IOException;
-
 import java.util.*;
 
-import java.lang.reflect.Constructor;
-
-import org.apache.poi.hssf.record.BOFRecord;
-import org.apache.poi.hssf.record.BackupRecord;
-import org.apache.poi.hssf.record.BlankRecord;
-import org.apache.poi.hssf.record.BookBoolRecord;
-import org.apache.poi.hssf.record.BoolErrRecord;
-import org.apache.poi.hssf.record.BottomMarginRecord;
-import org.apache.poi.hssf.record.BoundSheetRecord;
-import org.apache.poi.hssf.record.CalcCountRecord;
-import org.apache.poi.hssf.record.CalcModeRecord;
-import org.apache.poi.hssf.record.CodepageRecord;
-import org.apache.poi.hssf.record.ColumnInfoRecord;
 import org.apache.poi.hssf.record.ContinueRecord;
-import org.apache.poi.hssf.record.CountryRecord;
-import org.apache.poi.hssf.record.DBCellRecord;
-import org.apache.poi.hssf.record.DSFRecord;
-import org.apache.poi.hssf.record.DateWindow1904Record;
-import org.apache.poi.hssf.record.DefaultColWidthRecord;
-import org.apache.poi.hssf.record.DefaultRowHeightRecord;
-import org.apache.poi.hssf.record.DeltaRecord;
-import org.apache.poi.hssf.record.DimensionsRecord;
-import org.apache.poi.hssf.record.EOFRecord;
-import org.apache.poi.hssf.record.ExtSSTRecord;
-import org.apache.poi.hssf.record.ExtendedFormatRecord;
-import org.apache.poi.hssf.record.ExternSheetRecord;
-import org.apache.poi.hssf.record.FnGroupCountRecord;
-import org.apache.poi.hssf.record.FontRecord;
-import org.apache.poi.hssf.record.FooterRecord;
-import org.apache.poi.hssf.record.FormatRecord;
-import org.apache.poi.hssf.record.GridsetRecord;
-import org.apache.poi.hssf.record.GutsRecord;
-import org.apache.poi.hssf.record.HCenterRecord;
-import org.apache.poi.hssf.record.HeaderRecord;
-import org.apache.poi.hssf.record.HideObjRecord;
-import org.apache.poi.hssf.record.IndexRecord;
-import org.apache.poi.hssf.record.InterfaceEndRecord;
-import org.apache.poi.hssf.record.InterfaceHdrRecord;
-import org.apache.poi.hssf.record.IterationRecord;
-import org.apache.poi.hssf.record.LabelRecord;
-import org.apache.poi.hssf.record.LabelSSTRecord;
-import org.apache.poi.hssf.record.LeftMarginRecord;
-import org.apache.poi.hssf.record.MMSRecord;
-import org.apache.poi.hssf.record.MergeCellsRecord;
-import org.apache.poi.hssf.record.MulBlankRecord;
-import org.apache.poi.hssf.record.MulRKRecord;
-import org.apache.poi.hssf.record.NameRecord;
-import org.apache.poi.hssf.record.NumberRecord;
-import org.apache.poi.hssf.record.PaletteRecord;
-import org.apache.poi.hssf.record.PasswordRecord;
-import org.apache.poi.hssf.record.PasswordRev4Record;
-import org.apache.poi.hssf.record.PrecisionRecord;
-import org.apache.poi.hssf.record.PrintGridlinesRecord;
-import org.apache.poi.hssf.record.PrintHeadersRecord;
-import org.apache.poi.hssf.record.PrintSetupRecord;
-import org.apache.poi.hssf.record.ProtectRecord;
-import org.apache.poi.hssf.record.ProtectionRev4Record;
-import org.apache.poi.hssf.record.RKRecord;
 import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactory;
 import org.apache.poi.hssf.record.RecordFormatException;
-import org.apache.poi.hssf.record.RefModeRecord;
-import org.apache.poi.hssf.record.RefreshAllRecord;
-import org.apache.poi.hssf.record.RightMarginRecord;
-import org.apache.poi.hssf.record.RowRecord;
-import org.apache.poi.hssf.record.SSTRecord;
-import org.apache.poi.hssf.record.SaveRecalcRecord;
-import org.apache.poi.hssf.record.SelectionRecord;
-import org.apache.poi.hssf.record.StringRecord;
-import org.apache.poi.hssf.record.StyleRecord;
-import org.apache.poi.hssf.record.TabIdRecord;
-import org.apache.poi.hssf.record.TopMarginRecord;
 import org.apache.poi.hssf.record.UnknownRecord;
-import org.apache.poi.hssf.record.UseSelFSRecord;
-import org.apache.poi.hssf.record.VCenterRecord;
-import org.apache.poi.hssf.record.WSBoolRecord;
-import org.apache.poi.hssf.record.WindowOneRecord;
-import org.apache.poi.hssf.record.WindowProtectRecord;
-import org.apache.poi.hssf.record.WindowTwoRecord;
-import org.apache.poi.hssf.record.WriteAccessRecord;
 import org.apache.poi.util.LittleEndian;
 
 
@@ -155,50 +80,6 @@ import org.apache.poi.util.LittleEndian;
 public class EventRecordFactory
 {
     
-    /**
-     * contains the classes for all the records we want to parse.
-     */
-    private static final Class[] records;
-
-    static {
-            records = new Class[]
-            {
-                BOFRecord.class, InterfaceHdrRecord.class, MMSRecord.class,
-                InterfaceEndRecord.class, WriteAccessRecord.class,
-                CodepageRecord.class, DSFRecord.class, TabIdRecord.class,
-                FnGroupCountRecord.class, WindowProtectRecord.class,
-                ProtectRecord.class, PasswordRecord.class, ProtectionRev4Record.class,
-                PasswordRev4Record.class, WindowOneRecord.class, BackupRecord.class,
-                HideObjRecord.class, DateWindow1904Record.class,
-                PrecisionRecord.class, RefreshAllRecord.class, BookBoolRecord.class,
-                FontRecord.class, FormatRecord.class, ExtendedFormatRecord.class,
-                StyleRecord.class, UseSelFSRecord.class, BoundSheetRecord.class,
-                CountryRecord.class, SSTRecord.class, ExtSSTRecord.class,
-                EOFRecord.class, IndexRecord.class, CalcModeRecord.class,
-                CalcCountRecord.class, RefModeRecord.class, IterationRecord.class,
-                DeltaRecord.class, SaveRecalcRecord.class, PrintHeadersRecord.class,
-                PrintGridlinesRecord.class, GridsetRecord.class, GutsRecord.class,
-                DefaultRowHeightRecord.class, WSBoolRecord.class, HeaderRecord.class,
-                FooterRecord.class, HCenterRecord.class, VCenterRecord.class,
-                PrintSetupRecord.class, DefaultColWidthRecord.class,
-                DimensionsRecord.class, RowRecord.class, LabelSSTRecord.class,
-                RKRecord.class, NumberRecord.class, DBCellRecord.class,
-                WindowTwoRecord.class, SelectionRecord.class, ContinueRecord.class,
-                LabelRecord.class, BlankRecord.class, ColumnInfoRecord.class,
-                MulRKRecord.class, MulBlankRecord.class, MergeCellsRecord.class,
-                BoolErrRecord.class, ExternSheetRecord.class, NameRecord.class,
-                LeftMarginRecord.class, RightMarginRecord.class,
-                TopMarginRecord.class, BottomMarginRecord.class,
-                PaletteRecord.class, StringRecord.class
-            };
-       
-    }
-    
-    /**
-     * cache of the recordsToMap();
-     */
-    private static Map           recordsMap  = recordsToMap(records);
-
     /**
      * cache of the return of getAllKnownSids so that we don't have to
      * expensively get them every time.
@@ -210,6 +91,12 @@ public class EventRecordFactory
      */    
     private List listeners;
 
+    /**
+     * the sids that at least one listener is registered for.  Records of
+     * any other type are skipped rather than built.
+     */
+    private BitSet subscribed;
+
     /**
      * instance is abortable or not
      */
@@ -232,7 +119,8 @@ public class EventRecordFactory
      */
     public EventRecordFactory(boolean abortable) {
         this.abortable = abortable;
-        listeners = new ArrayList(recordsMap.size());    
+        listeners = new ArrayList();    
+        subscribed = new BitSet();
         
         if (sidscache == null) {
          sidscache = getAllKnownRecordSIDs();   
@@ -251,6 +139,8 @@ public class EventRecordFactory
     public void registerListener(ERFListener listener, short[] sids) {
       if (sids == null)
         sids = sidscache;
+      for (int k = 0; k < sids.length; k++)
+        subscribed.set(sids[k] & 0xFFFF);
       ERFListener wrapped = new ListenerWrapper(listener, sids, abortable);    
       listeners.add(wrapped);
     }
@@ -296,6 +186,7 @@ public class EventRecordFactory
         throws RecordFormatException
     {
         Record    last_record = null;
+        int       skipped     = -1;   // sid of the last record if it was skipped
 
         try
         {
@@ -307,6 +198,28 @@ public class EventRecordFactory
                 if (rectype != 0)
                 {
                     short  recsize = LittleEndian.readShort(in);
+                    boolean continued = rectype == ContinueRecord.sid &&
+                                        ! standsAlone(last_record, skipped);
+
+                    // don't build records nobody listens for, nor the
+                    // continuations of a record that was skipped
+                    if (continued ? skipped != -1
+                                  : ! isSubscribed(rectype))
+                    {
+                        if (! continued) {
+                            if (last_record != null) {
+                                if (throwRecordEvent(last_record) == false && abortable == true) {
+                                    last_record = null;
+                                    break;   
+                                }
+                            }
+                            last_record = null;
+                            skipped = rectype;
+                        }
+                        skip(in, recsize);
+                        continue;
+                    }
+                    skipped = -1;
                     byte[] data    = new byte[ ( int ) recsize ];
 
                     in.read(data);
@@ -335,9 +248,7 @@ public class EventRecordFactory
 
                         if (record != null)
                         {
-                            if (rectype == ContinueRecord.sid &&
-                                ! (last_record instanceof ContinueRecord) && // include continuation records after
-                                ! (last_record instanceof UnknownRecord) )   // unknown records or previous continuation records
+                            if (continued)
                             {
                                 if (last_record == null)
                                 {
@@ -380,142 +291,70 @@ public class EventRecordFactory
     }
 
     /**
-     * create a record, if there are MUL records than multiple records
-     * are returned digested into the non-mul form.
+     * Tells whether a ContinueRecord following the given record is a record
+     * in its own right rather than part of the one before: that is the case
+     * after unknown records and after other continuation records.
+     *
+     * @param last_record the record before, or null if it was skipped
+     * @param skipped the sid of the record before if it was skipped
      */
-    public static Record [] createRecord(short rectype, short size,
-                                         byte [] data)
+    private boolean standsAlone(Record last_record, int skipped)
     {
-        Record   retval     = null;
-        Record[] realretval = null;
-
-        try
-        {
-            Constructor constructor =
-                ( Constructor ) recordsMap.get(new Short(rectype));
-
-            if (constructor != null)
-            {
-                retval = ( Record ) constructor.newInstance(new Object[]
-                {
-                    new Short(rectype), new Short(size), data
-                });
-            }
-            else
-            {
-                retval = new UnknownRecord(rectype, size, data);
-            }
-        }
-        catch (Exception introspectionException)
-        {
-            introspectionException.printStackTrace();
-            throw new RecordFormatException(
-                "Unable to construct record instance, the following exception occured: " + introspectionException.getMessage());
+        if (last_record != null) {
+            return (last_record instanceof ContinueRecord) ||
+                   (last_record instanceof UnknownRecord);
         }
-        if (retval instanceof RKRecord)
-        {
-            RKRecord     rk  = ( RKRecord ) retval;
-            NumberRecord num = new NumberRecord();
-
-            num.setColumn(rk.getColumn());
-            num.setRow(rk.getRow());
-            num.setXFIndex(rk.getXFIndex());
-            num.setValue(rk.getRKNumber());
-            retval = num;
-        }
-        else if (retval instanceof DBCellRecord)
-        {
-            retval = null;
+        if (skipped == -1) {
+            return false;
         }
-        else if (retval instanceof MulRKRecord)
-        {
-            MulRKRecord mrk = ( MulRKRecord ) retval;
-
-            realretval = new Record[ mrk.getNumColumns() ];
-            for (int k = 0; k < mrk.getNumColumns(); k++)
-            {
-                NumberRecord nr = new NumberRecord();
+        return skipped == ContinueRecord.sid ||
+               Arrays.binarySearch(sidscache, ( short ) skipped) < 0;
+    }
 
-                nr.setColumn(( short ) (k + mrk.getFirstColumn()));
-                nr.setRow(mrk.getRow());
-                nr.setXFIndex(mrk.getXFAt(k));
-                nr.setValue(mrk.getRKNumberAt(k));
-                realretval[ k ] = nr;
-            }
-        }
-        else if (retval instanceof MulBlankRecord)
-        {
-            MulBlankRecord mb = ( MulBlankRecord ) retval;
+    /**
+     * @return whether any listener is registered for the records that are
+     * built from a record of the given type
+     */
+    private boolean isSubscribed(short rectype)
+    {
+        return subscribed.get(RecordFactory.getCreatedRecordSID(rectype) & 0xFFFF);
+    }
 
-            realretval = new Record[ mb.getNumColumns() ];
-            for (int k = 0; k < mb.getNumColumns(); k++)
-            {
-                BlankRecord br = new BlankRecord();
+    /**
+     * Skips the body of a record that nobody listens for.
+     */
+    private static void skip(InputStream in, int size)
+        throws IOException
+    {
+        while (size > 0) {
+            long skipped = in.skip(size);
 
-                br.setColumn(( short ) (k + mb.getFirstColumn()));
-                br.setRow(mb.getRow());
-                br.setXFIndex(mb.getXFAt(k));
-                realretval[ k ] = br;
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    break;
+                }
+                skipped = 1;
             }
+            size -= skipped;
         }
-        if (realretval == null)
-        {
-            realretval      = new Record[ 1 ];
-            realretval[ 0 ] = retval;
-        }
-        return realretval;
     }
 
     /**
-     * @return an array of all the SIDS for all known records
+     * create a record, if there are MUL records than multiple records
+     * are returned digested into the non-mul form.
      */
-    public static short [] getAllKnownRecordSIDs()
+    public static Record [] createRecord(short rectype, short size,
+                                         byte [] data)
     {
-        short[] results = new short[ recordsMap.size() ];
-        int     i       = 0;
-
-        for (Iterator iterator = recordsMap.keySet().iterator();
-                iterator.hasNext(); )
-        {
-            Short sid = ( Short ) iterator.next();
-
-            results[ i++ ] = sid.shortValue();
-        }
-        return results;
+        return RecordFactory.createRecord(rectype, size, data);
     }
 
     /**
-     * gets the record constructors and sticks them in the map by SID
-     * @return map of SIDs to short,short,byte[] constructors for Record classes
-     * most of org.apache.poi.hssf.record.*
+     * @return an array of all the SIDS for all known records
      */
-    private static Map recordsToMap(Class [] records)
+    public static short [] getAllKnownRecordSIDs()
     {
-        Map         result = new HashMap();
-        Constructor constructor;
-
-        for (int i = 0; i < records.length; i++)
-        {
-            Class record = null;
-            short sid    = 0;
-
-            record = records[ i ];
-            try
-            {
-                sid         = record.getField("sid").getShort(null);
-                constructor = record.getConstructor(new Class[]
-                {
-                    short.class, short.class, byte [].class
-                });
-            }
-            catch (Exception illegalArgumentException)
-            {
-                throw new RecordFormatException(
-                    "Unable to determine record types");
-            }
-            result.put(new Short(sid), constructor);
-        }
-        return result;
+        return RecordFactory.getAllKnownRecordSIDs();
     }
 
 }
@@ -0,0 +1,90 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.eventusermodel;
+
+/**
+ * Interface for use with the HSSFCellReader.  Users should create a listener
+ * supporting this interface and pass it to the reader, which calls it once
+ * for every cell of every sheet in the order the cells are stored.
+ *
+ * @see org.apache.poi.hssf.eventusermodel.HSSFCellReader
+ */
+
+public interface HSSFCellListener
+{
+
+    /**
+     * process a cell.  The value depends on the type:
+     * <ul>
+     *   <li>HSSFCell.CELL_TYPE_NUMERIC - a Double, or a java.util.Date if
+     *       date detection is turned on and the cell has a date format</li>
+     *   <li>HSSFCell.CELL_TYPE_STRING - a String</li>
+     *   <li>HSSFCell.CELL_TYPE_BOOLEAN - a Boolean</li>
+     *   <li>HSSFCell.CELL_TYPE_ERROR - a Byte holding the error code</li>
+     *   <li>HSSFCell.CELL_TYPE_BLANK - null</li>
+     * </ul>
+     * Formula cells are reported with the type and value of the result
+     * Excel cached for them.
+     *
+     * @param sheet     index of the sheet (0 based, in workbook order)
+     * @param row       row of the cell (0 based)
+     * @param column    column of the cell (0 based)
+     * @param type      one of the HSSFCell.CELL_TYPE_XXX constants
+     * @param value     the value of the cell
+     */
+
+    public void processCell(int sheet, int row, short column, int type,
+                            Object value);
+}
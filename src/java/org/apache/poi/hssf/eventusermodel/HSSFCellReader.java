@@ -0,0 +1,435 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.eventusermodel;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.poi.util.LittleEndian;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.DateWindow1904Record;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFDateUtil;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Streaming cell reader.  Walks the Workbook stream with an HSSFRecordCursor
+ * and hands each cell to an HSSFCellListener as (sheet, row, column, type,
+ * value), doing the bookkeeping that users of the record events otherwise
+ * have to do themselves: counting sheets, resolving LabelSST cells against
+ * the SSTRecord, expanding MulRK and MulBlank records and pairing string
+ * formulas with the StringRecord holding their result.
+ * <P>
+ * A column filter can be set with <code>setColumns</code>.  The column of a
+ * cell is checked before anything else is done with it, so cells outside the
+ * filter cost no allocation at all.
+ * <P>
+ * With <code>setDateDetection(true)</code> numbers whose cell format is one
+ * of the built-in date formats are passed on as java.util.Date, following
+ * the same rule as HSSFDateUtil.isCellDateFormatted.
+ *
+ * <pre>
+ *     HSSFCellReader reader = new HSSFCellReader();
+ *     reader.setColumns(new short[] { 0, 3 });
+ *     reader.process(fs, new HSSFCellListener()
+ *     {
+ *         public void processCell(int sheet, int row, short column,
+ *                                 int type, Object value)
+ *         {
+ *             ...
+ *         }
+ *     });
+ * </pre>
+ *
+ * @see org.apache.poi.hssf.eventusermodel.HSSFRecordCursor
+ */
+
+public class HSSFCellReader
+{
+    private BitSet    columns;
+    private boolean   dateDetection;
+    private boolean   includeBlanks;
+    private List      sheetNames;
+    private SSTRecord sst;
+    private boolean   date1904;
+    private boolean[] dateXFs;
+    private int       xfCount;
+
+    /** Creates a new instance of HSSFCellReader */
+
+    public HSSFCellReader()
+    {
+    }
+
+    /**
+     * Restricts the reader to some columns.  Cells in other columns are
+     * dropped before anything is built for them.
+     *
+     * @param columns   the columns to report, or null for all of them
+     */
+
+    public void setColumns(short [] columns)
+    {
+        if (columns == null)
+        {
+            this.columns = null;
+        }
+        else
+        {
+            this.columns = new BitSet();
+            for (int k = 0; k < columns.length; k++)
+            {
+                this.columns.set(columns[ k ]);
+            }
+        }
+    }
+
+    /**
+     * @param dateDetection whether numbers with a built-in date format are
+     *                      reported as java.util.Date (false by default)
+     */
+
+    public void setDateDetection(boolean dateDetection)
+    {
+        this.dateDetection = dateDetection;
+    }
+
+    /**
+     * @param includeBlanks whether cells that hold formatting but no value
+     *                      are reported (false by default)
+     */
+
+    public void setIncludeBlanks(boolean includeBlanks)
+    {
+        this.includeBlanks = includeBlanks;
+    }
+
+    /**
+     * @param sheet     index of a sheet
+     * @return the name of the sheet, or null if the reader has not come
+     *         across it (yet)
+     */
+
+    public String getSheetName(int sheet)
+    {
+        if ((sheetNames == null) || (sheet < 0)
+                || (sheet >= sheetNames.size()))
+        {
+            return null;
+        }
+        return ( String ) sheetNames.get(sheet);
+    }
+
+    /**
+     * Reads the cells of a workbook.
+     *
+     * @param fs        a POIFS filesystem containing your workbook
+     * @param listener  called for every cell
+     */
+
+    public void process(POIFSFileSystem fs, HSSFCellListener listener)
+        throws IOException
+    {
+        process(fs.createDocumentInputStream("Workbook"), listener);
+    }
+
+    /**
+     * Reads the cells of a Workbook stream.
+     *
+     * @see org.apache.poi.poifs.filesystem.POIFSFileSystem#createDocumentInputStream(String)
+     * @param in        a DocumentInputStream obtained from POIFS's POIFSFileSystem object
+     * @param listener  called for every cell
+     */
+
+    public void process(InputStream in, HSSFCellListener listener)
+        throws IOException
+    {
+        HSSFRecordCursor cursor = new HSSFRecordCursor(in);
+        int              depth  = 0;
+        int              sheet  = -2;   // the globals come first
+
+        // a string formula waiting for its StringRecord
+        int              formulaRow    = -1;
+        short            formulaColumn = 0;
+
+        sheetNames = new ArrayList();
+        sst        = null;
+        date1904   = false;
+        dateXFs    = new boolean[ 32 ];
+        xfCount    = 0;
+        while (cursor.next())
+        {
+            short sid = cursor.sid();
+
+            if ((formulaRow != -1)
+                    && (cursor.isCell() || (sid == EOFRecord.sid)))
+            {
+
+                // no StringRecord followed, so the result was empty
+                listener.processCell(sheet, formulaRow, formulaColumn,
+                                     HSSFCell.CELL_TYPE_STRING, "");
+                formulaRow = -1;
+            }
+            switch (sid)
+            {
+
+                case BOFRecord.sid :
+                    if (depth == 0)
+                    {
+                        sheet++;
+                    }
+                    depth++;
+                    break;
+
+                case EOFRecord.sid :
+                    depth--;
+                    break;
+
+                case BoundSheetRecord.sid :
+                    sheetNames.add((( BoundSheetRecord ) cursor.createRecord())
+                        .getSheetname());
+                    break;
+
+                case SSTRecord.sid :
+                    sst = ( SSTRecord ) cursor.createRecord();
+                    break;
+
+                case DateWindow1904Record.sid :
+                    date1904 = LittleEndian.getShort(cursor.getData(), 0) != 0;
+                    break;
+
+                case ExtendedFormatRecord.sid :
+                    addXF(LittleEndian.getShort(cursor.getData(), 2));
+                    break;
+
+                case StringRecord.sid :
+                    if (formulaRow != -1)
+                    {
+                        listener.processCell(sheet, formulaRow, formulaColumn,
+                                             HSSFCell.CELL_TYPE_STRING,
+                                             cursor.getString());
+                        formulaRow = -1;
+                    }
+                    break;
+
+                case FormulaRecord.sid :
+                    if ((depth == 1) && wanted(cursor))
+                    {
+                        if (cursor.getFormulaResultType()
+                                == HSSFCell.CELL_TYPE_STRING)
+                        {
+                            formulaRow    = cursor.getRow();
+                            formulaColumn = cursor.getColumn();
+                        }
+                        else
+                        {
+                            processFormula(cursor, sheet, listener);
+                        }
+                    }
+                    break;
+
+                case NumberRecord.sid :
+                case RKRecord.sid :
+                case MulRKRecord.sid :
+                    if ((depth == 1) && wanted(cursor))
+                    {
+                        listener.processCell(sheet, cursor.getRow(),
+                                             cursor.getColumn(),
+                                             HSSFCell.CELL_TYPE_NUMERIC,
+                                             getNumber(cursor));
+                    }
+                    break;
+
+                case LabelSSTRecord.sid :
+                    if ((depth == 1) && wanted(cursor))
+                    {
+                        listener.processCell(sheet, cursor.getRow(),
+                                             cursor.getColumn(),
+                                             HSSFCell.CELL_TYPE_STRING,
+                                             sst.getString(cursor
+                                                 .getSSTIndex()));
+                    }
+                    break;
+
+                case LabelRecord.sid :
+                    if ((depth == 1) && wanted(cursor))
+                    {
+                        listener.processCell(sheet, cursor.getRow(),
+                                             cursor.getColumn(),
+                                             HSSFCell.CELL_TYPE_STRING,
+                                             cursor.getString());
+                    }
+                    break;
+
+                case BoolErrRecord.sid :
+                    if ((depth == 1) && wanted(cursor))
+                    {
+                        if (cursor.isError())
+                        {
+                            listener.processCell(sheet, cursor.getRow(),
+                                                 cursor.getColumn(),
+                                                 HSSFCell.CELL_TYPE_ERROR,
+                                                 new Byte(cursor
+                                                     .getErrorCode()));
+                        }
+                        else
+                        {
+                            listener.processCell(sheet, cursor.getRow(),
+                                                 cursor.getColumn(),
+                                                 HSSFCell.CELL_TYPE_BOOLEAN,
+                                                 cursor.getBoolean()
+                                                 ? Boolean.TRUE
+                                                 : Boolean.FALSE);
+                        }
+                    }
+                    break;
+
+                case BlankRecord.sid :
+                case MulBlankRecord.sid :
+                    if (includeBlanks && (depth == 1) && wanted(cursor))
+                    {
+                        listener.processCell(sheet, cursor.getRow(),
+                                             cursor.getColumn(),
+                                             HSSFCell.CELL_TYPE_BLANK, null);
+                    }
+                    break;
+            }
+        }
+    }
+
+    private boolean wanted(HSSFRecordCursor cursor)
+    {
+        return (columns == null) || columns.get(cursor.getColumn());
+    }
+
+    private void processFormula(HSSFRecordCursor cursor, int sheet,
+                                HSSFCellListener listener)
+    {
+        int    type  = cursor.getFormulaResultType();
+        Object value = null;
+
+        switch (type)
+        {
+
+            case HSSFCell.CELL_TYPE_NUMERIC :
+                value = getNumber(cursor);
+                break;
+
+            case HSSFCell.CELL_TYPE_BOOLEAN :
+                value = cursor.getBoolean() ? Boolean.TRUE
+                                            : Boolean.FALSE;
+                break;
+
+            case HSSFCell.CELL_TYPE_ERROR :
+                value = new Byte(cursor.getErrorCode());
+                break;
+
+            default :
+
+                // an empty string result has no StringRecord
+                type  = HSSFCell.CELL_TYPE_STRING;
+                value = "";
+                break;
+        }
+        listener.processCell(sheet, cursor.getRow(), cursor.getColumn(), type,
+                             value);
+    }
+
+    private Object getNumber(HSSFRecordCursor cursor)
+    {
+        double value = cursor.getDouble();
+
+        if (dateDetection && isDateXF(cursor.getXF())
+                && HSSFDateUtil.isValidExcelDate(value))
+        {
+            return HSSFDateUtil.getJavaDate(value, date1904);
+        }
+        return new Double(value);
+    }
+
+    private void addXF(short format)
+    {
+        if (xfCount == dateXFs.length)
+        {
+            boolean[] grown = new boolean[ xfCount * 2 ];
+
+            System.arraycopy(dateXFs, 0, grown, 0, xfCount);
+            dateXFs = grown;
+        }
+        dateXFs[ xfCount++ ] = HSSFDateUtil.isInternalDateFormat(format);
+    }
+
+    private boolean isDateXF(short xf)
+    {
+        return (xf >= 0) && (xf < xfCount) && dateXFs[ xf ];
+    }
+}
@@ -73,7 +73,8 @@ import org.apache.poi.poifs.filesystem.POIFSFileSystem;
  *
  * This will cause your file to be processed a record at a time.  Each record with
  * a static id matching one that you have registed in your HSSFRequest will be passed
- * to your associated HSSFListener.
+ * to your associated HSSFListener.  Records that nobody listens for are skipped
+ * over in the stream without being built.
  *
  * @see org.apache.poi.hssf.dev.EFHSSF
  *
@@ -211,31 +212,48 @@ public class HSSFEventFactory
 				if (sid != ContinueRecord.sid)
 				{
 					short  size = LittleEndian.readShort(in);
-					byte[] data = new byte[ size ];
 
-					if (data.length > 0)
+					// nobody listens for it, so don't build it; its
+					// continue records are skipped along with it as
+					// rec stays null
+					if (!req.isSubscribed(
+							RecordFactory.getCreatedRecordSID(sid)))
 					{
-						in.read(data);
+						skip(in, size);
+						rec = null;
 					}
-                                        //System.out.println("creating "+sid);
-					Record[] recs = RecordFactory.createRecord(sid, size,
-															   data);
-
-					if (recs.length > 1)
-					{                                // we know that the multiple
-						for (int k = 0; k < (recs.length - 1); k++)
-						{                            // record situations do not
-							userCode = req.processRecord(
-								recs[ k ]);          // contain continue records
-							if (userCode != 0) break process;
+					else
+					{
+						byte[] data = new byte[ size ];
+
+						if (data.length > 0)
+						{
+							in.read(data);
 						}
-					}
-					rec = recs[ recs.length - 1 ];   // regardless we'll process
+	                                        //System.out.println("creating "+sid);
+						Record[] recs = RecordFactory.createRecord(sid, size,
+																   data);
+
+						if (recs.length > 1)
+						{                                // we know that the multiple
+							for (int k = 0; k < (recs.length - 1); k++)
+							{                            // record situations do not
+								userCode = req.processRecord(
+									recs[ k ]);          // contain continue records
+								if (userCode != 0) break process;
+							}
+						}
+						rec = recs[ recs.length - 1 ];   // regardless we'll process
 
-					// the last record as though
-					// it might be continued
-					// if there is only one
-					// records, it will go here too.
+						// the last record as though
+						// it might be continued
+						// if there is only one
+						// records, it will go here too.
+					}
+				}
+				else if (rec == null)
+				{                                    // continues a skipped record
+					skip(in, LittleEndian.readShort(in));
 				}
 				else
 				{                                    // we do have a continue record
@@ -267,4 +285,27 @@ public class HSSFEventFactory
 		// retval = ( Record [] ) records.toArray(retval);
 		// return null;
     }
+
+    /**
+     * Skips the body of a record that nobody listens for.
+     */
+
+    private static void skip(InputStream in, int size)
+        throws IOException
+    {
+        while (size > 0)
+        {
+            long skipped = in.skip(size);
+
+            if (skipped <= 0)
+            {
+                if (in.read() < 0)
+                {
+                    break;
+                }
+                skipped = 1;
+            }
+            size -= skipped;
+        }
+    }
 }
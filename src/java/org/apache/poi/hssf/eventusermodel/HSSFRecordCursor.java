@@ -0,0 +1,712 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.eventusermodel;
+
+import java.io.InputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.util.LittleEndian;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.ContinueRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.record.RecordFormatException;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.util.RKUtil;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Pull based HSSF reader.  Where the HSSFEventFactory pushes a freshly
+ * allocated Record to a listener for every record in the stream, the cursor
+ * lets the caller drive the loop with <code>next()</code> and read the
+ * current record in place through typed accessors.  Nothing is allocated per
+ * record: the record body is read into a buffer that is reused for the whole
+ * stream, and the <code>getXXXRecord()</code> methods refill a single
+ * instance of the matching record class each time they are called.
+ * <P>
+ * MulRKRecords and MulBlankRecords are presented one cell at a time, so that
+ * <code>getColumn()</code>, <code>getXF()</code> and <code>getDouble()</code>
+ * always describe a single cell.  <code>sid()</code> still reports the sid of
+ * the record the cell came from.
+ * <P>
+ * Anything handed out by the cursor (the raw data, the record views) is only
+ * valid until the next call to <code>next()</code>.  Use
+ * <code>createRecord()</code> to get a record of your own.
+ *
+ * <pre>
+ *     HSSFRecordCursor cursor = new HSSFRecordCursor(fs);
+ *     while (cursor.next())
+ *     {
+ *         if (cursor.sid() == LabelSSTRecord.sid)
+ *         {
+ *             ... cursor.getRow(), cursor.getColumn(), cursor.getSSTIndex()
+ *         }
+ *     }
+ * </pre>
+ *
+ * @see org.apache.poi.hssf.eventusermodel.HSSFEventFactory
+ */
+
+public class HSSFRecordCursor
+{
+    private InputStream    in;
+    private byte[]         header    = new byte[ 4 ];
+    private byte[]         data      = new byte[ 256 ];
+    private int            size;
+    private short          sid;
+    private int            nextSid;
+    private List           continues = new ArrayList();
+    private boolean        started;
+    private int            cellIndex;
+    private int            cellCount;
+    private NumberRecord   numberView;
+    private LabelSSTRecord labelSSTView;
+    private BlankRecord    blankView;
+    private BoolErrRecord  boolErrView;
+
+    /**
+     * Creates a cursor over the Workbook stream of a POIFS filesystem.
+     *
+     * @param fs        a POIFS filesystem containing your workbook
+     */
+
+    public HSSFRecordCursor(POIFSFileSystem fs)
+        throws IOException
+    {
+        this(fs.createDocumentInputStream("Workbook"));
+    }
+
+    /**
+     * Creates a cursor over a stream of records.
+     *
+     * @see org.apache.poi.poifs.filesystem.POIFSFileSystem#createDocumentInputStream(String)
+     * @param in        a DocumentInputStream obtained from POIFS's POIFSFileSystem object
+     */
+
+    public HSSFRecordCursor(InputStream in)
+    {
+        this.in = in;
+    }
+
+    /**
+     * Moves to the next record, or to the next cell of the current MulRK or
+     * MulBlank record.  ContinueRecords are never returned on their own; they
+     * are gathered up with the record they continue.
+     *
+     * @return true if the cursor is on a record, false at the end of the stream
+     */
+
+    public boolean next()
+        throws IOException
+    {
+        if (cellIndex + 1 < cellCount)
+        {
+            cellIndex++;
+            return true;
+        }
+        if (!started)
+        {
+            nextSid = readSid();
+            started = true;
+        }
+        cellIndex = 0;
+        cellCount = 0;
+        continues.clear();
+
+        // like the event factory, a zero sid means the rest of the
+        // stream is padding
+        if (nextSid <= 0)
+        {
+            sid  = 0;
+            size = 0;
+            return false;
+        }
+        sid  = ( short ) nextSid;
+        size = readSize();
+        if (data.length < size)
+        {
+            data = new byte[ Math.max(size, data.length * 2) ];
+        }
+        readBody(data, size);
+        nextSid = readSid();
+        while (nextSid == ContinueRecord.sid)
+        {
+            byte[] continued = new byte[ readSize() ];
+
+            readBody(continued, continued.length);
+            continues.add(continued);
+            nextSid = readSid();
+        }
+        if (sid == MulRKRecord.sid)
+        {
+            cellCount = (size - 6) / 6;
+        }
+        else if (sid == MulBlankRecord.sid)
+        {
+            cellCount = (size - 6) / 2;
+        }
+        return true;
+    }
+
+    /**
+     * @return the sid of the current record (the MulRK or MulBlank sid for
+     *         the cells of those records)
+     */
+
+    public short sid()
+    {
+        return sid;
+    }
+
+    /**
+     * @return true if the current record holds cell values
+     */
+
+    public boolean isCell()
+    {
+        switch (sid)
+        {
+
+            case NumberRecord.sid :
+            case RKRecord.sid :
+            case MulRKRecord.sid :
+            case LabelSSTRecord.sid :
+            case LabelRecord.sid :
+            case BlankRecord.sid :
+            case MulBlankRecord.sid :
+            case BoolErrRecord.sid :
+            case FormulaRecord.sid :
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the buffer holding the body of the current record (without
+     *         sid, size or continuations).  Only the first
+     *         <code>getDataSize()</code> bytes belong to the record.
+     */
+
+    public byte [] getData()
+    {
+        return data;
+    }
+
+    /**
+     * @return the size of the body of the current record
+     */
+
+    public int getDataSize()
+    {
+        return size;
+    }
+
+    /**
+     * @return the number of ContinueRecords that followed the current record
+     */
+
+    public int getContinueCount()
+    {
+        return continues.size();
+    }
+
+    /**
+     * @return the row of the current cell or RowRecord (0 based, unsigned)
+     */
+
+    public int getRow()
+    {
+        if (!isCell() && (sid != RowRecord.sid))
+        {
+            throw wrongRecord("a row");
+        }
+        return LittleEndian.getUShort(data, 0);
+    }
+
+    /**
+     * @return the column of the current cell
+     */
+
+    public short getColumn()
+    {
+        requireCell();
+        if (cellCount > 0)
+        {
+            return ( short ) (LittleEndian.getShort(data, 2) + cellIndex);
+        }
+        return LittleEndian.getShort(data, 2);
+    }
+
+    /**
+     * @return the index of the ExtendedFormatRecord of the current cell
+     */
+
+    public short getXF()
+    {
+        requireCell();
+        if (sid == MulRKRecord.sid)
+        {
+            return LittleEndian.getShort(data, 4 + 6 * cellIndex);
+        }
+        if (sid == MulBlankRecord.sid)
+        {
+            return LittleEndian.getShort(data, 4 + 2 * cellIndex);
+        }
+        return LittleEndian.getShort(data, 4);
+    }
+
+    /**
+     * @return the numeric value of a Number, RK or MulRK cell, or the cached
+     *         value of a formula whose result is a number
+     */
+
+    public double getDouble()
+    {
+        switch (sid)
+        {
+
+            case NumberRecord.sid :
+                return LittleEndian.getDouble(data, 6);
+
+            case RKRecord.sid :
+                return RKUtil.decodeNumber(LittleEndian.getInt(data, 6));
+
+            case MulRKRecord.sid :
+                return RKUtil.decodeNumber(LittleEndian.getInt(data,
+                        6 + 6 * cellIndex));
+
+            case FormulaRecord.sid :
+                if (getFormulaResultType() == HSSFCell.CELL_TYPE_NUMERIC)
+                {
+                    return LittleEndian.getDouble(data, 6);
+                }
+        }
+        throw wrongRecord("a numeric value");
+    }
+
+    /**
+     * @return the index into the SSTRecord of a LabelSST cell
+     */
+
+    public int getSSTIndex()
+    {
+        if (sid != LabelSSTRecord.sid)
+        {
+            throw wrongRecord("an SST index");
+        }
+        return LittleEndian.getInt(data, 6);
+    }
+
+    /**
+     * @return the value of a boolean BoolErr cell or the cached value of a
+     *         formula whose result is a boolean
+     */
+
+    public boolean getBoolean()
+    {
+        if ((sid == BoolErrRecord.sid) && (data[ 7 ] == 0))
+        {
+            return data[ 6 ] != 0;
+        }
+        if ((sid == FormulaRecord.sid)
+                && (getFormulaResultType() == HSSFCell.CELL_TYPE_BOOLEAN))
+        {
+            return data[ 8 ] != 0;
+        }
+        throw wrongRecord("a boolean value");
+    }
+
+    /**
+     * @return true if the current BoolErr cell or cached formula value is an
+     *         error code
+     */
+
+    public boolean isError()
+    {
+        if (sid == BoolErrRecord.sid)
+        {
+            return data[ 7 ] != 0;
+        }
+        return (sid == FormulaRecord.sid)
+               && (getFormulaResultType() == HSSFCell.CELL_TYPE_ERROR);
+    }
+
+    /**
+     * @return the error code of an error BoolErr cell or formula result
+     */
+
+    public byte getErrorCode()
+    {
+        if (!isError())
+        {
+            throw wrongRecord("an error code");
+        }
+        return (sid == BoolErrRecord.sid) ? data[ 6 ]
+                                          : data[ 8 ];
+    }
+
+    /**
+     * Tells what kind of value a FormulaRecord cached when it was last
+     * calculated.  A string result is held in the StringRecord that
+     * follows the formula.
+     *
+     * @return one of the HSSFCell.CELL_TYPE_NUMERIC, CELL_TYPE_STRING,
+     *         CELL_TYPE_BOOLEAN, CELL_TYPE_ERROR or CELL_TYPE_BLANK constants
+     */
+
+    public int getFormulaResultType()
+    {
+        if (sid != FormulaRecord.sid)
+        {
+            throw wrongRecord("a formula result");
+        }
+        if (LittleEndian.getUShort(data, 12) != 0xFFFF)
+        {
+            return HSSFCell.CELL_TYPE_NUMERIC;
+        }
+        switch (data[ 6 ])
+        {
+
+            case 0 :
+                return HSSFCell.CELL_TYPE_STRING;
+
+            case 1 :
+                return HSSFCell.CELL_TYPE_BOOLEAN;
+
+            case 2 :
+                return HSSFCell.CELL_TYPE_ERROR;
+        }
+        return HSSFCell.CELL_TYPE_BLANK;
+    }
+
+    /**
+     * Decodes the text of a StringRecord (the cached result of a string
+     * formula) or of a LabelRecord.  This allocates the String, so it is
+     * not free in the way the other accessors are.
+     *
+     * @return the text of the current record
+     */
+
+    public String getString()
+    {
+        if (sid == StringRecord.sid)
+        {
+            return readString(LittleEndian.getUShort(data, 0), 2);
+        }
+        if (sid == LabelRecord.sid)
+        {
+            return readString(LittleEndian.getUShort(data, 6), 8);
+        }
+        throw wrongRecord("a string");
+    }
+
+    /**
+     * @return the current Number, RK or MulRK cell, as a NumberRecord that is
+     *         reused for every call
+     */
+
+    public NumberRecord getNumberRecord()
+    {
+        if ((sid != NumberRecord.sid) && (sid != RKRecord.sid)
+                && (sid != MulRKRecord.sid))
+        {
+            throw wrongRecord("a number");
+        }
+        if (numberView == null)
+        {
+            numberView = new NumberRecord();
+        }
+        numberView.setRow(getRow());
+        numberView.setColumn(getColumn());
+        numberView.setXFIndex(getXF());
+        numberView.setValue(getDouble());
+        return numberView;
+    }
+
+    /**
+     * @return the current LabelSST cell, as a LabelSSTRecord that is reused
+     *         for every call
+     */
+
+    public LabelSSTRecord getLabelSSTRecord()
+    {
+        int index = getSSTIndex();
+
+        if (labelSSTView == null)
+        {
+            labelSSTView = new LabelSSTRecord();
+        }
+        labelSSTView.setRow(getRow());
+        labelSSTView.setColumn(getColumn());
+        labelSSTView.setXFIndex(getXF());
+        labelSSTView.setSSTIndex(index);
+        return labelSSTView;
+    }
+
+    /**
+     * @return the current Blank or MulBlank cell, as a BlankRecord that is
+     *         reused for every call
+     */
+
+    public BlankRecord getBlankRecord()
+    {
+        if ((sid != BlankRecord.sid) && (sid != MulBlankRecord.sid))
+        {
+            throw wrongRecord("a blank");
+        }
+        if (blankView == null)
+        {
+            blankView = new BlankRecord();
+        }
+        blankView.setRow(getRow());
+        blankView.setColumn(getColumn());
+        blankView.setXFIndex(getXF());
+        return blankView;
+    }
+
+    /**
+     * @return the current BoolErr cell, as a BoolErrRecord that is reused
+     *         for every call
+     */
+
+    public BoolErrRecord getBoolErrRecord()
+    {
+        if (sid != BoolErrRecord.sid)
+        {
+            throw wrongRecord("a boolean or error");
+        }
+        if (boolErrView == null)
+        {
+            boolErrView = new BoolErrRecord();
+        }
+        boolErrView.setRow(getRow());
+        boolErrView.setColumn(getColumn());
+        boolErrView.setXFIndex(getXF());
+        if (isError())
+        {
+            boolErrView.setValue(getErrorCode());
+        }
+        else
+        {
+            boolErrView.setValue(getBoolean());
+        }
+        return boolErrView;
+    }
+
+    /**
+     * Builds a new record from the current position, the way the
+     * HSSFEventFactory would have: RKRecords become NumberRecords, a cell of
+     * a MulRK or MulBlank record becomes a NumberRecord or BlankRecord and
+     * any ContinueRecords are applied.
+     *
+     * @return a record owned by the caller, or null for records that the
+     *         RecordFactory discards (DBCellRecord)
+     */
+
+    public Record createRecord()
+    {
+        if (sid == MulRKRecord.sid)
+        {
+            return ( Record ) getNumberRecord().clone();
+        }
+        if (sid == MulBlankRecord.sid)
+        {
+            return ( Record ) getBlankRecord().clone();
+        }
+        if (sid == 0)
+        {
+            throw new IllegalStateException("The cursor is not on a record");
+        }
+
+        // some records hold on to the array they were built from
+        byte[] body = new byte[ size ];
+
+        System.arraycopy(data, 0, body, 0, size);
+        Record rec = RecordFactory.createRecord(sid, ( short ) size, body)[ 0 ];
+
+        if (rec != null)
+        {
+            for (int k = 0; k < continues.size(); k++)
+            {
+                rec.processContinueRecord(( byte [] ) continues.get(k));
+            }
+        }
+        return rec;
+    }
+
+    private void requireCell()
+    {
+        if (!isCell())
+        {
+            throw wrongRecord("a cell");
+        }
+    }
+
+    private IllegalStateException wrongRecord(String what)
+    {
+        return new IllegalStateException("Record sid=0x"
+                                         + Integer.toHexString(sid & 0xFFFF)
+                                         + " does not hold " + what);
+    }
+
+    /**
+     * Reads an unformatted unicode string whose option flags sit at
+     * <code>flagOffset</code>.  Long strings carry on in the ContinueRecords,
+     * each of which starts with a fresh option flag.
+     */
+
+    private String readString(int length, int flagOffset)
+    {
+        char[]  chars  = new char[ length ];
+        byte[]  buffer = data;
+        int     limit  = size;
+        int     pos    = flagOffset;
+        int     next   = 0;
+        int     k      = 0;
+
+        while (k < length)
+        {
+            boolean wide = (buffer[ pos++ ] & 0x01) != 0;
+
+            while ((k < length) && (pos < limit))
+            {
+                if (wide)
+                {
+                    chars[ k++ ] = ( char ) LittleEndian.getUShort(buffer, pos);
+                    pos          += 2;
+                }
+                else
+                {
+                    chars[ k++ ] = ( char ) (buffer[ pos++ ] & 0xFF);
+                }
+            }
+            if (k < length)
+            {
+                if (next >= continues.size())
+                {
+                    throw new RecordFormatException(
+                        "String runs past the end of record sid=0x"
+                        + Integer.toHexString(sid & 0xFFFF));
+                }
+                buffer = ( byte [] ) continues.get(next++);
+                limit  = buffer.length;
+                pos    = 0;
+            }
+        }
+        return new String(chars);
+    }
+
+    private int readSid()
+        throws IOException
+    {
+        if (readFully(header, 2) < 2)
+        {
+            return -1;
+        }
+        return LittleEndian.getUShort(header, 0);
+    }
+
+    private int readSize()
+        throws IOException
+    {
+        if (readFully(header, 2) < 2)
+        {
+            throw new RecordFormatException("Missing size of record sid=0x"
+                                            + Integer.toHexString(nextSid));
+        }
+        return LittleEndian.getUShort(header, 0);
+    }
+
+    private void readBody(byte [] buffer, int length)
+        throws IOException
+    {
+        if (readFully(buffer, length) < length)
+        {
+            throw new RecordFormatException("Record sid=0x"
+                                            + Integer.toHexString(nextSid)
+                                            + " is cut short");
+        }
+    }
+
+    private int readFully(byte [] buffer, int length)
+        throws IOException
+    {
+        int count = 0;
+
+        while (count < length)
+        {
+            int read = in.read(buffer, count, length - count);
+
+            if (read <= 0)
+            {
+                break;
+            }
+            count += read;
+        }
+        return count;
+    }
+}
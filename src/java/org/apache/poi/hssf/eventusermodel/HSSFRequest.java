@@ -55,7 +55,9 @@
 
 package org.apache.poi.hssf.eventusermodel;
 
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 
@@ -77,6 +79,7 @@ import org.apache.poi.hssf.record.RecordFactory;
 public class HSSFRequest
 {
     private HashMap records;
+    private BitSet  subscribed;
 
     /** Creates a new instance of HSSFRequest */
 
@@ -84,6 +87,7 @@ public class HSSFRequest
     {
         records =
             new HashMap(50);   // most folks won't listen for too many of these
+        subscribed = new BitSet();
     }
 
     /**
@@ -113,9 +117,10 @@ public class HSSFRequest
         {
             list = new ArrayList(
                 1);   // probably most people will use one listener
-            list.add(lsnr);
             records.put(new Short(sid), list);
         }
+        list.add(lsnr);
+        subscribed.set(sid & 0xFFFF);
     }
 
     /**
@@ -139,6 +144,36 @@ public class HSSFRequest
         }
     }
 
+    /**
+     * Tells whether any listener has been added for a record type.  The
+     * HSSFEventFactory skips the records nobody listens to without building
+     * them.
+     *
+     * @param sid       identifier for the record type
+     * @return true if a listener is registered for the sid
+     */
+
+    public boolean isSubscribed(short sid)
+    {
+        return subscribed.get(sid & 0xFFFF);
+    }
+
+    /**
+     * @return the sids of the record types that listeners have been added for
+     */
+
+    public short [] getSubscribedSids()
+    {
+        short[]  sids = new short[ records.size() ];
+        Iterator keys = records.keySet().iterator();
+
+        for (int k = 0; k < sids.length; k++)
+        {
+            sids[ k ] = (( Short ) keys.next()).shortValue();
+        }
+        return sids;
+    }
+
 	/**
 	 * Called by HSSFEventFactory, passes the Record to each listener associated with
 	 * a record.sid.
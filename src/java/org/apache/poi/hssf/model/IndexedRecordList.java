@@ -0,0 +1,298 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.model;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.apache.poi.hssf.record.Record;
+
+/**
+ * A list of records that keeps, for every sid, the sorted positions of the
+ * records with that sid.  Finding the first (or n'th) record of a kind is a
+ * hash lookup instead of a walk over the list.  Every change to the list,
+ * including those made through iterators and sublists, goes through
+ * add(int, Object), set(int, Object) or remove(int), which keep the
+ * positions up to date; an insert only moves the positions after it.
+ *
+ * @see WorkbookRecordList
+ * @see Sheet
+ */
+
+public class IndexedRecordList
+    extends AbstractList
+{
+    private ArrayList records   = new ArrayList();
+    private HashMap   positions = new HashMap();   // Short sid -> Positions
+
+    public IndexedRecordList()
+    {
+    }
+
+    /**
+     * @param records the records to start with, in order
+     */
+
+    public IndexedRecordList(Collection records)
+    {
+        for (Iterator iterator = records.iterator(); iterator.hasNext(); )
+        {
+            add(iterator.next());
+        }
+    }
+
+    public Object get(int index)
+    {
+        return records.get(index);
+    }
+
+    public int size()
+    {
+        return records.size();
+    }
+
+    public void add(int index, Object element)
+    {
+        Record record = ( Record ) element;
+
+        records.add(index, record);
+        modCount++;
+        if (index < records.size() - 1)
+        {
+            shift(index, 1);
+        }
+        getPositions(record.getSid()).insert(index);
+    }
+
+    public Object set(int index, Object element)
+    {
+        Record record = ( Record ) element;
+        Record old    = ( Record ) records.set(index, record);
+
+        if (old.getSid() != record.getSid())
+        {
+            getPositions(old.getSid()).delete(index);
+            getPositions(record.getSid()).insert(index);
+        }
+        return old;
+    }
+
+    public Object remove(int index)
+    {
+        Record old = ( Record ) records.remove(index);
+
+        modCount++;
+        getPositions(old.getSid()).delete(index);
+        shift(index, -1);
+        return old;
+    }
+
+    public void clear()
+    {
+        records.clear();
+        positions.clear();
+        modCount++;
+    }
+
+    /**
+     * @param sid the sid to look for
+     * @return the position of the first record with the sid or -1 if none
+     */
+
+    public int findFirst(short sid)
+    {
+        return find(sid, 0);
+    }
+
+    /**
+     * @param sid the sid to look for
+     * @param n which of the records with the sid to find, 0 for the first
+     * @return the position of the n'th record with the sid or -1 if there
+     *         are not that many
+     */
+
+    public int find(short sid, int n)
+    {
+        Positions p = ( Positions ) positions.get(new Short(sid));
+
+        return ((p == null) || (n >= p.count)) ? -1
+                                               : p.positions[ n ];
+    }
+
+    /**
+     * @param sid the sid to look for
+     * @param from the position to start at
+     * @return the position of the first record with the sid at or after
+     *         from, or -1 if there is none
+     */
+
+    public int findNext(short sid, int from)
+    {
+        Positions p = ( Positions ) positions.get(new Short(sid));
+
+        if (p == null)
+        {
+            return -1;
+        }
+        int k = p.search(from);
+
+        return (k < p.count) ? p.positions[ k ] : -1;
+    }
+
+    /**
+     * @return the number of records with the sid
+     */
+
+    public int count(short sid)
+    {
+        Positions p = ( Positions ) positions.get(new Short(sid));
+
+        return (p == null) ? 0 : p.count;
+    }
+
+    private Positions getPositions(short sid)
+    {
+        Short     key = new Short(sid);
+        Positions p   = ( Positions ) positions.get(key);
+
+        if (p == null)
+        {
+            p = new Positions();
+            positions.put(key, p);
+        }
+        return p;
+    }
+
+    /**
+     * moves the positions at or after index by delta
+     */
+
+    private void shift(int index, int delta)
+    {
+        for (Iterator iterator = positions.values().iterator();
+                iterator.hasNext(); )
+        {
+            Positions p = ( Positions ) iterator.next();
+
+            for (int k = p.search(index); k < p.count; k++)
+            {
+                p.positions[ k ] += delta;
+            }
+        }
+    }
+
+    /**
+     * the sorted positions of the records with one sid
+     */
+
+    private static class Positions
+    {
+        int[] positions = new int[ 4 ];
+        int   count     = 0;
+
+        /**
+         * @return the index of the first position at or after the given
+         *         one
+         */
+
+        int search(int position)
+        {
+            int low  = 0;
+            int high = count;
+
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+
+                if (positions[ mid ] < position)
+                {
+                    low = mid + 1;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void insert(int position)
+        {
+            int k = search(position);
+
+            if (count == positions.length)
+            {
+                int[] grown = new int[ count * 2 ];
+
+                System.arraycopy(positions, 0, grown, 0, count);
+                positions = grown;
+            }
+            System.arraycopy(positions, k, positions, k + 1, count - k);
+            positions[ k ] = position;
+            count++;
+        }
+
+        void delete(int position)
+        {
+            int k = search(position);
+
+            System.arraycopy(positions, k + 1, positions, k, count - k - 1);
+            count--;
+        }
+    }
+}
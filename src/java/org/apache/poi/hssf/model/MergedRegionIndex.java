@@ -0,0 +1,282 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.poi.hssf.record.MergeCellsRecord.MergedRegion;
+
+/**
+ * Finds the merged regions of a sheet by the cells they cover.  Rows are
+ * grouped in buckets of 16 and a region is kept in the list of every bucket
+ * it touches, so a query only looks at the regions near its rows.  Regions
+ * taller than eight buckets are kept in one list that every query looks at
+ * rather than being copied into each bucket.
+ * <p>
+ * Regions are matched by identity, the index holds the MergedRegion
+ * objects of the sheet's MergeCellsRecords and expects them not to change.
+ *
+ * @see Sheet#getMergedRegionContaining(int, short)
+ */
+
+public class MergedRegionIndex
+{
+    private static final int BUCKET_SHIFT = 4;
+    private static final int MAX_BUCKETS  = 8;
+    private HashMap          buckets      = new HashMap();   // Integer -> ArrayList
+    private ArrayList        tall         = new ArrayList();
+    private int              size         = 0;
+
+    public MergedRegionIndex()
+    {
+    }
+
+    /**
+     * @param region the region to add
+     */
+
+    public void add(MergedRegion region)
+    {
+        int first = firstRow(region) >> BUCKET_SHIFT;
+        int last  = lastRow(region) >> BUCKET_SHIFT;
+
+        if (last - first >= MAX_BUCKETS)
+        {
+            tall.add(region);
+        }
+        else
+        {
+            for (int k = first; k <= last; k++)
+            {
+                Integer   key    = new Integer(k);
+                ArrayList bucket = ( ArrayList ) buckets.get(key);
+
+                if (bucket == null)
+                {
+                    bucket = new ArrayList();
+                    buckets.put(key, bucket);
+                }
+                bucket.add(region);
+            }
+        }
+        size++;
+    }
+
+    /**
+     * @param region the region to remove, the same object that was added
+     * @return true if the region was in the index
+     */
+
+    public boolean remove(MergedRegion region)
+    {
+        int first = firstRow(region) >> BUCKET_SHIFT;
+        int last  = lastRow(region) >> BUCKET_SHIFT;
+
+        if (last - first >= MAX_BUCKETS)
+        {
+            if (!removeRegion(tall, region))
+            {
+                return false;
+            }
+        }
+        else
+        {
+            for (int k = first; k <= last; k++)
+            {
+                Integer   key    = new Integer(k);
+                ArrayList bucket = ( ArrayList ) buckets.get(key);
+
+                if ((bucket == null) || !removeRegion(bucket, region))
+                {
+                    return false;
+                }
+                if (bucket.isEmpty())
+                {
+                    buckets.remove(key);
+                }
+            }
+        }
+        size--;
+        return true;
+    }
+
+    /**
+     * @param row the cell's row
+     * @param column the cell's column
+     * @return the region the cell belongs to or null if it isn't merged
+     */
+
+    public MergedRegion getRegionContaining(int row, int column)
+    {
+        ArrayList bucket =
+            ( ArrayList ) buckets.get(new Integer(row >> BUCKET_SHIFT));
+
+        if (bucket != null)
+        {
+            for (int k = 0; k < bucket.size(); k++)
+            {
+                MergedRegion region = ( MergedRegion ) bucket.get(k);
+
+                if (overlaps(region, row, column, row, column))
+                {
+                    return region;
+                }
+            }
+        }
+        for (int k = 0; k < tall.size(); k++)
+        {
+            MergedRegion region = ( MergedRegion ) tall.get(k);
+
+            if (overlaps(region, row, column, row, column))
+            {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param rowFrom the area's first row
+     * @param colFrom the area's first column
+     * @param rowTo the area's last row
+     * @param colTo the area's last column
+     * @return the regions sharing at least one cell with the area, each
+     *         once
+     */
+
+    public List getRegionsOverlapping(int rowFrom, int colFrom, int rowTo,
+                                      int colTo)
+    {
+        ArrayList retval = new ArrayList();
+        int       first  = rowFrom >> BUCKET_SHIFT;
+        int       last   = rowTo >> BUCKET_SHIFT;
+
+        for (int b = first; b <= last; b++)
+        {
+            ArrayList bucket = ( ArrayList ) buckets.get(new Integer(b));
+
+            if (bucket == null)
+            {
+                continue;
+            }
+            for (int k = 0; k < bucket.size(); k++)
+            {
+                MergedRegion region = ( MergedRegion ) bucket.get(k);
+
+                // a region in several buckets is only reported from the
+                // first of them the query looks at
+                if (overlaps(region, rowFrom, colFrom, rowTo, colTo)
+                        && (Math.max(firstRow(region) >> BUCKET_SHIFT,
+                                     first) == b))
+                {
+                    retval.add(region);
+                }
+            }
+        }
+        for (int k = 0; k < tall.size(); k++)
+        {
+            MergedRegion region = ( MergedRegion ) tall.get(k);
+
+            if (overlaps(region, rowFrom, colFrom, rowTo, colTo))
+            {
+                retval.add(region);
+            }
+        }
+        return retval;
+    }
+
+    /**
+     * @return the number of regions in the index
+     */
+
+    public int size()
+    {
+        return size;
+    }
+
+    private static boolean overlaps(MergedRegion region, int rowFrom,
+                                    int colFrom, int rowTo, int colTo)
+    {
+        return (firstRow(region) <= rowTo) && (lastRow(region) >= rowFrom)
+               && (Math.min(region.col_from, region.col_to) <= colTo)
+               && (Math.max(region.col_from, region.col_to) >= colFrom);
+    }
+
+    // rows are read from the file as signed shorts
+    private static int firstRow(MergedRegion region)
+    {
+        return Math.min(region.row_from & 0xFFFF, region.row_to & 0xFFFF);
+    }
+
+    private static int lastRow(MergedRegion region)
+    {
+        return Math.max(region.row_from & 0xFFFF, region.row_to & 0xFFFF);
+    }
+
+    private static boolean removeRegion(ArrayList list, MergedRegion region)
+    {
+        for (int k = list.size() - 1; k >= 0; k--)
+        {
+            if (list.get(k) == region)
+            {
+                list.remove(k);
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -55,8 +55,10 @@
 
 package org.apache.poi.hssf.model;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 
 import org.apache.poi.hssf
@@ -95,7 +97,7 @@ public class Sheet implements Model
     public static final short   TopMargin = 2;
     public static final short   BottomMargin = 3;
 
-    protected ArrayList                 records        = null;
+    protected IndexedRecordList         records        = null;
     int                                 preoffset      = 0;      // offset of the sheet in a new file
     int                                 loc            = 0;
     protected boolean                   containsLabels = false;
@@ -112,11 +114,13 @@ public class Sheet implements Model
     protected ArrayList                 mergedRecords    = new ArrayList();
     protected ArrayList                 mergedLocs       = new ArrayList();
     protected int                       numMergedRegions = 0;
+    protected MergedRegionIndex         mergedIndex      = null;
     protected SelectionRecord           selection        = null;
     private static POILogger            log              = POILogFactory.getLogger(Sheet.class);
-    private ArrayList                   columnSizes      = null;  // holds column info
+    protected ColumnInfoRecordsAggregate columns         = null;  // holds column info
     protected ValueRecordsAggregate     cells            = null;
     protected RowRecordsAggregate       rows             = null;
+    protected SpilledRowsAggregate      spilled          = null;
     private Iterator                    valueRecIterator = null;
     private Iterator                    rowRecIterator   = null;
     protected int                       eofLoc           = 0;
@@ -200,11 +204,17 @@ public class Sheet implements Model
             }
             else if (rec.getSid() == ColumnInfoRecord.sid)
             {
-                if (retval.columnSizes == null)
+                if (retval.columns == null)
                 {
-                    retval.columnSizes = new ArrayList();
+                    retval.columns = new ColumnInfoRecordsAggregate();
+                    retval.columns.insertColumn(( ColumnInfoRecord ) rec);
+                    rec = retval.columns;
+                }
+                else
+                {
+                    retval.columns.insertColumn(( ColumnInfoRecord ) rec);
+                    rec = null;
                 }
-                retval.columnSizes.add(rec);
             }
             else if (rec.getSid() == DefaultColWidthRecord.sid)
             {
@@ -232,6 +242,12 @@ public class Sheet implements Model
             {
                 rec = null;
             }
+            else if ( rec.getSid() == SharedFormulaRecord.sid && bofEofNestingLevel == 1 )
+            {
+                // the value aggregate has expanded these into its formulas
+                // and builds them afresh on write
+                rec = null;
+            }
             else if ( rec.getSid() == RowRecord.sid )
             {
                 if ( isfirstrow )
@@ -272,7 +288,7 @@ public class Sheet implements Model
                 records.add(rec);
             }
         }
-        retval.records = records;
+        retval.records = new IndexedRecordList(records);
         if (retval.rows == null)
         {
             retval.rows = new RowRecordsAggregate();
@@ -313,6 +329,12 @@ public class Sheet implements Model
             Record valRec = (Record)cellIter.next();
             clonedRecords.add(valRec);
           }
+        } else if (rec instanceof ColumnInfoRecordsAggregate) {
+          ColumnInfoRecordsAggregate ciAgg = (ColumnInfoRecordsAggregate)rec;
+          for (Iterator colIter = ciAgg.getIterator();colIter.hasNext();) {
+            Record colRec = (Record)colIter.next();
+            clonedRecords.add(colRec);
+          }
         } else if (rec instanceof FormulaRecordAggregate) {
           FormulaRecordAggregate fmAgg = (FormulaRecordAggregate)rec;
           Record fmAggRec = fmAgg.getFormulaRecord();
@@ -398,7 +420,7 @@ public class Sheet implements Model
                 (SelectionRecord) retval.createSelection();
         records.add(retval.selection);
         records.add(retval.createEOF());
-        retval.records = records;
+        retval.records = new IndexedRecordList(records);
         log.log(log.DEBUG, "Sheet createsheet from scratch exit");
         return retval;
     }
@@ -432,7 +454,12 @@ public class Sheet implements Model
             mergedLocs.add(new Integer(records.size() - 1));
             records.add(records.size() - 1, merged);
         }
-        merged.addArea(rowFrom, colFrom, rowTo, colTo);
+        int area = merged.addArea(rowFrom, colFrom, rowTo, colTo);
+
+        if (mergedIndex != null)
+        {
+            mergedIndex.add(merged.getAreaAt(area));
+        }
         return numMergedRegions++; 
     }
 
@@ -466,19 +493,132 @@ public class Sheet implements Model
         }
 
         MergeCellsRecord rec = (MergeCellsRecord) mergedRecords.get(pos);
+        if (mergedIndex != null)
+        {
+            mergedIndex.remove(rec.getAreaAt(index - startNumRegions));
+        }
         rec.removeAreaAt(index - startNumRegions);
         numMergedRegions--;
         if (rec.getNumAreas() == 0)
         {
-            mergedRecords.remove(pos);
-            if (merged == rec)
-            	merged = (MergeCellsRecord) mergedRecords.get(mergedRecords.size() - 1);
-            int removePos = ((Integer) mergedLocs.get(pos)).intValue();
-            records.remove(removePos);
-            mergedLocs.remove(pos);
+            removeMergeCellsRecord(pos);
         }
     }
 
+    /**
+     * removes every merged region that shares a cell with the given area.
+     * The regions are found through the merged region index and taken out
+     * of their records in one pass, which is much quicker than removing
+     * them one at a time by index.
+     *
+     * @return the number of regions removed
+     */
+
+    public int removeMergedRegions(int rowFrom, short colFrom, int rowTo,
+                                   short colTo)
+    {
+        return removeMergedRegions(getMergedRegionIndex()
+            .getRegionsOverlapping(rowFrom, colFrom, rowTo, colTo));
+    }
+
+    /**
+     * removes the given merged regions, taking them out of their records in
+     * one pass
+     *
+     * @param doomed List of MergeCellsRecord.MergedRegion
+     * @return the number of regions removed
+     */
+
+    private int removeMergedRegions(List doomed)
+    {
+        if (doomed.size() == 0)
+        {
+            return 0;
+        }
+        for (int n = 0; n < doomed.size(); n++)
+        {
+            mergedIndex.remove(( MergeCellsRecord.MergedRegion ) doomed.get(n));
+        }
+        HashSet set = new HashSet(doomed);
+
+        for (int n = mergedRecords.size() - 1; n >= 0; n--)
+        {
+            MergeCellsRecord record = (MergeCellsRecord) mergedRecords.get(n);
+
+            numMergedRegions -= record.removeAreas(set);
+            if (record.getNumAreas() == 0)
+            {
+                removeMergeCellsRecord(n);
+            }
+        }
+        return doomed.size();
+    }
+
+    /**
+     * takes an empty MergeCellsRecord out of the sheet
+     * @param pos the record's index in mergedRecords
+     */
+
+    private void removeMergeCellsRecord(int pos)
+    {
+        Record rec = (Record) mergedRecords.remove(pos);
+
+        // the MergeCellsRecords are in the sheet in the order of mergedRecords
+        records.remove(records.find(MergeCellsRecord.sid, pos));
+        mergedLocs.remove(pos);
+        if (merged == rec)
+        {
+            merged = (mergedRecords.size() == 0) ? null
+                : (MergeCellsRecord) mergedRecords.get(mergedRecords.size() - 1);
+        }
+    }
+
+    /**
+     * @return the merged region the cell belongs to, or null if the cell is
+     *         not merged
+     */
+
+    public MergeCellsRecord.MergedRegion getMergedRegionContaining(int row,
+            short column)
+    {
+        return getMergedRegionIndex().getRegionContaining(row, column);
+    }
+
+    /**
+     * @return a list of the MergeCellsRecord.MergedRegions that share at
+     *         least one cell with the given area
+     */
+
+    public List getMergedRegionsOverlapping(int rowFrom, short colFrom,
+                                            int rowTo, short colTo)
+    {
+        return getMergedRegionIndex().getRegionsOverlapping(rowFrom, colFrom,
+                rowTo, colTo);
+    }
+
+    /**
+     * builds the merged region index the first time it is asked for, from
+     * then on it is kept up to date as regions are added and removed
+     */
+
+    private MergedRegionIndex getMergedRegionIndex()
+    {
+        if (mergedIndex == null)
+        {
+            mergedIndex = new MergedRegionIndex();
+            for (int n = 0; n < mergedRecords.size(); n++)
+            {
+                MergeCellsRecord record = (MergeCellsRecord) mergedRecords.get(n);
+
+                for (int k = 0; k < record.getNumAreas(); k++)
+                {
+                    mergedIndex.add(record.getAreaAt(k));
+                }
+            }
+        }
+        return mergedIndex;
+    }
+
     public MergeCellsRecord.MergedRegion getMergedRegionAt(int index)
     {
         //safety checks
@@ -758,6 +898,140 @@ public class Sheet implements Model
         return pos;
     }
 
+    /**
+     * Serializes the sheet one record at a time through the given writer.
+     * The row and value aggregates are expanded into their individual
+     * records so that no single large array is needed for the whole sheet.
+     *
+     * @param writer the writer the records are passed to
+     * @return number of bytes written
+     * @exception IOException if the underlying stream cannot be written to
+     */
+
+    public int serialize(RecordWriter writer)
+        throws IOException
+    {
+        log.log(log.DEBUG, "Sheet.serialize using record writer");
+        int pos = 0;
+
+        for (int k = 0; k < records.size(); k++)
+        {
+            Record record = (( Record ) records.get(k));
+
+            if (record instanceof SpilledRowsAggregate)
+            {
+                pos += (( SpilledRowsAggregate ) record).serialize(writer);
+            }
+            else if (record instanceof RowRecordsAggregate)
+            {
+                Iterator rowIter = (( RowRecordsAggregate ) record).getIterator();
+
+                while (rowIter.hasNext())
+                {
+                    pos += writer.write(( Record ) rowIter.next());
+                }
+            }
+            else if (record instanceof ValueRecordsAggregate)
+            {
+                pos += (( ValueRecordsAggregate ) record).serialize(writer);
+            }
+            else
+            {
+                pos += writer.write(record);
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Moves all rows up to and including lastRow, together with their cells,
+     * out of the row and value aggregates and into the sheet's spill file.
+     * The spilled records are written back into place when the sheet is
+     * serialized.  Rows must be flushed in ascending order; a row must not be
+     * added or modified again once it has been flushed.
+     *
+     * @param lastRow the last row number to flush
+     * @exception IOException if the spill file cannot be written
+     */
+
+    public void flushRows(int lastRow)
+        throws IOException
+    {
+        flushRows(lastRow, false);
+    }
+
+    /**
+     * Moves all rows up to and including lastRow, together with their cells,
+     * out of the row and value aggregates.  The first flush decides where
+     * the flushed rows go for the rest of the sheet's life: a temporary
+     * spill file, or memory, with the cells packed into primitive arrays.
+     *
+     * @param lastRow the last row number to flush
+     * @param inMemory whether flushed rows are kept in memory
+     * @exception IOException if the spill file cannot be written
+     * @see org.apache.poi.hssf.record.aggregates.SpilledRowsAggregate
+     */
+
+    public void flushRows(int lastRow, boolean inMemory)
+        throws IOException
+    {
+        checkRows();
+        checkCells();
+        if (spilled == null)
+        {
+            spilled = new SpilledRowsAggregate(inMemory);
+            records.add(getDimsLoc() + 1, spilled);
+        }
+        List flushedRows  = new ArrayList();
+        List flushedCells = new ArrayList();
+
+        for (Iterator iter = rows.getIterator(); iter.hasNext(); )
+        {
+            RowRecord row = ( RowRecord ) iter.next();
+
+            if (row.getRowNumber() > lastRow)
+            {
+                break;
+            }
+            flushedRows.add(row);
+        }
+        for (Iterator iter = cells.getIterator(); iter.hasNext(); )
+        {
+            CellValueRecordInterface cell =
+                ( CellValueRecordInterface ) iter.next();
+
+            if (cell.getRow() > lastRow)
+            {
+                break;
+            }
+            flushedCells.add(cell);
+        }
+        spilled.spill(flushedRows.iterator(), flushedCells.iterator());
+        for (int k = 0; k < flushedRows.size(); k++)
+        {
+            rows.removeRow(( RowRecord ) flushedRows.get(k));
+        }
+        for (int k = 0; k < flushedCells.size(); k++)
+        {
+            cells.removeCell(( CellValueRecordInterface ) flushedCells.get(k));
+        }
+    }
+
+    /**
+     * Closes and deletes the spill file that flushRows writes to, or lets
+     * go of the flushed rows kept in memory.  The flushed rows are lost, so
+     * this should only be called once the sheet has been written for the
+     * last time.
+     */
+
+    public void disposeSpilledRows()
+    {
+        if (spilled != null)
+        {
+            spilled.dispose();
+        }
+    }
+
     /**
      * Create a row record.  (does not add it to the records contained in this sheet)
      *
@@ -1147,6 +1421,79 @@ public class Sheet implements Model
          */
     }
 
+    /**
+     * Moves rows startRow to endRow, with their cells, by n rows in place.
+     * Whatever is in the rows they are moved onto is dropped, merged
+     * regions included.  Merged regions that lie within the moved rows move
+     * with them; those that only partly do, or would be moved off the
+     * sheet, are removed.  References to the moved cells in the sheet's
+     * formulas are changed to follow them.
+     *
+     * @param startRow the first row to move
+     * @param endRow the last row to move
+     * @param n the number of rows to move by, negative to move up
+     */
+
+    public void shiftRows(int startRow, int endRow, int n)
+    {
+        if ((n == 0) || (startRow > endRow))
+        {
+            return;
+        }
+        checkRows();
+        checkCells();
+        rows.shiftRows(startRow, endRow, n);
+        cells.shiftRows(startRow, endRow, n);
+
+        // the rows moved onto, apart from those the moved rows came from
+        int dropFrom = (n > 0) ? Math.max(endRow + 1, startRow + n)
+                               : Math.max(startRow + n, 0);
+        int dropTo   = (n > 0) ? Math.min(endRow + n, 0xFFFF)
+                               : Math.min(startRow - 1, endRow + n);
+
+        if (dropFrom <= dropTo)
+        {
+            removeMergedRegions(dropFrom, ( short ) 0, dropTo, ( short ) 0xFF);
+        }
+        List regions = getMergedRegionsOverlapping(startRow, ( short ) 0,
+                           endRow, ( short ) 0xFF);
+        List broken  = new ArrayList();
+
+        for (int k = 0; k < regions.size(); k++)
+        {
+            MergeCellsRecord.MergedRegion region =
+                ( MergeCellsRecord.MergedRegion ) regions.get(k);
+            int first = region.row_from & 0xFFFF;
+            int last  = region.row_to & 0xFFFF;
+
+            if ((first >= startRow) && (last <= endRow) && (first + n >= 0)
+                    && (last + n <= 0xFFFF))
+            {
+                mergedIndex.remove(region);
+                region.row_from = first + n;
+                region.row_to   = last + n;
+                mergedIndex.add(region);
+            }
+            else
+            {
+                broken.add(region);
+            }
+        }
+        removeMergedRegions(broken);
+
+        DimensionsRecord d = ( DimensionsRecord ) records.get(getDimsLoc());
+
+        if (rows.getLastRowNum() + 1 > d.getLastRow())
+        {
+            d.setLastRow(rows.getLastRowNum() + 1);
+        }
+        if ((rows.getFirstRowNum() != -1)
+                && (rows.getFirstRowNum() < d.getFirstRow()))
+        {
+            d.setFirstRow(rows.getFirstRowNum());
+        }
+    }
+
     /**
      * get the NEXT value record (from LOC).  The first record that is a value record
      * (starting at LOC) will be returned.
@@ -1769,12 +2116,7 @@ public class Sheet implements Model
 
     protected Record createColInfo()
     {
-        ColumnInfoRecord retval = new ColumnInfoRecord();
-
-        retval.setColumnWidth(( short ) 0x8);
-        retval.setOptions(( short ) 6);
-        retval.setXFIndex(( short ) 0x0f);
-        return retval;
+        return ColumnInfoRecordsAggregate.createColInfo(( short ) 0);
     }
 
     /**
@@ -1847,32 +2189,17 @@ public class Sheet implements Model
 
     public short getColumnWidth(short column)
     {
-        short            retval = 0;
-        ColumnInfoRecord ci     = null;
-        int              k      = 0;
+        ColumnInfoRecord ci = null;
 
-        if (columnSizes != null)
+        if (columns != null)
         {
-            for (k = 0; k < columnSizes.size(); k++)
-            {
-                ci = ( ColumnInfoRecord ) columnSizes.get(k);
-                if ((ci.getFirstColumn() >= column)
-                        && (column <= ci.getLastColumn()))
-                {
-                    break;
-                }
-                ci = null;
-            }
+            ci = columns.findColumnInfo(column);
         }
         if (ci != null)
         {
-            retval = ci.getColumnWidth();
-        }
-        else
-        {
-            retval = defaultcolwidth.getColWidth();
+            return ci.getColumnWidth();
         }
-        return retval;
+        return defaultcolwidth.getColWidth();
     }
 
     /**
@@ -1883,76 +2210,13 @@ public class Sheet implements Model
 
     public void setColumnWidth(short column, short width)
     {
-        ColumnInfoRecord ci = null;
-        int              k  = 0;
-
-        if (columnSizes == null)
-        {
-            columnSizes = new ArrayList();
-        }
-        //int cioffset = getDimsLoc() - columnSizes.size();
-
-        for (k = 0; k < columnSizes.size(); k++)
-        {
-            ci = ( ColumnInfoRecord ) columnSizes.get(k);
-            if ((ci.getFirstColumn() >= column)
-                    && (column <= ci.getLastColumn()))
-            {
-                break;
-            }
-            ci = null;
-        }
-        if (ci != null)
-        {
-            if (ci.getColumnWidth() == width)
-            {
-
-                // do nothing...the cell's width is equal to what we're setting it to.
-            }
-            else if ((ci.getFirstColumn() == column)
-                     && (ci.getLastColumn() == column))
-            {                               // if its only for this cell then
-                ci.setColumnWidth(width);   // who cares, just change the width
-            }
-            else if ((ci.getFirstColumn() == column)
-                     || (ci.getLastColumn() == column))
-            {
-
-                // okay so the width is different but the first or last column == the column we'return setting
-                // we'll just divide the info and create a new one
-                if (ci.getFirstColumn() == column)
-                {
-                    ci.setFirstColumn(( short ) (column + 1));
-                }
-                else
-                {
-                    ci.setLastColumn(( short ) (column - 1));
-                }
-                ColumnInfoRecord nci = ( ColumnInfoRecord ) createColInfo();
-
-                nci.setFirstColumn(column);
-                nci.setLastColumn(column);
-                nci.setOptions(ci.getOptions());
-                nci.setXFIndex(ci.getXFIndex());
-                nci.setColumnWidth(width);
-                columnSizes.add(k, nci);
-                records.add((1 + getDimsLoc() - columnSizes.size()) + k, nci);
-                dimsloc++;
-            }
-        }
-        else
+        if (columns == null)
         {
-
-            // okay so there ISN'T a column info record that cover's this column so lets create one!
-            ColumnInfoRecord nci = ( ColumnInfoRecord ) createColInfo();
-
-            nci.setFirstColumn(column);
-            nci.setLastColumn(column);
-            nci.setColumnWidth(width);
-            columnSizes.add(k, nci);
-            records.add((1 + getDimsLoc() - columnSizes.size()) + k, nci);
+            columns = new ColumnInfoRecordsAggregate();
+            records.add(getDimsLoc(), columns);
             dimsloc++;
         }
+        columns.setColumnWidth(column, width);
     }
 
     /**
@@ -2154,16 +2418,9 @@ public class Sheet implements Model
 
     public Record findFirstRecordBySid(short sid)
     {
-        for (Iterator iterator = records.iterator(); iterator.hasNext(); )
-        {
-            Record record = ( Record ) iterator.next();
+        int loc = records.findFirst(sid);
 
-            if (record.getSid() == sid)
-            {
-                return record;
-            }
-        }
-        return null;
+        return (loc < 0) ? null : ( Record ) records.get(loc);
     }
 
     /**
@@ -2197,18 +2454,7 @@ public class Sheet implements Model
      */
     public int findFirstRecordLocBySid( short sid )
     {
-        int index = 0;
-        for (Iterator iterator = records.iterator(); iterator.hasNext(); )
-        {
-            Record record = ( Record ) iterator.next();
-
-            if (record.getSid() == sid)
-            {
-                return index;
-            }
-            index++;
-        }
-        return -1;
+        return records.findFirst(sid);
     }
 
     /**
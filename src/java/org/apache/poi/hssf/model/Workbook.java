@@ -61,7 +61,10 @@ import org.apache.poi.hssf.util.SheetReferences;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -130,6 +133,22 @@ public class Workbook implements Model {
     protected ArrayList        names = new ArrayList();
 
     protected int              numxfs      = 0;   // hold the number of extended format records
+
+    /**
+     * copies of the cell extended format records, mapped to the index of
+     * the first record with that format
+     */
+    private HashMap            xfindex     = new HashMap();
+    private int                indexedxfs  = 0;   // number of extended format records looked at for xfindex
+
+    /**
+     * font attributes (see fontKey) mapped to the index of the first font
+     * record with them, and format strings mapped to their format records
+     */
+    private HashMap            fontindex   = new HashMap();
+    private int                indexedfonts = 0;  // number of font records looked at for fontindex
+    private HashMap            formatindex = new HashMap();
+    private int                indexedformats = 0;  // number of format records looked at for formatindex
     protected int              numfonts    = 0;   // hold the number of font records
     private short              maxformatid  = -1;  // holds the max format id
     private boolean            uses1904datewindowing  = false;  // whether 1904 date windowing is being used
@@ -182,6 +201,13 @@ public class Workbook implements Model {
                     retval.sst = ( SSTRecord ) rec;
                     break;
 
+                case ExtSSTRecord.sid :
+                    log.log(DEBUG, "found extsst record at " + k);
+                    if (retval.sst != null) {
+                        retval.sst.useExtSSTRecord(( ExtSSTRecord ) rec);
+                    }
+                    break;
+
                 case FontRecord.sid :
                     log.log(DEBUG, "found font record at " + k);
                     retval.records.setFontpos( k );
@@ -224,6 +250,7 @@ public class Workbook implements Model {
 	        case FormatRecord.sid :
                 log.log(DEBUG, "found format record at " + k);
                 retval.formats.add(rec);
+                retval.records.setFormatpos( k );
                 retval.maxformatid = retval.maxformatid >= ((FormatRecord)rec).getIndexCode() ? retval.maxformatid : ((FormatRecord)rec).getIndexCode();
 		    break;
                 case DateWindow1904Record.sid :
@@ -300,6 +327,7 @@ public class Workbook implements Model {
             records.add( rec );
         }
         retval.formats = formats;
+        retval.records.setFormatpos( records.size() - 1 );
 
         for ( int k = 0; k < 21; k++ )
         {
@@ -420,6 +448,86 @@ public class Workbook implements Model {
         return rec;
     }
 
+    /**
+     * finds a font record with the given attributes through a hash index of
+     * the font records.  A font changed after it was indexed must be
+     * reported with fontChanged(short) for it to be found by its new
+     * attributes; HSSFFont's setters do this.
+     *
+     * @return the index of the first matching font (there is no font 4) or
+     *         -1 if there is none
+     */
+
+    public int findFont(short boldWeight, short color, short fontHeight,
+                        String name, boolean italic, boolean strikeout,
+                        short typeOffset, byte underline) {
+        for (; indexedfonts < numfonts; indexedfonts++) {
+            Object key = fontKey(getFontRecordAt(toFontIndex(indexedfonts)));
+
+            if (!fontindex.containsKey(key)) {
+                fontindex.put(key, new Integer(toFontIndex(indexedfonts)));
+            }
+        }
+        List    key   = fontKey(boldWeight, color, fontHeight, name, italic,
+                                strikeout, typeOffset, underline);
+        Integer index = ( Integer ) fontindex.get(key);
+
+        if (index != null
+                && !key.equals(fontKey(getFontRecordAt(index.intValue())))) {
+
+            // the font has been changed since it was indexed
+            fontindex.clear();
+            indexedfonts = 0;
+            return findFont(boldWeight, color, fontHeight, name, italic,
+                            strikeout, typeOffset, underline);
+        }
+        return (index == null) ? -1 : index.intValue();
+    }
+
+    /**
+     * tells the font index that the font record at the given index has been
+     * changed.  If the font had already been indexed the index is rebuilt
+     * on the next lookup; fonts added since the last lookup are indexed by
+     * whatever they hold then anyway, so changing those costs nothing.
+     *
+     * @param index the font index (there is no font 4)
+     */
+
+    public void fontChanged(short index) {
+        int n = (index > 4) ? index - 1 : index;
+
+        if (n < indexedfonts) {
+            fontindex.clear();
+            indexedfonts = 0;
+        }
+    }
+
+    /**
+     * @return the font index of the n'th font record, skipping 4
+     */
+
+    private static int toFontIndex(int n) {
+        return (n > 3) ? n + 1 : n;
+    }
+
+    private static List fontKey(FontRecord font) {
+        return fontKey(font.getBoldWeight(), font.getColorPaletteIndex(),
+                       font.getFontHeight(), font.getFontName(),
+                       font.isItalic(), font.isStruckout(),
+                       font.getSuperSubScript(), font.getUnderline());
+    }
+
+    private static List fontKey(short boldWeight, short color,
+                                short fontHeight, String name,
+                                boolean italic, boolean strikeout,
+                                short typeOffset, byte underline) {
+        return Arrays.asList(new Object[] {
+            new Short(boldWeight), new Short(color), new Short(fontHeight),
+            name, new Boolean(italic), new Boolean(strikeout),
+            new Short(typeOffset), new Byte(underline)
+        });
+    }
+
     /**
      * gets the number of font records
      *
@@ -618,6 +726,84 @@ public class Workbook implements Model {
         return xf;
     }
 
+    /**
+     * creates a new Cell-type Extended Format Record that is a copy of the
+     * given format and adds it to the end of the ExtendedFormatRecords
+     * collection
+     *
+     * @param format the format to copy
+     * @return ExtendedFormatRecord that was created
+     */
+
+    public ExtendedFormatRecord createCellXF(ExtendedFormatRecord format) {
+        ExtendedFormatRecord xf = ( ExtendedFormatRecord ) format.clone();
+
+        records.add(records.getXfpos()+1, xf);
+        records.setXfpos( records.getXfpos() + 1 );
+        numxfs++;
+        return xf;
+    }
+
+    /**
+     * finds a Cell-type Extended Format Record with the same font, number
+     * format, alignment, borders and fill as the given one.  Records are
+     * indexed by their contents when first looked for.  A record changed
+     * after that must be reported with cellXFChanged(int) for it to be found
+     * under its new contents; HSSFCellStyle's setters do this.
+     *
+     * @param format the format to look for
+     * @return the 0-based index of the matching record or -1 if there is none
+     */
+
+    public int findCellXF(ExtendedFormatRecord format) {
+        indexCellXFs();
+        Integer index = ( Integer ) xfindex.get(format);
+
+        if (index != null && !getExFormatAt(index.intValue()).equals(format)) {
+
+            // the record has been changed since it was indexed
+            xfindex.clear();
+            indexedxfs = 0;
+            indexCellXFs();
+            index = ( Integer ) xfindex.get(format);
+        }
+        return (index == null) ? -1 : index.intValue();
+    }
+
+    /**
+     * tells the format index that the extended format record at the given
+     * index has been changed.  If the record had already been indexed (or
+     * passed over as a duplicate) the index is rebuilt on the next lookup;
+     * records added since the last lookup, such as a new style being set
+     * up, are indexed by whatever they hold then anyway, so changing those
+     * costs nothing.
+     *
+     * @param index the 0-based index of the record
+     */
+
+    public void cellXFChanged(int index) {
+        if (index < indexedxfs) {
+            xfindex.clear();
+            indexedxfs = 0;
+        }
+    }
+
+    /**
+     * adds the extended format records created since the last lookup to
+     * the format index
+     */
+
+    private void indexCellXFs() {
+        for (; indexedxfs < numxfs; indexedxfs++) {
+            ExtendedFormatRecord xf = getExFormatAt(indexedxfs);
+
+            if (xf.getXFType() == ExtendedFormatRecord.XF_CELL
+                    && !xfindex.containsKey(xf)) {
+                xfindex.put(xf.clone(), new Integer(indexedxfs));
+            }
+        }
+    }
+
     /**
      * Adds a string to the SST table and returns its index (if its a duplicate
      * just returns its index and update the counts)
@@ -666,6 +852,32 @@ public class Workbook implements Model {
         return retval;
     }
 
+    /**
+     * decode the whole Shared String Table of a workbook that was read now,
+     * so that getSSTString may then be called from several threads at once
+     * (as long as no strings are added meanwhile)
+     * @see org.apache.poi.hssf.record.SSTRecord#decodeStrings()
+     */
+
+    public void decodeSSTStrings() {
+        if (sst != null) {
+            sst.decodeStrings();
+        }
+    }
+
+    /**
+     * have getSSTString decode just the strings asked for rather than the
+     * whole Shared String Table (only affects a table that was read and has
+     * not been decoded yet)
+     * @see org.apache.poi.hssf.record.SSTRecord#setDecodeOnDemand(boolean)
+     */
+
+    public void setDecodeSSTOnDemand(boolean decodeOnDemand) {
+        if (sst != null) {
+            sst.setDecodeOnDemand(decodeOnDemand);
+        }
+    }
+
     /**
      * use this function to add a Shared String Table to an existing sheet (say
      * generated by a different java api) without an sst....
@@ -755,6 +967,31 @@ public class Workbook implements Model {
         return pos;
     }
 
+    /**
+     * Serializes the workbook records one at a time through the given writer
+     * rather than into one big byte array.  The bytes written are identical to
+     * those produced by serialize(int, byte[]).
+     *
+     * @param writer the writer the records are passed to
+     * @return number of bytes written
+     * @exception IOException if the underlying stream cannot be written to
+     */
+
+    public int serialize(RecordWriter writer)
+        throws IOException
+    {
+        int pos = 0;
+
+        for (int k = 0; k < records.size(); k++) {
+            Record record = records.get(k);
+            // Let's skip RECALCID records, as they are only use for optimization
+            if(record.getSid() != RecalcIdRecord.sid || ((RecalcIdRecord)record).isNeeded()) {
+                pos += writer.write(record);
+            }
+        }
+        return pos;
+    }
+
     public int getSize() {
         int retval = 0;
 
@@ -1929,12 +2166,10 @@ public class Workbook implements Model {
      * @return the format id of a format that matches or -1 if none found and createIfNotFound
      */
     public short getFormat(String format, boolean createIfNotFound) {
-	Iterator iterator;
-	for (iterator = formats.iterator(); iterator.hasNext();) {
-	    FormatRecord r = (FormatRecord)iterator.next();
-	    if (r.getFormatString().equals(format)) {
-		return r.getIndexCode();
-	    }
+	FormatRecord r = findFormat(format);
+
+	if (r != null) {
+	    return r.getIndexCode();
 	}
 
 	if (createIfNotFound) {
@@ -1970,28 +2205,50 @@ public class Workbook implements Model {
         rec.setFormatStringLength( (byte) format.length() );
         rec.setFormatString( format );
 
-        int pos = 0;
-        while ( pos < records.size() && records.get( pos ).getSid() != FormatRecord.sid )
-            pos++;
-        pos += formats.size();
+        // the format records go between the fonts and the extended formats
+        int pos = formats.isEmpty() ? records.getXfpos() - (numxfs - 1)
+                                    : records.getFormatpos() + 1;
         formats.add( rec );
         records.add( pos, rec );
+        records.setFormatpos( pos );
         return maxformatid;
     }
 
+    /**
+     * finds the format record with the given format string through a hash
+     * index of the format records
+     *
+     * @param format the format string
+     * @return the first format record with the string or null if none
+     */
+    private FormatRecord findFormat(String format) {
+        for (; indexedformats < formats.size(); indexedformats++) {
+            FormatRecord r = ( FormatRecord ) formats.get(indexedformats);
+
+            if (!formatindex.containsKey(r.getFormatString())) {
+                formatindex.put(r.getFormatString(), r);
+            }
+        }
+        FormatRecord r = ( FormatRecord ) formatindex.get(format);
+
+        if (r != null && !format.equals(r.getFormatString())) {
+
+            // the record's string has been changed since it was indexed
+            formatindex.clear();
+            indexedformats = 0;
+            return findFormat(format);
+        }
+        return r;
+    }
+
 
     /**
      * Returns the first occurance of a record matching a particular sid.
      */
     public Record findFirstRecordBySid(short sid) {
-        for (Iterator iterator = records.iterator(); iterator.hasNext(); ) {
-            Record record = ( Record ) iterator.next();
-            
-            if (record.getSid() == sid) {
-                return record;
-            }
-        }
-        return null;
+        int index = records.find(sid, 0);
+
+        return (index < 0) ? null : records.get(index);
     }
 
     /**
@@ -2000,32 +2257,16 @@ public class Workbook implements Model {
      * @return      The index of -1 if no match made.
      */
     public int findFirstRecordLocBySid(short sid) {
-        int index = 0;
-        for (Iterator iterator = records.iterator(); iterator.hasNext(); ) {
-            Record record = ( Record ) iterator.next();
-
-            if (record.getSid() == sid) {
-                return index;
-            }
-            index ++;
-        }
-        return -1;
+        return records.find(sid, 0);
     }
 
     /**
      * Returns the next occurance of a record matching a particular sid.
      */
     public Record findNextRecordBySid(short sid, int pos) {
-        int matches = 0;
-        for (Iterator iterator = records.iterator(); iterator.hasNext(); ) {
-            Record record = ( Record ) iterator.next();
+        int index = records.find(sid, pos);
 
-            if (record.getSid() == sid) {
-                if (matches++ == pos)
-                    return record;
-            }
-        }
-        return null;
+        return (index < 0) ? null : records.get(index);
     }
 
     public List getRecords()
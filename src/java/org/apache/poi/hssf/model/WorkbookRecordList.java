@@ -63,12 +63,13 @@ import org.apache.poi.hssf.record.Record;
 
 public class WorkbookRecordList
 {
-    private List records = new ArrayList();
+    private IndexedRecordList records = new IndexedRecordList();
 
     private int  protpos     = 0;   // holds the position of the protect record.
     private int  bspos       = 0;   // holds the position of the last bound sheet.
     private int  tabpos      = 0;   // holds the position of the tabid record
     private int  fontpos     = 0;   // hold the position of the last font record
+    private int  formatpos   = 0;   // hold the position of the last format record
     private int  xfpos       = 0;   // hold the position of the last extended font record
     private int  backuppos   = 0;   // holds the position of the backup record.
     private int  namepos     = 0;   // holds the position of last name record
@@ -79,7 +80,9 @@ public class WorkbookRecordList
 
     public void setRecords( List records )
     {
-        this.records = records;
+        this.records = ( records instanceof IndexedRecordList )
+                       ? ( IndexedRecordList ) records
+                       : new IndexedRecordList( records );
     }
 
     public int size()
@@ -99,6 +102,7 @@ public class WorkbookRecordList
         if (getBspos() >= pos) setBspos( bspos + 1 );
         if (getTabpos() >= pos) setTabpos( tabpos + 1 );
         if (getFontpos() >= pos) setFontpos( fontpos + 1 );
+        if (getFormatpos() >= pos) setFormatpos( formatpos + 1 );
         if (getXfpos() >= pos) setXfpos( xfpos + 1 );
         if (getBackuppos() >= pos) setBackuppos( backuppos + 1 );
         if (getNamepos() >= pos) setNamepos(namepos+1);
@@ -117,6 +121,18 @@ public class WorkbookRecordList
         return records.iterator();
     }
 
+    /**
+     * Finds a record by sid without walking the list.
+     *
+     * @param sid the sid to look for
+     * @param n which of the records with the sid to find, 0 for the first
+     * @return the position of the record or -1 if there are not that many
+     */
+    public int find( short sid, int n )
+    {
+        return records.find( sid, n );
+    }
+
     public void remove( int pos )
     {
         records.remove(pos);
@@ -124,6 +140,7 @@ public class WorkbookRecordList
         if (getBspos() >= pos) setBspos( bspos - 1 );
         if (getTabpos() >= pos) setTabpos( tabpos - 1 );
         if (getFontpos() >= pos) setFontpos( fontpos - 1 );
+        if (getFormatpos() >= pos) setFormatpos( formatpos - 1 );
         if (getXfpos() >= pos) setXfpos( xfpos - 1 );
         if (getBackuppos() >= pos) setBackuppos( backuppos - 1 );
         if (getNamepos() >= pos) setNamepos(getNamepos()-1);
@@ -172,6 +189,16 @@ public class WorkbookRecordList
         this.fontpos = fontpos;
     }
 
+    public int getFormatpos()
+    {
+        return formatpos;
+    }
+
+    public void setFormatpos( int formatpos )
+    {
+        this.formatpos = formatpos;
+    }
+
     public int getXfpos()
     {
         return xfpos;
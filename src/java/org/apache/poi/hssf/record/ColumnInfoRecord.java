@@ -113,7 +113,7 @@ public class ColumnInfoRecord
 
     public ColumnInfoRecord(short id, short size, byte [] data, int offset)
     {
-        super(id, size, data);
+        super(id, size, data, offset);
     }
 
     protected void fillFields(byte [] data, short size, int offset)
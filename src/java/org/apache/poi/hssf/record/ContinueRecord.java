@@ -257,14 +257,17 @@ public class ContinueRecord
     }
 
     /**
-     * Fill the fields. Only thing is, this record has no fields --
+     * Fill the fields. Only thing is, this record has no fields -- the data
+     * is copied out of the buffer since it may be shared with other records.
      *
-     * @param ignored_parm1 Ignored
-     * @param ignored_parm2 Ignored
-     * @param ignored_parm3 Ignored
+     * @param data raw data
+     * @param size size of the data
+     * @param offset of the record's data
      */
 
-    protected void fillFields(byte [] ignored_parm1, short ignored_parm2, int ignored_parm3)
+    protected void fillFields(byte [] data, short size, int offset)
     {
+        field_1_data = new byte[ size ];
+        System.arraycopy(data, offset, field_1_data, 0, size);
     }
 }
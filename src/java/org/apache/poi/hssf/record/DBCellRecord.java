@@ -117,7 +117,7 @@ public class DBCellRecord
         field_2_cell_offsets = new short[ (size - 4) / 2 ];
         int element = 0;
 
-        for (int k = 4; k < data.length; k += 2)
+        for (int k = 4; k < size; k += 2)
         {
             field_2_cell_offsets[ element++ ] = LittleEndian.getShort(data,
                     k + offset);
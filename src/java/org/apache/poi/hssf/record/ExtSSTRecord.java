@@ -119,18 +119,14 @@ public class ExtSSTRecord
         }
     }
 
-    // this probably doesn't work but we don't really care at this point
     protected void fillFields(byte [] data, short size, int offset)
     {
         field_2_sst_info           = new ArrayList();
         field_1_strings_per_bucket = LittleEndian.getShort(data, 0 + offset);
-        for (int k = 2; k < ((data.length - offset) - size); k += 8)
+        for (int k = 2; k + 8 <= size; k += 8)
         {
-            byte[] tempdata = new byte[ 8 + offset ];
-
-            System.arraycopy(data, k, tempdata, 0, 8);
             ExtSSTInfoSubRecord rec = new ExtSSTInfoSubRecord(( short ) 0,
-                                          ( short ) 8, tempdata);
+                                          ( short ) 8, data, k + offset);
 
             field_2_sst_info.add(rec);
         }
@@ -186,19 +182,18 @@ public class ExtSSTRecord
         return buffer.toString();
     }
 
+    /**
+     * The bucket offsets read from a file point into the SST as it was read,
+     * and HSSF rewrites the SST on write, so the info records are not written
+     * back out; the body is left zeroed as it always has been.
+     */
+
     public int serialize(int offset, byte [] data)
     {
         LittleEndian.putShort(data, 0 + offset, sid);
 
 //    LittleEndian.putShort(data,2,(short)(2 + (getNumInfoRecords() *8)));
         LittleEndian.putShort(data, 2 + offset, ( short ) (2 + (0x3fa - 2)));
-        int pos = 4;
-
-        for (int k = 0; k < getNumInfoRecords(); k++)
-        {
-            System.arraycopy(getInfoRecordAt(k).serialize(), 0, data,
-                             pos + offset, 8);
-        }
         return getRecordSize();
     }
 
@@ -1874,4 +1874,61 @@ public class ExtendedFormatRecord
     {
         return this.sid;
     }
+
+    /**
+     * @return whether the other record describes the same format: the same
+     *         font, number format, alignment, borders and fill
+     */
+
+    public boolean equals(Object obj)
+    {
+        if (!(obj instanceof ExtendedFormatRecord))
+        {
+            return false;
+        }
+        ExtendedFormatRecord xf = ( ExtendedFormatRecord ) obj;
+
+        return (field_1_font_index == xf.field_1_font_index)
+               && (field_2_format_index == xf.field_2_format_index)
+               && (field_3_cell_options == xf.field_3_cell_options)
+               && (field_4_alignment_options == xf.field_4_alignment_options)
+               && (field_5_indention_options == xf.field_5_indention_options)
+               && (field_6_border_options == xf.field_6_border_options)
+               && (field_7_palette_options == xf.field_7_palette_options)
+               && (field_8_adtl_palette_options
+                   == xf.field_8_adtl_palette_options)
+               && (field_9_fill_palette_options
+                   == xf.field_9_fill_palette_options);
+    }
+
+    public int hashCode()
+    {
+        int hash = field_1_font_index;
+
+        hash = 31 * hash + field_2_format_index;
+        hash = 31 * hash + field_3_cell_options;
+        hash = 31 * hash + field_4_alignment_options;
+        hash = 31 * hash + field_5_indention_options;
+        hash = 31 * hash + field_6_border_options;
+        hash = 31 * hash + field_7_palette_options;
+        hash = 31 * hash + field_8_adtl_palette_options;
+        hash = 31 * hash + field_9_fill_palette_options;
+        return hash;
+    }
+
+    public Object clone()
+    {
+        ExtendedFormatRecord rec = new ExtendedFormatRecord();
+
+        rec.field_1_font_index           = field_1_font_index;
+        rec.field_2_format_index         = field_2_format_index;
+        rec.field_3_cell_options         = field_3_cell_options;
+        rec.field_4_alignment_options    = field_4_alignment_options;
+        rec.field_5_indention_options    = field_5_indention_options;
+        rec.field_6_border_options       = field_6_border_options;
+        rec.field_7_palette_options      = field_7_palette_options;
+        rec.field_8_adtl_palette_options = field_8_adtl_palette_options;
+        rec.field_9_fill_palette_options = field_9_fill_palette_options;
+        return rec;
+    }
 }
@@ -162,14 +162,14 @@ public class FontRecord
         field_10_font_name_len      = data[ 14 + offset ];
         if (field_10_font_name_len > 0)
         {
-            if (data[ 15 ] == 0)
+            if (data[ 15 + offset ] == 0)
             {   // is compressed unicode
-                field_11_font_name = new String(data, 16,
+                field_11_font_name = new String(data, 16 + offset,
                                                 LittleEndian.ubyteToInt(field_10_font_name_len));
             }
             else
             {   // is not compressed unicode
-                field_11_font_name = StringUtil.getFromUnicodeHigh(data, 16,
+                field_11_font_name = StringUtil.getFromUnicodeHigh(data, 16 + offset,
                         field_10_font_name_len);
             }
         }
@@ -63,6 +63,7 @@ package org.apache.poi.hssf.record;
 import java.util.List;
 import java.util.Stack;
 
+import org.apache.poi.hssf.record.formula.ExpPtg;
 import org.apache.poi.hssf.record.formula.Ptg;
 import org.apache.poi.util.LittleEndian;
 
@@ -98,6 +99,12 @@ public class FormulaRecord
      * Since the NaN support seems sketchy (different constants) we'll store and spit it out directly
      */
     private byte[]			value_data;
+
+    /**
+     * option flag set when the formula is part of a shared formula
+     */
+    private static final short OPTION_SHARED = 0x0008;
+    private static final int   EXP_PTG_SIZE  = 5;
     private byte[]            all_data; //if formula support is not enabled then
                                         //we'll just store/reserialize
 
@@ -155,7 +162,7 @@ public class FormulaRecord
         field_6_zero           = LittleEndian.getInt(data, 16 + offset);
         field_7_expression_len = LittleEndian.getShort(data, 20 + offset);
         field_8_parsed_expr    = getParsedExpressionTokens(data, size,
-                                 22 + offset);
+                                 offset);
         
         } catch (java.lang.UnsupportedOperationException uoe)  {
             field_8_parsed_expr = null;
@@ -174,9 +181,9 @@ public class FormulaRecord
                                             int offset)
     {
         Stack stack = new Stack();
-        int   pos   = offset;
+        int   pos   = 22 + offset;
 
-        while (pos < size)
+        while (pos < size + offset)
         {
             Ptg ptg = Ptg.createPtg(data, pos);
             pos += ptg.getSize();
@@ -210,6 +217,57 @@ public class FormulaRecord
     public void setValue(double value)
     {
         field_4_value = value;
+        value_data    = null;
+    }
+
+    /**
+     * mark the calculated value of the formula as a string.  The string
+     * itself is written by the StringRecord that follows this record, an
+     * empty string has no StringRecord.
+     *
+     * @param empty  true if the calculated value is the empty string
+     */
+
+    public void setCachedStringResult(boolean empty)
+    {
+        setCachedSpecialResult(empty ? 3 : 0, 0);
+    }
+
+    /**
+     * set the calculated value of the formula to a boolean
+     *
+     * @param value  calculated value
+     */
+
+    public void setCachedBooleanResult(boolean value)
+    {
+        setCachedSpecialResult(1, value ? 1 : 0);
+    }
+
+    /**
+     * set the calculated value of the formula to an error code
+     *
+     * @param value  error code (see HSSFErrorConstants)
+     */
+
+    public void setCachedErrorResult(byte value)
+    {
+        setCachedSpecialResult(2, value);
+    }
+
+    /**
+     * Non-numeric results are stored as a NaN whose low bytes carry the
+     * result type and value, the high word is always 0xFFFF.
+     */
+
+    private void setCachedSpecialResult(int type, int value)
+    {
+        field_4_value = Double.NaN;
+        value_data    = new byte[ 8 ];
+        value_data[ 0 ] = ( byte ) type;
+        value_data[ 2 ] = ( byte ) value;
+        value_data[ 6 ] = ( byte ) 0xFF;
+        value_data[ 7 ] = ( byte ) 0xFF;
     }
 
     /**
@@ -342,6 +400,30 @@ public class FormulaRecord
         return field_8_parsed_expr;
     }
 
+    /**
+     * replace the expression, for instance with the tokens of the shared
+     * formula the record's tExp token points at
+     *
+     * @param ptgs the new tokens
+     */
+
+    public void setParsedExpression(List ptgs)
+    {
+        int size = 0;
+
+        field_8_parsed_expr = new Stack();
+        for (int k = 0; k < ptgs.size(); k++)
+        {
+            Ptg ptg = ( Ptg ) ptgs.get(k);
+
+            size += ptg.getSize();
+            field_8_parsed_expr.push(ptg);
+        }
+        field_7_expression_len = ( short ) size;
+        field_5_options        = ( short ) (field_5_options & ~OPTION_SHARED);
+        all_data               = null;
+    }
+
     /**
      * called by constructor, should throw runtime exception in the event of a
      * record passed with a differing ID.
@@ -373,8 +455,51 @@ public class FormulaRecord
     public int serialize(int offset, byte [] data)
     {
         if (this.field_8_parsed_expr != null) {
-        int ptgSize = getTotalPtgSize();
+        writeHeader(offset, data, getTotalPtgSize(), getExpressionLength(),
+                    getOptions());
+        serializePtgs(data, 26+offset);
+        } else {
+            System.arraycopy(all_data,0,data,offset,all_data.length);
+        }
+        return getRecordSize();
+    }
+
+    /**
+     * Writes this record as one of the cells of a shared formula: the
+     * expression is replaced by a tExp token pointing at the first cell of
+     * the block, which the SharedFormulaRecord following it describes.
+     *
+     * @param offset to begin writing at
+     * @param data byte array to write to
+     * @param row row of the shared formula's first cell
+     * @param column column of the shared formula's first cell
+     * @return number of bytes written
+     * @see SharedFormulaRecord
+     */
+
+    public int serializeShared(int offset, byte [] data, int row,
+                               short column)
+    {
+        ExpPtg exp = new ExpPtg(row, column);
+
+        writeHeader(offset, data, exp.getSize(), ( short ) exp.getSize(),
+                    ( short ) (getOptions() | OPTION_SHARED));
+        exp.writeBytes(data, 26 + offset);
+        return getSharedRecordSize();
+    }
 
+    /**
+     * @return the size of the record written by serializeShared
+     */
+
+    public int getSharedRecordSize()
+    {
+        return 26 + EXP_PTG_SIZE;
+    }
+
+    private void writeHeader(int offset, byte [] data, int ptgSize,
+                             short expressionLength, short options)
+    {
         LittleEndian.putShort(data, 0 + offset, sid);
         LittleEndian.putShort(data, 2 + offset, ( short ) (22 + ptgSize));
         //LittleEndian.putShort(data, 4 + offset, getRow());
@@ -389,17 +514,12 @@ public class FormulaRecord
 			LittleEndian.putDouble(data, 10 + offset, field_4_value);
         }
         	
-        LittleEndian.putShort(data, 18 + offset, getOptions());
+        LittleEndian.putShort(data, 18 + offset, options);
         
         //when writing the chn field (offset 20), it's supposed to be 0 but ignored on read
         //Microsoft Excel Developer's Kit Page 318
         LittleEndian.putInt(data, 20 + offset, 0);
-        LittleEndian.putShort(data, 24 + offset, getExpressionLength());
-        serializePtgs(data, 26+offset);
-        } else {
-            System.arraycopy(all_data,0,data,offset,all_data.length);
-        }
-        return getRecordSize();
+        LittleEndian.putShort(data, 24 + offset, expressionLength);
     }
     
     
@@ -598,6 +718,7 @@ public class FormulaRecord
       rec.field_2_column = field_2_column;
       rec.field_3_xf = field_3_xf;
       rec.field_4_value = field_4_value;
+      rec.value_data = value_data;
       rec.field_5_options = field_5_options;
       rec.field_6_zero = field_6_zero;
       rec.field_7_expression_len = field_7_expression_len;
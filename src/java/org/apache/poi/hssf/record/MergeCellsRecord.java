@@ -56,6 +56,7 @@
 package org.apache.poi.hssf.record;
 
 import java.util.ArrayList;
+import java.util.Set;
 
 import org.apache.poi.util.LittleEndian;
 
@@ -189,6 +190,36 @@ public class MergeCellsRecord
         field_1_num_areas--;
     }
 
+    /**
+     * unmerge all of the given areas in one pass
+     * @param areas the MergedRegions to remove (as returned by getAreaAt)
+     * @return the number of areas removed
+     */
+
+    public int removeAreas(Set areas)
+    {
+        if (field_2_regions == null)
+        {
+            return 0;
+        }
+        ArrayList kept = new ArrayList(field_2_regions.size());
+
+        for (int k = 0; k < field_2_regions.size(); k++)
+        {
+            Object region = field_2_regions.get(k);
+
+            if (!areas.contains(region))
+            {
+                kept.add(region);
+            }
+        }
+        int removed = field_2_regions.size() - kept.size();
+
+        field_2_regions   = kept;
+        field_1_num_areas = ( short ) kept.size();
+        return removed;
+    }
+
     /**
      * return the MergedRegion at the given index.
      *
@@ -326,7 +357,10 @@ public class MergeCellsRecord
     public Object clone() {
         MergeCellsRecord rec = new MergeCellsRecord();
         rec.field_1_num_areas = field_1_num_areas;
-        rec.field_2_regions = field_2_regions;
+        if (field_2_regions != null)
+        {
+            rec.field_2_regions = new ArrayList(field_2_regions);
+        }
         return rec;
     }
 }
@@ -78,7 +78,6 @@ public abstract class Record
     public short   sid  = 0;
     private short  id   = 0;
     private short  size = 0;
-    private byte[] data = null;
 
     /**
      * instantiates a blank record strictly for ID matching
@@ -100,7 +99,6 @@ public abstract class Record
     {
         this.id   = id;
         this.size = size;
-        this.data = data;
         validateSid(id);
         fillFields(data, size);
     }
@@ -117,7 +115,6 @@ public abstract class Record
     {
         this.id   = id;
         this.size = size;
-        this.data = data;
         validateSid(id);
         fillFields(data, size, offset);
     }
@@ -0,0 +1,809 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record;
+
+/**
+ * Table of the record types known to HSSF, indexed directly by sid.  The
+ * record factories (RecordFactory, EventRecordFactory and HSSFEventFactory)
+ * use it to turn a sid and its data into a Record with a single array lookup
+ * and a plain constructor call.  Record types that are not in the table are
+ * read as UnknownRecord.
+ * <P>
+ * When adding a new record type, register a creator for it here.
+ *
+ * @see org.apache.poi.hssf.record.RecordFactory
+ * @see org.apache.poi.hssf.eventmodel.EventRecordFactory
+ */
+
+public class RecordCreators
+{
+    private static RecordCreator[] creators = new RecordCreator[ 0x100 ];
+    private static int             count    = 0;
+
+    static {
+        register(BOFRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new BOFRecord(sid, size, data, offset);
+            }
+        });
+
+        register(InterfaceHdrRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new InterfaceHdrRecord(sid, size, data, offset);
+            }
+        });
+
+        register(MMSRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new MMSRecord(sid, size, data, offset);
+            }
+        });
+
+        register(InterfaceEndRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new InterfaceEndRecord(sid, size, data, offset);
+            }
+        });
+
+        register(WriteAccessRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new WriteAccessRecord(sid, size, data, offset);
+            }
+        });
+
+        register(CodepageRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new CodepageRecord(sid, size, data, offset);
+            }
+        });
+
+        register(DSFRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new DSFRecord(sid, size, data, offset);
+            }
+        });
+
+        register(TabIdRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new TabIdRecord(sid, size, data, offset);
+            }
+        });
+
+        register(FnGroupCountRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new FnGroupCountRecord(sid, size, data, offset);
+            }
+        });
+
+        register(WindowProtectRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new WindowProtectRecord(sid, size, data, offset);
+            }
+        });
+
+        register(ProtectRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new ProtectRecord(sid, size, data, offset);
+            }
+        });
+
+        register(PasswordRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new PasswordRecord(sid, size, data, offset);
+            }
+        });
+
+        register(ProtectionRev4Record.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new ProtectionRev4Record(sid, size, data, offset);
+            }
+        });
+
+        register(PasswordRev4Record.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new PasswordRev4Record(sid, size, data, offset);
+            }
+        });
+
+        register(WindowOneRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new WindowOneRecord(sid, size, data, offset);
+            }
+        });
+
+        register(BackupRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new BackupRecord(sid, size, data, offset);
+            }
+        });
+
+        register(HideObjRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new HideObjRecord(sid, size, data, offset);
+            }
+        });
+
+        register(DateWindow1904Record.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new DateWindow1904Record(sid, size, data, offset);
+            }
+        });
+
+        register(PrecisionRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new PrecisionRecord(sid, size, data, offset);
+            }
+        });
+
+        register(RefreshAllRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new RefreshAllRecord(sid, size, data, offset);
+            }
+        });
+
+        register(BookBoolRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new BookBoolRecord(sid, size, data, offset);
+            }
+        });
+
+        register(FontRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new FontRecord(sid, size, data, offset);
+            }
+        });
+
+        register(FormatRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new FormatRecord(sid, size, data, offset);
+            }
+        });
+
+        register(ExtendedFormatRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new ExtendedFormatRecord(sid, size, data, offset);
+            }
+        });
+
+        register(StyleRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new StyleRecord(sid, size, data, offset);
+            }
+        });
+
+        register(UseSelFSRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new UseSelFSRecord(sid, size, data, offset);
+            }
+        });
+
+        register(BoundSheetRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new BoundSheetRecord(sid, size, data, offset);
+            }
+        });
+
+        register(CountryRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new CountryRecord(sid, size, data, offset);
+            }
+        });
+
+        register(SSTRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new SSTRecord(sid, size, data, offset);
+            }
+        });
+
+        register(ExtSSTRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new ExtSSTRecord(sid, size, data, offset);
+            }
+        });
+
+        register(EOFRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new EOFRecord(sid, size, data, offset);
+            }
+        });
+
+        register(IndexRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new IndexRecord(sid, size, data, offset);
+            }
+        });
+
+        register(CalcModeRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new CalcModeRecord(sid, size, data, offset);
+            }
+        });
+
+        register(CalcCountRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new CalcCountRecord(sid, size, data, offset);
+            }
+        });
+
+        register(RefModeRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new RefModeRecord(sid, size, data, offset);
+            }
+        });
+
+        register(IterationRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new IterationRecord(sid, size, data, offset);
+            }
+        });
+
+        register(DeltaRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new DeltaRecord(sid, size, data, offset);
+            }
+        });
+
+        register(SaveRecalcRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new SaveRecalcRecord(sid, size, data, offset);
+            }
+        });
+
+        register(PrintHeadersRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new PrintHeadersRecord(sid, size, data, offset);
+            }
+        });
+
+        register(PrintGridlinesRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new PrintGridlinesRecord(sid, size, data, offset);
+            }
+        });
+
+        register(GridsetRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new GridsetRecord(sid, size, data, offset);
+            }
+        });
+
+        register(GutsRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new GutsRecord(sid, size, data, offset);
+            }
+        });
+
+        register(DefaultRowHeightRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new DefaultRowHeightRecord(sid, size, data, offset);
+            }
+        });
+
+        register(WSBoolRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new WSBoolRecord(sid, size, data, offset);
+            }
+        });
+
+        register(HeaderRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new HeaderRecord(sid, size, data, offset);
+            }
+        });
+
+        register(FooterRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new FooterRecord(sid, size, data, offset);
+            }
+        });
+
+        register(HCenterRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new HCenterRecord(sid, size, data, offset);
+            }
+        });
+
+        register(VCenterRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new VCenterRecord(sid, size, data, offset);
+            }
+        });
+
+        register(PrintSetupRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new PrintSetupRecord(sid, size, data, offset);
+            }
+        });
+
+        register(DefaultColWidthRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new DefaultColWidthRecord(sid, size, data, offset);
+            }
+        });
+
+        register(DimensionsRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new DimensionsRecord(sid, size, data, offset);
+            }
+        });
+
+        register(RowRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new RowRecord(sid, size, data, offset);
+            }
+        });
+
+        register(LabelSSTRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new LabelSSTRecord(sid, size, data, offset);
+            }
+        });
+
+        register(RKRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new RKRecord(sid, size, data, offset);
+            }
+        });
+
+        register(NumberRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new NumberRecord(sid, size, data, offset);
+            }
+        });
+
+        register(DBCellRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new DBCellRecord(sid, size, data, offset);
+            }
+        });
+
+        register(WindowTwoRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new WindowTwoRecord(sid, size, data, offset);
+            }
+        });
+
+        register(SelectionRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new SelectionRecord(sid, size, data, offset);
+            }
+        });
+
+        register(ContinueRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new ContinueRecord(sid, size, data, offset);
+            }
+        });
+
+        register(LabelRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new LabelRecord(sid, size, data, offset);
+            }
+        });
+
+        register(BlankRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new BlankRecord(sid, size, data, offset);
+            }
+        });
+
+        register(ColumnInfoRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new ColumnInfoRecord(sid, size, data, offset);
+            }
+        });
+
+        register(MulRKRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new MulRKRecord(sid, size, data, offset);
+            }
+        });
+
+        register(MulBlankRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new MulBlankRecord(sid, size, data, offset);
+            }
+        });
+
+        register(MergeCellsRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new MergeCellsRecord(sid, size, data, offset);
+            }
+        });
+
+        if (FormulaRecord.EXPERIMENTAL_FORMULA_SUPPORT_ENABLED)
+        {
+            register(FormulaRecord.sid, new RecordCreator() {
+                public Record createRecord(short sid, short size,
+                                           byte [] data, int offset)
+                {
+                    return new FormulaRecord(sid, size, data, offset);
+                }
+            });
+        }
+
+        register(BoolErrRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new BoolErrRecord(sid, size, data, offset);
+            }
+        });
+
+        register(ExternSheetRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new ExternSheetRecord(sid, size, data, offset);
+            }
+        });
+
+        register(NameRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new NameRecord(sid, size, data, offset);
+            }
+        });
+
+        register(LeftMarginRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new LeftMarginRecord(sid, size, data, offset);
+            }
+        });
+
+        register(RightMarginRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new RightMarginRecord(sid, size, data, offset);
+            }
+        });
+
+        register(TopMarginRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new TopMarginRecord(sid, size, data, offset);
+            }
+        });
+
+        register(BottomMarginRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new BottomMarginRecord(sid, size, data, offset);
+            }
+        });
+
+        register(PaletteRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new PaletteRecord(sid, size, data, offset);
+            }
+        });
+
+        register(StringRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new StringRecord(sid, size, data, offset);
+            }
+        });
+
+        register(SharedFormulaRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new SharedFormulaRecord(sid, size, data, offset);
+            }
+        });
+
+        register(RecalcIdRecord.sid, new RecordCreator() {
+            public Record createRecord(short sid, short size, byte [] data,
+                                       int offset)
+            {
+                return new RecalcIdRecord(sid, size, data, offset);
+            }
+        });
+    }
+
+    private RecordCreators()
+    {
+    }
+
+    private static void register(short sid, RecordCreator creator)
+    {
+        int index = sid & 0xFFFF;
+
+        if (index >= creators.length)
+        {
+            int length = creators.length;
+
+            while (index >= length)
+            {
+                length *= 2;
+            }
+            RecordCreator[] grown = new RecordCreator[ length ];
+
+            System.arraycopy(creators, 0, grown, 0, creators.length);
+            creators = grown;
+        }
+        if (creators[ index ] == null)
+        {
+            count++;
+        }
+        creators[ index ] = creator;
+    }
+
+    /**
+     * Get the creator for a record type.
+     *
+     * @param sid the record's id
+     * @return the creator, or null if the record type is not known
+     */
+
+    public static RecordCreator getCreator(short sid)
+    {
+        int index = sid & 0xFFFF;
+
+        if (index >= creators.length)
+        {
+            return null;
+        }
+        return creators[ index ];
+    }
+
+    /**
+     * Create a record from its sid and data.  Unknown record types are
+     * returned as an UnknownRecord.
+     *
+     * @param sid the record's id
+     * @param size the size of the record's data
+     * @param data the record's data (not including the sid and size)
+     * @return the new record
+     */
+
+    public static Record createRecord(short sid, short size, byte [] data)
+    {
+        return createRecord(sid, size, data, 0);
+    }
+
+    /**
+     * Create a record from data that starts part way into a larger buffer
+     * (typically the whole stream the record was read from).  The record
+     * parses its fields straight out of the buffer; only the records that
+     * keep their raw data (unknown and continue records) take a copy of
+     * their part of it.
+     *
+     * @param sid the record's id
+     * @param size the size of the record's data
+     * @param data the buffer holding the record's data
+     * @param offset the offset of the record's data (not including the sid
+     *               and size) within the buffer
+     * @return the new record
+     */
+
+    public static Record createRecord(short sid, short size, byte [] data,
+                                      int offset)
+    {
+        RecordCreator creator = getCreator(sid);
+
+        if (creator == null)
+        {
+            if ((offset != 0) || (data.length != size))
+            {
+                byte[] copy = new byte[ size ];
+
+                System.arraycopy(data, offset, copy, 0, size);
+                data = copy;
+            }
+            return new UnknownRecord(sid, size, data);
+        }
+        return creator.createRecord(sid, size, data, offset);
+    }
+
+    /**
+     * @return the sids of all known record types, in ascending order
+     */
+
+    public static short [] getAllKnownRecordSIDs()
+    {
+        short[] results = new short[ count ];
+        int     i       = 0;
+
+        for (int k = 0; k < creators.length; k++)
+        {
+            if (creators[ k ] != null)
+            {
+                results[ i++ ] = ( short ) k;
+            }
+        }
+        return results;
+    }
+}
@@ -60,8 +60,6 @@ import java.io.IOException;
 
 import java.util.*;
 
-import java.lang.reflect.Constructor;
-
 import org.apache.poi.util.LittleEndian;
 
 /**
@@ -80,75 +78,6 @@ import org.apache.poi.util.LittleEndian;
 public class RecordFactory
 {
     private static int           NUM_RECORDS = 10000;
-    private static final Class[] records;
-
-    static {
-        if (FormulaRecord.EXPERIMENTAL_FORMULA_SUPPORT_ENABLED) {
-            records = new Class[]
-            {
-                BOFRecord.class, InterfaceHdrRecord.class, MMSRecord.class,
-                InterfaceEndRecord.class, WriteAccessRecord.class,
-                CodepageRecord.class, DSFRecord.class, TabIdRecord.class,
-                FnGroupCountRecord.class, WindowProtectRecord.class,
-                ProtectRecord.class, PasswordRecord.class, ProtectionRev4Record.class,
-                PasswordRev4Record.class, WindowOneRecord.class, BackupRecord.class,
-                HideObjRecord.class, DateWindow1904Record.class,
-                PrecisionRecord.class, RefreshAllRecord.class, BookBoolRecord.class,
-                FontRecord.class, FormatRecord.class, ExtendedFormatRecord.class,
-                StyleRecord.class, UseSelFSRecord.class, BoundSheetRecord.class,
-                CountryRecord.class, SSTRecord.class, ExtSSTRecord.class,
-                EOFRecord.class, IndexRecord.class, CalcModeRecord.class,
-                CalcCountRecord.class, RefModeRecord.class, IterationRecord.class,
-                DeltaRecord.class, SaveRecalcRecord.class, PrintHeadersRecord.class,
-                PrintGridlinesRecord.class, GridsetRecord.class, GutsRecord.class,
-                DefaultRowHeightRecord.class, WSBoolRecord.class, HeaderRecord.class,
-                FooterRecord.class, HCenterRecord.class, VCenterRecord.class,
-                PrintSetupRecord.class, DefaultColWidthRecord.class,
-                DimensionsRecord.class, RowRecord.class, LabelSSTRecord.class,
-                RKRecord.class, NumberRecord.class, DBCellRecord.class,
-                WindowTwoRecord.class, SelectionRecord.class, ContinueRecord.class,
-                LabelRecord.class, BlankRecord.class, ColumnInfoRecord.class,
-                MulRKRecord.class, MulBlankRecord.class, MergeCellsRecord.class,
-                FormulaRecord.class, BoolErrRecord.class, ExternSheetRecord.class,
-                NameRecord.class, LeftMarginRecord.class, RightMarginRecord.class,
-                TopMarginRecord.class, BottomMarginRecord.class,
-                PaletteRecord.class, StringRecord.class, RecalcIdRecord.class
-            };
-        } else {
-            records = new Class[]
-            {
-                BOFRecord.class, InterfaceHdrRecord.class, MMSRecord.class,
-                InterfaceEndRecord.class, WriteAccessRecord.class,
-                CodepageRecord.class, DSFRecord.class, TabIdRecord.class,
-                FnGroupCountRecord.class, WindowProtectRecord.class,
-                ProtectRecord.class, PasswordRecord.class, ProtectionRev4Record.class,
-                PasswordRev4Record.class, WindowOneRecord.class, BackupRecord.class,
-                HideObjRecord.class, DateWindow1904Record.class,
-                PrecisionRecord.class, RefreshAllRecord.class, BookBoolRecord.class,
-                FontRecord.class, FormatRecord.class, ExtendedFormatRecord.class,
-                StyleRecord.class, UseSelFSRecord.class, BoundSheetRecord.class,
-                CountryRecord.class, SSTRecord.class, ExtSSTRecord.class,
-                EOFRecord.class, IndexRecord.class, CalcModeRecord.class,
-                CalcCountRecord.class, RefModeRecord.class, IterationRecord.class,
-                DeltaRecord.class, SaveRecalcRecord.class, PrintHeadersRecord.class,
-                PrintGridlinesRecord.class, GridsetRecord.class, GutsRecord.class,
-                DefaultRowHeightRecord.class, WSBoolRecord.class, HeaderRecord.class,
-                FooterRecord.class, HCenterRecord.class, VCenterRecord.class,
-                PrintSetupRecord.class, DefaultColWidthRecord.class,
-                DimensionsRecord.class, RowRecord.class, LabelSSTRecord.class,
-                RKRecord.class, NumberRecord.class, DBCellRecord.class,
-                WindowTwoRecord.class, SelectionRecord.class, ContinueRecord.class,
-                LabelRecord.class, BlankRecord.class, ColumnInfoRecord.class,
-                MulRKRecord.class, MulBlankRecord.class, MergeCellsRecord.class,
-                BoolErrRecord.class, ExternSheetRecord.class, NameRecord.class,
-                LeftMarginRecord.class, RightMarginRecord.class,
-                TopMarginRecord.class, BottomMarginRecord.class,
-                PaletteRecord.class, StringRecord.class, RecalcIdRecord.class
-            };
-
-        }
-    }
-    private static Map           recordsMap  = recordsToMap(records);
 
     /**
      * changes the default capacity (10000) to handle larger files
@@ -241,34 +170,124 @@ public class RecordFactory
         return records;
     }
 
-    public static Record [] createRecord(short rectype, short size,
-                                         byte [] data)
+    /**
+     * Create an array of records from a buffer holding a whole stream of
+     * records (for instance the entire Workbook document).  Unlike
+     * createRecords(InputStream) no byte array is allocated per record;
+     * each record reads its fields directly out of the buffer.
+     *
+     * @param data the buffer holding the records
+     * @param offset the offset of the first record in the buffer
+     * @param length the number of bytes of records in the buffer
+     *
+     * @return a list of Records created from the buffer
+     *
+     * @exception RecordFormatException on error processing the buffer
+     */
+
+    public static List createRecords(byte [] data, int offset, int length)
+        throws RecordFormatException
     {
-        Record   retval     = null;
-        Record[] realretval = null;
+        ArrayList records     = new ArrayList(NUM_RECORDS);
+        Record    last_record = null;
+        int       pos         = offset;
+        int       end         = offset + length;
 
-        try
+        while (pos + 4 <= end)
         {
-            Constructor constructor =
-                ( Constructor ) recordsMap.get(new Short(rectype));
+            short rectype = LittleEndian.getShort(data, pos);
+
+            if (rectype == 0)
+            {
+                break;
+            }
+            short recsize = LittleEndian.getShort(data, pos + 2);
+
+            pos += 4;
+            if (pos + recsize > end)
+            {
+                throw new RecordFormatException("Record 0x"
+                                                + Integer.toHexString(rectype)
+                                                + " runs past the end of the data");
+            }
+            Record[] recs = createRecord(rectype, recsize, data, pos);
 
-            if (constructor != null)
+            if (recs.length > 1)
             {
-                retval = ( Record ) constructor.newInstance(new Object[]
+                for (int k = 0; k < recs.length; k++)
                 {
-                    new Short(rectype), new Short(size), data
-                });
+                    records.add(recs[ k ]);
+                    last_record = recs[ k ];
+                }
             }
             else
             {
-                retval = new UnknownRecord(rectype, size, data);
+                Record record = recs[ 0 ];
+
+                if (record != null)
+                {
+                    if (rectype == ContinueRecord.sid &&
+                        ! (last_record instanceof ContinueRecord) &&
+                        ! (last_record instanceof UnknownRecord) )
+                    {
+                        if (last_record == null)
+                        {
+                            throw new RecordFormatException(
+                                "First record is a ContinueRecord??");
+                        }
+                        last_record.processContinueRecord(
+                            (( ContinueRecord ) record).getData());
+                    }
+                    else
+                    {
+                        last_record = record;
+                        records.add(record);
+                    }
+                }
             }
+            pos += recsize;
+        }
+        return records;
+    }
+
+    public static Record [] createRecord(short rectype, short size,
+                                         byte [] data)
+    {
+        return createRecord(rectype, size, data, 0);
+    }
+
+    /**
+     * Create the record(s) for the data at an offset into a larger buffer.
+     * RK, MulRK and MulBlank records are expanded as they are by
+     * createRecord(short, short, byte[]).
+     *
+     * @param rectype the record's id
+     * @param size the size of the record's data
+     * @param data the buffer holding the record's data
+     * @param offset the offset of the record's data within the buffer
+     *
+     * @return the records (the single element may be null for records
+     *         which are dropped, such as DBCellRecord)
+     */
+
+    public static Record [] createRecord(short rectype, short size,
+                                         byte [] data, int offset)
+    {
+        Record   retval     = null;
+        Record[] realretval = null;
+
+        try
+        {
+            retval = RecordCreators.createRecord(rectype, size, data, offset);
         }
-        catch (Exception introspectionException)
+        catch (RecordFormatException e)
+        {
+            throw e;
+        }
+        catch (RuntimeException e)
         {
-            introspectionException.printStackTrace();
             throw new RecordFormatException(
-                "Unable to construct record instance, the following exception occured: " + introspectionException.getMessage());
+                "Unable to construct record instance, the following exception occured: " + e.getMessage());
         }
         if (retval instanceof RKRecord)
         {
@@ -324,47 +343,33 @@ public class RecordFactory
         return realretval;
     }
 
-    public static short [] getAllKnownRecordSIDs()
-    {
-        short[] results = new short[ recordsMap.size() ];
-        int     i       = 0;
+    /**
+     * Gives the type of the records createRecord builds for a record type.
+     * This is the type itself except for the records that are expanded:
+     * RK and MulRK records come out as NumberRecords and MulBlank records
+     * as BlankRecords.
+     *
+     * @param rectype the record's id
+     * @return the sid of the created records
+     */
 
-        for (Iterator iterator = recordsMap.keySet().iterator();
-                iterator.hasNext(); )
+    public static short getCreatedRecordSID(short rectype)
+    {
+        switch (rectype)
         {
-            Short sid = ( Short ) iterator.next();
 
-            results[ i++ ] = sid.shortValue();
+            case RKRecord.sid :
+            case MulRKRecord.sid :
+                return NumberRecord.sid;
+
+            case MulBlankRecord.sid :
+                return BlankRecord.sid;
         }
-        return results;
+        return rectype;
     }
 
-    private static Map recordsToMap(Class [] records)
+    public static short [] getAllKnownRecordSIDs()
     {
-        Map         result = new HashMap();
-        Constructor constructor;
-
-        for (int i = 0; i < records.length; i++)
-        {
-            Class record = null;
-            short sid    = 0;
-
-            record = records[ i ];
-            try
-            {
-                sid         = record.getField("sid").getShort(null);
-                constructor = record.getConstructor(new Class[]
-                {
-                    short.class, short.class, byte [].class
-                });
-            }
-            catch (Exception illegalArgumentException)
-            {
-                throw new RecordFormatException(
-                    "Unable to determine record types");
-            }
-            result.put(new Short(sid), constructor);
-        }
-        return result;
+        return RecordCreators.getAllKnownRecordSIDs();
     }
 }
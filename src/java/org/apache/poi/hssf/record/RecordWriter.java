@@ -0,0 +1,159 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes records one at a time to an OutputStream.  Each record is
+ * serialized into a single scratch buffer which is reused (and grown
+ * when a larger record comes along), so the memory needed to write a
+ * stream of records is bounded by the largest single record rather than
+ * by the size of the whole stream.
+ */
+
+public class RecordWriter
+{
+    private OutputStream stream;
+    private byte[]       buffer;
+    private int          written;
+
+    /**
+     * Constructs a record writer that writes to the given stream.
+     *
+     * @param stream the stream the serialized records are written to
+     */
+
+    public RecordWriter(OutputStream stream)
+    {
+        this.stream  = stream;
+        this.buffer  = new byte[ 1024 ];
+        this.written = 0;
+    }
+
+    /**
+     * Serialize a single record and write it to the underlying stream.
+     *
+     * @param record the record to write
+     * @return the number of bytes written
+     * @exception IOException if the underlying stream cannot be written to
+     */
+
+    public int write(Record record)
+        throws IOException
+    {
+        int size = record.getRecordSize();
+
+        if (size > buffer.length)
+        {
+            buffer = new byte[ Math.max(size, buffer.length * 2) ];
+        }
+        else
+        {
+
+            // some records leave reserved bytes untouched and rely on
+            // being serialized into a zeroed array
+            Arrays.fill(buffer, 0, size, ( byte ) 0);
+        }
+        int len = record.serialize(0, buffer);
+
+        stream.write(buffer, 0, len);
+        written += len;
+        return len;
+    }
+
+    /**
+     * Copy already serialized records from an InputStream to the underlying
+     * stream, using the scratch buffer for the transfer.
+     *
+     * @param in the stream holding the serialized records
+     * @param length the number of bytes to copy
+     * @return the number of bytes written
+     * @exception IOException if the data cannot be read or written
+     */
+
+    public int write(InputStream in, int length)
+        throws IOException
+    {
+        int remaining = length;
+
+        while (remaining > 0)
+        {
+            int count = in.read(buffer, 0, Math.min(remaining, buffer.length));
+
+            if (count < 0)
+            {
+                throw new IOException("Unexpected end of record data, "
+                                      + remaining + " bytes missing");
+            }
+            stream.write(buffer, 0, count);
+            remaining -= count;
+        }
+        written += length;
+        return length;
+    }
+
+    /**
+     * @return the total number of bytes written by this writer so far
+     */
+
+    public int getBytesWritten()
+    {
+        return written;
+    }
+}
@@ -54,7 +54,6 @@
 
 package org.apache.poi.hssf.record;
 
-import org.apache.poi.util.BinaryTree;
 import org.apache.poi.util.LittleEndian;
 import org.apache.poi.util.LittleEndianConsts;
 
@@ -66,7 +65,7 @@ import org.apache.poi.util.LittleEndianConsts;
 class SSTDeserializer
 {
 
-    private BinaryTree strings;
+    private SSTStringTable strings;
     /** this is the number of characters we expect in the first sub-record in a subsequent continuation record */
     private int continuationExpectedChars;
     /** this is the string we were working on before hitting the end of the current record. This string is NOT finished. */
@@ -84,7 +83,7 @@ class SSTDeserializer
     private int extensionLength;
 
 
-    public SSTDeserializer( BinaryTree strings )
+    public SSTDeserializer( SSTStringTable strings )
     {
         this.strings = strings;
         initVars();
@@ -225,8 +224,7 @@ class SSTDeserializer
 
         if ( isStringFinished() )
         {
-            Integer integer = new Integer( strings.size() );
-            addToStringTable( strings, integer, string );
+            addToStringTable( strings, string );
         }
         else
         {
@@ -247,7 +245,7 @@ class SSTDeserializer
      * text to normal text and 2. If there's a duplicate I'm adding a space onto the end.  Sneaky perhaps
      * but it gets the job done until we can handle this a little better.
      */
-    static public void addToStringTable( BinaryTree strings, Integer integer, UnicodeString string )
+    static public void addToStringTable( SSTStringTable strings, UnicodeString string )
     {
 
         if ( string.isRichText() )
@@ -255,20 +253,11 @@ class SSTDeserializer
         if ( string.isExtendedText() )
             string.setOptionFlags( (byte) ( string.getOptionFlags() & ( ~4 ) ) );
 
-        boolean added = false;
-        while ( added == false )
+        while ( strings.indexOf( string.getString() ) != -1 )
         {
-            try
-            {
-                strings.put( integer, string );
-                added = true;
-            }
-            catch ( Exception ignore )
-            {
-                string.setString( string.getString() + " " );
-            }
+            string.setString( string.getString() + " " );
         }
-
+        strings.add( string );
     }
 
 
@@ -351,9 +340,7 @@ class SSTDeserializer
         UnicodeString string = new UnicodeString( UnicodeString.sid,
                 (short) unicodeStringData.length, unicodeStringData,
                 unfinishedString );
-        Integer integer = new Integer( strings.size() );
-
-        addToStringTable( strings, integer, string );
+        addToStringTable( strings, string );
 
         int newOffset = offsetForContinuedRecord( stringRemainderSizeInBytes );
         manufactureStrings( record, newOffset, (short) ( record.length - newOffset ) );
@@ -54,7 +54,6 @@
 
 package org.apache.poi.hssf.record;
 
-import org.apache.poi.util.BinaryTree;
 import org.apache.poi.util.LittleEndian;
 import org.apache.poi.util.LittleEndianConsts;
 
@@ -106,12 +105,18 @@ public class SSTRecord
 
     /** according to docs ONLY SST */
     private int field_2_num_unique_strings;
-    private BinaryTree field_3_strings;
+    private SSTStringTable field_3_strings;
 
     /** Record lengths for initial SST record and all continue records */
     private List _record_lengths = null;
     private SSTDeserializer deserializer;
 
+    /** the undecoded strings of a record that was read; null once they have been loaded into field_3_strings */
+    private SSTStringReader reader;
+
+    /** if true, getString decodes just the string asked for */
+    private boolean decodeOnDemand = false;
+
     /**
      * default constructor
      */
@@ -120,7 +125,7 @@ public class SSTRecord
     {
         field_1_num_strings = 0;
         field_2_num_unique_strings = 0;
-        field_3_strings = new BinaryTree();
+        field_3_strings = new SSTStringTable();
         deserializer = new SSTDeserializer(field_3_strings);
     }
 
@@ -217,6 +222,7 @@ public class SSTRecord
 
     public int addString( final String string, final boolean useUTF16 )
     {
+        loadStrings();
         field_1_num_strings++;
         String str = ( string == null ) ? ""
                 : string;
@@ -227,22 +233,15 @@ public class SSTRecord
         ucs.setCharCount( (short) str.length() );
         ucs.setOptionFlags( (byte) ( useUTF16 ? 1
                 : 0 ) );
-        Integer integer = (Integer) field_3_strings.getKeyForValue( ucs );
-
-        if ( integer != null )
-        {
-            rval = integer.intValue();
-        }
-        else
+        rval = field_3_strings.indexOf( str );
+        if ( rval == -1 )
         {
 
             // This is a new string -- we didn't see it among the
             // strings we've already collected
             rval = field_3_strings.size();
             field_2_num_unique_strings++;
-            integer = new Integer( rval );
-            SSTDeserializer.addToStringTable( field_3_strings, integer, ucs );
-//            field_3_strings.put( integer, ucs );
+            SSTDeserializer.addToStringTable( field_3_strings, ucs );
         }
         return rval;
     }
@@ -307,13 +306,119 @@ public class SSTRecord
 
     public String getString( final int id )
     {
-        return ( (UnicodeString) field_3_strings.get( new Integer( id ) ) ).getString();
+        SSTStringReader onDemand = getOnDemandReader();
+
+        if ( onDemand != null )
+        {
+            return onDemand.getString( id );
+        }
+        return loadStrings().getString( id );
     }
 
     public boolean isString16bit( final int id )
     {
-        UnicodeString unicodeString = ( (UnicodeString) field_3_strings.get( new Integer( id ) ) );
-        return ( ( unicodeString.getOptionFlags() & 0x01 ) == 1 );
+        SSTStringReader onDemand = getOnDemandReader();
+        byte flags;
+
+        if ( onDemand != null )
+        {
+            flags = onDemand.getOptionFlags( id );
+        }
+        else
+        {
+            flags = loadStrings().getOptionFlags( id );
+        }
+        return ( ( flags & 0x01 ) == 1 );
+    }
+
+    /**
+     * @return the reader to decode single strings with, or null if the
+     *         strings are not decoded on demand or have all been decoded.
+     *         Once taken the reader stays usable even if another thread
+     *         then decodes the whole table.
+     */
+
+    private synchronized SSTStringReader getOnDemandReader()
+    {
+        return decodeOnDemand ? reader : null;
+    }
+
+    /**
+     * A record that was read keeps its strings undecoded until they are
+     * first needed, and then normally decodes all of them.  With on demand
+     * decoding switched on, getString and isString16bit instead decode just
+     * the string asked for (and cache it), which is much cheaper when only
+     * a few strings of a large table are read.  Anything else that needs the
+     * whole table still decodes the lot.
+     * <p>
+     * The rich text and duplicate string handling in SSTDeserializer only
+     * happens when the whole table is decoded, so with on demand decoding a
+     * duplicated string is returned as it is in the file, without the
+     * space that would otherwise be appended to tell it apart.
+     *
+     * @param decodeOnDemand true to decode strings one at a time
+     */
+
+    public synchronized void setDecodeOnDemand( final boolean decodeOnDemand )
+    {
+        this.decodeOnDemand = decodeOnDemand;
+    }
+
+    /**
+     * @return true if getString decodes strings one at a time
+     */
+
+    public synchronized boolean isDecodeOnDemand()
+    {
+        return decodeOnDemand;
+    }
+
+    /**
+     * Use the bucket offsets of the ExtSST record that was read along with
+     * this record to find strings faster when decoding on demand.
+     *
+     * @param extsst the ExtSST record that followed this record
+     */
+
+    public void useExtSSTRecord( final ExtSSTRecord extsst )
+    {
+        if ( reader != null )
+        {
+            reader.setBuckets( extsst );
+        }
+    }
+
+    /**
+     * decode all the strings of a record that was read now, rather than when
+     * they are first needed.  Once they are decoded getString only reads the
+     * table, so several threads may call it at once.
+     */
+
+    public void decodeStrings()
+    {
+        loadStrings();
+    }
+
+    /**
+     * decode all the strings of a record that was read.  Synchronized so
+     * that threads reading the strings of a freshly read workbook at once
+     * decode them only once, and each sees the finished table.
+     *
+     * @return the table of decoded strings
+     */
+
+    private synchronized SSTStringTable loadStrings()
+    {
+        if ( reader != null )
+        {
+            SSTStringTable strings = new SSTStringTable();
+
+            deserializer = new SSTDeserializer( strings );
+            reader.load( deserializer );
+            field_3_strings = strings;
+            reader = null;
+        }
+        return field_3_strings;
     }
 
     /**
@@ -329,13 +434,13 @@ public class SSTRecord
         buffer.append( "[SST]\n" );
         buffer.append( "    .numstrings     = " )
                 .append( Integer.toHexString( getNumStrings() ) ).append( "\n" );
+        loadStrings();
         buffer.append( "    .uniquestrings  = " )
                 .append( Integer.toHexString( getNumUniqueStrings() ) ).append( "\n" );
         for ( int k = 0; k < field_3_strings.size(); k++ )
         {
             buffer.append( "    .string_" + k + "      = " )
-                    .append( ( (UnicodeString) field_3_strings
-                    .get( new Integer( k ) ) ).toString() ).append( "\n" );
+                    .append( field_3_strings.getString( k ) ).append( "\n" );
         }
         buffer.append( "[/SST]\n" );
         return buffer.toString();
@@ -365,6 +470,9 @@ public class SSTRecord
         }
         SSTRecord other = (SSTRecord) o;
 
+        loadStrings();
+        other.loadStrings();
+
         return ( ( field_1_num_strings == other
                 .field_1_num_strings ) && ( field_2_num_unique_strings == other
                 .field_2_num_unique_strings ) && field_3_strings
@@ -477,9 +585,9 @@ public class SSTRecord
         // we initialize our fields
         field_1_num_strings = LittleEndian.getInt( data, 0 + offset );
         field_2_num_unique_strings = LittleEndian.getInt( data, 4 + offset );
-        field_3_strings = new BinaryTree();
-        deserializer = new SSTDeserializer(field_3_strings);
-        deserializer.manufactureStrings( data, 8 + offset, (short)(size - 8) );
+        field_3_strings = null;
+        deserializer = null;
+        reader = new SSTStringReader( data, 8 + offset, size - 8 );
     }
 
 
@@ -490,7 +598,7 @@ public class SSTRecord
 
     Iterator getStrings()
     {
-        return field_3_strings.values().iterator();
+        return loadStrings().iterator();
     }
 
     /**
@@ -499,7 +607,7 @@ public class SSTRecord
 
     int countStrings()
     {
-        return field_3_strings.size();
+        return loadStrings().size();
     }
 
     /**
@@ -512,6 +620,7 @@ public class SSTRecord
 
     public int serialize( int offset, byte[] data )
     {
+        loadStrings();
         SSTSerializer serializer = new SSTSerializer(
                 _record_lengths, field_3_strings, getNumStrings(), getNumUniqueStrings() );
         return serializer.serialize( getRecordSize(), offset, data );
@@ -520,6 +629,7 @@ public class SSTRecord
 
     public int getRecordSize()
     {
+        loadStrings();
         SSTRecordSizeCalculator calculator = new SSTRecordSizeCalculator(field_3_strings);
         int recordSize = calculator.getRecordSize();
         _record_lengths = calculator.getRecordLengths();
@@ -528,6 +638,7 @@ public class SSTRecord
 
     SSTDeserializer getDeserializer()
     {
+        loadStrings();
         return deserializer;
     }
 
@@ -536,7 +647,14 @@ public class SSTRecord
      */
     public void processContinueRecord( byte[] record )
     {
-        deserializer.processContinueRecord( record );
+        if ( reader != null )
+        {
+            reader.addContinueRecord( record );
+        }
+        else
+        {
+            deserializer.processContinueRecord( record );
+        }
     }
 }
 
@@ -58,7 +58,6 @@ import org.apache.poi.util.LittleEndianConsts;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Used to calculate the record sizes for a particular record.
@@ -79,9 +78,9 @@ class SSTRecordSizeCalculator
     private int recordSize = 0;
     private List recordLengths = new ArrayList();
     private int pos = 0;
-    private Map strings;
+    private SSTStringTable strings;
 
-    public SSTRecordSizeCalculator(Map strings)
+    public SSTRecordSizeCalculator(SSTStringTable strings)
     {
         this.strings = strings;
     }
@@ -172,9 +171,7 @@ class SSTRecordSizeCalculator
         for ( ; unipos < strings.size(); unipos++ )
         {
             int available = SSTRecord.MAX_RECORD_SIZE - pos;
-            Integer intunipos = new Integer( unipos );
-
-            unistr = ( (UnicodeString) strings.get( intunipos ) );
+            unistr = strings.get( unipos );
             if ( unistr.getRecordSize() <= available )
             {
                 totalBytesWritten += unistr.getRecordSize();
@@ -54,11 +54,8 @@
 
 package org.apache.poi.hssf.record;
 
-import org.apache.poi.util.BinaryTree;
-
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Map;
 
 /**
  * This class handles serialization of SST records.  It utilizes the record processor
@@ -71,13 +68,13 @@ class SSTSerializer
 
     // todo: make private again
     private List recordLengths;
-    private BinaryTree strings;
+    private SSTStringTable strings;
 
     private int numStrings;
     private int numUniqueStrings;
     private SSTRecordHeader sstRecordHeader;
 
-    public SSTSerializer( List recordLengths, BinaryTree strings, int numStrings, int numUniqueStrings )
+    public SSTSerializer( List recordLengths, SSTStringTable strings, int numStrings, int numUniqueStrings )
     {
         this.recordLengths = recordLengths;
         this.strings = strings;
@@ -115,13 +112,13 @@ class SSTSerializer
      *
      * @return the total size.
      */
-    public static int calculateUnicodeSize(Map strings)
+    public static int calculateUnicodeSize(SSTStringTable strings)
     {
         int retval = 0;
 
         for ( int k = 0; k < strings.size(); k++ )
         {
-            retval += getUnicodeString( strings, k ).getRecordSize();
+            retval += strings.getRecordSize( k );
         }
         return retval;
     }
@@ -144,8 +141,7 @@ class SSTSerializer
 
         for ( int k = 0; k < strings.size(); k++ )
         {
-            System.arraycopy( getUnicodeString( k ).serialize(), 0, data, pos + offset, getUnicodeString( k ).getRecordSize() );
-            pos += getUnicodeString( k ).getRecordSize();
+            pos += getUnicodeString( k ).serialize( pos + offset, data );
         }
     }
 
@@ -214,13 +210,7 @@ class SSTSerializer
 
     private UnicodeString getUnicodeString( int index )
     {
-        return getUnicodeString(strings, index);
-    }
-
-    private static UnicodeString getUnicodeString( Map strings, int index )
-    {
-        Integer intunipos = new Integer( index );
-        return ( (UnicodeString) strings.get( intunipos ) );
+        return strings.get( index );
     }
 
     public int getRecordSize()
@@ -0,0 +1,493 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record;
+
+/**
+ * Decodes the strings of an SST record on demand.  The raw string data of
+ * the SST record and of its Continue records is kept, and a string is only
+ * turned into a java String the first time it is asked for; decoded strings
+ * are cached.
+ * <p>
+ * Strings have variable lengths, so finding string n means stepping over the
+ * strings before it.  To keep that short, the position of every
+ * CHECKPOINT_INTERVAL'th string is remembered as it is passed, and if the
+ * ExtSST record that follows the SST is supplied, the start of each of its
+ * buckets is used as well.
+ * <p>
+ * Everything else SSTRecord does (adding strings, writing) needs the whole
+ * table, so load() hands the raw data to an SSTDeserializer exactly as if
+ * the strings had been read eagerly.
+ *
+ * @see SSTRecord
+ * @see ExtSSTRecord
+ */
+
+class SSTStringReader
+{
+    private static final int CHECKPOINT_INTERVAL = 16;
+
+    // the string data of the SST record (without its two counts) followed by
+    // the data of each of its Continue records
+    private byte[]   _data;
+    private int      _length;
+    private int[]    _segment_ends;
+    private int      _segments;
+
+    // the decoded strings and their option flags, by index
+    private String[] _strings;
+    private byte[]   _option_flags;
+
+    // the position of string k * CHECKPOINT_INTERVAL plus one, or zero if it
+    // is not known yet
+    private int[]    _checkpoints;
+
+    // the position of the first string of each ExtSST bucket plus one, or
+    // zero if the bucket could not be located
+    private int[]    _buckets;
+    private int      _bucket_size;
+
+    // the index and position of the string after the last one decoded, so
+    // that reading strings in order doesn't step over any
+    private int      _next_index;
+    private int      _next_pos;
+
+    // the read position and the segment it lies in
+    private int      _pos;
+    private int      _segment;
+    private byte     _last_option_flags;
+
+    /**
+     * @param data the SST record's data
+     * @param offset the offset of the first string in data
+     * @param size the number of bytes of strings
+     */
+
+    SSTStringReader(final byte [] data, final int offset, final int size)
+    {
+        _data         = new byte[ size ];
+        _length       = size;
+        _segment_ends = new int[ 4 ];
+        _segments     = 1;
+        _segment_ends[ 0 ] = size;
+        System.arraycopy(data, offset, _data, 0, size);
+        _strings      = new String[ 0 ];
+        _option_flags = new byte[ 0 ];
+        _checkpoints  = new int[ 1 ];
+        _checkpoints[ 0 ] = 1;
+        _next_index   = 0;
+        _next_pos     = 0;
+    }
+
+    /**
+     * add the data of a Continue record that follows the SST record
+     *
+     * @param record the Continue record's data
+     */
+
+    synchronized void addContinueRecord(final byte [] record)
+    {
+        if (_length + record.length > _data.length)
+        {
+            byte[] data = new byte[ Math.max(_data.length * 2,
+                                             _length + record.length) ];
+
+            System.arraycopy(_data, 0, data, 0, _length);
+            _data = data;
+        }
+        System.arraycopy(record, 0, _data, _length, record.length);
+        _length += record.length;
+        if (_segments == _segment_ends.length)
+        {
+            int[] segment_ends = new int[ _segments * 2 ];
+
+            System.arraycopy(_segment_ends, 0, segment_ends, 0, _segments);
+            _segment_ends = segment_ends;
+        }
+        _segment_ends[ _segments++ ] = _length;
+    }
+
+    /**
+     * Locate the buckets described by an ExtSST record.  The record's stream
+     * positions are relative to the start of the workbook stream, which we
+     * don't know, so they are anchored on the first bucket, which always
+     * starts right after the SST record's header and two counts.  Buckets
+     * that don't land on the start of one of our records' data are ignored.
+     *
+     * @param extsst the ExtSST record that followed the SST record
+     */
+
+    synchronized void setBuckets(final ExtSSTRecord extsst)
+    {
+        int count = extsst.getNumInfoRecords();
+
+        _buckets     = null;
+        _bucket_size = extsst.getNumStringsPerBucket();
+        if ((_bucket_size <= 0) || (count == 0)
+                || (extsst.getInfoRecordAt(0).getBucketSSTOffset()
+                    != SSTRecord.SST_RECORD_OVERHEAD))
+        {
+            return;
+        }
+        int   sst_pos = extsst.getInfoRecordAt(0).getStreamPos()
+                        - SSTRecord.SST_RECORD_OVERHEAD;
+        int[] buckets = new int[ count ];
+
+        for (int k = 0; k < count; k++)
+        {
+            ExtSSTInfoSubRecord info = extsst.getInfoRecordAt(k);
+            int                 offset = info.getBucketSSTOffset() & 0xFFFF;
+            int                 record_pos = info.getStreamPos() - offset
+                                             - sst_pos;
+
+            // walk the records to the one whose header is at record_pos
+            int header = 0;
+            int start  = 0;
+
+            for (int segment = 0; (segment < _segments) && (header <= record_pos);
+                    segment++)
+            {
+                int end         = _segment_ends[ segment ];
+                int header_size = (segment == 0)
+                                  ? SSTRecord.SST_RECORD_OVERHEAD
+                                  : SSTRecord.STD_RECORD_OVERHEAD;
+
+                if (header == record_pos)
+                {
+                    int pos = start + offset - header_size;
+
+                    if ((pos >= start) && (pos < end))
+                    {
+                        buckets[ k ] = pos + 1;
+                    }
+                }
+                header += header_size + end - start;
+                start  = end;
+            }
+        }
+        _buckets = buckets;
+    }
+
+    /**
+     * @param index the index of a string
+     *
+     * @return the string
+     *
+     * @exception ArrayIndexOutOfBoundsException if there is no such string
+     * @exception RecordFormatException if the string data is malformed
+     */
+
+    synchronized String getString(final int index)
+    {
+        decode(index);
+        return _strings[ index ];
+    }
+
+    /**
+     * @param index the index of a string
+     *
+     * @return the option flags of the string
+     *
+     * @exception ArrayIndexOutOfBoundsException if there is no such string
+     */
+
+    synchronized byte getOptionFlags(final int index)
+    {
+        decode(index);
+        return _option_flags[ index ];
+    }
+
+    /**
+     * feed all the data read so far through a deserializer
+     *
+     * @param deserializer the deserializer to fill
+     */
+
+    synchronized void load(final SSTDeserializer deserializer)
+    {
+        deserializer.manufactureStrings(_data, 0,
+                                        ( short ) _segment_ends[ 0 ]);
+        for (int segment = 1; segment < _segments; segment++)
+        {
+            int    start  = _segment_ends[ segment - 1 ];
+            byte[] record = new byte[ _segment_ends[ segment ] - start ];
+
+            System.arraycopy(_data, start, record, 0, record.length);
+            deserializer.processContinueRecord(record);
+        }
+    }
+
+    private void decode(final int index)
+    {
+        if (index < 0)
+        {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        if ((index < _strings.length) && (_strings[ index ] != null))
+        {
+            return;
+        }
+        int k = seekBefore(index);
+
+        for (; k < index; k++)
+        {
+            readString(index, false);
+            if (((k + 1) % CHECKPOINT_INTERVAL) == 0)
+            {
+                setCheckpoint((k + 1) / CHECKPOINT_INTERVAL);
+            }
+        }
+        String string = readString(index, true);
+
+        if (index >= _strings.length)
+        {
+            int      capacity     = Math.max(index + 1, _strings.length * 2);
+            String[] strings      = new String[ capacity ];
+            byte[]   option_flags = new byte[ capacity ];
+
+            System.arraycopy(_strings, 0, strings, 0, _strings.length);
+            System.arraycopy(_option_flags, 0, option_flags, 0,
+                             _option_flags.length);
+            _strings      = strings;
+            _option_flags = option_flags;
+        }
+        _strings[ index ]      = string;
+        _option_flags[ index ] = _last_option_flags;
+        _next_index            = index + 1;
+        _next_pos              = _pos;
+    }
+
+    /**
+     * move to the closest known string position at or before index
+     *
+     * @return the index of the string at the new position
+     */
+
+    private int seekBefore(final int index)
+    {
+        int start = 0;
+        int pos   = 0;
+
+        if (_buckets != null)
+        {
+            for (int bucket = Math.min(index / _bucket_size,
+                                       _buckets.length - 1);
+                    bucket > 0; bucket--)
+            {
+                if (_buckets[ bucket ] != 0)
+                {
+                    start = bucket * _bucket_size;
+                    pos   = _buckets[ bucket ] - 1;
+                    break;
+                }
+            }
+        }
+        for (int checkpoint = Math.min(index / CHECKPOINT_INTERVAL,
+                                       _checkpoints.length - 1);
+                (checkpoint * CHECKPOINT_INTERVAL) > start; checkpoint--)
+        {
+            if (_checkpoints[ checkpoint ] != 0)
+            {
+                start = checkpoint * CHECKPOINT_INTERVAL;
+                pos   = _checkpoints[ checkpoint ] - 1;
+                break;
+            }
+        }
+        if ((_next_index <= index) && (_next_index > start))
+        {
+            start = _next_index;
+            pos   = _next_pos;
+        }
+        _pos     = pos;
+        _segment = 0;
+        while ((_segment < _segments - 1) && (_pos >= _segment_ends[ _segment ]))
+        {
+            _segment++;
+        }
+        return start;
+    }
+
+    private void setCheckpoint(final int checkpoint)
+    {
+        if (checkpoint >= _checkpoints.length)
+        {
+            int[] checkpoints = new int[ Math.max(checkpoint + 1,
+                                                  _checkpoints.length * 2) ];
+
+            System.arraycopy(_checkpoints, 0, checkpoints, 0,
+                             _checkpoints.length);
+            _checkpoints = checkpoints;
+        }
+        _checkpoints[ checkpoint ] = _pos + 1;
+    }
+
+    /**
+     * read the string at the current position, leaving the position at the
+     * start of the next one
+     *
+     * @param index the index being looked for, for error reporting
+     * @param build true to build the string, false just to step over it
+     */
+
+    private String readString(final int index, final boolean build)
+    {
+        if (_pos >= _length)
+        {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        int     char_count   = readUShort();
+        byte    option_flags = readByte();
+        int     run_count    = 0;
+        int     ext_length   = 0;
+
+        if ((option_flags & 0x08) != 0)
+        {
+            run_count = readUShort();
+        }
+        if ((option_flags & 0x04) != 0)
+        {
+            ext_length = readUShort() + (readUShort() << 16);
+        }
+        boolean wide      = (option_flags & 0x01) != 0;
+        char[]  chars     = build ? new char[ char_count ]
+                                  : null;
+        int     remaining = char_count;
+
+        while (remaining > 0)
+        {
+            int end = _segment_ends[ _segment ];
+
+            if (_pos >= end)
+            {
+
+                // the characters carry on in the next Continue record,
+                // which starts with a fresh compression flag
+                nextSegment();
+                wide = (_data[ _pos++ ] & 0x01) != 0;
+                continue;
+            }
+            int available = wide ? (end - _pos) / 2
+                                 : end - _pos;
+
+            if (available == 0)
+            {
+                _pos = end;
+                continue;
+            }
+            int count = Math.min(available, remaining);
+
+            if (build)
+            {
+                int offset = char_count - remaining;
+
+                for (int k = 0; k < count; k++)
+                {
+                    chars[ offset + k ] = wide
+                                          ? ( char ) ((_data[ _pos + 2 * k ] & 0xFF)
+                                              + ((_data[ _pos + 2 * k + 1 ] & 0xFF) << 8))
+                                          : ( char ) (_data[ _pos + k ] & 0xFF);
+                }
+            }
+            _pos      += wide ? count * 2
+                              : count;
+            remaining -= count;
+        }
+
+        // the formatting runs and extended data are not split up
+        skip((run_count * 4) + ext_length);
+        _last_option_flags = option_flags;
+        return build ? new String(chars)
+                     : null;
+    }
+
+    private byte readByte()
+    {
+        while (_pos >= _segment_ends[ _segment ])
+        {
+            nextSegment();
+        }
+        return _data[ _pos++ ];
+    }
+
+    private int readUShort()
+    {
+        int low = readByte() & 0xFF;
+
+        return low + ((readByte() & 0xFF) << 8);
+    }
+
+    private void skip(final int count)
+    {
+        _pos += count;
+        if (_pos > _length)
+        {
+            throw new RecordFormatException(
+                "SST string data runs past the end of the record");
+        }
+        while ((_segment < _segments - 1) && (_pos >= _segment_ends[ _segment ]))
+        {
+            _segment++;
+        }
+    }
+
+    private void nextSegment()
+    {
+        if (_segment + 1 >= _segments)
+        {
+            throw new RecordFormatException(
+                "SST string data runs past the end of the record");
+        }
+        _pos = _segment_ends[ _segment++ ];
+    }
+}   // end class SSTStringReader
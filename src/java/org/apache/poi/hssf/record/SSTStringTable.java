@@ -0,0 +1,445 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The string table behind an SST record.  Strings are held in an array in
+ * index order, so looking a string up by its SST index is a plain array
+ * access, and an open-addressed hash of the string contents maps each string
+ * back to its index so that adding a string which is already present costs
+ * no more than hashing it.
+ * <p>
+ * Compressed (8 bit) strings whose characters all fit in a byte are kept as
+ * byte arrays rather than as UnicodeString instances; everything else is kept
+ * as a String.  The first getString() of a byte array string keeps the String
+ * it builds in the array's place, so a string is only decoded once and the
+ * strings that are never read stay small.  UnicodeString instances are built
+ * on demand by get(), so changes made to them are not reflected in the table.
+ * <p>
+ * Like the BinaryTree this replaces, strings are unique by their contents
+ * alone: the option flags do not take part in the comparison.
+ */
+
+public final class SSTStringTable
+{
+    private static final int INITIAL_CAPACITY = 16;
+
+    // per string, in index order: a byte[] holding a compressed string that
+    // has not been read yet, or a String
+    private Object[] _values;
+    private int[]    _hashes;
+    private short[]  _char_counts;
+    private byte[]   _option_flags;
+    private int      _size;
+
+    // open-addressed hash of string contents; each slot holds the index of a
+    // string plus one, or zero if the slot is empty
+    private int[]    _slots;
+
+    /**
+     * create an empty string table
+     */
+
+    public SSTStringTable()
+    {
+        _values       = new Object[ INITIAL_CAPACITY ];
+        _hashes       = new int[ INITIAL_CAPACITY ];
+        _char_counts  = new short[ INITIAL_CAPACITY ];
+        _option_flags = new byte[ INITIAL_CAPACITY ];
+        _slots        = new int[ INITIAL_CAPACITY * 2 ];
+        _size         = 0;
+    }
+
+    /**
+     * @return the number of strings in the table
+     */
+
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * add a string to the end of the table
+     *
+     * @param string the string to add; its contents must not already be in
+     *               the table
+     *
+     * @return the index of the new string
+     *
+     * @exception IllegalArgumentException if the table already holds a string
+     *            with the same contents
+     */
+
+    public int add(final UnicodeString string)
+    {
+        String value = string.getString();
+        int    hash  = value.hashCode();
+
+        if (find(value, hash) != -1)
+        {
+            throw new IllegalArgumentException("duplicate string: " + value);
+        }
+        if (_size == _values.length)
+        {
+            grow();
+        }
+        int index = _size++;
+
+        _values[ index ]       = pack(value, string.getOptionFlags());
+        _hashes[ index ]       = hash;
+        _char_counts[ index ]  = string.getCharCount();
+        _option_flags[ index ] = string.getOptionFlags();
+        insertSlot(index);
+        return index;
+    }
+
+    /**
+     * @param string the string contents to look for
+     *
+     * @return the index of the string with those contents, or -1 if there
+     *         is none
+     */
+
+    public int indexOf(final String string)
+    {
+        return find(string, string.hashCode());
+    }
+
+    /**
+     * @param index the index of a string
+     *
+     * @return the string at that index
+     *
+     * @exception ArrayIndexOutOfBoundsException if there is no such string
+     */
+
+    public String getString(final int index)
+    {
+        checkIndex(index);
+        Object value = _values[ index ];
+
+        if (value instanceof byte [])
+        {
+
+            // Strings are immutable, so a thread racing this one at worst
+            // builds an equal String of its own
+            value            = unpack(value);
+            _values[ index ] = value;
+        }
+        return ( String ) value;
+    }
+
+    /**
+     * @param index the index of a string
+     *
+     * @return the option flags of the string at that index
+     */
+
+    public byte getOptionFlags(final int index)
+    {
+        checkIndex(index);
+        return _option_flags[ index ];
+    }
+
+    /**
+     * @param index the index of a string
+     *
+     * @return a new UnicodeString for the string at that index, or null if
+     *         there is no such string
+     */
+
+    public UnicodeString get(final int index)
+    {
+        if ((index < 0) || (index >= _size))
+        {
+            return null;
+        }
+        UnicodeString rval = new UnicodeString();
+
+        rval.setString(unpack(_values[ index ]));
+        rval.setCharCount(_char_counts[ index ]);
+        rval.setOptionFlags(_option_flags[ index ]);
+        return rval;
+    }
+
+    /**
+     * @param index the index of a string
+     *
+     * @return the serialized size of the string at that index, as
+     *         UnicodeString.getRecordSize() would report it
+     */
+
+    public int getRecordSize(final int index)
+    {
+        checkIndex(index);
+        Object value     = _values[ index ];
+        int    length    = (value instanceof byte [])
+                           ? (( byte [] ) value).length
+                           : (( String ) value).length();
+        int    char_size = ((_option_flags[ index ] & 0x01) == 1) ? 2
+                                                                  : 1;
+
+        return 3 + (length * char_size);
+    }
+
+    /**
+     * @return an iterator over the strings in index order; each element is
+     *         a new UnicodeString
+     */
+
+    public Iterator iterator()
+    {
+        return new Iterator()
+        {
+            private int _next = 0;
+
+            public boolean hasNext()
+            {
+                return _next < _size;
+            }
+
+            public Object next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                return get(_next++);
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    public int hashCode()
+    {
+        int rval = _size;
+
+        for (int k = 0; k < _size; k++)
+        {
+            rval = (31 * rval) + _hashes[ k ];
+        }
+        return rval;
+    }
+
+    /**
+     * two tables are equal if they hold the same strings, with the same
+     * character counts and option flags, in the same order
+     */
+
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof SSTStringTable))
+        {
+            return false;
+        }
+        SSTStringTable other = ( SSTStringTable ) o;
+
+        if (other._size != _size)
+        {
+            return false;
+        }
+        for (int k = 0; k < _size; k++)
+        {
+            if ((_hashes[ k ] != other._hashes[ k ])
+                    || (_char_counts[ k ] != other._char_counts[ k ])
+                    || (_option_flags[ k ] != other._option_flags[ k ])
+                    || !unpack(_values[ k ]).equals(unpack(other._values[ k ])))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkIndex(final int index)
+    {
+        if ((index < 0) || (index >= _size))
+        {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+
+    private int find(final String string, final int hash)
+    {
+        int mask = _slots.length - 1;
+
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask)
+        {
+            int entry = _slots[ slot ];
+
+            if (entry == 0)
+            {
+                return -1;
+            }
+            int index = entry - 1;
+
+            if ((_hashes[ index ] == hash)
+                    && matches(_values[ index ], string))
+            {
+                return index;
+            }
+        }
+    }
+
+    private void insertSlot(final int index)
+    {
+        int mask = _slots.length - 1;
+        int slot = spread(_hashes[ index ]) & mask;
+
+        while (_slots[ slot ] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+        _slots[ slot ] = index + 1;
+    }
+
+    private void grow()
+    {
+        int      capacity     = _values.length * 2;
+        Object[] values       = new Object[ capacity ];
+        int[]    hashes       = new int[ capacity ];
+        short[]  char_counts  = new short[ capacity ];
+        byte[]   option_flags = new byte[ capacity ];
+
+        System.arraycopy(_values, 0, values, 0, _size);
+        System.arraycopy(_hashes, 0, hashes, 0, _size);
+        System.arraycopy(_char_counts, 0, char_counts, 0, _size);
+        System.arraycopy(_option_flags, 0, option_flags, 0, _size);
+        _values       = values;
+        _hashes       = hashes;
+        _char_counts  = char_counts;
+        _option_flags = option_flags;
+
+        // keep the hash at most half full
+        _slots = new int[ capacity * 2 ];
+        for (int k = 0; k < _size; k++)
+        {
+            insertSlot(k);
+        }
+    }
+
+    private static int spread(final int hash)
+    {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static Object pack(final String string, final byte option_flags)
+    {
+        if ((option_flags & 0x01) == 0)
+        {
+            int    length = string.length();
+            byte[] rval   = new byte[ length ];
+
+            for (int k = 0; k < length; k++)
+            {
+                char c = string.charAt(k);
+
+                if (c > 0xFF)
+                {
+                    return string;
+                }
+                rval[ k ] = ( byte ) c;
+            }
+            return rval;
+        }
+        return string;
+    }
+
+    private static String unpack(final Object value)
+    {
+        if (value instanceof byte [])
+        {
+            byte[] bytes = ( byte [] ) value;
+            char[] chars = new char[ bytes.length ];
+
+            for (int k = 0; k < bytes.length; k++)
+            {
+                chars[ k ] = ( char ) (bytes[ k ] & 0xFF);
+            }
+            return new String(chars);
+        }
+        return ( String ) value;
+    }
+
+    private static boolean matches(final Object value, final String string)
+    {
+        if (value instanceof byte [])
+        {
+            byte[] bytes = ( byte [] ) value;
+
+            if (bytes.length != string.length())
+            {
+                return false;
+            }
+            for (int k = 0; k < bytes.length; k++)
+            {
+                if ((bytes[ k ] & 0xFF) != string.charAt(k))
+                {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return string.equals(value);
+    }
+}   // end public final class SSTStringTable
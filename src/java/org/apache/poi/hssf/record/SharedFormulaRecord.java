@@ -0,0 +1,489 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.record.formula.Area3DPtg;
+import org.apache.poi.hssf.record.formula.AreaPtg;
+import org.apache.poi.hssf.record.formula.ExpPtg;
+import org.apache.poi.hssf.record.formula.Ptg;
+import org.apache.poi.hssf.record.formula.Ref3DPtg;
+import org.apache.poi.hssf.record.formula.ReferencePtg;
+import org.apache.poi.util.LittleEndian;
+
+/**
+ * Title:        Shared Formula Record (0x4BC)<P>
+ * Description:  The expression of a formula used by a block of cells.  The
+ *               SHRFMLA record follows the FORMULA record of the first cell
+ *               of the block, and every cell of the block holds just a tExp
+ *               token pointing at that first cell.  Relative references
+ *               are stored as offsets from the cell using the formula
+ *               (tRefN and tAreaN tokens), so one expression serves the
+ *               whole block.<P>
+ * REFERENCE:  PG 342 Microsoft Excel 97 Developer's Kit (ISBN: 1-57231-498-2)<P>
+ *
+ * @see FormulaRecord
+ * @see org.apache.poi.hssf.record.formula.ExpPtg
+ */
+
+public class SharedFormulaRecord
+    extends Record
+{
+    public final static short sid          = 0x4BC;
+    private final static int  HEADER_SIZE  = 10;
+
+    private static final byte REFN         = 0x2C;
+    private static final byte AREAN        = 0x2D;
+    private static final int  ROW_RELATIVE = 0x8000;
+    private static final int  COL_RELATIVE = 0x4000;
+
+    private int               field_1_first_row;
+    private int               field_2_last_row;
+    private short             field_3_first_column;
+    private short             field_4_last_column;
+    private short             field_5_use_count;
+    private byte[]            field_6_expression;
+    private byte[]            field_7_extra;
+
+    public SharedFormulaRecord()
+    {
+        field_6_expression = new byte[ 0 ];
+        field_7_extra      = new byte[ 0 ];
+    }
+
+    /**
+     * Constructs a SharedFormula record and sets its fields appropriately.
+     *
+     * @param id     id must be 0x4BC or an exception will be throw upon validation
+     * @param size  the size of the data area of the record
+     * @param data  data of the record (should not contain sid/len)
+     */
+
+    public SharedFormulaRecord(short id, short size, byte [] data)
+    {
+        super(id, size, data);
+    }
+
+    /**
+     * Constructs a SharedFormula record and sets its fields appropriately.
+     *
+     * @param id     id must be 0x4BC or an exception will be throw upon validation
+     * @param size  the size of the data area of the record
+     * @param data  data of the record (should not contain sid/len)
+     * @param offset of the record's data
+     */
+
+    public SharedFormulaRecord(short id, short size, byte [] data, int offset)
+    {
+        super(id, size, data, offset);
+    }
+
+    protected void validateSid(short id)
+    {
+        if (id != sid)
+        {
+            throw new RecordFormatException("NOT A SHARED FORMULA RECORD");
+        }
+    }
+
+    protected void fillFields(byte [] data, short size, int offset)
+    {
+        field_1_first_row    = LittleEndian.getUShort(data, 0 + offset);
+        field_2_last_row     = LittleEndian.getUShort(data, 2 + offset);
+        field_3_first_column = ( short ) (data[ 4 + offset ] & 0xFF);
+        field_4_last_column  = ( short ) (data[ 5 + offset ] & 0xFF);
+        field_5_use_count    = ( short ) (data[ 7 + offset ] & 0xFF);
+        int length = LittleEndian.getUShort(data, 8 + offset);
+
+        length             = Math.min(length, size - HEADER_SIZE);
+        field_6_expression = new byte[ length ];
+        System.arraycopy(data, HEADER_SIZE + offset, field_6_expression, 0,
+                         length);
+        field_7_extra = new byte[ size - HEADER_SIZE - length ];
+        System.arraycopy(data, HEADER_SIZE + length + offset, field_7_extra,
+                         0, field_7_extra.length);
+    }
+
+    public int getFirstRow()
+    {
+        return field_1_first_row;
+    }
+
+    public void setFirstRow(int row)
+    {
+        field_1_first_row = row;
+    }
+
+    public int getLastRow()
+    {
+        return field_2_last_row;
+    }
+
+    public void setLastRow(int row)
+    {
+        field_2_last_row = row;
+    }
+
+    public short getFirstColumn()
+    {
+        return field_3_first_column;
+    }
+
+    public void setFirstColumn(short column)
+    {
+        field_3_first_column = column;
+    }
+
+    public short getLastColumn()
+    {
+        return field_4_last_column;
+    }
+
+    public void setLastColumn(short column)
+    {
+        field_4_last_column = column;
+    }
+
+    /**
+     * @return the number of FORMULA records using this shared formula
+     */
+
+    public short getUseCount()
+    {
+        return field_5_use_count;
+    }
+
+    public void setUseCount(short count)
+    {
+        field_5_use_count = count;
+    }
+
+    /**
+     * @return the expression in its shared (relative) form
+     */
+
+    public byte[] getSharedExpression()
+    {
+        return field_6_expression;
+    }
+
+    /**
+     * @param expression the expression in shared form, see
+     *        toSharedExpression(List, int, int)
+     */
+
+    public void setSharedExpression(byte[] expression)
+    {
+        field_6_expression = expression;
+    }
+
+    /**
+     * @return whether the cell lies in the range covered by this record
+     */
+
+    public boolean isInRange(int row, int column)
+    {
+        return (row >= field_1_first_row) && (row <= field_2_last_row)
+               && (column >= field_3_first_column)
+               && (column <= field_4_last_column);
+    }
+
+    /**
+     * @return whether a tExp token points at this shared formula
+     */
+
+    public boolean isAnchoredAt(ExpPtg exp)
+    {
+        return (exp.getRow() == field_1_first_row)
+               && (exp.getColumn() == field_3_first_column);
+    }
+
+    /**
+     * Converts the expression to the tokens the formula has in a given
+     * cell, relative references resolved against that cell.
+     *
+     * @param row the row of the cell using the formula
+     * @param column the column of the cell using the formula
+     * @return List of Ptg
+     */
+
+    public List getFormulaTokens(int row, int column)
+    {
+        byte[] data = new byte[ field_6_expression.length ];
+        List   ptgs = new ArrayList();
+        int    pos  = 0;
+
+        System.arraycopy(field_6_expression, 0, data, 0, data.length);
+        while (pos < data.length)
+        {
+
+            // the low five bits of an operand token give the token, bits
+            // 5 and 6 its class (reference, value or array)
+            int base = data[ pos ] & 0x1F;
+            int type = data[ pos ] & 0x60;
+
+            if ((type != 0) && (base == (REFN & 0x1F)))
+            {
+                data[ pos ] = ( byte ) (ReferencePtg.sid + type - 0x20);
+                toAbsolute(data, pos + 1, pos + 3, row, column);
+            }
+            else if ((type != 0) && (base == (AREAN & 0x1F)))
+            {
+                data[ pos ] = ( byte ) (AreaPtg.sid + type - 0x20);
+                toAbsolute(data, pos + 1, pos + 5, row, column);
+                toAbsolute(data, pos + 3, pos + 7, row, column);
+            }
+            else if ((type != 0) && (base == (Ref3DPtg.sid & 0x1F)))
+            {
+                toAbsolute(data, pos + 3, pos + 5, row, column);
+            }
+            else if ((type != 0) && (base == (Area3DPtg.sid & 0x1F)))
+            {
+                toAbsolute(data, pos + 3, pos + 7, row, column);
+                toAbsolute(data, pos + 5, pos + 9, row, column);
+            }
+            Ptg ptg = Ptg.createPtg(data, pos);
+
+            ptgs.add(ptg);
+            pos += ptg.getSize();
+        }
+        return ptgs;
+    }
+
+    /**
+     * Converts the tokens of a formula to the shared form, with its
+     * relative references stored as offsets from the formula's cell.
+     *
+     * @param ptgs the formula's tokens
+     * @param row the row of the formula's cell
+     * @param column the column of the formula's cell
+     * @return the shared expression or null if the formula can't be
+     *         shared, because of 3D references with relative parts or
+     *         tokens such as tExp
+     */
+
+    public static byte[] toSharedExpression(List ptgs, int row, int column)
+    {
+        if (ptgs == null)
+        {
+            return null;
+        }
+        int size = 0;
+
+        for (int k = 0; k < ptgs.size(); k++)
+        {
+            Ptg ptg = ( Ptg ) ptgs.get(k);
+
+            if (ptg instanceof ExpPtg)
+            {
+                return null;
+            }
+            if ((ptg instanceof Ref3DPtg)
+                    && ((( Ref3DPtg ) ptg).isRowRelative()
+                        || (( Ref3DPtg ) ptg).isColRelative()))
+            {
+                return null;
+            }
+            if ((ptg instanceof Area3DPtg)
+                    && ((( Area3DPtg ) ptg).isFirstRowRelative()
+                        || (( Area3DPtg ) ptg).isFirstColRelative()
+                        || (( Area3DPtg ) ptg).isLastRowRelative()
+                        || (( Area3DPtg ) ptg).isLastColRelative()))
+            {
+                return null;
+            }
+            size += ptg.getSize();
+        }
+        byte[] data = new byte[ size ];
+        int    pos  = 0;
+
+        for (int k = 0; k < ptgs.size(); k++)
+        {
+            Ptg ptg = ( Ptg ) ptgs.get(k);
+
+            ptg.writeBytes(data, pos);
+            if (ptg instanceof ReferencePtg)
+            {
+                data[ pos ] = ( byte ) (REFN + ptg.getPtgClass());
+                toRelative(data, pos + 1, pos + 3, row, column);
+            }
+            else if (ptg instanceof AreaPtg)
+            {
+                data[ pos ] = ( byte ) (AREAN + ptg.getPtgClass());
+                toRelative(data, pos + 1, pos + 5, row, column);
+                toRelative(data, pos + 3, pos + 7, row, column);
+            }
+            pos += ptg.getSize();
+        }
+        return data;
+    }
+
+    /**
+     * Rewrites the relative parts of a row/column pair as absolute
+     * addresses.  Row offsets are 16 bit and column offsets 8 bit signed
+     * values, the column field's high bits carry the relative flags.
+     */
+
+    private static void toAbsolute(byte[] data, int rowPos, int colPos,
+                                   int row, int column)
+    {
+        int rowField = LittleEndian.getUShort(data, rowPos);
+        int colField = LittleEndian.getUShort(data, colPos);
+
+        if ((colField & ROW_RELATIVE) != 0)
+        {
+            rowField = (row + ( short ) rowField) & 0xFFFF;
+        }
+        if ((colField & COL_RELATIVE) != 0)
+        {
+            colField = (colField & 0xFF00)
+                       | ((column + ( byte ) colField) & 0xFF);
+        }
+        LittleEndian.putShort(data, rowPos, ( short ) rowField);
+        LittleEndian.putShort(data, colPos, ( short ) colField);
+    }
+
+    private static void toRelative(byte[] data, int rowPos, int colPos,
+                                   int row, int column)
+    {
+        int rowField = LittleEndian.getUShort(data, rowPos);
+        int colField = LittleEndian.getUShort(data, colPos);
+
+        if ((colField & ROW_RELATIVE) != 0)
+        {
+            rowField = (rowField - row) & 0xFFFF;
+        }
+        if ((colField & COL_RELATIVE) != 0)
+        {
+            colField = (colField & 0xFF00) | ((colField - column) & 0xFF);
+        }
+        LittleEndian.putShort(data, rowPos, ( short ) rowField);
+        LittleEndian.putShort(data, colPos, ( short ) colField);
+    }
+
+    public int serialize(int offset, byte [] data)
+    {
+        LittleEndian.putShort(data, 0 + offset, sid);
+        LittleEndian.putShort(data, 2 + offset,
+                              ( short ) (getRecordSize() - 4));
+        LittleEndian.putShort(data, 4 + offset, ( short ) field_1_first_row);
+        LittleEndian.putShort(data, 6 + offset, ( short ) field_2_last_row);
+        data[ 8 + offset ]  = ( byte ) field_3_first_column;
+        data[ 9 + offset ]  = ( byte ) field_4_last_column;
+        data[ 10 + offset ] = 0;
+        data[ 11 + offset ] = ( byte ) field_5_use_count;
+        LittleEndian.putShort(data, 12 + offset,
+                              ( short ) field_6_expression.length);
+        System.arraycopy(field_6_expression, 0, data, 14 + offset,
+                         field_6_expression.length);
+        System.arraycopy(field_7_extra, 0, data,
+                         14 + field_6_expression.length + offset,
+                         field_7_extra.length);
+        return getRecordSize();
+    }
+
+    public int getRecordSize()
+    {
+        return 4 + HEADER_SIZE + field_6_expression.length
+               + field_7_extra.length;
+    }
+
+    public short getSid()
+    {
+        return sid;
+    }
+
+    public boolean isInValueSection()
+    {
+        return true;
+    }
+
+    public String toString()
+    {
+        StringBuffer buffer = new StringBuffer();
+
+        buffer.append("[SHRFMLA]\n");
+        buffer.append("    .firstrow       = ").append(getFirstRow())
+            .append("\n");
+        buffer.append("    .lastrow        = ").append(getLastRow())
+            .append("\n");
+        buffer.append("    .firstcolumn    = ").append(getFirstColumn())
+            .append("\n");
+        buffer.append("    .lastcolumn     = ").append(getLastColumn())
+            .append("\n");
+        buffer.append("    .usecount       = ").append(getUseCount())
+            .append("\n");
+        buffer.append("    .expressionsize = ")
+            .append(field_6_expression.length).append("\n");
+        buffer.append("[/SHRFMLA]\n");
+        return buffer.toString();
+    }
+
+    public Object clone()
+    {
+        SharedFormulaRecord rec = new SharedFormulaRecord();
+
+        rec.field_1_first_row    = field_1_first_row;
+        rec.field_2_last_row     = field_2_last_row;
+        rec.field_3_first_column = field_3_first_column;
+        rec.field_4_last_column  = field_4_last_column;
+        rec.field_5_use_count    = field_5_use_count;
+        rec.field_6_expression   = field_6_expression;
+        rec.field_7_extra        = field_7_extra;
+        return rec;
+    }
+}
@@ -0,0 +1,339 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record.aggregates;
+
+import org.apache.poi.hssf.record.ColumnInfoRecord;
+import org.apache.poi.hssf.record.Record;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Holds the COLINFO records of a sheet as a set of column ranges that do
+ * not overlap, sorted by their first column.  Finding the record for a
+ * column is a lookup in the sorted map rather than a walk over the list.
+ * Changing one column splits the range holding it, and when the sheet is
+ * written next to each other ranges that are the same but for their
+ * columns are joined, so a sheet keeps as few COLINFO records as it can.
+ *
+ * @see org.apache.poi.hssf.model.Sheet#setColumnWidth(short, short)
+ */
+
+public class ColumnInfoRecordsAggregate
+    extends Record
+{
+    // Integer first column -> ColumnInfoRecord
+    private TreeMap records = new TreeMap();
+
+    /** Creates a new instance of ColumnInfoRecordsAggregate */
+
+    public ColumnInfoRecordsAggregate()
+    {
+    }
+
+    /**
+     * creates a ColumnInfoRecord with the default width, options and
+     * extended format for one column
+     *
+     * @param column the column the record is for
+     * @return the new record
+     */
+
+    public static ColumnInfoRecord createColInfo(short column)
+    {
+        ColumnInfoRecord retval = new ColumnInfoRecord();
+
+        retval.setFirstColumn(column);
+        retval.setLastColumn(column);
+        retval.setColumnWidth(( short ) 0x8);
+        retval.setOptions(( short ) 6);
+        retval.setXFIndex(( short ) 0x0f);
+        return retval;
+    }
+
+    /**
+     * adds a record read from a file.  A record overlapping those already
+     * held replaces them over the columns they share.
+     */
+
+    public void insertColumn(ColumnInfoRecord record)
+    {
+        int first = record.getFirstColumn();
+        int last  = record.getLastColumn();
+
+        if (first > last)
+        {
+            return;
+        }
+        split(first);
+        split(last + 1);
+        records.subMap(new Integer(first), new Integer(last + 1)).clear();
+        records.put(new Integer(first), record);
+    }
+
+    /**
+     * @param column the column
+     * @return the record covering the column or null if it has none
+     */
+
+    public ColumnInfoRecord findColumnInfo(int column)
+    {
+        SortedMap head = records.headMap(new Integer(column + 1));
+
+        if (head.isEmpty())
+        {
+            return null;
+        }
+        ColumnInfoRecord ci = ( ColumnInfoRecord ) head.get(head.lastKey());
+
+        return (ci.getLastColumn() >= column) ? ci
+                                              : null;
+    }
+
+    /**
+     * set the width of one column.  A column with no record gets a new one
+     * with the default options, otherwise the column is split out of the
+     * range holding it, keeping the range's options and format.
+     *
+     * @param column the column
+     * @param width the width in 1/256th of a character
+     */
+
+    public void setColumnWidth(short column, short width)
+    {
+        ColumnInfoRecord ci = findColumnInfo(column);
+
+        if (ci == null)
+        {
+            ci = createColInfo(column);
+            ci.setColumnWidth(width);
+            records.put(new Integer(column), ci);
+        }
+        else if (ci.getColumnWidth() != width)
+        {
+            split(column);
+            split(column + 1);
+            (( ColumnInfoRecord ) records.get(new Integer(column)))
+                .setColumnWidth(width);
+        }
+    }
+
+    /**
+     * makes a range start at the given column, splitting the range that
+     * holds the column if there is one
+     */
+
+    private void split(int column)
+    {
+        ColumnInfoRecord ci = findColumnInfo(column);
+
+        if ((ci == null) || (ci.getFirstColumn() == column))
+        {
+            return;
+        }
+        ColumnInfoRecord tail = ( ColumnInfoRecord ) ci.clone();
+
+        tail.setFirstColumn(( short ) column);
+        ci.setLastColumn(( short ) (column - 1));
+        records.put(new Integer(column), tail);
+    }
+
+    /**
+     * joins neighbouring ranges that have the same width, format and
+     * options
+     */
+
+    private void coalesce()
+    {
+        ColumnInfoRecord previous = null;
+
+        for (Iterator iterator = records.values().iterator();
+                iterator.hasNext(); )
+        {
+            ColumnInfoRecord ci = ( ColumnInfoRecord ) iterator.next();
+
+            if ((previous != null)
+                    && (previous.getLastColumn() + 1 == ci.getFirstColumn())
+                    && (previous.getColumnWidth() == ci.getColumnWidth())
+                    && (previous.getXFIndex() == ci.getXFIndex())
+                    && (previous.getOptions() == ci.getOptions()))
+            {
+                previous.setLastColumn(ci.getLastColumn());
+                iterator.remove();
+            }
+            else
+            {
+                previous = ci;
+            }
+        }
+    }
+
+    /**
+     * @return the number of records, the ranges are joined first
+     */
+
+    public int getNumColumns()
+    {
+        coalesce();
+        return records.size();
+    }
+
+    public Iterator getIterator()
+    {
+        return records.values().iterator();
+    }
+
+    public int construct(int offset, List records)
+    {
+        int k = 0;
+
+        for (k = offset; k < records.size(); k++)
+        {
+            Record rec = ( Record ) records.get(k);
+
+            if (rec.getSid() != ColumnInfoRecord.sid)
+            {
+                break;
+            }
+            insertColumn(( ColumnInfoRecord ) rec);
+        }
+        return k;
+    }
+
+    /**
+     * called by the class that is responsible for writing this sucker.
+     * Subclasses should implement this so that their data is passed back in a
+     * byte array.
+     *
+     * @param offset    offset to begin writing at
+     * @param data      byte array containing instance data
+     * @return number of bytes written
+     */
+
+    public int serialize(int offset, byte [] data)
+    {
+        coalesce();
+        Iterator itr = records.values().iterator();
+        int      pos = offset;
+
+        while (itr.hasNext())
+        {
+            pos += (( Record ) itr.next()).serialize(pos, data);
+        }
+        return pos - offset;
+    }
+
+    public int getRecordSize()
+    {
+        coalesce();
+        int size = 0;
+
+        for (Iterator itr = records.values().iterator(); itr.hasNext(); )
+        {
+            size += (( Record ) itr.next()).getRecordSize();
+        }
+        return size;
+    }
+
+    /**
+     * called by the constructor, should set class level fields.  Should throw
+     * runtime exception for bad/icomplete data.
+     *
+     * @param data raw data
+     * @param size size of data
+     * @param offset of the record's data (provided a big array of the file)
+     */
+
+    protected void fillFields(byte [] data, short size, int offset)
+    {
+    }
+
+    /**
+     * called by constructor, should throw runtime exception in the event of a
+     * record passed with a differing ID.
+     *
+     * @param id alleged id for this record
+     */
+
+    protected void validateSid(short id)
+    {
+    }
+
+    /**
+     * return the non static version of the id for this record.
+     */
+
+    public short getSid()
+    {
+        return -1000;
+    }
+
+    /** Performs a deep clone of the record*/
+    public Object clone()
+    {
+        ColumnInfoRecordsAggregate rec = new ColumnInfoRecordsAggregate();
+
+        for (Iterator itr = getIterator(); itr.hasNext(); )
+        {
+            ColumnInfoRecord ci = ( ColumnInfoRecord ) itr.next();
+
+            rec.records.put(new Integer(ci.getFirstColumn()), ci.clone());
+        }
+        return rec;
+    }
+}
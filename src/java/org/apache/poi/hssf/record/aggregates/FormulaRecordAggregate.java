@@ -71,6 +71,11 @@ public class FormulaRecordAggregate
     private FormulaRecord formulaRecord;
     private StringRecord stringRecord;
 
+    // set while the aggregate is written as part of a shared formula
+    private int sharedRow = -1;
+    private short sharedColumn;
+    private SharedFormulaRecord sharedFormula;
+
     public FormulaRecordAggregate( FormulaRecord formulaRecord, StringRecord stringRecord )
     {
         this.formulaRecord = formulaRecord;
@@ -100,7 +105,18 @@ public class FormulaRecordAggregate
     public int serialize( int offset, byte[] data )
     {
         int pos = offset;
-        pos += formulaRecord.serialize(pos, data);
+        if (sharedRow < 0)
+        {
+            pos += formulaRecord.serialize(pos, data);
+        }
+        else
+        {
+            pos += formulaRecord.serializeShared(pos, data, sharedRow, sharedColumn);
+            if (sharedFormula != null)
+            {
+                pos += sharedFormula.serialize(pos, data);
+            }
+        }
         if (stringRecord != null)
         {
             pos += stringRecord.serialize(pos, data);
@@ -113,10 +129,39 @@ public class FormulaRecordAggregate
      */
     public int getRecordSize()
     {
-        int size = formulaRecord.getRecordSize() + (stringRecord == null ? 0 : stringRecord.getRecordSize());
+        int size = (stringRecord == null ? 0 : stringRecord.getRecordSize());
+        if (sharedRow < 0)
+        {
+            size += formulaRecord.getRecordSize();
+        }
+        else
+        {
+            size += formulaRecord.getSharedRecordSize();
+            if (sharedFormula != null)
+            {
+                size += sharedFormula.getRecordSize();
+            }
+        }
         return size;
     }
 
+    /**
+     * Has the formula written as a cell of a shared formula.  Used by
+     * ValueRecordsAggregate while it writes the sheet.
+     *
+     * @param row row of the shared formula's first cell, -1 to write the
+     *            formula normally again
+     * @param column column of the shared formula's first cell
+     * @param shared the shared formula, written after the formula record
+     *               of the first cell only
+     */
+    void setSharedFormula(int row, short column, SharedFormulaRecord shared)
+    {
+        sharedRow = row;
+        sharedColumn = column;
+        sharedFormula = shared;
+    }
+
 
     /**
      * return the non static version of the id for this record.
@@ -210,7 +255,8 @@ public class FormulaRecordAggregate
      * @see java.lang.Object#clone()
      */
     public Object clone() {
-        return new FormulaRecordAggregate((FormulaRecord) this.formulaRecord.clone(), (StringRecord) this.stringRecord.clone());
+        StringRecord clonedString = (stringRecord == null) ? null : (StringRecord) stringRecord.clone();
+        return new FormulaRecordAggregate((FormulaRecord) this.formulaRecord.clone(), clonedString);
     }
 
 
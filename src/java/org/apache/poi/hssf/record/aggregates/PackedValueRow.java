@@ -0,0 +1,478 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record.aggregates;
+
+import org.apache.poi.hssf.record.*;
+import org.apache.poi.util.LittleEndian;
+
+import java.util.List;
+
+/**
+ * The cells of one row, packed into parallel primitive arrays rather than
+ * held as one record object per cell.  Number, blank, SST label and
+ * boolean/error cells are packed; any other kind of cell (formulas, for
+ * instance) is kept as its record object.  Cell records are only created
+ * when they are asked for, and serialization writes straight from the
+ * arrays.  Used by ValueRecordsAggregate in packed mode.
+ * <P>
+ * Cells are packed a row at a time rather than in blocks of rows because
+ * the row is what the aggregate inserts, removes and shifts: moving a row
+ * only changes its row number, and no block ever has to be split or merged.
+ * The arrays cost a few dozen bytes per row, which is small beside the
+ * records they replace once a row holds more than a couple of cells.
+ *
+ * @see org.apache.poi.hssf.record.aggregates.ValueRecordsAggregate
+ */
+
+class PackedValueRow
+    extends Record
+{
+    private static final byte TYPE_NUMBER   = 0;
+    private static final byte TYPE_BLANK    = 1;
+    private static final byte TYPE_LABELSST = 2;
+    private static final byte TYPE_BOOLERR  = 3;
+    private static final byte TYPE_RECORD   = 4;
+
+    private int      row;
+    private int      count;
+
+    // indexed together, in ascending column order
+    private short[]  columns;
+    private byte[]   types;
+    private short[]  xfs;
+    private long[]   values;
+    private Object[] objects;   // only allocated once a record is kept
+
+    PackedValueRow(int row)
+    {
+        this.row = row;
+        count    = 0;
+        columns  = new short[ 4 ];
+        types    = new byte[ 4 ];
+        xfs      = new short[ 4 ];
+        values   = new long[ 4 ];
+        objects  = null;
+    }
+
+    int getRow()
+    {
+        return row;
+    }
+
+    /**
+     * move the row, and any cell records it keeps, to another row number
+     */
+
+    void setRow(int row)
+    {
+        this.row = row;
+        for (int k = 0; k < count; k++)
+        {
+            if (types[ k ] == TYPE_RECORD)
+            {
+                (( CellValueRecordInterface ) objects[ k ]).setRow(row);
+            }
+        }
+    }
+
+    int getNumCells()
+    {
+        return count;
+    }
+
+    /**
+     * add the row's formula cells to a list, in column order
+     */
+
+    void addFormulas(List formulas)
+    {
+        for (int k = 0; k < count; k++)
+        {
+            if ((types[ k ] == TYPE_RECORD)
+                    && (objects[ k ] instanceof FormulaRecordAggregate))
+            {
+                formulas.add(objects[ k ]);
+            }
+        }
+    }
+
+    /**
+     * add a cell to the row, replacing any cell already in its column
+     */
+
+    void insertCell(CellValueRecordInterface cell)
+    {
+        short column = cell.getColumn();
+        int   pos    = find(column);
+
+        if (pos < 0)
+        {
+            pos = -(pos + 1);
+            if (count == columns.length)
+            {
+                grow();
+            }
+            if (pos < count)
+            {
+                System.arraycopy(columns, pos, columns, pos + 1, count - pos);
+                System.arraycopy(types, pos, types, pos + 1, count - pos);
+                System.arraycopy(xfs, pos, xfs, pos + 1, count - pos);
+                System.arraycopy(values, pos, values, pos + 1, count - pos);
+                if (objects != null)
+                {
+                    System.arraycopy(objects, pos, objects, pos + 1,
+                                     count - pos);
+                }
+            }
+            count++;
+        }
+        columns[ pos ] = column;
+        xfs[ pos ]     = cell.getXFIndex();
+        values[ pos ]  = 0;
+        if (objects != null)
+        {
+            objects[ pos ] = null;
+        }
+        Class type = cell.getClass();
+
+        if (type == NumberRecord.class)
+        {
+            types[ pos ]  = TYPE_NUMBER;
+            values[ pos ] =
+                Double.doubleToLongBits((( NumberRecord ) cell).getValue());
+        }
+        else if (type == BlankRecord.class)
+        {
+            types[ pos ] = TYPE_BLANK;
+        }
+        else if (type == LabelSSTRecord.class)
+        {
+            types[ pos ]  = TYPE_LABELSST;
+            values[ pos ] = (( LabelSSTRecord ) cell).getSSTIndex();
+        }
+        else if (type == BoolErrRecord.class)
+        {
+            BoolErrRecord boolErr = ( BoolErrRecord ) cell;
+
+            types[ pos ]  = TYPE_BOOLERR;
+            values[ pos ] = (boolErr.getErrorValue() & 0xFF)
+                            | (boolErr.isError() ? 0x100
+                                                 : 0);
+        }
+        else
+        {
+            types[ pos ] = TYPE_RECORD;
+            if (objects == null)
+            {
+                objects = new Object[ columns.length ];
+            }
+            objects[ pos ] = cell;
+        }
+    }
+
+    /**
+     * remove the cell in a column
+     *
+     * @return true if there was a cell to remove
+     */
+
+    boolean removeCell(short column)
+    {
+        int pos = find(column);
+
+        if (pos < 0)
+        {
+            return false;
+        }
+        count--;
+        System.arraycopy(columns, pos + 1, columns, pos, count - pos);
+        System.arraycopy(types, pos + 1, types, pos, count - pos);
+        System.arraycopy(xfs, pos + 1, xfs, pos, count - pos);
+        System.arraycopy(values, pos + 1, values, pos, count - pos);
+        if (objects != null)
+        {
+            System.arraycopy(objects, pos + 1, objects, pos, count - pos);
+            objects[ count ] = null;
+        }
+        return true;
+    }
+
+    /**
+     * get the cell in a column as a record.  Packed cells get a new record
+     * each time; changes made to it are not seen by the row unless the
+     * record is inserted again.
+     *
+     * @return the cell, or null if there is none in that column
+     */
+
+    CellValueRecordInterface getCell(short column)
+    {
+        int pos = find(column);
+
+        return (pos < 0) ? null
+                         : getCellAt(pos);
+    }
+
+    /**
+     * get the cell at a position (0 to getNumCells() - 1) in the row
+     */
+
+    CellValueRecordInterface getCellAt(int pos)
+    {
+        switch (types[ pos ])
+        {
+
+            case TYPE_NUMBER :
+                NumberRecord number = new NumberRecord();
+
+                number.setRow(row);
+                number.setColumn(columns[ pos ]);
+                number.setXFIndex(xfs[ pos ]);
+                number.setValue(Double.longBitsToDouble(values[ pos ]));
+                return number;
+
+            case TYPE_BLANK :
+                BlankRecord blank = new BlankRecord();
+
+                blank.setRow(row);
+                blank.setColumn(columns[ pos ]);
+                blank.setXFIndex(xfs[ pos ]);
+                return blank;
+
+            case TYPE_LABELSST :
+                LabelSSTRecord label = new LabelSSTRecord();
+
+                label.setRow(row);
+                label.setColumn(columns[ pos ]);
+                label.setXFIndex(xfs[ pos ]);
+                label.setSSTIndex(( int ) values[ pos ]);
+                return label;
+
+            case TYPE_BOOLERR :
+                BoolErrRecord boolErr = new BoolErrRecord();
+
+                boolErr.setRow(row);
+                boolErr.setColumn(columns[ pos ]);
+                boolErr.setXFIndex(xfs[ pos ]);
+                boolErr.setValue(( byte ) values[ pos ]);
+                boolErr.setError((values[ pos ] & 0x100) != 0);
+                return boolErr;
+
+            default :
+                return ( CellValueRecordInterface ) objects[ pos ];
+        }
+    }
+
+    /**
+     * @return the position of the column, or -(insertion point) - 1
+     */
+
+    private int find(short column)
+    {
+        // cells are usually added left to right
+        if ((count == 0) || (column > columns[ count - 1 ]))
+        {
+            return -(count + 1);
+        }
+        int low  = 0;
+        int high = count - 1;
+
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (columns[ mid ] < column)
+            {
+                low = mid + 1;
+            }
+            else if (columns[ mid ] > column)
+            {
+                high = mid - 1;
+            }
+            else
+            {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void grow()
+    {
+        int      length     = columns.length * 2;
+        short[]  newColumns = new short[ length ];
+        byte[]   newTypes   = new byte[ length ];
+        short[]  newXfs     = new short[ length ];
+        long[]   newValues  = new long[ length ];
+
+        System.arraycopy(columns, 0, newColumns, 0, count);
+        System.arraycopy(types, 0, newTypes, 0, count);
+        System.arraycopy(xfs, 0, newXfs, 0, count);
+        System.arraycopy(values, 0, newValues, 0, count);
+        columns = newColumns;
+        types   = newTypes;
+        xfs     = newXfs;
+        values  = newValues;
+        if (objects != null)
+        {
+            Object[] newObjects = new Object[ length ];
+
+            System.arraycopy(objects, 0, newObjects, 0, count);
+            objects = newObjects;
+        }
+    }
+
+    /**
+     * write the row's cells, in column order
+     */
+
+    public int serialize(int offset, byte [] data)
+    {
+        int pos = offset;
+
+        for (int k = 0; k < count; k++)
+        {
+            switch (types[ k ])
+            {
+
+                case TYPE_NUMBER :
+                    writeHeader(data, pos, NumberRecord.sid, 14, k);
+                    LittleEndian.putDouble(data, pos + 10,
+                                           Double.longBitsToDouble(values[ k ]));
+                    pos += 18;
+                    break;
+
+                case TYPE_BLANK :
+                    writeHeader(data, pos, BlankRecord.sid, 6, k);
+                    pos += 10;
+                    break;
+
+                case TYPE_LABELSST :
+                    writeHeader(data, pos, LabelSSTRecord.sid, 10, k);
+                    LittleEndian.putInt(data, pos + 10, ( int ) values[ k ]);
+                    pos += 14;
+                    break;
+
+                case TYPE_BOOLERR :
+                    writeHeader(data, pos, BoolErrRecord.sid, 8, k);
+                    data[ pos + 10 ] = ( byte ) values[ k ];
+                    data[ pos + 11 ] = ( byte ) (values[ k ] >> 8);
+                    pos += 12;
+                    break;
+
+                default :
+                    pos += (( Record ) objects[ k ]).serialize(pos, data);
+                    break;
+            }
+        }
+        return pos - offset;
+    }
+
+    private void writeHeader(byte [] data, int pos, short sid, int size,
+                             int k)
+    {
+        LittleEndian.putShort(data, pos, sid);
+        LittleEndian.putShort(data, pos + 2, ( short ) size);
+        LittleEndian.putShort(data, pos + 4, ( short ) row);
+        LittleEndian.putShort(data, pos + 6, columns[ k ]);
+        LittleEndian.putShort(data, pos + 8, xfs[ k ]);
+    }
+
+    public int getRecordSize()
+    {
+        int size = 0;
+
+        for (int k = 0; k < count; k++)
+        {
+            switch (types[ k ])
+            {
+
+                case TYPE_NUMBER :
+                    size += 18;
+                    break;
+
+                case TYPE_BLANK :
+                    size += 10;
+                    break;
+
+                case TYPE_LABELSST :
+                    size += 14;
+                    break;
+
+                case TYPE_BOOLERR :
+                    size += 12;
+                    break;
+
+                default :
+                    size += (( Record ) objects[ k ]).getRecordSize();
+                    break;
+            }
+        }
+        return size;
+    }
+
+    protected void fillFields(byte [] data, short size, int offset)
+    {
+    }
+
+    protected void validateSid(short id)
+    {
+    }
+
+    public short getSid()
+    {
+        return ValueRecordsAggregate.sid;
+    }
+}
@@ -58,9 +58,9 @@ package org.apache.poi.hssf.record.aggregates;
 import org.apache.poi.hssf.record.Record;
 import org.apache.poi.hssf.record.RowRecord;
 import org.apache.poi.hssf.record.UnknownRecord;
+import org.apache.poi.util.PagedArray;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -73,16 +73,15 @@ import java.util.List;
 public class RowRecordsAggregate
     extends Record
 {
-    int     firstrow = -1;
-    int     lastrow  = -1;
-    Map records  = null;
-    int     size     = 0;
+    // row records indexed by row number
+    PagedArray records  = null;
+    int        size     = 0;
 
     /** Creates a new instance of ValueRecordsAggregate */
 
     public RowRecordsAggregate()
     {
-        records = new TreeMap();
+        records = new PagedArray();
 
     }
 
@@ -90,34 +89,76 @@ public class RowRecordsAggregate
     {
         size += row.getRecordSize();
 
-        // Integer integer = new Integer(row.getRowNumber());
-        records.put(row, row);
-        if ((row.getRowNumber() < firstrow) || (firstrow == -1))
+        RowRecord old = ( RowRecord ) records.put(row.getRowNumber(), row);
+
+        if (old != null)
         {
-            firstrow = row.getRowNumber();
+            size -= old.getRecordSize();
         }
-        if ((row.getRowNumber() > lastrow) || (lastrow == -1))
+    }
+
+    public void removeRow(RowRecord row)
+    {
+        if (records.remove(row.getRowNumber()) != null)
         {
-            lastrow = row.getRowNumber();
+            size -= row.getRecordSize();
         }
     }
 
-    public void removeRow(RowRecord row)
+    /**
+     * moves rows startRow to endRow by n rows.  Rows already where the
+     * moved rows land are dropped, as are rows moved off the sheet.
+     *
+     * @param startRow the first row to move
+     * @param endRow the last row to move
+     * @param n the number of rows to move by, negative to move up
+     */
+
+    public void shiftRows(int startRow, int endRow, int n)
     {
-        size -= row.getRecordSize();
+        if ((n == 0) || (startRow > endRow))
+        {
+            return;
+        }
+        List moved = removeRows(startRow, endRow);
+
+        removeRows(startRow + n, endRow + n);
+        for (int k = 0; k < moved.size(); k++)
+        {
+            RowRecord row    = ( RowRecord ) moved.get(k);
+            int       rownum = row.getRowNumber() + n;
 
-        // Integer integer = new Integer(row.getRowNumber());
-        records.remove(row);
+            if ((rownum >= 0) && (rownum <= 0xFFFF))
+            {
+                row.setRowNumber(rownum);
+                insertRow(row);
+            }
+        }
     }
 
-    public RowRecord getRow(int rownum)
+    /**
+     * @return the rows from startRow to endRow, taken out of the aggregate
+     */
+
+    private List removeRows(int startRow, int endRow)
     {
+        List removed = new ArrayList();
 
-        // Integer integer = new Integer(rownum);
-        RowRecord row = new RowRecord();
+        for (int rownum = records.nextIndex(startRow);
+                (rownum != -1) && (rownum <= endRow);
+                rownum = records.nextIndex(rownum + 1))
+        {
+            RowRecord row = ( RowRecord ) records.remove(rownum);
+
+            size -= row.getRecordSize();
+            removed.add(row);
+        }
+        return removed;
+    }
 
-        row.setRowNumber(( short ) rownum);
-        return ( RowRecord ) records.get(row);
+    public RowRecord getRow(int rownum)
+    {
+        return ( RowRecord ) records.get(rownum);
     }
 
     public int getPhysicalNumberOfRows()
@@ -127,12 +168,12 @@ public class RowRecordsAggregate
 
     public int getFirstRowNum()
     {
-        return firstrow;
+        return records.getFirstIndex();
     }
 
     public int getLastRowNum()
     {
-        return lastrow;
+        return records.getLastIndex();
     }
 
     public int construct(int offset, List records)
@@ -167,7 +208,7 @@ public class RowRecordsAggregate
 
     public int serialize(int offset, byte [] data)
     {
-        Iterator itr = records.values().iterator();
+        Iterator itr = records.iterator();
         int      pos = offset;
 
         while (itr.hasNext())
@@ -217,7 +258,7 @@ public class RowRecordsAggregate
 
     public Iterator getIterator()
     {
-        return records.values().iterator();
+        return records.iterator();
     }
     
     /** Performs a deep clone of the record*/
@@ -0,0 +1,347 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record.aggregates;
+
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordWriter;
+import org.apache.poi.hssf.record.RowRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * Holds rows and cells that have already been serialized to a temporary
+ * spill file.  Used by sheets that are generated in streaming mode: once a
+ * row falls out of the live window its RowRecord and value records are
+ * written here and dropped from the row and value aggregates.  At write
+ * time the spilled bytes are copied into the workbook stream at the position
+ * of this aggregate.
+ * <P>
+ * An aggregate created with SpilledRowsAggregate(true) keeps the rows in
+ * memory instead, with the cells packed into primitive arrays by a packed
+ * ValueRecordsAggregate.  The rows can no longer be changed either way, so
+ * nothing is lost by not keeping their records.
+ *
+ * Each flush writes a block of RowRecords followed by the cells for those
+ * rows, so the spilled data forms a sequence of ordinary row blocks.
+ * <P>
+ * The spill file stays open until dispose() is called, which the owner of
+ * the sheet has to do once the workbook has been written.
+ */
+
+public class SpilledRowsAggregate
+    extends Record
+{
+    public final static short sid  = -1000;
+    private File              file = null;
+    private OutputStream      out  = null;
+    private RecordWriter      writer = null;
+    private int               size = 0;
+    private RowRecordsAggregate   memoryRows  = null;
+    private ValueRecordsAggregate memoryCells = null;
+
+    /** Creates a new instance of SpilledRowsAggregate */
+
+    public SpilledRowsAggregate()
+    {
+        this(false);
+    }
+
+    /**
+     * Creates a new instance of SpilledRowsAggregate
+     *
+     * @param inMemory whether the rows are kept in memory, packed, rather
+     *                 than in a temporary file
+     */
+
+    public SpilledRowsAggregate(boolean inMemory)
+    {
+        if (inMemory)
+        {
+            memoryRows  = new RowRecordsAggregate();
+            memoryCells = new ValueRecordsAggregate(true);
+        }
+    }
+
+    /**
+     * @return true if the rows are kept in memory rather than in a file
+     */
+
+    public boolean isInMemory()
+    {
+        return memoryRows != null;
+    }
+
+    /**
+     * Append a block of rows and their cells to the spill file.
+     *
+     * @param rows iterator over the RowRecords of the block, in row order
+     * @param cells iterator over the value records of those rows, in row order
+     * @exception IOException if the spill file cannot be written
+     */
+
+    public void spill(Iterator rows, Iterator cells)
+        throws IOException
+    {
+        if (memoryRows != null)
+        {
+            while (rows.hasNext())
+            {
+                memoryRows.insertRow(( RowRecord ) rows.next());
+            }
+            while (cells.hasNext())
+            {
+                memoryCells.insertCell(( CellValueRecordInterface ) cells.next());
+            }
+            return;
+        }
+        if (writer == null)
+        {
+            file = File.createTempFile("poi-sheet", ".tmp");
+            out    = new BufferedOutputStream(new FileOutputStream(file));
+            writer = new RecordWriter(out);
+        }
+        while (rows.hasNext())
+        {
+            size += writer.write(( Record ) rows.next());
+        }
+        while (cells.hasNext())
+        {
+            size += writer.write(( Record ) cells.next());
+        }
+    }
+
+    /**
+     * Copy the spilled records through the given writer.
+     *
+     * @param dest the writer to copy the records to
+     * @return number of bytes written
+     * @exception IOException if the spill file cannot be read
+     */
+
+    public int serialize(RecordWriter dest)
+        throws IOException
+    {
+        if (memoryRows != null)
+        {
+            int      pos  = 0;
+            Iterator rows = memoryRows.getIterator();
+
+            while (rows.hasNext())
+            {
+                pos += dest.write(( Record ) rows.next());
+            }
+            return pos + memoryCells.serialize(dest);
+        }
+        if (size == 0)
+        {
+            return 0;
+        }
+        InputStream in = openSpillFile();
+
+        try
+        {
+            return dest.write(in, size);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * called by the class that is responsible for writing this sucker.
+     * Subclasses should implement this so that their data is passed back in a
+     * byte array.
+     *
+     * @param offset to begin writing at
+     * @param data byte array containing instance data
+     * @return number of bytes written
+     */
+
+    public int serialize(int offset, byte [] data)
+    {
+        if (memoryRows != null)
+        {
+            int pos = memoryRows.serialize(offset, data);
+
+            return pos + memoryCells.serialize(offset + pos, data);
+        }
+        if (size == 0)
+        {
+            return 0;
+        }
+        try
+        {
+            InputStream in = openSpillFile();
+
+            try
+            {
+                int pos = 0;
+
+                while (pos < size)
+                {
+                    int count = in.read(data, offset + pos, size - pos);
+
+                    if (count < 0)
+                    {
+                        throw new IOException("Spill file is truncated");
+                    }
+                    pos += count;
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new RuntimeException("Unable to read spilled rows: "
+                                       + e.getMessage());
+        }
+        return size;
+    }
+
+    /**
+     * Delete the spill file, or let go of the rows kept in memory.  The
+     * spilled rows are lost, so this should only be called once the sheet is
+     * no longer going to be written.
+     */
+
+    public void dispose()
+    {
+        if (memoryRows != null)
+        {
+            memoryRows  = new RowRecordsAggregate();
+            memoryCells = new ValueRecordsAggregate(true);
+        }
+        try
+        {
+            if (out != null)
+            {
+                out.close();
+            }
+        }
+        catch (IOException ignored)
+        {
+        }
+        if (file != null)
+        {
+            file.delete();
+        }
+        out    = null;
+        writer = null;
+        file   = null;
+        size   = 0;
+    }
+
+    private InputStream openSpillFile()
+        throws IOException
+    {
+        out.flush();
+        return new BufferedInputStream(new FileInputStream(file));
+    }
+
+    /**
+     * called by the constructor, should set class level fields.  Should throw
+     * runtime exception for bad/icomplete data.
+     *
+     * @param data raw data
+     * @param size size of data
+     * @param offset of the record's data (provided a big array of the file)
+     */
+
+    protected void fillFields(byte [] data, short size, int offset)
+    {
+    }
+
+    /**
+     * called by constructor, should throw runtime exception in the event of a
+     * record passed with a differing ID.
+     *
+     * @param id alleged id for this record
+     */
+
+    protected void validateSid(short id)
+    {
+    }
+
+    /**
+     * return the non static version of the id for this record.
+     */
+
+    public short getSid()
+    {
+        return sid;
+    }
+
+    public int getRecordSize()
+    {
+        if (memoryRows != null)
+        {
+            return memoryRows.getRecordSize() + memoryCells.getRecordSize();
+        }
+        return size;
+    }
+}
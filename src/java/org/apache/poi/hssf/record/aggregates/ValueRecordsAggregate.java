@@ -56,14 +56,38 @@
 package org.apache.poi.hssf.record.aggregates;
 
 import org.apache.poi.hssf.record.*;
+import org.apache.poi.util.PagedArray;
 
+import org.apache.poi.hssf.record.formula.AreaPtg;
+import org.apache.poi.hssf.record.formula.ExpPtg;
+import org.apache.poi.hssf.record.formula.Ptg;
+import org.apache.poi.hssf.record.formula.ReferencePtg;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
 import java.util.TreeMap;
 
 /**
  *
  * Aggregate value records together.  Things are easier to handle that way.
+ * <P>
+ * A packed aggregate (see ValueRecordsAggregate(boolean)) does not keep the
+ * cell records it is given.  Number, blank, SST label and boolean/error
+ * cells are packed into primitive arrays per row, and records are only
+ * created for them when they are iterated over; a record obtained that way
+ * must be inserted again if it is changed.  This lets large sheets of plain
+ * values be held (and written) in a fraction of the memory.
+ * <P>
+ * Shared formulas (SHRFMLA) are expanded as the aggregate is constructed,
+ * each cell getting its own tokens.  When written, runs of formulas down a
+ * column that are the same relative to their cells are grouped into shared
+ * formulas again.
  *
  * @author  andy
  * @author  Glen Stampoultzis (glens at apache.org)
@@ -74,32 +98,80 @@ public class ValueRecordsAggregate
     extends Record
 {
     public final static short sid       = -1000;
+
+    /**
+     * cells in one shared formula, the SHRFMLA use count is a single byte
+     */
+    private final static int  MAX_SHARED_CELLS = 255;
+
     int                       firstcell = -1;
     int                       lastcell  = -1;
     TreeMap                   records   = null;
+    PagedArray                packedRows  = null;   // PackedValueRows by row
+    int                       packedCells = 0;
+
+    // the formulas grouped into shared formulas by getRecordSize(), kept
+    // for the write that follows, and the parsed expression of each then
+    private List              groupedFormulas    = null;
+    private List              groupedExpressions = null;
 //    int                       size      = 0;
 
     /** Creates a new instance of ValueRecordsAggregate */
 
     public ValueRecordsAggregate()
     {
-        records = new TreeMap();
+        this(false);
     }
 
-    public void insertCell(CellValueRecordInterface cell)
+    /**
+     * Creates a new instance of ValueRecordsAggregate
+     *
+     * @param packed whether cell values are packed into primitive arrays
+     *               rather than kept as records
+     */
+
+    public ValueRecordsAggregate(boolean packed)
     {
-/*        if (records.get(cell) == null)
+        if (packed)
         {
-            size += (( Record ) cell).getRecordSize();
+            packedRows = new PagedArray();
         }
         else
         {
-            size += (( Record ) cell).getRecordSize()
-                    - (( Record ) records.get(cell)).getRecordSize();
-        }*/
+            records = new TreeMap();
+        }
+    }
 
-        // XYLocator xy = new XYLocator(cell.getRow(), cell.getColumn());
-        Object o = records.put(cell, cell);
+    /**
+     * @return true if the cell values are packed rather than kept as records
+     */
+
+    public boolean isPacked()
+    {
+        return packedRows != null;
+    }
+
+    public void insertCell(CellValueRecordInterface cell)
+    {
+        dropSharedFormulas();
+        if (packedRows != null)
+        {
+            PackedValueRow row = ( PackedValueRow ) packedRows.get(cell.getRow());
+
+            if (row == null)
+            {
+                row = new PackedValueRow(cell.getRow());
+                packedRows.put(cell.getRow(), row);
+            }
+            packedCells -= row.getNumCells();
+            row.insertCell(cell);
+            packedCells += row.getNumCells();
+        }
+        else
+        {
+            // XYLocator xy = new XYLocator(cell.getRow(), cell.getColumn());
+            records.put(cell, cell);
+        }
 
         if ((cell.getColumn() < firstcell) || (firstcell == -1))
         {
@@ -114,13 +186,206 @@ public class ValueRecordsAggregate
     public void removeCell(CellValueRecordInterface cell)
     {
   //      size -= (( Record ) cell).getRecordSize();
+        dropSharedFormulas();
 
         // XYLocator xy = new XYLocator(cell.getRow(), cell.getColumn());
-        records.remove(cell);
+        if (packedRows != null)
+        {
+            PackedValueRow row = ( PackedValueRow ) packedRows.get(cell.getRow());
+
+            if ((row != null) && row.removeCell(cell.getColumn()))
+            {
+                packedCells--;
+                if (row.getNumCells() == 0)
+                {
+                    packedRows.remove(cell.getRow());
+                }
+            }
+        }
+        else
+        {
+            records.remove(cell);
+        }
+    }
+
+    /**
+     * moves the cells of rows startRow to endRow by n rows, down if n is
+     * positive and up if it is negative.  Only the moved rows and the rows
+     * they land on are touched: the cells already in the rows moved onto
+     * are dropped, as are cells moved off the sheet.  References in the
+     * sheet's formulas to the moved cells are changed to follow them.
+     *
+     * @param startRow the first row to move
+     * @param endRow the last row to move
+     * @param n the number of rows to move by
+     */
+
+    public void shiftRows(int startRow, int endRow, int n)
+    {
+        if ((n == 0) || (startRow > endRow))
+        {
+            return;
+        }
+        dropSharedFormulas();
+        if (packedRows != null)
+        {
+            List moved = removePackedRows(startRow, endRow);
+
+            removePackedRows(startRow + n, endRow + n);
+            for (int k = 0; k < moved.size(); k++)
+            {
+                PackedValueRow row    = ( PackedValueRow ) moved.get(k);
+                int            rownum = row.getRow() + n;
+
+                if ((rownum >= 0) && (rownum <= 0xFFFF))
+                {
+                    row.setRow(rownum);
+                    packedRows.put(rownum, row);
+                    packedCells += row.getNumCells();
+                }
+            }
+        }
+        else
+        {
+            List moved = new ArrayList(cellRange(startRow, endRow).values());
+
+            cellRange(startRow, endRow).clear();
+            cellRange(startRow + n, endRow + n).clear();
+            for (int k = 0; k < moved.size(); k++)
+            {
+                CellValueRecordInterface cell =
+                    ( CellValueRecordInterface ) moved.get(k);
+                int                      rownum = cell.getRow() + n;
+
+                if ((rownum >= 0) && (rownum <= 0xFFFF))
+                {
+                    cell.setRow(rownum);
+                    records.put(cell, cell);
+                }
+            }
+        }
+        shiftFormulaReferences(startRow, endRow, n);
+    }
+
+    /**
+     * @return the packed rows from startRow to endRow, taken out of the
+     *         aggregate
+     */
+
+    private List removePackedRows(int startRow, int endRow)
+    {
+        List removed = new ArrayList();
+
+        for (int rownum = packedRows.nextIndex(startRow);
+                (rownum != -1) && (rownum <= endRow);
+                rownum = packedRows.nextIndex(rownum + 1))
+        {
+            PackedValueRow row = ( PackedValueRow ) packedRows.remove(rownum);
+
+            packedCells -= row.getNumCells();
+            removed.add(row);
+        }
+        return removed;
+    }
+
+    /**
+     * @return a view of the cells from startRow to endRow
+     */
+
+    private SortedMap cellRange(int startRow, int endRow)
+    {
+        BlankRecord from = new BlankRecord();
+        BlankRecord to   = new BlankRecord();
+
+        from.setRow(Math.max(startRow, 0));
+        to.setRow(Math.max(endRow + 1, 0));
+        return records.subMap(from, to);
+    }
+
+    /**
+     * changes the row of every reference to a cell in rows startRow to
+     * endRow by n.  The tokens are copied before they are changed, as they
+     * may be shared with other records.
+     */
+
+    private void shiftFormulaReferences(int startRow, int endRow, int n)
+    {
+        List formulas = getFormulas();
+
+        for (int k = 0; k < formulas.size(); k++)
+        {
+            List ptgs = (( FormulaRecordAggregate ) formulas.get(k))
+                .getFormulaRecord().getParsedExpression();
+
+            if (ptgs == null)
+            {
+                continue;
+            }
+            for (int i = 0; i < ptgs.size(); i++)
+            {
+                Object ptg = ptgs.get(i);
+
+                if (ptg instanceof ReferencePtg)
+                {
+                    ReferencePtg ref = ( ReferencePtg ) ptg;
+                    int          row = shiftRow(ref.getRow(), startRow,
+                                                endRow, n);
+
+                    if (row != (ref.getRow() & 0xFFFF))
+                    {
+                        ref = ( ReferencePtg ) copyPtg(ref);
+                        ref.setRow(( short ) row);
+                        ptgs.set(i, ref);
+                    }
+                }
+                else if (ptg instanceof AreaPtg)
+                {
+                    AreaPtg area  = ( AreaPtg ) ptg;
+                    int     first = shiftRow(area.getFirstRow(), startRow,
+                                             endRow, n);
+                    int     last  = shiftRow(area.getLastRow(), startRow,
+                                             endRow, n);
+
+                    if ((first != (area.getFirstRow() & 0xFFFF))
+                            || (last != (area.getLastRow() & 0xFFFF)))
+                    {
+                        area = ( AreaPtg ) copyPtg(area);
+                        area.setFirstRow(( short ) first);
+                        area.setLastRow(( short ) last);
+                        ptgs.set(i, area);
+                    }
+                }
+            }
+        }
+    }
+
+    private static int shiftRow(short reference, int startRow, int endRow,
+                                int n)
+    {
+        int row = reference & 0xFFFF;
+
+        if ((row >= startRow) && (row <= endRow) && (row + n >= 0)
+                && (row + n <= 0xFFFF))
+        {
+            return row + n;
+        }
+        return row;
+    }
+
+    private static Ptg copyPtg(Ptg ptg)
+    {
+        Ptg copy = ( Ptg ) ptg.clone();
+
+        copy.setClass(ptg.getPtgClass());
+        return copy;
     }
 
     public int getPhysicalNumberOfCells()
     {
+        if (packedRows != null)
+        {
+            return packedCells;
+        }
         return records.size();
     }
 
@@ -139,6 +404,8 @@ public class ValueRecordsAggregate
         int k = 0;
 
         FormulaRecordAggregate lastFormulaAggregate = null;
+        List                   expFormulas          = new ArrayList();
+        HashMap                sharedFormulas       = new HashMap();
 
         for (k = offset; k < records.size(); k++)
         {
@@ -152,19 +419,222 @@ public class ValueRecordsAggregate
             {
                 lastFormulaAggregate = new FormulaRecordAggregate((FormulaRecord)rec, null);
                 insertCell( lastFormulaAggregate );
+                if (getExpPtg(( FormulaRecord ) rec) != null)
+                {
+                    expFormulas.add(lastFormulaAggregate);
+                }
             }
             else if (rec instanceof StringRecord)
             {
                 lastFormulaAggregate.setStringRecord((StringRecord)rec);
             }
+            else if (rec instanceof SharedFormulaRecord)
+            {
+                SharedFormulaRecord shared = ( SharedFormulaRecord ) rec;
+
+                sharedFormulas.put(cellKey(shared.getFirstRow(),
+                                           shared.getFirstColumn()), shared);
+            }
             else if (rec.isValue())
             {
                 insertCell(( CellValueRecordInterface ) rec);
             }
         }
+        expandSharedFormulas(expFormulas, sharedFormulas);
         return k;
     }
 
+    /**
+     * @return the formula's tExp token if that is all the formula holds
+     */
+
+    private static ExpPtg getExpPtg(FormulaRecord formula)
+    {
+        List ptgs = formula.getParsedExpression();
+
+        if ((ptgs != null) && (ptgs.size() == 1)
+                && (ptgs.get(0) instanceof ExpPtg))
+        {
+            return ( ExpPtg ) ptgs.get(0);
+        }
+        return null;
+    }
+
+    private static Integer cellKey(int row, int column)
+    {
+        return new Integer((row << 8) | (column & 0xFF));
+    }
+
+    /**
+     * Gives each formula pointing at a shared formula the tokens of that
+     * shared formula, resolved against the formula's own cell.  A tExp
+     * token with no matching SHRFMLA record (an array or table formula)
+     * is left as it is.
+     */
+
+    private void expandSharedFormulas(List formulas, HashMap sharedFormulas)
+    {
+        for (int k = 0; k < formulas.size(); k++)
+        {
+            FormulaRecord       formula = (( FormulaRecordAggregate ) formulas
+                .get(k)).getFormulaRecord();
+            ExpPtg              exp     = getExpPtg(formula);
+            SharedFormulaRecord shared  =
+                ( SharedFormulaRecord ) sharedFormulas.get(cellKey(exp
+                    .getRow(), exp.getColumn()));
+
+            if ((shared != null)
+                    && shared.isInRange(formula.getRow(), formula.getColumn()))
+            {
+                formula.setParsedExpression(shared.getFormulaTokens(formula
+                    .getRow(), formula.getColumn()));
+            }
+        }
+    }
+
+    /**
+     * Groups runs of formulas down a column that read the same once their
+     * relative references are taken relative to their own cells, so that
+     * each run is written as a shared formula and a tExp token per cell.
+     * The grouping only lasts from the sizing of the aggregate to its
+     * write, see getSharedFormulas().
+     *
+     * @return the formulas now written as part of a shared formula
+     */
+
+    private List shareFormulas()
+    {
+        List    shared = new ArrayList();
+        HashMap runs   = new HashMap();   // Integer column -> FormulaRun
+
+        for (Iterator iterator = getFormulas().iterator(); iterator.hasNext(); )
+        {
+            FormulaRecordAggregate formula = ( FormulaRecordAggregate ) iterator.next();
+            int                    row     = formula.getRow();
+            Integer                column  = new Integer(formula.getColumn());
+            byte[]                 expression =
+                SharedFormulaRecord.toSharedExpression(formula
+                    .getFormulaRecord().getParsedExpression(), row, formula
+                        .getColumn());
+            FormulaRun             run     = ( FormulaRun ) runs.get(column);
+
+            if ((run != null) && (expression != null)
+                    && (run.lastRow == row - 1)
+                    && (run.formulas.size() < MAX_SHARED_CELLS)
+                    && Arrays.equals(run.expression, expression))
+            {
+                run.formulas.add(formula);
+                run.lastRow = row;
+                continue;
+            }
+            if (run != null)
+            {
+                run.share(shared);
+                runs.remove(column);
+            }
+            if (expression != null)
+            {
+                runs.put(column, new FormulaRun(formula, expression));
+            }
+        }
+        for (Iterator iterator = runs.values().iterator(); iterator.hasNext(); )
+        {
+            (( FormulaRun ) iterator.next()).share(shared);
+        }
+        return shared;
+    }
+
+    /**
+     * @return the formulas written as part of a shared formula.  The
+     *         grouping made when the aggregate was last sized is reused if
+     *         its formulas still hold the same expressions, so that a write
+     *         matches the size it was given and groups the formulas once
+     */
+
+    private List getSharedFormulas()
+    {
+        if (groupedFormulas != null)
+        {
+            for (int k = 0; k < groupedFormulas.size(); k++)
+            {
+                FormulaRecord formula =
+                    (( FormulaRecordAggregate ) groupedFormulas.get(k))
+                        .getFormulaRecord();
+
+                if (formula.getParsedExpression()
+                        != groupedExpressions.get(k))
+                {
+                    dropSharedFormulas();
+                    break;
+                }
+            }
+        }
+        if (groupedFormulas == null)
+        {
+            groupedFormulas    = shareFormulas();
+            groupedExpressions = new ArrayList(groupedFormulas.size());
+            for (int k = 0; k < groupedFormulas.size(); k++)
+            {
+                groupedExpressions.add((( FormulaRecordAggregate ) groupedFormulas
+                    .get(k)).getFormulaRecord().getParsedExpression());
+            }
+        }
+        return groupedFormulas;
+    }
+
+    /**
+     * ends the grouping made by getSharedFormulas(), if any
+     */
+
+    private void dropSharedFormulas()
+    {
+        if (groupedFormulas != null)
+        {
+            unshareFormulas(groupedFormulas);
+            groupedFormulas    = null;
+            groupedExpressions = null;
+        }
+    }
+
+    private void unshareFormulas(List shared)
+    {
+        for (int k = 0; k < shared.size(); k++)
+        {
+            (( FormulaRecordAggregate ) shared.get(k)).setSharedFormula(-1,
+                    ( short ) 0, null);
+        }
+    }
+
+    /**
+     * @return the formula cells, in row and column order
+     */
+
+    private List getFormulas()
+    {
+        List formulas = new ArrayList();
+
+        if (packedRows != null)
+        {
+            for (Iterator rows = packedRows.iterator(); rows.hasNext(); )
+            {
+                (( PackedValueRow ) rows.next()).addFormulas(formulas);
+            }
+        }
+        else
+        {
+            for (Iterator cells = records.values().iterator(); cells.hasNext(); )
+            {
+                Object cell = cells.next();
+
+                if (cell instanceof FormulaRecordAggregate)
+                {
+                    formulas.add(cell);
+                }
+            }
+        }
+        return formulas;
+    }
+
     /**
      * called by the class that is responsible for writing this sucker.
      * Subclasses should implement this so that their data is passed back in a
@@ -177,15 +647,55 @@ public class ValueRecordsAggregate
 
     public int serialize(int offset, byte [] data)
     {
-        Iterator itr = records.values().iterator();
-        int      pos = offset;
+        int pos = offset;
+
+        try
+        {
+            getSharedFormulas();
+            Iterator itr = getRecordIterator();
 
-        while (itr.hasNext())
+            while (itr.hasNext())
+            {
+                pos += (( Record ) itr.next()).serialize(pos, data);
+            }
+        }
+        finally
         {
-            pos += (( Record ) itr.next()).serialize(pos, data);
+            dropSharedFormulas();
         }
         return pos - offset;
     }
+
+    /**
+     * Writes the cells record by record, shared formulas grouped as by
+     * serialize(int, byte[]).
+     *
+     * @param writer the writer to send the records to
+     * @return the number of bytes written
+     * @exception IOException if the records cannot be written
+     */
+
+    public int serialize(RecordWriter writer)
+        throws IOException
+    {
+        int pos = 0;
+
+        try
+        {
+            getSharedFormulas();
+            Iterator itr = getRecordIterator();
+
+            while (itr.hasNext())
+            {
+                pos += writer.write(( Record ) itr.next());
+            }
+        }
+        finally
+        {
+            dropSharedFormulas();
+        }
+        return pos;
+    }
     /**
      * called by the constructor, should set class level fields.  Should throw
      * runtime exception for bad/icomplete data.
@@ -219,33 +729,162 @@ public class ValueRecordsAggregate
         return sid;
     }
 
+    /**
+     * The shared formula grouping made to size the aggregate is kept for
+     * the write that follows, see getSharedFormulas().
+     */
+
     public int getRecordSize() {
     
-        int size = 0;
-        Iterator irecs = records.values().iterator();
-        
-        while (irecs.hasNext()) {
+        int     size  = 0;
+        boolean sized = false;
+
+        try {
+            getSharedFormulas();
+            Iterator irecs = getRecordIterator();
+
+            while (irecs.hasNext()) {
                 size += (( Record ) irecs.next()).getRecordSize();
+            }
+            sized = true;
+        } finally {
+            if (!sized) {
+                dropSharedFormulas();
+            }
         }
-
         return size;
 //        return size;
     }
 
+    /**
+     * @return the cells, in row and column order.  For a packed aggregate the
+     *         packed cells are created as they are returned
+     */
+
     public Iterator getIterator()
     {
+        if (packedRows != null)
+        {
+            return new PackedCellIterator();
+        }
+        return records.values().iterator();
+    }
+
+    /**
+     * @return the records to serialize, in order: the cells themselves, or
+     *         for a packed aggregate one record per row that writes all of
+     *         that row's cells
+     */
+
+    public Iterator getRecordIterator()
+    {
+        if (packedRows != null)
+        {
+            return packedRows.iterator();
+        }
         return records.values().iterator();
     }
 
     /** Performs a deep clone of the record*/
     public Object clone() {
-      ValueRecordsAggregate rec = new ValueRecordsAggregate();
+      ValueRecordsAggregate rec = new ValueRecordsAggregate(isPacked());
       for (Iterator valIter = getIterator(); valIter.hasNext();) {
         CellValueRecordInterface val = (CellValueRecordInterface)((CellValueRecordInterface)valIter.next()).clone();
         rec.insertCell(val);
       }
       return rec;
     }
+
+    /**
+     * formulas down a column that may become one shared formula
+     */
+
+    private static class FormulaRun
+    {
+        List   formulas = new ArrayList();
+        byte[] expression;
+        int    lastRow;
+
+        FormulaRun(FormulaRecordAggregate first, byte[] expression)
+        {
+            formulas.add(first);
+            this.expression = expression;
+            lastRow         = first.getRow();
+        }
+
+        /**
+         * marks the run's formulas as shared if that makes them smaller:
+         * each cell saves its expression less a tExp token, the first
+         * cell also pays for the SHRFMLA record
+         */
+
+        void share(List shared)
+        {
+            int count = formulas.size();
+            int saved = count * (expression.length - 5);
+
+            if ((count < 2) || (saved <= 14 + expression.length))
+            {
+                return;
+            }
+            FormulaRecordAggregate first  = ( FormulaRecordAggregate ) formulas.get(0);
+            SharedFormulaRecord    record = new SharedFormulaRecord();
+
+            record.setFirstRow(first.getRow());
+            record.setLastRow(lastRow);
+            record.setFirstColumn(first.getColumn());
+            record.setLastColumn(first.getColumn());
+            record.setUseCount(( short ) count);
+            record.setSharedExpression(expression);
+            for (int k = 0; k < count; k++)
+            {
+                (( FormulaRecordAggregate ) formulas.get(k)).setSharedFormula(
+                    first.getRow(), first.getColumn(), (k == 0) ? record
+                                                                : null);
+            }
+            shared.addAll(formulas);
+        }
+    }
+
+    /**
+     * iterates over the cells of a packed aggregate, creating their records
+     */
+
+    private class PackedCellIterator
+        implements Iterator
+    {
+        private Iterator       rows = packedRows.iterator();
+        private PackedValueRow row  = null;
+        private int            pos  = 0;
+
+        public boolean hasNext()
+        {
+            while ((row == null) || (pos >= row.getNumCells()))
+            {
+                if (!rows.hasNext())
+                {
+                    return false;
+                }
+                row = ( PackedValueRow ) rows.next();
+                pos = 0;
+            }
+            return true;
+        }
+
+        public Object next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return row.getCellAt(pos++);
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
 
 /*
@@ -61,6 +61,7 @@
 package org.apache.poi.hssf.record.formula;
 
 import org.apache.poi.hssf.util.SheetReferences;
+import org.apache.poi.util.LittleEndian;
 
 /**
  *
@@ -73,6 +74,8 @@ public class ExpPtg
 {
     private final static int  SIZE = 5;
     public final static short sid  = 0x1;
+    private int               field_1_first_row;
+    private short             field_2_first_col;
 
     /** Creates new ExpPtg */
 
@@ -80,14 +83,32 @@ public class ExpPtg
     {
     }
 
+    /**
+     * Creates new ExpPtg pointing at the first cell of a shared formula
+     *
+     * @param row the row of the shared formula's first cell
+     * @param column the column of the shared formula's first cell
+     */
+
+    public ExpPtg(int row, short column)
+    {
+        field_1_first_row = row;
+        field_2_first_col = column;
+    }
+
     /** Creates new ExpPtg */
 
     public ExpPtg(byte [] array, int offset)
     {
+        field_1_first_row = LittleEndian.getUShort(array, offset + 1);
+        field_2_first_col = LittleEndian.getShort(array, offset + 3);
     }
 
     public void writeBytes(byte [] array, int offset)
     {
+        array[ offset + 0 ] = ( byte ) sid;
+        LittleEndian.putShort(array, offset + 1, ( short ) field_1_first_row);
+        LittleEndian.putShort(array, offset + 3, field_2_first_col);
     }
 
     public int getSize()
@@ -95,6 +116,26 @@ public class ExpPtg
         return SIZE;
     }
 
+    /**
+     * @return the row of the first cell of the shared formula (or array
+     *         formula) this cell uses
+     */
+
+    public int getRow()
+    {
+        return field_1_first_row;
+    }
+
+    /**
+     * @return the column of the first cell of the shared formula (or array
+     *         formula) this cell uses
+     */
+
+    public short getColumn()
+    {
+        return field_2_first_col;
+    }
+
     public String toFormulaString(SheetReferences refs)
     {
         return "NO IDEA SHARED FORMULA EXP PTG";
@@ -103,7 +144,7 @@ public class ExpPtg
     public byte getDefaultOperandClass() {return Ptg.CLASS_VALUE;}
     
     public Object clone() {
-      throw new RuntimeException("NO IDEA SHARED FORMULA EXP PTG");
+      return new ExpPtg(field_1_first_row, field_2_first_col);
     }
 
 }
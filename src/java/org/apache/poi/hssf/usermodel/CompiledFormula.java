@@ -0,0 +1,1027 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.model.Workbook;
+import org.apache.poi.hssf.record.formula.AbstractFunctionPtg;
+import org.apache.poi.hssf.record.formula.AddPtg;
+import org.apache.poi.hssf.record.formula.Area3DPtg;
+import org.apache.poi.hssf.record.formula.AreaPtg;
+import org.apache.poi.hssf.record.formula.AttrPtg;
+import org.apache.poi.hssf.record.formula.BoolPtg;
+import org.apache.poi.hssf.record.formula.ConcatPtg;
+import org.apache.poi.hssf.record.formula.DividePtg;
+import org.apache.poi.hssf.record.formula.EqualPtg;
+import org.apache.poi.hssf.record.formula.IntPtg;
+import org.apache.poi.hssf.record.formula.MemFuncPtg;
+import org.apache.poi.hssf.record.formula.MissingArgPtg;
+import org.apache.poi.hssf.record.formula.MultiplyPtg;
+import org.apache.poi.hssf.record.formula.NamePtg;
+import org.apache.poi.hssf.record.formula.NumberPtg;
+import org.apache.poi.hssf.record.formula.ParenthesisPtg;
+import org.apache.poi.hssf.record.formula.PowerPtg;
+import org.apache.poi.hssf.record.formula.Ptg;
+import org.apache.poi.hssf.record.formula.Ref3DPtg;
+import org.apache.poi.hssf.record.formula.ReferencePtg;
+import org.apache.poi.hssf.record.formula.StringPtg;
+import org.apache.poi.hssf.record.formula.SubtractPtg;
+import org.apache.poi.hssf.record.formula.UnionPtg;
+
+/**
+ * A formula's parsed expression flattened into a small stack program.  The
+ * RPN token list is walked once: literals become constants, references
+ * become (sheet, row, column) slots and the byte offsets carried by the
+ * tAttr jumps of an optimized IF are remapped to instruction indices, so
+ * evaluating the formula again and again never touches the Ptgs.<p>
+ *
+ * Values on the stack are Double, String, Boolean, Byte (an error code, see
+ * HSSFErrorConstants), Area or null for a blank cell or missing argument.
+ *
+ * @see HSSFFormulaEvaluator
+ */
+
+final class CompiledFormula
+{
+    static final Byte        ERROR_NULL    = new Byte(HSSFErrorConstants.ERROR_NULL);
+    static final Byte        ERROR_DIV_0   = new Byte(HSSFErrorConstants.ERROR_DIV_0);
+    static final Byte        ERROR_VALUE   = new Byte(HSSFErrorConstants.ERROR_VALUE);
+    static final Byte        ERROR_REF     = new Byte(HSSFErrorConstants.ERROR_REF);
+    static final Byte        ERROR_NAME    = new Byte(HSSFErrorConstants.ERROR_NAME);
+    static final Byte        ERROR_NUM     = new Byte(HSSFErrorConstants.ERROR_NUM);
+    static final Byte        ERROR_NA      = new Byte(HSSFErrorConstants.ERROR_NA);
+
+    private static final int PUSH_CONST    = 0;
+    private static final int PUSH_REF      = 1;
+    private static final int ADD           = 2;
+    private static final int SUBTRACT      = 3;
+    private static final int MULTIPLY      = 4;
+    private static final int DIVIDE        = 5;
+    private static final int POWER         = 6;
+    private static final int CONCAT        = 7;
+    private static final int EQUAL         = 8;
+    private static final int JUMP_IF_FALSE = 9;
+    private static final int JUMP          = 10;
+    private static final int IF_FALSE      = 11;
+    private static final int FUNCTION      = 12;
+    private static final int UNION         = 13;
+
+    private static final int FUNCTION_IF   = 1;
+    private static final int FUNCTION_SUM  = 4;
+
+    private int[]            _ops;
+    private int[]            _args;
+    private int[]            _args2;
+    private Object[]         _constants;
+    private int[]            _ref_sheets;
+    private int[]            _ref_rows;
+    private int[]            _ref_columns;
+    private Area[]           _areas;
+    private int              _max_stack;
+
+    private CompiledFormula()
+    {
+    }
+
+    /**
+     * Compiles the parsed expression of a formula.
+     *
+     * @param ptgs the formula's tokens in RPN order
+     * @param sheet index of the sheet holding the formula, the sheet
+     *              unqualified references point to
+     * @param workbook used to resolve 3D references
+     *
+     * @return the compiled formula or null if the expression uses a token
+     *         the evaluator doesn't support (shared formulas, array
+     *         formulas, CHOOSE, ...)
+     */
+
+    static CompiledFormula compile(List ptgs, int sheet, Workbook workbook)
+    {
+        if ((ptgs == null) || ptgs.isEmpty())
+        {
+            return null;
+        }
+        Compiler compiler = new Compiler(ptgs.size());
+
+        for (int k = 0; k < ptgs.size(); k++)
+        {
+            compiler.startToken(k);
+            if (!compiler.emit(( Ptg ) ptgs.get(k), sheet, workbook))
+            {
+                return null;
+            }
+        }
+        return compiler.finish();
+    }
+
+    /**
+     * @return the number of single cells this formula reads
+     */
+
+    int getReferenceCount()
+    {
+        return _ref_sheets.length;
+    }
+
+    int getReferenceSheet(int index)
+    {
+        return _ref_sheets[ index ];
+    }
+
+    int getReferenceRow(int index)
+    {
+        return _ref_rows[ index ];
+    }
+
+    int getReferenceColumn(int index)
+    {
+        return _ref_columns[ index ];
+    }
+
+    /**
+     * @return the areas this formula reads
+     */
+
+    Area[] getAreas()
+    {
+        return _areas;
+    }
+
+    /**
+     * Runs the program.
+     *
+     * @param evaluator supplies the values of referenced cells
+     * @return the formula's value
+     */
+
+    Object evaluate(HSSFFormulaEvaluator evaluator)
+    {
+        Object[] stack = new Object[ _max_stack ];
+        int      sp    = 0;
+        int      pc    = 0;
+
+        while (pc < _ops.length)
+        {
+            int arg = _args[ pc ];
+
+            switch (_ops[ pc ])
+            {
+
+                case PUSH_CONST :
+                    stack[ sp++ ] = _constants[ arg ];
+                    break;
+
+                case PUSH_REF :
+                    stack[ sp++ ] = evaluator.getCellValue(_ref_sheets[ arg ],
+                            _ref_rows[ arg ], _ref_columns[ arg ]);
+                    break;
+
+                case ADD :
+                case SUBTRACT :
+                case MULTIPLY :
+                case DIVIDE :
+                case POWER :
+                    sp--;
+                    stack[ sp - 1 ] = arithmetic(_ops[ pc ],
+                            single(stack[ sp - 1 ], evaluator),
+                            single(stack[ sp ], evaluator));
+                    break;
+
+                case CONCAT :
+                    sp--;
+                    stack[ sp - 1 ] = concat(single(stack[ sp - 1 ], evaluator),
+                                             single(stack[ sp ], evaluator));
+                    break;
+
+                case EQUAL :
+                    sp--;
+                    stack[ sp - 1 ] = equal(single(stack[ sp - 1 ], evaluator),
+                                            single(stack[ sp ], evaluator));
+                    break;
+
+                case JUMP_IF_FALSE :
+                    Object condition = toBoolean(single(stack[ --sp ], evaluator));
+
+                    if ((condition instanceof Byte) && (_args2[ pc ] >= 0))
+                    {
+
+                        // an error condition is the value of the whole IF
+                        stack[ sp++ ] = condition;
+                        pc            = _args2[ pc ];
+                        continue;
+                    }
+                    if (!Boolean.TRUE.equals(condition))
+                    {
+                        pc = arg;
+                        continue;
+                    }
+                    break;
+
+                case JUMP :
+                    pc = arg;
+                    continue;
+
+                case IF_FALSE :
+                    stack[ sp++ ] = Boolean.FALSE;
+                    break;
+
+                case FUNCTION :
+                    int      count    = _args2[ pc ];
+                    Object[] operands = new Object[ count ];
+
+                    sp -= count;
+                    System.arraycopy(stack, sp, operands, 0, count);
+                    stack[ sp++ ] = FormulaFunctions.call(arg, operands,
+                                                          evaluator);
+                    break;
+
+                case UNION :
+                    sp--;
+                    stack[ sp - 1 ] = union(stack[ sp - 1 ], stack[ sp ]);
+                    break;
+            }
+            pc++;
+        }
+        return single(stack[ 0 ], evaluator);
+    }
+
+    /**
+     * Reduces a single cell area to that cell's value, a value that
+     * isn't an area is returned as is.  Larger areas in a place that
+     * expects a single value are a #VALUE! error.
+     */
+
+    static Object single(Object value, HSSFFormulaEvaluator evaluator)
+    {
+        if (value instanceof Area)
+        {
+            Area area = ( Area ) value;
+
+            if ((area.next == null) && (area.firstRow == area.lastRow)
+                    && (area.firstColumn == area.lastColumn))
+            {
+                return evaluator.getCellValue(area.sheet, area.firstRow,
+                                              area.firstColumn);
+            }
+            return ERROR_VALUE;
+        }
+        return value;
+    }
+
+    /**
+     * @return the value as a Double or an error code
+     */
+
+    static Object toNumber(Object value)
+    {
+        if (value == null)
+        {
+            return new Double(0);
+        }
+        if ((value instanceof Double) || (value instanceof Byte))
+        {
+            return value;
+        }
+        if (value instanceof Boolean)
+        {
+            return new Double(((Boolean) value).booleanValue() ? 1 : 0);
+        }
+        if (value instanceof String)
+        {
+            try
+            {
+                return Double.valueOf((( String ) value).trim());
+            }
+            catch (NumberFormatException e)
+            {
+                return ERROR_VALUE;
+            }
+        }
+        return ERROR_VALUE;
+    }
+
+    /**
+     * @return the value as a Boolean or an error code
+     */
+
+    static Object toBoolean(Object value)
+    {
+        if (value == null)
+        {
+            return Boolean.FALSE;
+        }
+        if ((value instanceof Boolean) || (value instanceof Byte))
+        {
+            return value;
+        }
+        if (value instanceof Double)
+        {
+            return (((Double) value).doubleValue() != 0) ? Boolean.TRUE
+                                                          : Boolean.FALSE;
+        }
+        if (value instanceof String)
+        {
+            if ("TRUE".equalsIgnoreCase(( String ) value))
+            {
+                return Boolean.TRUE;
+            }
+            if ("FALSE".equalsIgnoreCase(( String ) value))
+            {
+                return Boolean.FALSE;
+            }
+        }
+        return ERROR_VALUE;
+    }
+
+    /**
+     * @return the value as a String or an error code
+     */
+
+    static Object toText(Object value)
+    {
+        if (value == null)
+        {
+            return "";
+        }
+        if ((value instanceof String) || (value instanceof Byte))
+        {
+            return value;
+        }
+        if (value instanceof Boolean)
+        {
+            return ((Boolean) value).booleanValue() ? "TRUE" : "FALSE";
+        }
+        if (value instanceof Double)
+        {
+            double number = (( Double ) value).doubleValue();
+
+            if ((number == Math.floor(number)) && (Math.abs(number) < 1e15))
+            {
+                return Long.toString(( long ) number);
+            }
+            return Double.toString(number);
+        }
+        return ERROR_VALUE;
+    }
+
+    /**
+     * @return the number as a Double, or #NUM! if it isn't finite
+     */
+
+    static Object number(double value)
+    {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+        {
+            return ERROR_NUM;
+        }
+        return new Double(value);
+    }
+
+    private static Object arithmetic(int op, Object left, Object right)
+    {
+        left  = toNumber(left);
+        right = toNumber(right);
+        if (left instanceof Byte)
+        {
+            return left;
+        }
+        if (right instanceof Byte)
+        {
+            return right;
+        }
+        double a = (( Double ) left).doubleValue();
+        double b = (( Double ) right).doubleValue();
+
+        switch (op)
+        {
+
+            case ADD :
+                return number(a + b);
+
+            case SUBTRACT :
+                return number(a - b);
+
+            case MULTIPLY :
+                return number(a * b);
+
+            case DIVIDE :
+                if (b == 0)
+                {
+                    return ERROR_DIV_0;
+                }
+                return number(a / b);
+
+            default :
+                return number(Math.pow(a, b));
+        }
+    }
+
+    private static Object concat(Object left, Object right)
+    {
+        left  = toText(left);
+        right = toText(right);
+        if (left instanceof Byte)
+        {
+            return left;
+        }
+        if (right instanceof Byte)
+        {
+            return right;
+        }
+        return (( String ) left) + (( String ) right);
+    }
+
+    /**
+     * Excel's comparison: a blank matches 0, "" and FALSE, otherwise
+     * values of different types are never equal and strings compare
+     * without regard to case.
+     */
+
+    private static Object equal(Object left, Object right)
+    {
+        if (left instanceof Byte)
+        {
+            return left;
+        }
+        if (right instanceof Byte)
+        {
+            return right;
+        }
+        if (left == null)
+        {
+            left = blankLike(right);
+        }
+        if (right == null)
+        {
+            right = blankLike(left);
+        }
+        boolean result;
+
+        if ((left instanceof String) && (right instanceof String))
+        {
+            result = (( String ) left).equalsIgnoreCase(( String ) right);
+        }
+        else
+        {
+            result = left.equals(right);
+        }
+        return result ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    private static Object blankLike(Object other)
+    {
+        if (other instanceof String)
+        {
+            return "";
+        }
+        if (other instanceof Boolean)
+        {
+            return Boolean.FALSE;
+        }
+        return new Double(0);
+    }
+
+    private static Object union(Object left, Object right)
+    {
+        if (!(left instanceof Area) || !(right instanceof Area))
+        {
+            return ERROR_VALUE;
+        }
+        Area head = null;
+        Area tail = null;
+
+        for (Area area = ( Area ) left; area != null; area = area.next)
+        {
+            Area copy = new Area(area.sheet, area.firstRow, area.firstColumn,
+                                 area.lastRow, area.lastColumn);
+
+            if (tail == null)
+            {
+                head = copy;
+            }
+            else
+            {
+                tail.next = copy;
+            }
+            tail = copy;
+        }
+        tail.next = ( Area ) right;
+        return head;
+    }
+
+    /**
+     * A rectangular block of cells on one sheet.  A union of areas is
+     * a chain linked through next.
+     */
+
+    static final class Area
+    {
+        final int sheet;
+        final int firstRow;
+        final int firstColumn;
+        final int lastRow;
+        final int lastColumn;
+        Area      next;
+
+        Area(int sheet, int firstRow, int firstColumn, int lastRow,
+             int lastColumn)
+        {
+            this.sheet       = sheet;
+            this.firstRow    = Math.min(firstRow, lastRow);
+            this.firstColumn = Math.min(firstColumn, lastColumn);
+            this.lastRow     = Math.max(firstRow, lastRow);
+            this.lastColumn  = Math.max(firstColumn, lastColumn);
+        }
+
+        boolean contains(int sheet, int row, int column)
+        {
+            return (this.sheet == sheet) && (row >= firstRow)
+                   && (row <= lastRow) && (column >= firstColumn)
+                   && (column <= lastColumn);
+        }
+    }
+
+    /**
+     * Translates the token list one Ptg at a time, then resolves the
+     * jumps and checks the stack discipline of the finished program.
+     */
+
+    private static final class Compiler
+    {
+        private int[]     ops            = new int[ 16 ];
+        private int[]     args           = new int[ 16 ];
+        private int[]     args2          = new int[ 16 ];
+        private int       count          = 0;
+        private List      constants      = new ArrayList();
+        private List      references     = new ArrayList();
+        private List      areas          = new ArrayList();
+
+        // per token: byte offset and first instruction
+        private int[]     tokenOffsets;
+        private int[]     tokenInstructions;
+        private int       offset         = 0;
+
+        // attr tokens of IFs whose tFuncVar hasn't been seen yet
+        private List      openIfs        = new ArrayList();
+
+        Compiler(int tokens)
+        {
+            tokenOffsets      = new int[ tokens + 1 ];
+            tokenInstructions = new int[ tokens + 1 ];
+        }
+
+        void startToken(int token)
+        {
+            tokenOffsets[ token ]      = offset;
+            tokenInstructions[ token ] = count;
+        }
+
+        /**
+         * @return false if the token can't be compiled
+         */
+
+        boolean emit(Ptg ptg, int sheet, Workbook workbook)
+        {
+            int size = ptg.getSize();
+
+            offset += size;
+            if (ptg instanceof IntPtg)
+            {
+                pushConstant(new Double((( IntPtg ) ptg).getValue() & 0xFFFF));
+            }
+            else if (ptg instanceof NumberPtg)
+            {
+                pushConstant(new Double((( NumberPtg ) ptg).getValue()));
+            }
+            else if (ptg instanceof StringPtg)
+            {
+                pushConstant((( StringPtg ) ptg).getValue());
+            }
+            else if (ptg instanceof BoolPtg)
+            {
+                pushConstant((( BoolPtg ) ptg).getValue() ? Boolean.TRUE
+                                                          : Boolean.FALSE);
+            }
+            else if (ptg instanceof MissingArgPtg)
+            {
+                pushConstant(null);
+            }
+            else if (ptg instanceof NamePtg)
+            {
+                pushConstant(ERROR_NAME);
+            }
+            else if (ptg instanceof ReferencePtg)
+            {
+                ReferencePtg ref = ( ReferencePtg ) ptg;
+
+                pushReference(sheet, ref.getRow() & 0xFFFF, ref.getColumn());
+            }
+            else if (ptg instanceof Ref3DPtg)
+            {
+                Ref3DPtg ref = ( Ref3DPtg ) ptg;
+
+                pushReference(workbook.getSheetIndexFromExternSheetIndex(ref
+                    .getExternSheetIndex()), ref.getRow() & 0xFFFF, ref
+                        .getColumn());
+            }
+            else if (ptg instanceof AreaPtg)
+            {
+                AreaPtg area = ( AreaPtg ) ptg;
+
+                pushArea(sheet, area.getFirstRow() & 0xFFFF,
+                         area.getFirstColumn(), area.getLastRow() & 0xFFFF,
+                         area.getLastColumn());
+            }
+            else if (ptg instanceof Area3DPtg)
+            {
+                Area3DPtg area = ( Area3DPtg ) ptg;
+
+                pushArea(workbook.getSheetIndexFromExternSheetIndex(area
+                    .getExternSheetIndex()), area.getFirstRow() & 0xFFFF, area
+                        .getFirstColumn(), area.getLastRow() & 0xFFFF, area
+                        .getLastColumn());
+            }
+            else if (ptg instanceof AddPtg)
+            {
+                add(ADD, 0, 0);
+            }
+            else if (ptg instanceof SubtractPtg)
+            {
+                add(SUBTRACT, 0, 0);
+            }
+            else if (ptg instanceof MultiplyPtg)
+            {
+                add(MULTIPLY, 0, 0);
+            }
+            else if (ptg instanceof DividePtg)
+            {
+                add(DIVIDE, 0, 0);
+            }
+            else if (ptg instanceof PowerPtg)
+            {
+                add(POWER, 0, 0);
+            }
+            else if (ptg instanceof ConcatPtg)
+            {
+                add(CONCAT, 0, 0);
+            }
+            else if (ptg instanceof EqualPtg)
+            {
+                add(EQUAL, 0, 0);
+            }
+            else if (ptg instanceof UnionPtg)
+            {
+                add(UNION, 0, 0);
+            }
+            else if (ptg instanceof AttrPtg)
+            {
+                return emitAttr(( AttrPtg ) ptg);
+            }
+            else if (ptg instanceof AbstractFunctionPtg)
+            {
+                AbstractFunctionPtg function = ( AbstractFunctionPtg ) ptg;
+                int                 index    = function.getFunctionIndex();
+
+                if ((index == FUNCTION_IF) && !openIfs.isEmpty())
+                {
+
+                    // only reached by the false jump of a two argument IF
+                    openIfs.remove(openIfs.size() - 1);
+                    add(IF_FALSE, 0, 0);
+                }
+                else
+                {
+                    add(FUNCTION, index, function.getNumberOfOperands());
+                }
+            }
+            else if (!(ptg instanceof ParenthesisPtg)
+                     && !(ptg instanceof MemFuncPtg))
+            {
+                return false;
+            }
+            return true;
+        }
+
+        private boolean emitAttr(AttrPtg attr)
+        {
+
+            // jump targets are byte offsets from the end of the tAttr,
+            // kept in args until finish() turns them into instructions
+            if (attr.isOptimizedIf())
+            {
+                openIfs.add(attr);
+                add(JUMP_IF_FALSE, offset + attr.getData(), -1);
+            }
+            else if (attr.isGoto())
+            {
+                add(JUMP, offset + attr.getData() + 1, 0);
+            }
+            else if (attr.isSum())
+            {
+                add(FUNCTION, FUNCTION_SUM, 1);
+            }
+            else if (attr.isOptimizedChoose())
+            {
+                return false;
+            }
+
+            // space and volatile markers have no effect on the value
+            return true;
+        }
+
+        private void pushConstant(Object value)
+        {
+            constants.add(value);
+            add(PUSH_CONST, constants.size() - 1, 0);
+        }
+
+        private void pushReference(int sheet, int row, int column)
+        {
+            if (sheet < 0)
+            {
+                pushConstant(ERROR_REF);
+                return;
+            }
+            references.add(new int[]
+            {
+                sheet, row, column
+            });
+            add(PUSH_REF, references.size() - 1, 0);
+        }
+
+        private void pushArea(int sheet, int firstRow, int firstColumn,
+                              int lastRow, int lastColumn)
+        {
+            if (sheet < 0)
+            {
+                pushConstant(ERROR_REF);
+                return;
+            }
+            Area area = new Area(sheet, firstRow, firstColumn, lastRow,
+                                 lastColumn);
+
+            areas.add(area);
+            pushConstant(area);
+        }
+
+        private void add(int op, int arg, int arg2)
+        {
+            if (count == ops.length)
+            {
+                ops   = grow(ops);
+                args  = grow(args);
+                args2 = grow(args2);
+            }
+            ops[ count ]   = op;
+            args[ count ]  = arg;
+            args2[ count ] = arg2;
+            count++;
+        }
+
+        private static int[] grow(int[] array)
+        {
+            int[] grown = new int[ array.length * 2 ];
+
+            System.arraycopy(array, 0, grown, 0, array.length);
+            return grown;
+        }
+
+        /**
+         * @return the instruction a byte offset lands on, or -1 if the
+         *         offset isn't the start of a token
+         */
+
+        private int instructionAt(int byteOffset)
+        {
+            int tokens = tokenOffsets.length - 1;
+
+            tokenOffsets[ tokens ]      = offset;
+            tokenInstructions[ tokens ] = count;
+            for (int k = 0; k <= tokens; k++)
+            {
+                if (tokenOffsets[ k ] == byteOffset)
+                {
+                    return tokenInstructions[ k ];
+                }
+                if (tokenOffsets[ k ] > byteOffset)
+                {
+                    break;
+                }
+            }
+            return -1;
+        }
+
+        CompiledFormula finish()
+        {
+            for (int k = 0; k < count; k++)
+            {
+                if ((ops[ k ] == JUMP) || (ops[ k ] == JUMP_IF_FALSE))
+                {
+                    args[ k ] = instructionAt(args[ k ]);
+                    if (args[ k ] <= k)
+                    {
+                        return null;
+                    }
+                }
+            }
+
+            // an error in an IF's condition skips to the end of the IF,
+            // which is where the goto ending the true branch jumps to
+            for (int k = 0; k < count; k++)
+            {
+                if (ops[ k ] == JUMP_IF_FALSE)
+                {
+                    int falseBranch = args[ k ];
+
+                    if ((falseBranch > 0) && (ops[ falseBranch - 1 ] == JUMP))
+                    {
+                        args2[ k ] = args[ falseBranch - 1 ];
+                    }
+                }
+            }
+            int maxStack = checkStack();
+
+            if (maxStack < 0)
+            {
+                return null;
+            }
+            CompiledFormula formula = new CompiledFormula();
+
+            formula._ops         = trim(ops);
+            formula._args        = trim(args);
+            formula._args2       = trim(args2);
+            formula._constants   = constants.toArray();
+            formula._max_stack   = maxStack;
+            formula._ref_sheets  = new int[ references.size() ];
+            formula._ref_rows    = new int[ references.size() ];
+            formula._ref_columns = new int[ references.size() ];
+            for (int k = 0; k < references.size(); k++)
+            {
+                int[] reference = ( int [] ) references.get(k);
+
+                formula._ref_sheets[ k ]  = reference[ 0 ];
+                formula._ref_rows[ k ]    = reference[ 1 ];
+                formula._ref_columns[ k ] = reference[ 2 ];
+            }
+            formula._areas = ( Area [] ) areas.toArray(new Area[ areas.size() ]);
+            return formula;
+        }
+
+        private int[] trim(int[] array)
+        {
+            int[] trimmed = new int[ count ];
+
+            System.arraycopy(array, 0, trimmed, 0, count);
+            return trimmed;
+        }
+
+        /**
+         * Walks the program recording the stack depth on entry to each
+         * instruction.  All jumps go forward, so one pass sees every
+         * path into an instruction before the instruction itself.
+         *
+         * @return the deepest the stack gets, or -1 if some path pops
+         *         more than it pushed, two paths disagree or the program
+         *         doesn't end with exactly one value
+         */
+
+        private int checkStack()
+        {
+            int[] depths = new int[ count + 1 ];
+            int   max    = 1;
+
+            for (int k = 0; k <= count; k++)
+            {
+                depths[ k ] = -1;
+            }
+            depths[ 0 ] = 0;
+            for (int k = 0; k < count; k++)
+            {
+                int depth = depths[ k ];
+
+                if (depth < 0)
+                {
+                    continue;   // unreachable
+                }
+                int pops   = 0;
+                int pushes = 1;
+
+                switch (ops[ k ])
+                {
+
+                    case PUSH_CONST :
+                    case PUSH_REF :
+                    case IF_FALSE :
+                        break;
+
+                    case JUMP_IF_FALSE :
+                        pops   = 1;
+                        pushes = 0;
+                        break;
+
+                    case JUMP :
+                        pushes = 0;
+                        break;
+
+                    case FUNCTION :
+                        pops = args2[ k ];
+                        break;
+
+                    default :
+                        pops = 2;
+                        break;
+                }
+                if (depth < pops)
+                {
+                    return -1;
+                }
+                depth = depth - pops + pushes;
+                max   = Math.max(max, depth);
+                if ((ops[ k ] != JUMP)
+                        && !mergeDepth(depths, k + 1, depth))
+                {
+                    return -1;
+                }
+                if ((ops[ k ] == JUMP) || (ops[ k ] == JUMP_IF_FALSE))
+                {
+                    if (!mergeDepth(depths, args[ k ], depth))
+                    {
+                        return -1;
+                    }
+                }
+                if ((ops[ k ] == JUMP_IF_FALSE) && (args2[ k ] >= 0)
+                        && !mergeDepth(depths, args2[ k ], depth + 1))
+                {
+                    return -1;
+                }
+            }
+            return (depths[ count ] == 1) ? max
+                                          : -1;
+        }
+
+        private static boolean mergeDepth(int[] depths, int instruction,
+                                          int depth)
+        {
+            if (depths[ instruction ] < 0)
+            {
+                depths[ instruction ] = depth;
+            }
+            return depths[ instruction ] == depth;
+        }
+    }
+}
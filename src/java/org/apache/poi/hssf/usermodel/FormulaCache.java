@@ -0,0 +1,220 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.util.HashMap;
+
+import org.apache.poi.hssf.model.Workbook;
+
+/**
+ * Keeps the most recently parsed formulas so that setting the same formula
+ * on many cells runs FormulaParser once.  Formulas are looked up by their
+ * text with the white space outside of quotes removed.  Only formulas whose
+ * tokens do not depend on the workbook are kept, so one cache serves every
+ * workbook; formulas with sheet or name references are parsed each time.
+ *
+ * @see HSSFCell#setCellFormula(String)
+ */
+
+final class FormulaCache
+{
+    private final static int  CAPACITY = 256;
+    private static HashMap    entries  = new HashMap();
+
+    // most recently used first, a circular list around head
+    private static Entry      head     = new Entry(null, null);
+
+    static
+    {
+        head.previous = head;
+        head.next     = head;
+    }
+
+    private FormulaCache()
+    {
+    }
+
+    /**
+     * @param book the workbook the formula is parsed for
+     * @param formula the formula
+     * @return the formula's template, anchored at the first cell of the
+     *         sheet
+     */
+
+    static HSSFFormulaTemplate getTemplate(Workbook book, String formula)
+    {
+        String key = normalize(formula);
+
+        synchronized (entries)
+        {
+            Entry entry = ( Entry ) entries.get(key);
+
+            if (entry != null)
+            {
+                entry.unlink();
+                entry.linkAfter(head);
+                return entry.template;
+            }
+        }
+        HSSFFormulaTemplate template = new HSSFFormulaTemplate(book,
+                                           formula, 0, ( short ) 0);
+
+        if (!template.isWorkbookDependent())
+        {
+            synchronized (entries)
+            {
+                if (!entries.containsKey(key))
+                {
+                    Entry entry = new Entry(key, template);
+
+                    entries.put(key, entry);
+                    entry.linkAfter(head);
+                    if (entries.size() > CAPACITY)
+                    {
+                        Entry eldest = head.previous;
+
+                        eldest.unlink();
+                        entries.remove(eldest.key);
+                    }
+                }
+            }
+        }
+        return template;
+    }
+
+    /**
+     * @return the formula without the white space outside of string
+     *         literals and quoted sheet names
+     */
+
+    static String normalize(String formula)
+    {
+        StringBuffer buffer = new StringBuffer(formula.length());
+        char         quote  = 0;
+
+        for (int k = 0; k < formula.length(); k++)
+        {
+            char c = formula.charAt(k);
+
+            if (quote != 0)
+            {
+                if (c == quote)
+                {
+                    quote = 0;
+                }
+            }
+            else if ((c == '"') || (c == '\''))
+            {
+                quote = c;
+            }
+            else if (Character.isWhitespace(c))
+            {
+                continue;
+            }
+            buffer.append(c);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * drops every entry, used by the tests
+     */
+
+    static void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            head.previous = head;
+            head.next     = head;
+        }
+    }
+
+    static int size()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    private static class Entry
+    {
+        String              key;
+        HSSFFormulaTemplate template;
+        Entry               previous;
+        Entry               next;
+
+        Entry(String key, HSSFFormulaTemplate template)
+        {
+            this.key      = key;
+            this.template = template;
+        }
+
+        void linkAfter(Entry entry)
+        {
+            previous      = entry;
+            next          = entry.next;
+            next.previous = this;
+            entry.next    = this;
+        }
+
+        void unlink()
+        {
+            previous.next = next;
+            next.previous = previous;
+        }
+    }
+}
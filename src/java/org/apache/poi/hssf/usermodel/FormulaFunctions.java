@@ -0,0 +1,626 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The worksheet functions understood by HSSFFormulaEvaluator, looked up by
+ * the function index stored in tFunc and tFuncVar tokens.  Any other
+ * function evaluates to #NAME?.
+ *
+ * @see CompiledFormula
+ */
+
+final class FormulaFunctions
+{
+    private static final int COUNT       = 0;
+    private static final int IF          = 1;
+    private static final int ISNA        = 2;
+    private static final int ISERROR     = 3;
+    private static final int SUM         = 4;
+    private static final int AVERAGE     = 5;
+    private static final int MIN         = 6;
+    private static final int MAX         = 7;
+    private static final int NA          = 10;
+    private static final int SIN         = 15;
+    private static final int COS         = 16;
+    private static final int TAN         = 17;
+    private static final int ATAN        = 18;
+    private static final int PI          = 19;
+    private static final int SQRT        = 20;
+    private static final int EXP         = 21;
+    private static final int LN          = 22;
+    private static final int LOG10       = 23;
+    private static final int ABS         = 24;
+    private static final int INT         = 25;
+    private static final int SIGN        = 26;
+    private static final int ROUND       = 27;
+    private static final int LEN         = 32;
+    private static final int TRUE        = 34;
+    private static final int FALSE       = 35;
+    private static final int AND         = 36;
+    private static final int OR          = 37;
+    private static final int NOT         = 38;
+    private static final int MOD         = 39;
+    private static final int LOWER       = 112;
+    private static final int UPPER       = 113;
+    private static final int LEFT        = 115;
+    private static final int RIGHT       = 116;
+    private static final int TRIM        = 118;
+    private static final int ISTEXT      = 127;
+    private static final int ISNUMBER    = 128;
+    private static final int ISBLANK     = 129;
+    private static final int COUNTA      = 169;
+    private static final int PRODUCT     = 183;
+    private static final int ROUNDUP     = 212;
+    private static final int ROUNDDOWN   = 213;
+    private static final int CONCATENATE = 336;
+    private static final int POWER       = 337;
+
+    private FormulaFunctions()
+    {
+    }
+
+    /**
+     * Calls a function.
+     *
+     * @param index the function's index
+     * @param args the operands, areas are passed unexpanded
+     * @param evaluator supplies the values of cells in areas
+     *
+     * @return the function's value
+     */
+
+    static Object call(int index, Object[] args,
+                       HSSFFormulaEvaluator evaluator)
+    {
+        switch (index)
+        {
+
+            case SUM :
+            case AVERAGE :
+            case MIN :
+            case MAX :
+            case PRODUCT :
+                return aggregate(index, args, evaluator);
+
+            case COUNT :
+            case COUNTA :
+                return count(index == COUNTA, args, evaluator);
+
+            case IF :
+                if ((args.length < 2) || (args.length > 3))
+                {
+                    return CompiledFormula.ERROR_VALUE;
+                }
+                Object condition = CompiledFormula.toBoolean(
+                    CompiledFormula.single(args[ 0 ], evaluator));
+
+                if (condition instanceof Byte)
+                {
+                    return condition;
+                }
+                if (Boolean.TRUE.equals(condition))
+                {
+                    return args[ 1 ];
+                }
+                return (args.length == 3) ? args[ 2 ]
+                                          : Boolean.FALSE;
+
+            case AND :
+            case OR :
+                return logical(index == AND, args, evaluator);
+
+            case TRUE :
+                return Boolean.TRUE;
+
+            case FALSE :
+                return Boolean.FALSE;
+
+            case PI :
+                return new Double(Math.PI);
+
+            case NA :
+                return CompiledFormula.ERROR_NA;
+
+            case CONCATENATE :
+                StringBuffer buffer = new StringBuffer();
+
+                for (int k = 0; k < args.length; k++)
+                {
+                    Object text = CompiledFormula.toText(
+                        CompiledFormula.single(args[ k ], evaluator));
+
+                    if (text instanceof Byte)
+                    {
+                        return text;
+                    }
+                    buffer.append(text);
+                }
+                return buffer.toString();
+        }
+        if (args.length == 0)
+        {
+            return CompiledFormula.ERROR_NAME;
+        }
+        Object value = CompiledFormula.single(args[ 0 ], evaluator);
+
+        switch (index)
+        {
+
+            case ISNA :
+                return bool(CompiledFormula.ERROR_NA.equals(value));
+
+            case ISERROR :
+                return bool(value instanceof Byte);
+
+            case ISTEXT :
+                return bool(value instanceof String);
+
+            case ISNUMBER :
+                return bool(value instanceof Double);
+
+            case ISBLANK :
+                return bool(value == null);
+
+            case NOT :
+                value = CompiledFormula.toBoolean(value);
+                if (value instanceof Byte)
+                {
+                    return value;
+                }
+                return bool(!(( Boolean ) value).booleanValue());
+
+            case LEN :
+            case LOWER :
+            case UPPER :
+            case TRIM :
+            case LEFT :
+            case RIGHT :
+                return text(index, value, args, evaluator);
+
+            case ROUND :
+            case ROUNDUP :
+            case ROUNDDOWN :
+            case MOD :
+            case POWER :
+                if (args.length != 2)
+                {
+                    return CompiledFormula.ERROR_VALUE;
+                }
+                return binary(index, CompiledFormula.toNumber(value),
+                              CompiledFormula.toNumber(
+                              CompiledFormula.single(args[ 1 ], evaluator)));
+        }
+        if (!isMath(index))
+        {
+            return CompiledFormula.ERROR_NAME;
+        }
+        value = CompiledFormula.toNumber(value);
+        if (value instanceof Byte)
+        {
+            return value;
+        }
+        double x = (( Double ) value).doubleValue();
+
+        switch (index)
+        {
+
+            case SIN :
+                return CompiledFormula.number(Math.sin(x));
+
+            case COS :
+                return CompiledFormula.number(Math.cos(x));
+
+            case TAN :
+                return CompiledFormula.number(Math.tan(x));
+
+            case ATAN :
+                return CompiledFormula.number(Math.atan(x));
+
+            case SQRT :
+                return CompiledFormula.number(Math.sqrt(x));
+
+            case EXP :
+                return CompiledFormula.number(Math.exp(x));
+
+            case LN :
+                return CompiledFormula.number(Math.log(x));
+
+            case LOG10 :
+                return CompiledFormula.number(Math.log(x) / Math.log(10));
+
+            case ABS :
+                return new Double(Math.abs(x));
+
+            case INT :
+                return new Double(Math.floor(x));
+
+            case SIGN :
+                return new Double((x > 0) ? 1
+                                          : ((x < 0) ? -1
+                                                     : 0));
+        }
+        return CompiledFormula.ERROR_NAME;
+    }
+
+    private static boolean isMath(int index)
+    {
+        switch (index)
+        {
+
+            case SIN :
+            case COS :
+            case TAN :
+            case ATAN :
+            case SQRT :
+            case EXP :
+            case LN :
+            case LOG10 :
+            case ABS :
+            case INT :
+            case SIGN :
+                return true;
+        }
+        return false;
+    }
+
+    private static Boolean bool(boolean value)
+    {
+        return value ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    /**
+     * Gathers the numbers an aggregate function works on.  Numbers in
+     * areas count while text, booleans and blanks there are skipped, a
+     * value passed directly is converted so "3" and TRUE count as 3 and
+     * 1.
+     *
+     * @return a List of Double or the first error code met
+     */
+
+    private static Object numbers(Object[] args,
+                                  HSSFFormulaEvaluator evaluator)
+    {
+        List numbers = new ArrayList();
+
+        for (int k = 0; k < args.length; k++)
+        {
+            if (args[ k ] instanceof CompiledFormula.Area)
+            {
+                List values = evaluator.getAreaValues(
+                    ( CompiledFormula.Area ) args[ k ]);
+
+                for (int j = 0; j < values.size(); j++)
+                {
+                    Object value = values.get(j);
+
+                    if (value instanceof Byte)
+                    {
+                        return value;
+                    }
+                    if (value instanceof Double)
+                    {
+                        numbers.add(value);
+                    }
+                }
+            }
+            else
+            {
+                Object value = CompiledFormula.toNumber(args[ k ]);
+
+                if (value instanceof Byte)
+                {
+                    return value;
+                }
+                numbers.add(value);
+            }
+        }
+        return numbers;
+    }
+
+    private static Object aggregate(int index, Object[] args,
+                                    HSSFFormulaEvaluator evaluator)
+    {
+        Object gathered = numbers(args, evaluator);
+
+        if (gathered instanceof Byte)
+        {
+            return gathered;
+        }
+        List   numbers = ( List ) gathered;
+        double result  = (index == PRODUCT) ? 1
+                                            : 0;
+
+        for (int k = 0; k < numbers.size(); k++)
+        {
+            double x = (( Double ) numbers.get(k)).doubleValue();
+
+            switch (index)
+            {
+
+                case MIN :
+                    result = (k == 0) ? x
+                                      : Math.min(result, x);
+                    break;
+
+                case MAX :
+                    result = (k == 0) ? x
+                                      : Math.max(result, x);
+                    break;
+
+                case PRODUCT :
+                    result *= x;
+                    break;
+
+                default :
+                    result += x;
+                    break;
+            }
+        }
+        if (index == AVERAGE)
+        {
+            if (numbers.isEmpty())
+            {
+                return CompiledFormula.ERROR_DIV_0;
+            }
+            result /= numbers.size();
+        }
+        return CompiledFormula.number(result);
+    }
+
+    private static Object count(boolean all, Object[] args,
+                                HSSFFormulaEvaluator evaluator)
+    {
+        int count = 0;
+
+        for (int k = 0; k < args.length; k++)
+        {
+            if (args[ k ] instanceof CompiledFormula.Area)
+            {
+                List values = evaluator.getAreaValues(
+                    ( CompiledFormula.Area ) args[ k ]);
+
+                for (int j = 0; j < values.size(); j++)
+                {
+                    if (all || (values.get(j) instanceof Double))
+                    {
+                        count++;
+                    }
+                }
+            }
+            else if (all ? (args[ k ] != null)
+                         : (CompiledFormula.toNumber(args[ k ])
+                            instanceof Double) && (args[ k ] != null))
+            {
+                count++;
+            }
+        }
+        return new Double(count);
+    }
+
+    private static Object logical(boolean and, Object[] args,
+                                  HSSFFormulaEvaluator evaluator)
+    {
+        boolean result = and;
+        boolean seen   = false;
+
+        for (int k = 0; k < args.length; k++)
+        {
+            List values;
+
+            if (args[ k ] instanceof CompiledFormula.Area)
+            {
+                values = evaluator.getAreaValues(
+                    ( CompiledFormula.Area ) args[ k ]);
+            }
+            else
+            {
+                values = new ArrayList(1);
+                values.add(CompiledFormula.toBoolean(args[ k ]));
+            }
+            for (int j = 0; j < values.size(); j++)
+            {
+                Object value = values.get(j);
+
+                if (value instanceof Byte)
+                {
+                    return value;
+                }
+                if (value instanceof Double)
+                {
+                    value = CompiledFormula.toBoolean(value);
+                }
+                if (value instanceof Boolean)
+                {
+                    boolean b = (( Boolean ) value).booleanValue();
+
+                    result = and ? (result && b)
+                                 : (result || b);
+                    seen   = true;
+                }
+            }
+        }
+        return seen ? bool(result)
+                    : CompiledFormula.ERROR_VALUE;
+    }
+
+    private static Object text(int index, Object value, Object[] args,
+                               HSSFFormulaEvaluator evaluator)
+    {
+        value = CompiledFormula.toText(value);
+        if (value instanceof Byte)
+        {
+            return value;
+        }
+        String text = ( String ) value;
+
+        switch (index)
+        {
+
+            case LEN :
+                return new Double(text.length());
+
+            case LOWER :
+                return text.toLowerCase();
+
+            case UPPER :
+                return text.toUpperCase();
+
+            case TRIM :
+                StringBuffer buffer = new StringBuffer(text.length());
+                String       trimmed = text.trim();
+
+                for (int k = 0; k < trimmed.length(); k++)
+                {
+                    char c = trimmed.charAt(k);
+
+                    if ((c != ' ') || (trimmed.charAt(k - 1) != ' '))
+                    {
+                        buffer.append(c);
+                    }
+                }
+                return buffer.toString();
+        }
+
+        // LEFT and RIGHT take one character unless told otherwise
+        int length = 1;
+
+        if (args.length > 1)
+        {
+            Object n = CompiledFormula.toNumber(
+                CompiledFormula.single(args[ 1 ], evaluator));
+
+            if (n instanceof Byte)
+            {
+                return n;
+            }
+            if ((( Double ) n).doubleValue() < 0)
+            {
+                return CompiledFormula.ERROR_VALUE;
+            }
+            length = ( int ) Math.min((( Double ) n).doubleValue(),
+                                      text.length());
+        }
+        length = Math.min(length, text.length());
+        return (index == LEFT) ? text.substring(0, length)
+                               : text.substring(text.length() - length);
+    }
+
+    private static Object binary(int index, Object left, Object right)
+    {
+        if (left instanceof Byte)
+        {
+            return left;
+        }
+        if (right instanceof Byte)
+        {
+            return right;
+        }
+        double x = (( Double ) left).doubleValue();
+        double y = (( Double ) right).doubleValue();
+
+        switch (index)
+        {
+
+            case MOD :
+                if (y == 0)
+                {
+                    return CompiledFormula.ERROR_DIV_0;
+                }
+                return CompiledFormula.number(x - y * Math.floor(x / y));
+
+            case POWER :
+                return CompiledFormula.number(Math.pow(x, y));
+
+            case ROUNDUP :
+                return round(x, ( int ) y, BigDecimal.ROUND_UP);
+
+            case ROUNDDOWN :
+                return round(x, ( int ) y, BigDecimal.ROUND_DOWN);
+
+            default :
+                return round(x, ( int ) y, BigDecimal.ROUND_HALF_UP);
+        }
+    }
+
+    /**
+     * Rounds in decimal so ROUNDUP(0.3, 1) stays 0.3 even though
+     * 0.3 * 10 is slightly above 3 in binary.
+     */
+
+    private static Object round(double x, int digits, int mode)
+    {
+        if (Double.isNaN(x) || Double.isInfinite(x))
+        {
+            return CompiledFormula.ERROR_NUM;
+        }
+        BigDecimal decimal = new BigDecimal(Double.toString(x));
+
+        if (digits >= 0)
+        {
+            decimal = decimal.setScale(digits, mode);
+        }
+        else
+        {
+            decimal = decimal.movePointLeft(-digits).setScale(0, mode)
+                .movePointRight(-digits);
+        }
+        return new Double(decimal.doubleValue());
+    }
+}
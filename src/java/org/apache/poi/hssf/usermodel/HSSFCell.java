@@ -70,15 +70,16 @@ import org.apache.poi.hssf.record.LabelSSTRecord;
 import org.apache.poi.hssf.record.NumberRecord;
 import org.apache.poi.hssf.record.BlankRecord;
 import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.StringRecord;
 import org.apache.poi.hssf.record.ExtendedFormatRecord;
 import org.apache.poi.hssf.record.aggregates.FormulaRecordAggregate;
-import org.apache.poi.hssf.record.formula.Ptg;
 import org.apache.poi.hssf.util.SheetReferences;
 
 //import org.apache.poi.hssf.record.formula.FormulaParser;
 
 import java.util.Date;
 import java.util.Calendar;
+import java.util.List;
 
 /**
  * High level representation of a cell in a row of a spreadsheet.
@@ -156,6 +157,7 @@ public class HSSFCell
     private HSSFCellStyle            cellStyle;
     private double                   cellValue;
     private String                   stringValue;
+    private boolean                  stringPending;
     private boolean                  booleanValue;
     private byte                     errorValue;
     private short                    encoding = ENCODING_COMPRESSED_UNICODE;
@@ -164,6 +166,7 @@ public class HSSFCell
     //private short                    row;
     private int                    row;
     private CellValueRecordInterface record;
+    private HSSFRow                  owner;
 
     /**
      * Creates new Cell - Should only be called by HSSFRow.  This creates a cell
@@ -202,7 +205,7 @@ public class HSSFCell
         setCellType(CELL_TYPE_BLANK, false);
         ExtendedFormatRecord xf = book.getExFormatAt(0xf);
 
-        setCellStyle(new HSSFCellStyle(( short ) 0xf, xf));
+        setCellStyle(new HSSFCellStyle(( short ) 0xf, xf, book));
     }
 
     /**
@@ -285,7 +288,7 @@ public class HSSFCell
         }
         ExtendedFormatRecord xf = book.getExFormatAt(0xf);
 
-        setCellStyle(new HSSFCellStyle(( short ) 0xf, xf));
+        setCellStyle(new HSSFCellStyle(( short ) 0xf, xf, book));
     }
 
     /**
@@ -317,8 +320,10 @@ public class HSSFCell
                 break;
 
             case CELL_TYPE_STRING :
-                stringValue =
-                    book.getSSTString( ( (LabelSSTRecord ) cval).getSSTIndex());
+
+                // looked up when first asked for, so a workbook decoding its
+                // shared strings on demand only decodes the ones read
+                stringPending = true;
                 break;
 
             case CELL_TYPE_BLANK :
@@ -338,7 +343,7 @@ public class HSSFCell
         }
         ExtendedFormatRecord xf = book.getExFormatAt(cval.getXFIndex());
 
-        setCellStyle(new HSSFCellStyle(( short ) cval.getXFIndex(), xf));
+        setCellStyle(new HSSFCellStyle(( short ) cval.getXFIndex(), xf, book));
     }
 
     /**
@@ -398,6 +403,17 @@ public class HSSFCell
         record.setColumn(num);
     }
 
+    /**
+     * set the row the cell is in, used when its row is moved
+     * @param row  the row number (0 based)
+     */
+
+    void setRowNum(int row)
+    {
+        this.row = row;
+        record.setRow(row);
+    }
+
     /**
      *  get the cell's number within the row
      * @return short reperesenting the column number (logical!)
@@ -422,6 +438,7 @@ public class HSSFCell
     public void setCellType(int cellType)
     {
         setCellType(cellType, true);
+        notifyChanged();
     }
 
     /**
@@ -435,6 +452,7 @@ public class HSSFCell
 
     private void setCellType(int cellType, boolean setValue)
     {
+        resolveString();
 
         // if (cellType == CELL_TYPE_FORMULA)
         // {
@@ -633,6 +651,7 @@ public class HSSFCell
         }
         (( NumberRecord ) record).setValue(value);
         cellValue = value;
+        notifyChanged();
     }
 
     /**
@@ -673,6 +692,7 @@ public class HSSFCell
 
     public void setCellValue(String value)
     {
+        stringPending = false;
         if (value == null)
         {
             setCellType(CELL_TYPE_BLANK, false);
@@ -696,6 +716,7 @@ public class HSSFCell
             (( LabelSSTRecord ) record).setSSTIndex(index);
             stringValue = value;
         }
+        notifyChanged();
     }
 
     public void setCellFormula(String formula) {
@@ -703,25 +724,36 @@ public class HSSFCell
         if (formula==null) {
             setCellType(CELL_TYPE_BLANK,false);
         } else {
-            setCellType(CELL_TYPE_FORMULA,false);
-            FormulaRecordAggregate rec = (FormulaRecordAggregate) record;
-            rec.getFormulaRecord().setOptions(( short ) 2);
-            rec.getFormulaRecord().setValue(0);
-            
-            //only set to default if there is no extended format index already set
-            if (rec.getXFIndex() == (short)0) rec.setXFIndex(( short ) 0x0f);
-            FormulaParser fp = new FormulaParser(formula+";",book);
-            fp.parse();
-            Ptg[] ptg  = fp.getRPNPtg();
-            int   size = 0;
-            //System.out.println("got Ptgs " + ptg.length);
-            for (int k = 0; k < ptg.length; k++) {
-                size += ptg[ k ].getSize();
-                rec.getFormulaRecord().pushExpressionToken(ptg[ k ]);
-            }
-            rec.getFormulaRecord().setExpressionLength(( short ) size);
+            setFormulaTokens(FormulaCache.getTemplate(book, formula)
+                .getTokens(0, 0));
             //Workbook.currentBook = null;
         }
+        notifyChanged();
+    }
+
+    /**
+     * set a formula for this cell from a template, its relative references
+     * moved from the template's anchor to this cell.
+     *
+     * @param template the formula template, from the same workbook
+     * @see HSSFWorkbook#createFormulaTemplate(String, int, short)
+     */
+
+    public void setCellFormula(HSSFFormulaTemplate template) {
+        setFormulaTokens(template.getTokens(row, cellNum));
+        notifyChanged();
+    }
+
+    private void setFormulaTokens(List ptgs) {
+        setCellType(CELL_TYPE_FORMULA,false);
+        FormulaRecordAggregate rec = (FormulaRecordAggregate) record;
+        rec.getFormulaRecord().setOptions(( short ) 2);
+        rec.getFormulaRecord().setValue(0);
+        rec.setStringRecord(null);
+
+        //only set to default if there is no extended format index already set
+        if (rec.getXFIndex() == (short)0) rec.setXFIndex(( short ) 0x0f);
+        rec.getFormulaRecord().setParsedExpression(ptgs);
     }
 
     public String getCellFormula() {
@@ -821,9 +853,25 @@ public class HSSFCell
             throw new NumberFormatException(
                 "You cannot get a string value from an error cell");
         }
+        resolveString();
         return stringValue;
     }
 
+    /**
+     * looks up the shared string of a string cell that was read, the first
+     * time its value is needed
+     */
+
+    private void resolveString()
+    {
+        if (stringPending)
+        {
+            stringPending = false;
+            stringValue   = book.getSSTString(
+                (( LabelSSTRecord ) record).getSSTIndex());
+        }
+    }
+
     /**
      * set a boolean value for the cell
      *
@@ -840,6 +888,7 @@ public class HSSFCell
         }
         (( BoolErrRecord ) record).setValue(value);
         booleanValue = value;
+        notifyChanged();
     }
 
     /**
@@ -859,6 +908,7 @@ public class HSSFCell
         }
         (( BoolErrRecord ) record).setValue(value);
         errorValue = value;
+        notifyChanged();
     }
 
     /**
@@ -964,6 +1014,99 @@ public class HSSFCell
         return record;
     }
 
+    /**
+     * @return the low level sheet holding this cell
+     */
+
+    Sheet getSheet()
+    {
+        return sheet;
+    }
+
+    /**
+     * set the row holding this cell, through which the workbook's formula
+     * evaluator is found
+     */
+
+    void setOwner(HSSFRow owner)
+    {
+        this.owner = owner;
+    }
+
+    /**
+     * tells the workbook's formula evaluator, if it has one, that this cell
+     * was set, created or removed
+     */
+
+    void notifyChanged()
+    {
+        HSSFFormulaEvaluator evaluator = (owner == null) ? null
+                                         : owner.getFormulaEvaluator();
+
+        if (evaluator != null)
+        {
+            evaluator.notifyCellChanged(this);
+        }
+    }
+
+    /**
+     * Stores a calculated result as this formula cell's cached value.
+     * Strings go in a StringRecord following the formula.
+     *
+     * @param value Double, String, Boolean, Byte (an error code) or null for
+     *        a blank result, which Excel shows as 0
+     * @see HSSFFormulaEvaluator
+     */
+
+    void setFormulaResult(Object value)
+    {
+        FormulaRecordAggregate aggregate = ( FormulaRecordAggregate ) record;
+        FormulaRecord          formula   = aggregate.getFormulaRecord();
+        StringRecord           string    = null;
+
+        if (value instanceof String)
+        {
+            stringValue = ( String ) value;
+            formula.setCachedStringResult(stringValue.length() == 0);
+            if (stringValue.length() > 0)
+            {
+                string = new StringRecord();
+                string.setString(stringValue);
+                string.setCompressedFlag(isCompressible(stringValue) ? ( byte ) 0
+                                                                     : ( byte ) 1);
+            }
+        }
+        else if (value instanceof Boolean)
+        {
+            booleanValue = (( Boolean ) value).booleanValue();
+            formula.setCachedBooleanResult(booleanValue);
+        }
+        else if (value instanceof Byte)
+        {
+            errorValue = (( Byte ) value).byteValue();
+            formula.setCachedErrorResult(errorValue);
+        }
+        else
+        {
+            formula.setValue((value == null) ? 0
+                                             : (( Double ) value).doubleValue());
+        }
+        cellValue = formula.getValue();
+        aggregate.setStringRecord(string);
+    }
+
+    private static boolean isCompressible(String value)
+    {
+        for (int k = 0; k < value.length(); k++)
+        {
+            if (value.charAt(k) > 0xFF)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * @throws RuntimeException if the bounds are exceeded.
      */
@@ -60,6 +60,7 @@
  */
 package org.apache.poi.hssf.usermodel;
 
+import org.apache.poi.hssf.model.Workbook;
 import org.apache.poi.hssf.record.ExtendedFormatRecord;
 
 /**
@@ -79,6 +80,7 @@ public class HSSFCellStyle
     private ExtendedFormatRecord format                     = null;
     private short                index                      = 0;
     private short                fontindex                  = 0;
+    private Workbook             workbook                   = null;
 
     /**
      * general (normal) horizontal alignment
@@ -270,8 +272,36 @@ public class HSSFCellStyle
 
     protected HSSFCellStyle(short index, ExtendedFormatRecord rec)
     {
-        this.index = index;
-        format     = rec;
+        this(index, rec, null);
+    }
+
+    /**
+     * Creates an HSSFCellStyle for a record of the given workbook, which is
+     * told when the style is changed so that it can find the style by its
+     * new attributes.
+     *
+     * @param index the index of the record, or -1 if it is not in the workbook
+     * @param rec the extended format record
+     * @param workbook the low level workbook holding the record, or null
+     */
+
+    HSSFCellStyle(short index, ExtendedFormatRecord rec, Workbook workbook)
+    {
+        this.index    = index;
+        format        = rec;
+        this.workbook = workbook;
+    }
+
+    /**
+     * tells the workbook that the style's record has changed
+     */
+
+    private void changed()
+    {
+        if ((workbook != null) && (index >= 0))
+        {
+            workbook.cellXFChanged(index);
+        }
     }
 
     /**
@@ -293,6 +323,7 @@ public class HSSFCellStyle
     public void setDataFormat(short fmt)
     {
         format.setFormatIndex(fmt);
+        changed();
     }
 
     /**
@@ -317,6 +348,7 @@ public class HSSFCellStyle
         format.setIndentNotParentFont(true);
         fontindex = font.getIndex();
         format.setFontIndex(fontindex);
+        changed();
     }
 
     public short getFontIndex()
@@ -333,6 +365,7 @@ public class HSSFCellStyle
     {
         format.setIndentNotParentCellOptions(true);
         format.setHidden(hidden);
+        changed();
     }
 
     /**
@@ -354,6 +387,7 @@ public class HSSFCellStyle
     {
         format.setIndentNotParentCellOptions(true);
         format.setLocked(locked);
+        changed();
     }
 
     /**
@@ -382,6 +416,7 @@ public class HSSFCellStyle
     {
         format.setIndentNotParentAlignment(true);
         format.setAlignment(align);
+        changed();
     }
 
     /**
@@ -432,6 +467,7 @@ public class HSSFCellStyle
     {
         format.setIndentNotParentAlignment(true);
         format.setWrapText(wrapped);
+        changed();
     }
 
     /**
@@ -456,6 +492,7 @@ public class HSSFCellStyle
     public void setVerticalAlignment(short align)
     {
         format.setVerticalAlignment(align);
+        changed();
     }
 
     /**
@@ -488,6 +525,7 @@ public class HSSFCellStyle
         //Do not allow an incorrect rotation to be set
         throw new IllegalArgumentException("The rotation must be between -90 and 90 degrees");
         format.setRotation(rotation);
+        changed();
     }
 
     /**
@@ -512,6 +550,7 @@ public class HSSFCellStyle
     public void setIndention(short indent)
     {
         format.setIndent(indent);
+        changed();
     }
 
     /**
@@ -547,6 +586,7 @@ public class HSSFCellStyle
     {
         format.setIndentNotParentBorder(true);
         format.setBorderLeft(border);
+        changed();
     }
 
     /**
@@ -596,6 +636,7 @@ public class HSSFCellStyle
     {
         format.setIndentNotParentBorder(true);
         format.setBorderRight(border);
+        changed();
     }
 
     /**
@@ -645,6 +686,7 @@ public class HSSFCellStyle
     {
         format.setIndentNotParentBorder(true);
         format.setBorderTop(border);
+        changed();
     }
 
     /**
@@ -694,6 +736,7 @@ public class HSSFCellStyle
     {
         format.setIndentNotParentBorder(true);
         format.setBorderBottom(border);
+        changed();
     }
 
     /**
@@ -728,6 +771,7 @@ public class HSSFCellStyle
     public void setLeftBorderColor(short color)
     {
         format.setLeftBorderPaletteIdx(color);
+        changed();
     }
 
     /**
@@ -748,6 +792,7 @@ public class HSSFCellStyle
     public void setRightBorderColor(short color)
     {
         format.setRightBorderPaletteIdx(color);
+        changed();
     }
 
     /**
@@ -768,6 +813,7 @@ public class HSSFCellStyle
     public void setTopBorderColor(short color)
     {
         format.setTopBorderPaletteIdx(color);
+        changed();
     }
 
     /**
@@ -788,6 +834,7 @@ public class HSSFCellStyle
     public void setBottomBorderColor(short color)
     {
         format.setBottomBorderPaletteIdx(color);
+        changed();
     }
 
     /**
@@ -827,6 +874,7 @@ public class HSSFCellStyle
     public void setFillPattern(short fp)
     {
         format.setAdtlFillPattern(fp);
+        changed();
     }
 
     /**
@@ -861,6 +909,7 @@ public class HSSFCellStyle
     public void setFillBackgroundColor(short bg)
     {
         format.setFillBackground(bg);
+        changed();
     }
 
     /**
@@ -881,6 +930,7 @@ public class HSSFCellStyle
     public void setFillForegroundColor(short bg)
     {
         format.setFillForeground(bg);
+        changed();
     }
 
     /**
@@ -893,4 +943,124 @@ public class HSSFCellStyle
         return format.getFillForeground();
     }
 
+    /**
+     * @return the record holding this style
+     */
+
+    ExtendedFormatRecord getFormatRecord()
+    {
+        return format;
+    }
+
+    /**
+     * set one attribute of the style by its property name, as in
+     * setProperty("fillForegroundColor", new Short(HSSFColor.RED.index)).
+     * The names are those of the setters of this class: font (an HSSFFont),
+     * hidden, locked and wrapText (Booleans), and dataFormat, alignment,
+     * verticalAlignment, rotation, indention, borderLeft, borderRight,
+     * borderTop, borderBottom, leftBorderColor, rightBorderColor,
+     * topBorderColor, bottomBorderColor, fillPattern, fillBackgroundColor and
+     * fillForegroundColor (Shorts).
+     *
+     * @param name the property name
+     * @param value the new value
+     * @exception IllegalArgumentException if there is no such property
+     */
+
+    void setProperty(String name, Object value)
+    {
+        if (name.equals("font"))
+        {
+            setFont(( HSSFFont ) value);
+        }
+        else if (name.equals("hidden"))
+        {
+            setHidden((( Boolean ) value).booleanValue());
+        }
+        else if (name.equals("locked"))
+        {
+            setLocked((( Boolean ) value).booleanValue());
+        }
+        else if (name.equals("wrapText"))
+        {
+            setWrapText((( Boolean ) value).booleanValue());
+        }
+        else
+        {
+            setShortProperty(name, (( Number ) value).shortValue());
+        }
+    }
+
+    private void setShortProperty(String name, short value)
+    {
+        if (name.equals("dataFormat"))
+        {
+            setDataFormat(value);
+        }
+        else if (name.equals("alignment"))
+        {
+            setAlignment(value);
+        }
+        else if (name.equals("verticalAlignment"))
+        {
+            setVerticalAlignment(value);
+        }
+        else if (name.equals("rotation"))
+        {
+            setRotation(value);
+        }
+        else if (name.equals("indention"))
+        {
+            setIndention(value);
+        }
+        else if (name.equals("borderLeft"))
+        {
+            setBorderLeft(value);
+        }
+        else if (name.equals("borderRight"))
+        {
+            setBorderRight(value);
+        }
+        else if (name.equals("borderTop"))
+        {
+            setBorderTop(value);
+        }
+        else if (name.equals("borderBottom"))
+        {
+            setBorderBottom(value);
+        }
+        else if (name.equals("leftBorderColor"))
+        {
+            setLeftBorderColor(value);
+        }
+        else if (name.equals("rightBorderColor"))
+        {
+            setRightBorderColor(value);
+        }
+        else if (name.equals("topBorderColor"))
+        {
+            setTopBorderColor(value);
+        }
+        else if (name.equals("bottomBorderColor"))
+        {
+            setBottomBorderColor(value);
+        }
+        else if (name.equals("fillPattern"))
+        {
+            setFillPattern(value);
+        }
+        else if (name.equals("fillBackgroundColor"))
+        {
+            setFillBackgroundColor(value);
+        }
+        else if (name.equals("fillForegroundColor"))
+        {
+            setFillForegroundColor(value);
+        }
+        else
+        {
+            throw new IllegalArgumentException("No cell style property "
+                                               + name);
+        }
+    }
 }
@@ -62,9 +62,9 @@ package org.apache.poi.hssf.usermodel;
 import org.apache.poi.hssf.model.Workbook;
 import org.apache.poi.hssf.record.FormatRecord;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Vector;
 
 /**
@@ -118,13 +118,10 @@ import java.util.Vector;
 public class HSSFDataFormat
 {
     private static Vector builtinFormats;
+    private static HashMap builtinIndex;    // format string -> Short index
 
     private Vector formats = new Vector();
     private Workbook workbook;
-    private boolean movedBuiltins = false;  // Flag to see if need to
-    // check the built in list
-    // or if the regular list
-    // has all entries.
 
     /**
      * Construncts a new data formatter.  It takes a workbook to have
@@ -206,6 +203,15 @@ public class HSSFDataFormat
         builtinFormats.add( 0x2f, "mm:ss.0" );
         builtinFormats.add( 0x30, "##0.0E+0" );
         builtinFormats.add( 0x31, "@" );
+
+        builtinIndex = new HashMap();
+        for ( short k = 0; k <= 0x31; k++ )
+        {
+            if ( !builtinIndex.containsKey( builtinFormats.get( k ) ) )
+            {
+                builtinIndex.put( builtinFormats.get( k ), new Short( k ) );
+            }
+        }
     }
 
     public static List getBuiltinFormats()
@@ -233,19 +239,9 @@ public class HSSFDataFormat
         {
             populateBuiltinFormats();
         }
-        short retval = -1;
+        Short retval = (Short) builtinIndex.get( format );
 
-        for (short k = 0; k <= 0x31; k++)
-        {
-            String nformat = (String) builtinFormats.get( k );
-
-            if ( ( nformat != null ) && nformat.equals( format ) )
-            {
-                retval = k;
-                break;
-            }
-        }
-        return retval;
+        return ( retval == null ) ? -1 : retval.shortValue();
     }
 
     /**
@@ -257,36 +253,18 @@ public class HSSFDataFormat
 
     public short getFormat( String format )
     {
-        ListIterator i;
-        int ind;
+        short ind = getBuiltinFormat( format );
 
-	if (format.toUpperCase().equals("TEXT")) 
-		format = "@";
-
-        if ( !movedBuiltins )
-        {
-            i = builtinFormats.listIterator();
-            while ( i.hasNext() )
-            {
-                ind = i.nextIndex();
-                formats.add( ind, i.next() );
-            }
-            movedBuiltins = true;
-        }
-        i = formats.listIterator();
-        while ( i.hasNext() )
-        {
-            ind = i.nextIndex();
-            if ( format.equals( i.next() ) )
-                return (short) ind;
-        }
+        if ( ind != -1 )
+            return ind;
 
+        // looked up through the workbook's index of format strings
         ind = workbook.getFormat( format, true );
         if ( formats.size() <= ind )
             formats.setSize( ind + 1 );
-        formats.add( ind, format );
+        formats.set( ind, format );
 
-        return (short) ind;
+        return ind;
     }
 
     /**
@@ -297,12 +275,9 @@ public class HSSFDataFormat
 
     public String getFormat( short index )
     {
-        if ( movedBuiltins )
-            return (String) formats.get( index );
-        else
-            return (String) ( builtinFormats.size() > index
-                    && builtinFormats.get( index ) != null
-                    ? builtinFormats.get( index ) : formats.get( index ) );
+        if ( builtinFormats.size() > index && builtinFormats.get( index ) != null )
+            return (String) builtinFormats.get( index );
+        return (String) ( formats.size() > index ? formats.get( index ) : null );
     }
 
     /**
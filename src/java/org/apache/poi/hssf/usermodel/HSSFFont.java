@@ -60,6 +60,7 @@
  */
 package org.apache.poi.hssf.usermodel;
 
+import org.apache.poi.hssf.model.Workbook;
 import org.apache.poi.hssf.record.FontRecord;
 
 /**
@@ -154,13 +155,42 @@ public class HSSFFont
     public final static byte   U_DOUBLE_ACCOUNTING = 0x22;
     private FontRecord         font;
     private short              index;
+    private Workbook           workbook;
 
     /** Creates a new instance of HSSFFont */
 
     protected HSSFFont(short index, FontRecord rec)
     {
-        font       = rec;
-        this.index = index;
+        this(index, rec, null);
+    }
+
+    /**
+     * Creates an HSSFFont for a record of the given workbook, which is told
+     * when the font is changed so that it can find the font by its new
+     * attributes.
+     *
+     * @param index the index of the font
+     * @param rec the font record
+     * @param workbook the low level workbook holding the record, or null
+     */
+
+    HSSFFont(short index, FontRecord rec, Workbook workbook)
+    {
+        font          = rec;
+        this.index    = index;
+        this.workbook = workbook;
+    }
+
+    /**
+     * tells the workbook that the font's record has changed
+     */
+
+    private void changed()
+    {
+        if (workbook != null)
+        {
+            workbook.fontChanged(index);
+        }
     }
 
     /**
@@ -173,6 +203,7 @@ public class HSSFFont
     {
         font.setFontName(name);
         font.setFontNameLength(( byte ) name.length());
+        changed();
     }
 
     /**
@@ -207,6 +238,7 @@ public class HSSFFont
     public void setFontHeight(short height)
     {
         font.setFontHeight(height);
+        changed();
     }
 
     /**
@@ -218,6 +250,7 @@ public class HSSFFont
     public void setFontHeightInPoints(short height)
     {
         font.setFontHeight(( short ) (height * 20));
+        changed();
     }
 
     /**
@@ -251,6 +284,7 @@ public class HSSFFont
     public void setItalic(boolean italic)
     {
         font.setItalic(italic);
+        changed();
     }
 
     /**
@@ -271,6 +305,7 @@ public class HSSFFont
     public void setStrikeout(boolean strikeout)
     {
         font.setStrikeout(strikeout);
+        changed();
     }
 
     /**
@@ -293,6 +328,7 @@ public class HSSFFont
     public void setColor(short color)
     {
         font.setColorPaletteIndex(color);
+        changed();
     }
 
     /**
@@ -317,6 +353,7 @@ public class HSSFFont
     public void setBoldweight(short boldweight)
     {
         font.setBoldWeight(boldweight);
+        changed();
     }
 
     /**
@@ -342,6 +379,7 @@ public class HSSFFont
     public void setTypeOffset(short offset)
     {
         font.setSuperSubScript(offset);
+        changed();
     }
 
     /**
@@ -370,6 +408,7 @@ public class HSSFFont
     public void setUnderline(byte underline)
     {
         font.setUnderline(underline);
+        changed();
     }
 
     /**
@@ -0,0 +1,784 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.poi.hssf.model.Sheet;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.aggregates.FormulaRecordAggregate;
+
+/**
+ * Calculates the formula cells of a workbook.<p>
+ *
+ * Every formula is compiled once into a small stack program and entered in
+ * a dependency graph keyed by the cells and areas it reads.  Changing a
+ * cell only marks the formulas that (directly or through other formulas)
+ * depend on it as dirty, and recalculate() runs just those, in dependency
+ * order, storing each result as the formula's cached value.  A workbook
+ * with an evaluator recalculates before it is written, so Excel and other
+ * readers see up to date values.<p>
+ *
+ * The evaluator understands numbers, strings, booleans, error codes, the
+ * operators this version's formula parser produces (+ - * / ^ &amp; = and
+ * union), references, areas and 3D references, IF and a set of common
+ * functions (see FormulaFunctions).  Functions outside that set evaluate
+ * to #NAME?; formulas using tokens it can't compile at all, such as shared
+ * or array formulas, keep the value they were read with.  Cells on a
+ * circular reference evaluate to #VALUE!.<p>
+ *
+ * The evaluator addresses sheets by index, so create a new one after
+ * adding, removing or reordering sheets.  Cells set, created or removed
+ * through the usermodel, and rows removed or shifted, report themselves to
+ * the workbook's evaluator; changes made beneath the usermodel must be
+ * reported with notifyCellChanged().
+ *
+ * @see HSSFWorkbook#write(java.io.OutputStream)
+ */
+
+public class HSSFFormulaEvaluator
+{
+    private static final int CLEAN  = 0;
+    private static final int DIRTY  = 1;
+    private static final int ACTIVE = 2;
+
+    // the columns of a sheet
+    private static final int COLUMNS = 256;
+
+    private HSSFWorkbook     workbook;
+
+    // Long cell key -> FormulaNode
+    private HashMap          nodes;
+
+    // Long cell key -> List of FormulaNode reading that cell
+    private HashMap          cellDependents;
+
+    // per sheet and column, Set of AreaDependent whose area covers the
+    // column
+    private Set[][]          areaDependents;
+
+    // state of the formula currently being run
+    private FormulaNode      running;
+    private List             pending;
+    private boolean          circular;
+
+    /**
+     * Compiles every formula in the workbook and attaches the evaluator to
+     * it, so that the workbook is recalculated before it is written.  All
+     * formulas start out dirty.
+     *
+     * @param workbook the workbook to evaluate
+     */
+
+    public HSSFFormulaEvaluator(HSSFWorkbook workbook)
+    {
+        this.workbook  = workbook;
+        nodes          = new HashMap();
+        cellDependents = new HashMap();
+        areaDependents = new Set[ workbook.getNumberOfSheets() ][];
+        pending        = new ArrayList();
+        for (int k = 0; k < areaDependents.length; k++)
+        {
+            areaDependents[ k ] = new Set[ COLUMNS ];
+            Iterator rows = workbook.getSheetAt(k).rowIterator();
+
+            while (rows.hasNext())
+            {
+                Iterator cells = (( HSSFRow ) rows.next()).cellIterator();
+
+                while (cells.hasNext())
+                {
+                    HSSFCell cell = ( HSSFCell ) cells.next();
+
+                    if (cell.getCellType() == HSSFCell.CELL_TYPE_FORMULA)
+                    {
+                        addNode(k, cell);
+                    }
+                }
+            }
+        }
+        workbook.setFormulaEvaluator(this);
+    }
+
+    /**
+     * Returns the value of a cell, calculating it (and whatever it depends
+     * on) first if it is a dirty formula.
+     *
+     * @param cell the cell
+     * @return a Double, String, Boolean, a Byte holding an error code (see
+     *         HSSFErrorConstants) or null for a blank cell
+     */
+
+    public Object evaluate(HSSFCell cell)
+    {
+        int         sheet = getSheetIndex(cell.getSheet());
+        int         row   = cell.getCellValueRecord().getRow();
+        FormulaNode node  = ( FormulaNode ) nodes.get(key(sheet, row,
+                                 cell.getCellNum()));
+
+        if ((node == null) || (node.cell != cell))
+        {
+            return valueOf(sheet, row, cell.getCellNum(), cell);
+        }
+        if (node.state != CLEAN)
+        {
+            evaluateNode(node);
+        }
+        return node.value;
+    }
+
+    /**
+     * Tells the evaluator a cell's value or formula was set, or that the
+     * cell was removed from its row.  Formulas depending on the cell are
+     * marked dirty.
+     *
+     * @param cell the changed cell
+     */
+
+    public void notifyCellChanged(HSSFCell cell)
+    {
+        int     sheet  = getSheetIndex(cell.getSheet());
+        int     row    = cell.getCellValueRecord().getRow();
+        int     column = cell.getCellNum();
+        Long    key    = key(sheet, row, column);
+        HSSFRow r      = workbook.getSheetAt(sheet).getRow(row);
+        HSSFCell current = (r == null) ? null
+                                       : r.getCell(( short ) column);
+
+        removeNode(key);
+        if ((current != null)
+                && (current.getCellType() == HSSFCell.CELL_TYPE_FORMULA))
+        {
+            addNode(sheet, current);
+        }
+        markDependentsDirty(sheet, row, column);
+    }
+
+    /**
+     * Used by HSSFSheet when rows were moved, removed or overwritten.  The
+     * formulas now in the rows are compiled afresh and the formulas reading
+     * any cell of the rows are marked dirty.
+     *
+     * @param hsheet the sheet
+     * @param firstRow the first row changed
+     * @param lastRow the last row changed
+     */
+
+    void notifyRowsChanged(HSSFSheet hsheet, int firstRow, int lastRow)
+    {
+        int    sheet = getSheetIndex(hsheet.getSheet());
+        Long[] keys  = ( Long [] ) nodes.keySet().toArray(
+            new Long[ nodes.size() ]);
+
+        for (int k = 0; k < keys.length; k++)
+        {
+            FormulaNode node = ( FormulaNode ) nodes.get(keys[ k ]);
+
+            if ((node.sheet == sheet) && (node.row >= firstRow)
+                    && (node.row <= lastRow))
+            {
+                removeNode(keys[ k ]);
+            }
+        }
+        int last = Math.min(lastRow, hsheet.getLastRowNum());
+
+        for (int row = Math.max(firstRow, hsheet.getFirstRowNum());
+                row <= last; row++)
+        {
+            HSSFRow r = hsheet.getRow(row);
+
+            if (r == null)
+            {
+                continue;
+            }
+            Iterator cells = r.cellIterator();
+
+            while (cells.hasNext())
+            {
+                HSSFCell cell = ( HSSFCell ) cells.next();
+
+                if (cell.getCellType() == HSSFCell.CELL_TYPE_FORMULA)
+                {
+                    addNode(sheet, cell);
+                }
+            }
+        }
+        if (sheet >= areaDependents.length)
+        {
+            return;
+        }
+        List     queue      = new ArrayList();
+        Iterator precedents = cellDependents.keySet().iterator();
+
+        while (precedents.hasNext())
+        {
+            long key = (( Long ) precedents.next()).longValue();
+            int  row = ( int ) (key >> 16) & 0xFFFF;
+
+            if (((key >> 32) == sheet) && (row >= firstRow)
+                    && (row <= lastRow))
+            {
+                queue.add(new int[]
+                {
+                    sheet, row, ( int ) key & 0xFFFF
+                });
+            }
+        }
+        Set[] columns = areaDependents[ sheet ];
+
+        for (int column = 0; column < columns.length; column++)
+        {
+            if (columns[ column ] == null)
+            {
+                continue;
+            }
+            Iterator iterator = columns[ column ].iterator();
+
+            while (iterator.hasNext())
+            {
+                AreaDependent dependent = ( AreaDependent ) iterator.next();
+
+                if ((dependent.area.firstRow <= lastRow)
+                        && (dependent.area.lastRow >= firstRow))
+                {
+                    markDirty(dependent.node, queue);
+                }
+            }
+        }
+        markDirty(queue);
+    }
+
+    /**
+     * Calculates the dirty formulas and stores their results in the cells.
+     *
+     * @return the number of formulas calculated
+     */
+
+    public int recalculate()
+    {
+        FormulaNode[] all        = ( FormulaNode [] ) nodes.values()
+            .toArray(new FormulaNode[ nodes.size() ]);
+        int           calculated = 0;
+
+        for (int k = 0; k < all.length; k++)
+        {
+            if (all[ k ].state == DIRTY)
+            {
+                calculated += evaluateNode(all[ k ]);
+            }
+        }
+        return calculated;
+    }
+
+    /**
+     * Marks every formula dirty and calculates them all.
+     *
+     * @return the number of formulas calculated
+     */
+
+    public int recalculateAll()
+    {
+        Iterator iterator = nodes.values().iterator();
+
+        while (iterator.hasNext())
+        {
+            FormulaNode node = ( FormulaNode ) iterator.next();
+
+            if (node.formula != null)
+            {
+                node.state = DIRTY;
+            }
+        }
+        return recalculate();
+    }
+
+    /**
+     * Used by CompiledFormula to read a referenced cell.  A dirty formula
+     * cell reads as blank and is queued so that the running formula is
+     * tried again once it is calculated.
+     */
+
+    Object getCellValue(int sheet, int row, int column)
+    {
+        if (sheet >= areaDependents.length)
+        {
+            return CompiledFormula.ERROR_REF;
+        }
+        HSSFRow r = workbook.getSheetAt(sheet).getRow(row);
+
+        if (r == null)
+        {
+            return null;
+        }
+        HSSFCell cell = r.getCell(( short ) column);
+
+        if (cell == null)
+        {
+            return null;
+        }
+        return valueOf(sheet, row, column, cell);
+    }
+
+    /**
+     * Used by FormulaFunctions to read the non blank cells of an area.
+     *
+     * @return List of the values, see evaluate(HSSFCell)
+     */
+
+    List getAreaValues(CompiledFormula.Area area)
+    {
+        List values = new ArrayList();
+
+        for (; area != null; area = area.next)
+        {
+            if (area.sheet >= areaDependents.length)
+            {
+                values.add(CompiledFormula.ERROR_REF);
+                continue;
+            }
+            HSSFSheet sheet = workbook.getSheetAt(area.sheet);
+            int       last  = Math.min(area.lastRow, sheet.getLastRowNum());
+
+            for (int row = Math.max(area.firstRow, sheet.getFirstRowNum());
+                    row <= last; row++)
+            {
+                HSSFRow r = sheet.getRow(row);
+
+                if (r == null)
+                {
+                    continue;
+                }
+                int lastColumn = Math.min(area.lastColumn, r.getLastCellNum());
+
+                for (int column = area.firstColumn; column <= lastColumn;
+                        column++)
+                {
+                    HSSFCell cell = r.getCell(( short ) column);
+
+                    if (cell != null)
+                    {
+                        Object value = valueOf(area.sheet, row, column, cell);
+
+                        if (value != null)
+                        {
+                            values.add(value);
+                        }
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    private Object valueOf(int sheet, int row, int column, HSSFCell cell)
+    {
+        switch (cell.getCellType())
+        {
+
+            case HSSFCell.CELL_TYPE_NUMERIC :
+                return new Double(cell.getNumericCellValue());
+
+            case HSSFCell.CELL_TYPE_STRING :
+                return cell.getStringCellValue();
+
+            case HSSFCell.CELL_TYPE_BOOLEAN :
+                return cell.getBooleanCellValue() ? Boolean.TRUE
+                                                  : Boolean.FALSE;
+
+            case HSSFCell.CELL_TYPE_ERROR :
+                return new Byte(cell.getErrorCellValue());
+
+            case HSSFCell.CELL_TYPE_FORMULA :
+                break;
+
+            default :
+                return null;
+        }
+        Long        key  = key(sheet, row, column);
+        FormulaNode node = ( FormulaNode ) nodes.get(key);
+
+        if ((node == null) || (node.cell != cell))
+        {
+
+            // a formula set without notifyCellChanged()
+            removeNode(key);
+            node = addNode(sheet, cell);
+        }
+        if (node.state == CLEAN)
+        {
+            return node.value;
+        }
+        if ((node == running) || (node.state == ACTIVE))
+        {
+            circular = true;
+            return CompiledFormula.ERROR_VALUE;
+        }
+        pending.add(node);
+        return null;
+    }
+
+    /**
+     * Calculates a dirty formula without recursion: a formula that read
+     * dirty cells goes back on the stack beneath them and is run again
+     * after they are done.  Nodes on the stack that have been run are
+     * ACTIVE, each waiting on the nodes above it, so meeting an ACTIVE node
+     * means the formulas form a cycle.
+     *
+     * @return the number of formulas calculated
+     */
+
+    private int evaluateNode(FormulaNode start)
+    {
+        List stack      = new ArrayList();
+        int  calculated = 0;
+
+        stack.add(start);
+        while (!stack.isEmpty())
+        {
+            FormulaNode node = ( FormulaNode ) stack.get(stack.size() - 1);
+
+            if (node.state == CLEAN)
+            {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+            node.state = ACTIVE;
+            running    = node;
+            circular   = false;
+            pending.clear();
+            Object value = node.formula.evaluate(this);
+
+            running = null;
+            if (circular && pending.isEmpty())
+            {
+                value = CompiledFormula.ERROR_VALUE;
+            }
+            if (pending.isEmpty())
+            {
+                node.value = value;
+                node.state = CLEAN;
+                node.cell.setFormulaResult(value);
+                stack.remove(stack.size() - 1);
+                calculated++;
+            }
+            else
+            {
+                for (int k = 0; k < pending.size(); k++)
+                {
+                    FormulaNode next = ( FormulaNode ) pending.get(k);
+
+                    if (next.state == DIRTY)
+                    {
+                        stack.add(next);
+                    }
+                }
+            }
+        }
+        pending.clear();
+        return calculated;
+    }
+
+    private FormulaNode addNode(int sheet, HSSFCell cell)
+    {
+        FormulaNode node = new FormulaNode();
+
+        node.cell   = cell;
+        node.sheet  = sheet;
+        node.row    = cell.getCellValueRecord().getRow();
+        node.column = cell.getCellNum();
+        FormulaRecord record =
+            (( FormulaRecordAggregate ) cell.getCellValueRecord())
+                .getFormulaRecord();
+
+        node.formula = CompiledFormula.compile(record.getParsedExpression(),
+                                               sheet,
+                                               workbook.getWorkbook());
+        if (node.formula == null)
+        {
+
+            // can't be calculated, so it keeps the value it was read with
+            node.state = CLEAN;
+            node.value = Double.isNaN(record.getValue()) ? null
+                                                         : new Double(record
+                                                             .getValue());
+        }
+        else
+        {
+            node.state = DIRTY;
+            for (int k = 0; k < node.formula.getReferenceCount(); k++)
+            {
+                Long precedent = key(node.formula.getReferenceSheet(k),
+                                     node.formula.getReferenceRow(k),
+                                     node.formula.getReferenceColumn(k));
+                List dependents = ( List ) cellDependents.get(precedent);
+
+                if (dependents == null)
+                {
+                    dependents = new ArrayList(2);
+                    cellDependents.put(precedent, dependents);
+                }
+                dependents.add(node);
+            }
+            CompiledFormula.Area[] areas = node.formula.getAreas();
+
+            node.areas = new AreaDependent[ areas.length ];
+            for (int k = 0; k < areas.length; k++)
+            {
+                node.areas[ k ] = new AreaDependent(areas[ k ], node);
+                indexArea(node.areas[ k ], true);
+            }
+        }
+        nodes.put(key(sheet, node.row, node.column), node);
+        return node;
+    }
+
+    private void removeNode(Long key)
+    {
+        FormulaNode node = ( FormulaNode ) nodes.remove(key);
+
+        if ((node == null) || (node.formula == null))
+        {
+            return;
+        }
+        for (int k = 0; k < node.formula.getReferenceCount(); k++)
+        {
+            Long precedent = key(node.formula.getReferenceSheet(k),
+                                 node.formula.getReferenceRow(k),
+                                 node.formula.getReferenceColumn(k));
+            List dependents = ( List ) cellDependents.get(precedent);
+
+            if (dependents != null)
+            {
+                dependents.remove(node);
+                if (dependents.isEmpty())
+                {
+                    cellDependents.remove(precedent);
+                }
+            }
+        }
+        for (int k = 0; k < node.areas.length; k++)
+        {
+            indexArea(node.areas[ k ], false);
+        }
+    }
+
+    /**
+     * Enters an area dependent in, or takes it out of, the sets of the
+     * columns its area covers.
+     */
+
+    private void indexArea(AreaDependent dependent, boolean add)
+    {
+        CompiledFormula.Area area = dependent.area;
+
+        if (area.sheet >= areaDependents.length)
+        {
+            return;
+        }
+        Set[] columns = areaDependents[ area.sheet ];
+        int   last    = Math.min(area.lastColumn, COLUMNS - 1);
+
+        for (int column = area.firstColumn; column <= last; column++)
+        {
+            if (add)
+            {
+                if (columns[ column ] == null)
+                {
+                    columns[ column ] = new HashSet();
+                }
+                columns[ column ].add(dependent);
+            }
+            else if (columns[ column ] != null)
+            {
+                columns[ column ].remove(dependent);
+            }
+        }
+    }
+
+    /**
+     * Marks the formulas reading a cell dirty, then the formulas reading
+     * those, breadth first.
+     */
+
+    private void markDependentsDirty(int sheet, int row, int column)
+    {
+        List queue = new ArrayList();
+
+        queue.add(new int[]
+        {
+            sheet, row, column
+        });
+        markDirty(queue);
+    }
+
+    /**
+     * Marks the formulas reading the queued cells dirty, queueing their
+     * own cells in turn.  Only the areas indexed under a cell's column are
+     * looked at.
+     *
+     * @param queue List of int[] { sheet, row, column }
+     */
+
+    private void markDirty(List queue)
+    {
+        for (int next = 0; next < queue.size(); next++)
+        {
+            int[] cell = ( int [] ) queue.get(next);
+
+            if (cell[ 0 ] >= areaDependents.length)
+            {
+                continue;
+            }
+            List  dependents = ( List ) cellDependents.get(key(cell[ 0 ],
+                                   cell[ 1 ], cell[ 2 ]));
+
+            if (dependents != null)
+            {
+                for (int k = 0; k < dependents.size(); k++)
+                {
+                    markDirty(( FormulaNode ) dependents.get(k), queue);
+                }
+            }
+            Set areas = (cell[ 2 ] < COLUMNS)
+                        ? areaDependents[ cell[ 0 ] ][ cell[ 2 ] ]
+                        : null;
+
+            if (areas != null)
+            {
+                Iterator iterator = areas.iterator();
+
+                while (iterator.hasNext())
+                {
+                    AreaDependent dependent =
+                        ( AreaDependent ) iterator.next();
+
+                    if (dependent.area.contains(cell[ 0 ], cell[ 1 ],
+                                                cell[ 2 ]))
+                    {
+                        markDirty(dependent.node, queue);
+                    }
+                }
+            }
+        }
+    }
+
+    private void markDirty(FormulaNode node, List queue)
+    {
+        if (node.state == CLEAN)
+        {
+            node.state = DIRTY;
+            queue.add(new int[]
+            {
+                node.sheet, node.row, node.column
+            });
+        }
+    }
+
+    private int getSheetIndex(Sheet sheet)
+    {
+        for (int k = 0; k < workbook.getNumberOfSheets(); k++)
+        {
+            if (workbook.getSheetAt(k).getSheet() == sheet)
+            {
+                return k;
+            }
+        }
+        throw new IllegalArgumentException(
+            "The cell doesn't belong to this workbook");
+    }
+
+    private static Long key(int sheet, int row, int column)
+    {
+        return new Long((( long ) sheet << 32) | (( long ) row << 16)
+                        | (column & 0xFFFF));
+    }
+
+    /**
+     * A formula cell in the dependency graph.
+     */
+
+    private static final class FormulaNode
+    {
+        HSSFCell        cell;
+        int             sheet;
+        int             row;
+        int             column;
+        CompiledFormula formula;
+        Object          value;
+        int             state;
+        AreaDependent[] areas;
+    }
+
+    /**
+     * A formula reading an area.
+     */
+
+    private static final class AreaDependent
+    {
+        final CompiledFormula.Area area;
+        final FormulaNode          node;
+
+        AreaDependent(CompiledFormula.Area area, FormulaNode node)
+        {
+            this.area = area;
+            this.node = node;
+        }
+    }
+}
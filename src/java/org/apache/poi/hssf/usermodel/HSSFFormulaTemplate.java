@@ -0,0 +1,293 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.model.FormulaParser;
+import org.apache.poi.hssf.model.Workbook;
+import org.apache.poi.hssf.record.formula.Area3DPtg;
+import org.apache.poi.hssf.record.formula.AreaPtg;
+import org.apache.poi.hssf.record.formula.NamePtg;
+import org.apache.poi.hssf.record.formula.Ptg;
+import org.apache.poi.hssf.record.formula.Ref3DPtg;
+import org.apache.poi.hssf.record.formula.ReferencePtg;
+import org.apache.poi.util.LittleEndian;
+
+/**
+ * A formula parsed once, to be set on many cells.  The formula is written
+ * as it would be in one cell, its anchor.  Set on another cell, the
+ * relative parts of its references move with the cell just as when a
+ * formula is copied in Excel: the template for "A1*2" anchored at B1 gives
+ * "A5*2" in B5, while "$A$1*2" stays the same everywhere.<P>
+ *
+ * Setting a template on a cell skips FormulaParser altogether, which makes
+ * it the cheap way to fill a column or a block with the same formula.
+ *
+ * @see HSSFWorkbook#createFormulaTemplate(String, int, short)
+ * @see HSSFCell#setCellFormula(HSSFFormulaTemplate)
+ */
+
+public class HSSFFormulaTemplate
+{
+    private final static int MAX_ROW    = 0xFFFF;
+    private final static int MAX_COLUMN = 0xFF;
+
+    private String           formula;
+    private int              row;
+    private short            column;
+    private byte[]           expression;
+
+    // positions in expression of the row and column fields to move
+    private int[]            rowFields;
+    private int[]            columnFields;
+    private boolean          workbookDependent;
+
+    /**
+     * Parses a formula into a template.
+     *
+     * @param book the workbook the formula's sheet and name references
+     *             belong to
+     * @param formula the formula, as it would be written in the anchor cell
+     * @param row the anchor's row
+     * @param column the anchor's column
+     */
+
+    HSSFFormulaTemplate(Workbook book, String formula, int row, short column)
+    {
+        FormulaParser parser = new FormulaParser(formula + ";", book);
+
+        parser.parse();
+        this.formula = formula;
+        this.row     = row;
+        this.column  = column;
+        setTokens(parser.getRPNPtg());
+    }
+
+    private void setTokens(Ptg [] ptgs)
+    {
+        int    size         = 0;
+        List   rowList      = new ArrayList();
+        List   columnList   = new ArrayList();
+
+        for (int k = 0; k < ptgs.length; k++)
+        {
+            size += ptgs[ k ].getSize();
+        }
+        expression = new byte[ size ];
+        int pos = 0;
+
+        for (int k = 0; k < ptgs.length; k++)
+        {
+            Ptg ptg = ptgs[ k ];
+
+            ptg.writeBytes(expression, pos);
+            if (ptg instanceof ReferencePtg)
+            {
+                addField(rowList, columnList, pos + 1, pos + 3);
+            }
+            else if (ptg instanceof AreaPtg)
+            {
+                addField(rowList, columnList, pos + 1, pos + 5);
+                addField(rowList, columnList, pos + 3, pos + 7);
+            }
+            else if (ptg instanceof Ref3DPtg)
+            {
+                workbookDependent = true;
+                addField(rowList, columnList, pos + 3, pos + 5);
+            }
+            else if (ptg instanceof Area3DPtg)
+            {
+                workbookDependent = true;
+                addField(rowList, columnList, pos + 3, pos + 7);
+                addField(rowList, columnList, pos + 5, pos + 9);
+            }
+            else if (ptg instanceof NamePtg)
+            {
+                workbookDependent = true;
+            }
+            pos += ptg.getSize();
+        }
+        rowFields    = toArray(rowList);
+        columnFields = toArray(columnList);
+    }
+
+    /**
+     * notes the row and column fields of a cell address whose relative
+     * parts will have to move
+     */
+
+    private void addField(List rowList, List columnList, int rowPos,
+                          int columnPos)
+    {
+        short columnField = LittleEndian.getShort(expression, columnPos);
+
+        if ((columnField & 0x8000) != 0)
+        {
+            rowList.add(new Integer(rowPos));
+        }
+        if ((columnField & 0x4000) != 0)
+        {
+            columnList.add(new Integer(columnPos));
+        }
+    }
+
+    private static int [] toArray(List list)
+    {
+        int[] array = new int[ list.size() ];
+
+        for (int k = 0; k < array.length; k++)
+        {
+            array[ k ] = (( Integer ) list.get(k)).intValue();
+        }
+        return array;
+    }
+
+    /**
+     * @return the formula the template was created from
+     */
+
+    public String getFormula()
+    {
+        return formula;
+    }
+
+    /**
+     * @return the row of the cell the formula was written for
+     */
+
+    public int getRow()
+    {
+        return row;
+    }
+
+    /**
+     * @return the column of the cell the formula was written for
+     */
+
+    public short getColumn()
+    {
+        return column;
+    }
+
+    /**
+     * @return whether the formula refers to other sheets or to names, and
+     *         so only means something in its own workbook
+     */
+
+    boolean isWorkbookDependent()
+    {
+        return workbookDependent;
+    }
+
+    /**
+     * Creates the tokens of the formula as it reads in a given cell.
+     *
+     * @param row the cell's row
+     * @param column the cell's column
+     * @return List of new Ptg, in RPN order
+     * @exception IllegalArgumentException if a relative reference moves off
+     *            the sheet
+     */
+
+    List getTokens(int row, int column)
+    {
+        byte[] data = expression;
+
+        if ((row != this.row) || (column != this.column))
+        {
+            data = new byte[ expression.length ];
+            System.arraycopy(expression, 0, data, 0, data.length);
+            for (int k = 0; k < rowFields.length; k++)
+            {
+                int moved = LittleEndian.getUShort(data, rowFields[ k ])
+                            + row - this.row;
+
+                checkMove(moved, MAX_ROW, row, column);
+                LittleEndian.putShort(data, rowFields[ k ], ( short ) moved);
+            }
+            for (int k = 0; k < columnFields.length; k++)
+            {
+                int moved = (data[ columnFields[ k ] ] & 0xFF) + column
+                            - this.column;
+
+                checkMove(moved, MAX_COLUMN, row, column);
+                data[ columnFields[ k ] ] = ( byte ) moved;
+            }
+        }
+        List ptgs = new ArrayList();
+        int  pos  = 0;
+
+        while (pos < data.length)
+        {
+            Ptg ptg = Ptg.createPtg(data, pos);
+
+            ptgs.add(ptg);
+            pos += ptg.getSize();
+        }
+        return ptgs;
+    }
+
+    private void checkMove(int moved, int max, int row, int column)
+    {
+        if ((moved < 0) || (moved > max))
+        {
+            throw new IllegalArgumentException("The formula " + formula
+                                               + " refers off the sheet in row "
+                                               + row + ", column " + column);
+        }
+    }
+}
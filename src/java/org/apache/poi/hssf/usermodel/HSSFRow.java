@@ -64,8 +64,8 @@ import org.apache.poi.hssf.model.Workbook;
 import org.apache.poi.hssf.record.CellValueRecordInterface;
 import org.apache.poi.hssf.record.RowRecord;
 
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * High level representation of a row of a spreadsheet.
@@ -84,7 +84,10 @@ public class HSSFRow
     public final static int INITIAL_CAPACITY = 5;
     //private short rowNum;
     private int rowNum;
-    private HashMap cells;
+
+    // cells indexed by column number, and the number of non-null entries
+    private HSSFCell[] cells;
+    private int numCells;
 //    private short firstcell = -1;
 //    private short lastcell = -1;
 
@@ -106,6 +109,12 @@ public class HSSFRow
 
     private Sheet sheet;
 
+    /**
+     * the high level sheet holding this row, set by HSSFSheet
+     */
+
+    private HSSFSheet owner;
+
     protected HSSFRow()
     {
     }
@@ -123,7 +132,7 @@ public class HSSFRow
     protected HSSFRow(Workbook book, Sheet sheet, int rowNum)
     {
         this.rowNum = rowNum;
-        cells = new HashMap(10);   // new ArrayList(INITIAL_CAPACITY);
+        cells = new HSSFCell[ INITIAL_CAPACITY ];
         this.book = book;
         this.sheet = sheet;
         row = new RowRecord();
@@ -148,7 +157,7 @@ public class HSSFRow
     protected HSSFRow(Workbook book, Sheet sheet, RowRecord record)
     {
         //this.rowNum = rowNum;
-        cells = new HashMap();   // ArrayList(INITIAL_CAPACITY);
+        cells = new HSSFCell[ INITIAL_CAPACITY ];
         this.book = book;
         this.sheet = sheet;
         row = record;
@@ -177,6 +186,7 @@ public class HSSFRow
 
         addCell(cell);
         sheet.addValueRecord(getRowNum(), cell.getCellValueRecord());
+        cell.notifyChanged();
         return cell;
     }
 
@@ -199,6 +209,7 @@ public class HSSFRow
 
         addCell(cell);
         sheet.addValueRecord(getRowNum(), cell.getCellValueRecord());
+        cell.notifyChanged();
         return cell;
     }
 
@@ -211,7 +222,7 @@ public class HSSFRow
         CellValueRecordInterface cval = cell.getCellValueRecord();
 
         sheet.removeValueRecord(getRowNum(), cval);
-        cells.remove(new Integer(cell.getCellNum()));
+        removeCellAt(cell.getCellNum());
 
         if (cell.getCellNum() == row.getLastCol())
         {
@@ -221,6 +232,7 @@ public class HSSFRow
         {
             row.setFirstCol(findFirstCell(row.getFirstCol()));
         }
+        cell.notifyChanged();
     }
 
     /**
@@ -253,6 +265,31 @@ public class HSSFRow
         {
             row.setRowNumber(rowNum);   // used only for KEY comparison (HSSFRow)
         }
+        for (int k = 0; (cells != null) && (k < cells.length); k++)
+        {
+            if (cells[k] != null)
+            {
+                cells[k].setRowNum(rowNum);
+            }
+        }
+    }
+
+    /**
+     * set the sheet holding this row.  Should only be called by HSSFSheet.
+     */
+
+    void setOwner(HSSFSheet owner)
+    {
+        this.owner = owner;
+    }
+
+    /**
+     * @return the workbook's formula evaluator, or null if it has none
+     */
+
+    HSSFFormulaEvaluator getFormulaEvaluator()
+    {
+        return (owner == null) ? null : owner.getFormulaEvaluator();
     }
 
     /**
@@ -272,6 +309,7 @@ public class HSSFRow
 
     private void addCell(HSSFCell cell)
     {
+        cell.setOwner(this);
         if (row.getFirstCol() == -1)
         {
             row.setFirstCol(cell.getCellNum());
@@ -280,7 +318,7 @@ public class HSSFRow
         {
             row.setLastCol(cell.getCellNum());
         }
-        cells.put(new Integer(cell.getCellNum()), cell);
+        setCellAt(cell.getCellNum(), cell);
 
         if (cell.getCellNum() < row.getFirstCol())
         {
@@ -302,17 +340,50 @@ public class HSSFRow
 
     public HSSFCell getCell(short cellnum)
     {
+        if (cellnum < 0 || cellnum >= cells.length)
+        {
+            return null;
+        }
+        return cells[cellnum];
+    }
 
-/*        for (int k = 0; k < cells.size(); k++)
+    /**
+     * used internally to put a cell in the column index, growing it if needed.
+     */
+
+    private void setCellAt(int column, HSSFCell cell)
+    {
+        if (column >= cells.length)
         {
-            HSSFCell cell = ( HSSFCell ) cells.get(k);
+            int newLength = cells.length * 2;
 
-            if (cell.getCellNum() == cellnum)
+            if (newLength <= column)
             {
-                return cell;
+                newLength = column + 1;
             }
-        }*/
-        return (HSSFCell) cells.get(new Integer(cellnum));
+            HSSFCell[] newCells = new HSSFCell[ newLength ];
+
+            System.arraycopy(cells, 0, newCells, 0, cells.length);
+            cells = newCells;
+        }
+        if (cells[column] == null)
+        {
+            numCells++;
+        }
+        cells[column] = cell;
+    }
+
+    /**
+     * used internally to clear a column of the column index.
+     */
+
+    private void removeCellAt(int column)
+    {
+        if (column >= 0 && column < cells.length && cells[column] != null)
+        {
+            cells[column] = null;
+            numCells--;
+        }
     }
 
     /**
@@ -354,7 +425,7 @@ public class HSSFRow
         {
             return 0;   // shouldn't be possible but it is due to missing API support for BLANK/MULBLANK
         }
-        return cells.size();
+        return numCells;
     }
 
     /**
@@ -451,13 +522,64 @@ public class HSSFRow
     }
 
     /**
-     * @return cell iterator of the physically defined cells.  Note element 4 may
-     * actually be row cell depending on how many are defined!
+     * @return cell iterator of the physically defined cells, in column order.
+     * Note element 4 may actually be row cell depending on how many are defined!
      */
 
     public Iterator cellIterator()
     {
-        return cells.values().iterator();
+        return new CellIterator();
+    }
+
+    /**
+     * iterates over the defined cells in column order.
+     */
+
+    private class CellIterator
+            implements Iterator
+    {
+        private int next = -1;
+        private int current = -1;
+
+        public CellIterator()
+        {
+            findNext();
+        }
+
+        private void findNext()
+        {
+            next++;
+            while (next < cells.length && cells[next] == null)
+            {
+                next++;
+            }
+        }
+
+        public boolean hasNext()
+        {
+            return next < cells.length;
+        }
+
+        public Object next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException("At last element");
+            }
+            current = next;
+            findNext();
+            return cells[current];
+        }
+
+        public void remove()
+        {
+            if (current == -1)
+            {
+                throw new IllegalStateException("remove() called before next()");
+            }
+            removeCellAt(current);
+            current = -1;
+        }
     }
 
     public int compareTo(Object obj)
@@ -65,9 +65,11 @@ import org.apache.poi.hssf.record.*;
 import org.apache.poi.hssf.util.Region;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
+import org.apache.poi.util.PagedArray;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.TreeMap;
 import java.util.List;
 
 /**
@@ -107,10 +109,16 @@ public class HSSFSheet
      */
 
     private Sheet sheet;
-    private TreeMap rows;
+    private PagedArray rows;   // HSSFRows indexed by row number
     private Workbook book;
     private int firstrow;
     private int lastrow;
+
+    /**
+     * the workbook holding this sheet, set by HSSFWorkbook
+     */
+
+    private HSSFWorkbook owner;
     private static POILogger log = POILogFactory.getLogger(HSSFSheet.class);
 
     /**
@@ -124,7 +132,7 @@ public class HSSFSheet
     protected HSSFSheet(Workbook book)
     {
         sheet = Sheet.createSheet();
-        rows = new TreeMap();   // new ArrayList(INITIAL_CAPACITY);
+        rows = new PagedArray();
         this.book = book;
     }
 
@@ -140,7 +148,7 @@ public class HSSFSheet
     protected HSSFSheet(Workbook book, Sheet sheet)
     {
         this.sheet = sheet;
-        rows = new TreeMap();
+        rows = new PagedArray();
         this.book = book;
         setPropertiesFromSheet(sheet);
     }
@@ -149,6 +157,25 @@ public class HSSFSheet
       return new HSSFSheet(book, sheet.cloneSheet());
     }
 
+    /**
+     * set the workbook holding this sheet.  Should only be called by
+     * HSSFWorkbook.
+     */
+
+    void setOwner(HSSFWorkbook owner)
+    {
+        this.owner = owner;
+    }
+
+    /**
+     * @return the workbook's formula evaluator, or null if it has none
+     */
+
+    HSSFFormulaEvaluator getFormulaEvaluator()
+    {
+        return (owner == null) ? null : owner.getFormulaEvaluator();
+    }
+
 
     /**
      * used internally to set the properties given a Sheet object
@@ -244,7 +271,7 @@ public class HSSFSheet
         sheet.setLoc(sheet.getDimsLoc());
         if (rows.size() > 0)
         {
-            rows.remove(row);
+            rows.remove(row.getRowNum());
             if (row.getRowNum() == getLastRowNum())
             {
                 lastrow = findLastRow(lastrow);
@@ -261,25 +288,48 @@ public class HSSFSheet
 
                 sheet.removeValueRecord(row.getRowNum(),
                         cell.getCellValueRecord());
+                cell.notifyChanged();
             }
             sheet.removeRow(row.getRowRecord());
         }
     }
 
     /**
-     * used internally to refresh the "last row" when the last row is removed.
+     * Drops the high level rows up to and including lastRow and moves their
+     * records into the low level sheet's spill file.  Used by
+     * HSSFStreamingSheet; unlike removeRow the rows are still written out.
+     *
+     * @param lastRow the last row number to flush
+     * @param inMemory whether the flushed rows are packed in memory rather
+     *                 than written to a spill file
+     * @exception IOException if the spill file cannot be written
      */
 
-    private int findLastRow(int lastrow)
+    void flushRows(int lastRow, boolean inMemory)
+            throws IOException
     {
-        int rownum = lastrow - 1;
-        HSSFRow r = getRow(rownum);
+        Iterator iter = rows.iterator();
 
-        while (r == null && rownum >= 0)
+        while (iter.hasNext())
         {
-            r = getRow(--rownum);
+            HSSFRow row = (HSSFRow) iter.next();
+
+            if (row.getRowNum() > lastRow)
+            {
+                break;
+            }
+            iter.remove();
         }
-        return rownum;
+        sheet.flushRows(lastRow, inMemory);
+    }
+
+    /**
+     * used internally to refresh the "last row" when the last row is removed.
+     */
+
+    private int findLastRow(int lastrow)
+    {
+        return rows.previousIndex(lastrow - 1);
     }
 
     /**
@@ -288,13 +338,7 @@ public class HSSFSheet
 
     private int findFirstRow(int firstrow)
     {
-        int rownum = firstrow + 1;
-        HSSFRow r = getRow(rownum);
-
-        while (r == null && rownum <= getLastRowNum())
-        {
-            r = getRow(++rownum);
-        }
+        int rownum = rows.nextIndex(firstrow + 1);
 
         if (rownum > getLastRowNum())
             return -1;
@@ -310,7 +354,8 @@ public class HSSFSheet
 
     private void addRow(HSSFRow row, boolean addLow)
     {
-        rows.put(row, row);
+        row.setOwner(this);
+        rows.put(row.getRowNum(), row);
         if (addLow)
         {
             sheet.addRow(row.getRowRecord());
@@ -319,7 +364,7 @@ public class HSSFSheet
         {
             lastrow = row.getRowNum();
         }
-        if (row.getRowNum() < getFirstRowNum())
+        if ((row.getRowNum() < getFirstRowNum()) || (getFirstRowNum() == -1))
         {
             firstrow = row.getRowNum();
         }
@@ -334,11 +379,7 @@ public class HSSFSheet
 
     public HSSFRow getRow(int rownum)
     {
-        HSSFRow row = new HSSFRow();
-
-        //row.setRowNum((short) rownum);
-        row.setRowNum( rownum);
-        return (HSSFRow) rows.get(row);
+        return (HSSFRow) rows.get(rownum);
     }
 
     /**
@@ -577,6 +618,55 @@ public class HSSFSheet
         return new Region(sheet.getMergedRegionAt(index));
     }
 
+    /**
+     * finds the merged region a cell belongs to
+     * @param row the cell's row
+     * @param column the cell's column
+     * @return the merged region or null if the cell is not merged
+     */
+
+    public Region getMergedRegionContaining(int row, short column)
+    {
+        MergeCellsRecord.MergedRegion region =
+                sheet.getMergedRegionContaining(row, column);
+
+        return (region == null) ? null : new Region(region);
+    }
+
+    /**
+     * finds the merged regions that share at least one cell with an area,
+     * for instance to check that a new region would not overlap another
+     * @param area the area to look in
+     * @return the merged regions overlapping the area, empty if there are none
+     */
+
+    public Region[] getMergedRegionsOverlapping(Region area)
+    {
+        List regions = sheet.getMergedRegionsOverlapping(area.getRowFrom(),
+                area.getColumnFrom(), area.getRowTo(), area.getColumnTo());
+        Region[] retval = new Region[regions.size()];
+
+        for (int k = 0; k < retval.length; k++)
+        {
+            retval[k] = new Region(
+                    (MergeCellsRecord.MergedRegion) regions.get(k));
+        }
+        return retval;
+    }
+
+    /**
+     * removes all merged regions that share at least one cell with an area.
+     * This is much quicker than calling removeMergedRegion for each of them.
+     * @param area the area to unmerge
+     * @return the number of merged regions removed
+     */
+
+    public int removeMergedRegions(Region area)
+    {
+        return sheet.removeMergedRegions(area.getRowFrom(),
+                area.getColumnFrom(), area.getRowTo(), area.getColumnTo());
+    }
+
     /**
      * @return an iterator of the PHYSICAL rows.  Meaning the 3rd element may not
      * be the third row if say for instance the second row is undefined.
@@ -584,7 +674,7 @@ public class HSSFSheet
 
     public Iterator rowIterator()
     {
-        return rows.values().iterator();
+        return rows.iterator();
     }
 
     /**
@@ -890,7 +980,12 @@ public class HSSFSheet
     /**
      * Shifts rows between startRow and endRow n number of rows.
      * If you use a negative number, it will shift rows up.
-     * Code ensures that rows don't wrap around
+     * Code ensures that rows don't wrap around: rows shifted off the sheet
+     * are dropped.
+     * <p>
+     * The rows are moved in place, along with their cells, merged regions
+     * lying within them and the references to their cells in the sheet's
+     * formulas.  Any rows already where the shifted rows land are replaced.
      *
      * @param startRow the row to start shifting
      * @param endRow the row to end shifting
@@ -898,49 +993,53 @@ public class HSSFSheet
      */
     public void shiftRows( int startRow, int endRow, int n )
     {
-        int s, e, inc;
-        if ( n < 0 )
+        if ( n == 0 || startRow > endRow )
+            return;
+        sheet.shiftRows( startRow, endRow, n );
+
+        List moved = removeRows( startRow, endRow );
+        removeRows( startRow + n, endRow + n );
+        for ( int k = 0; k < moved.size(); k++ )
         {
-            s = startRow;
-            e = endRow;
-            inc = 1;
+            HSSFRow row = (HSSFRow) moved.get( k );
+            int rowNum = row.getRowNum() + n;
+            if ( rowNum >= 0 && rowNum < 65536 )
+            {
+                row.setRowNum( rowNum );
+                rows.put( rowNum, row );
+            }
+        }
+        if ( rows.size() > 0 )
+        {
+            firstrow = rows.getFirstIndex();
+            lastrow = rows.getLastIndex();
         }
         else
         {
-            s = endRow;
-            e = startRow;
-            inc = -1;
+            firstrow = -1;
+            lastrow = -1;
         }
-        for ( int rowNum = s; rowNum >= startRow && rowNum <= endRow && rowNum >= 0 && rowNum < 65536; rowNum += inc )
+        HSSFFormulaEvaluator evaluator = getFormulaEvaluator();
+        if ( evaluator != null )
         {
-            HSSFRow row = getRow( rowNum );
-            HSSFRow row2Replace = getRow( rowNum + n );
-            if ( row2Replace == null )
-                row2Replace = createRow( rowNum + n );
+            evaluator.notifyRowsChanged( this, startRow, endRow );
+            evaluator.notifyRowsChanged( this, Math.max( startRow + n, 0 ),
+                    Math.min( endRow + n, 65535 ) );
+        }
+    }
 
-            HSSFCell cell;
-            for ( short col = row2Replace.getFirstCellNum(); col <= row2Replace.getLastCellNum(); col++ )
-            {
-                cell = row2Replace.getCell( col );
-                if ( cell != null )
-                    row2Replace.removeCell( cell );
-            }
-	    if (row == null) continue;
-            for ( short col = row.getFirstCellNum(); col <= row.getLastCellNum(); col++ )
-            {
-                cell = row.getCell( col );
-                if ( cell != null )
-                {
-                    row.removeCell( cell );
-                    CellValueRecordInterface cellRecord = cell.getCellValueRecord();
-                    cellRecord.setRow( rowNum + n );
-                    row2Replace.createCellFromRecord( cellRecord );
-                    sheet.addValueRecord( rowNum + n, cellRecord );
-                }
-            }
+    /**
+     * takes the high level rows from startRow to endRow out of the sheet,
+     * leaving the low level model alone
+     */
+    private List removeRows( int startRow, int endRow )
+    {
+        List removed = new ArrayList();
+        for ( int rowNum = rows.nextIndex( startRow ); rowNum != -1 && rowNum <= endRow; rowNum = rows.nextIndex( rowNum + 1 ) )
+        {
+            removed.add( rows.remove( rowNum ) );
         }
-        if ( endRow == lastrow || endRow + n > lastrow ) lastrow = Math.min( endRow + n, 65535 );
-        if ( startRow == firstrow || startRow + n < firstrow ) firstrow = Math.max( startRow + n, 0 );
+        return removed;
     }
 
     protected void insertChartRecords( List records )
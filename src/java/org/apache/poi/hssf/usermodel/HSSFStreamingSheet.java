@@ -0,0 +1,257 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import org.apache.poi.hssf.model.Workbook;
+import org.apache.poi.util.IntList;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A sheet for generating very large worksheets with bounded memory.  Rows
+ * must be created in ascending order.  Only the most recently created rows
+ * (the window) are kept as live HSSFRow/HSSFCell objects; older rows are
+ * serialized to a temporary spill file and spliced back into the workbook
+ * stream when the workbook is written.  Alternatively older rows can be kept
+ * in memory with their cells packed into primitive arrays, which takes a
+ * fraction of the memory of the HSSFCell objects and records they replace.
+ * <P>
+ * Once a row has left the window getRow returns null for it, and it must
+ * not be modified through any HSSFRow or HSSFCell reference still held.
+ * Flushed rows cannot be removed, and once any row has been flushed rows
+ * cannot be shifted either.
+ * <P>
+ * The spill file is only deleted by close() (or HSSFWorkbook.close()), so
+ * call it once the workbook has been written.
+ *
+ * @see org.apache.poi.hssf.usermodel.HSSFWorkbook#createStreamingSheet(String,int)
+ * @see org.apache.poi.hssf.usermodel.HSSFWorkbook#createStreamingSheet(String,int,boolean)
+ */
+
+public class HSSFStreamingSheet
+        extends HSSFSheet
+{
+    private int     windowSize;
+    private IntList window;
+    private int     lastRowCreated = -1;
+    private int     lastRowFlushed = -1;
+    private boolean inMemory;
+
+    /**
+     * Creates new HSSFStreamingSheet - called by HSSFWorkbook.
+     *
+     * @param book - lowlevel Workbook object associated with the sheet.
+     * @param windowSize - the number of rows kept live
+     * @param inMemory - whether older rows are packed in memory rather than
+     *                   spilled to a temporary file
+     * @see org.apache.poi.hssf.usermodel.HSSFWorkbook#createStreamingSheet(String,int,boolean)
+     */
+
+    protected HSSFStreamingSheet(Workbook book, int windowSize,
+                                 boolean inMemory)
+    {
+        super(book);
+        if (windowSize < 1)
+        {
+            throw new IllegalArgumentException("The row window must hold at least one row");
+        }
+        this.windowSize = windowSize;
+        this.window     = new IntList(windowSize + 1);
+        this.inMemory   = inMemory;
+    }
+
+    /**
+     * Create a new row within the sheet.  The row number must be greater than
+     * that of every row created before it.  If the window is full the oldest
+     * live row is flushed to the spill file.
+     *
+     * @param rownum  row number
+     * @return High level HSSFRow object representing a row in the sheet
+     * @exception IllegalArgumentException if rownum is not ascending
+     */
+
+    public HSSFRow createRow(int rownum)
+    {
+        if (rownum <= lastRowCreated)
+        {
+            throw new IllegalArgumentException("Row " + rownum
+                    + " must be greater than the last row created ("
+                    + lastRowCreated + ") in a streaming sheet");
+        }
+        HSSFRow row = super.createRow(rownum);
+
+        lastRowCreated = rownum;
+        window.add(rownum);
+        if (window.size() > windowSize)
+        {
+            try
+            {
+                flushRows(window.get(window.size() - windowSize - 1));
+            }
+            catch (IOException e)
+            {
+                throw new RuntimeException("Unable to flush rows to the spill file: "
+                                           + e.getMessage());
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Remove a live row from the sheet.
+     *
+     * @param row   representing a row to remove.
+     * @exception IllegalStateException if the row has already been flushed
+     */
+
+    public void removeRow(HSSFRow row)
+    {
+        if (row.getRowNum() <= lastRowFlushed)
+        {
+            throw new IllegalStateException("Row " + row.getRowNum()
+                    + " has already been flushed from the streaming sheet");
+        }
+        super.removeRow(row);
+        window.removeValue(row.getRowNum());
+    }
+
+    /**
+     * Shifts rows the way HSSFSheet does, which is only possible while no
+     * row has been flushed: the flushed rows can't be moved, nor could rows
+     * be moved in among them.
+     *
+     * @param startRow the row to start shifting
+     * @param endRow the row to end shifting
+     * @param n the number of rows to shift
+     * @exception IllegalStateException if any row has been flushed
+     */
+
+    public void shiftRows(int startRow, int endRow, int n)
+    {
+        if (lastRowFlushed != -1)
+        {
+            throw new IllegalStateException(
+                    "Rows cannot be shifted once a streaming sheet has flushed rows");
+        }
+        super.shiftRows(startRow, endRow, n);
+        window.clear();
+        lastRowCreated = -1;
+        Iterator rows = rowIterator();
+
+        while (rows.hasNext())
+        {
+            lastRowCreated = (( HSSFRow ) rows.next()).getRowNum();
+            window.add(lastRowCreated);
+        }
+    }
+
+    /**
+     * Flush every live row to the spill file.  Further rows may still be
+     * created after this.
+     *
+     * @exception IOException if the spill file cannot be written
+     */
+
+    public void flushRows()
+            throws IOException
+    {
+        if (window.size() > 0)
+        {
+            flushRows(window.get(window.size() - 1));
+        }
+    }
+
+    /**
+     * Closes and deletes the spill file.  The rows that have been flushed are
+     * lost, so call this once the workbook has been written for the last
+     * time.
+     */
+
+    public void close()
+    {
+        getSheet().disposeSpilledRows();
+    }
+
+    /**
+     * @return true if flushed rows are packed in memory rather than spilled
+     *         to a temporary file
+     */
+
+    public boolean isInMemory()
+    {
+        return inMemory;
+    }
+
+    /**
+     * @return the number of rows kept live before they are flushed
+     */
+
+    public int getWindowSize()
+    {
+        return windowSize;
+    }
+
+    void flushRows(int lastRow)
+            throws IOException
+    {
+        super.flushRows(lastRow, inMemory);
+        lastRowFlushed = Math.max(lastRowFlushed, lastRow);
+        while (window.size() > 0 && window.get(0) <= lastRow)
+        {
+            window.remove(0);
+        }
+    }
+}
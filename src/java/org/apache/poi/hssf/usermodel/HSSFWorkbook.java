@@ -68,14 +68,17 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Stack;
 
-import org.apache.poi.hssf.eventmodel.EventRecordFactory;
 import org.apache.poi.hssf.model.Sheet;
 import org.apache.poi.hssf.model.Workbook;
+import org.apache.poi.hssf.record.BOFRecord;
 import org.apache.poi.hssf.record.BackupRecord;
+import org.apache.poi.hssf.record.EOFRecord;
 import org.apache.poi.hssf.record.ExtendedFormatRecord;
 import org.apache.poi.hssf.record.FontRecord;
 import org.apache.poi.hssf.record.NameRecord;
+import org.apache.poi.hssf.record.Record;
 import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.record.RecordWriter;
 import org.apache.poi.hssf.record.SSTRecord;
 import org.apache.poi.hssf.record.UnknownRecord;
 import org.apache.poi.hssf.record.WindowTwoRecord;
@@ -88,6 +91,8 @@ import org.apache.poi.poifs.filesystem.DocumentEntry;
 import org.apache.poi.poifs.filesystem.DocumentInputStream;
 import org.apache.poi.poifs.filesystem.Entry;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.poifs.filesystem.POIFSWriterEvent;
+import org.apache.poi.poifs.filesystem.POIFSWriterListener;
 import org.apache.poi.util.POILogFactory;
 import org.apache.poi.util.POILogger;
 
@@ -147,6 +152,16 @@ public class HSSFWorkbook
      * memory.
      */
     private POIFSFileSystem poifs;
+
+    /**
+     * recalculates the formulas before the workbook is written, if set
+     */
+    private HSSFFormulaEvaluator formulaEvaluator;
+
+    /**
+     * the most threads sheets are written on, see setThreads
+     */
+    private int threads = 1;
     
     private static POILogger log = POILogFactory.getLogger(HSSFWorkbook.class);
 
@@ -180,6 +195,34 @@ public class HSSFWorkbook
 
     public HSSFWorkbook(POIFSFileSystem fs, boolean preserveNodes)
             throws IOException
+    {
+        this(fs, preserveNodes, 1);
+    }
+
+    /**
+     * given a POI POIFSFileSystem object, read in its Workbook and populate
+     * the high and low level models, building the sheets on several threads.
+     * Once the workbook's records are read the sheets are independent of
+     * each other, so each thread builds whole sheets.  The workbook's shared
+     * parts (strings, formats and styles) are only read while the sheets are
+     * being built; the one step that adds to them, converting old LABEL
+     * records into shared strings, is done on the calling thread.
+     *
+     * @param fs the POI filesystem that contains the Workbook stream.
+     * @param preserveNodes whether to preseve other nodes, such as
+     *        macros.  This takes more memory, so only say yes if you
+     *        need to.
+     * @param threads the most threads to build sheets on, 1 to build them
+     *        one after the other on the calling thread.  This only affects
+     *        reading; the workbook is written on one thread unless
+     *        setThreads says otherwise.
+     * @exception IOException if the stream cannot be read
+     * @see #setThreads(int)
+     */
+
+    public HSSFWorkbook(POIFSFileSystem fs, boolean preserveNodes,
+                        int threads)
+            throws IOException
     {
         this.preserveNodes = preserveNodes;
      
@@ -190,19 +233,40 @@ public class HSSFWorkbook
         sheets = new ArrayList(INITIAL_CAPACITY);
         names  = new ArrayList(INITIAL_CAPACITY);
         
-        InputStream stream = fs.createDocumentInputStream("Workbook");
-        
-        EventRecordFactory factory = new EventRecordFactory();
-       
-        
-        
-        List records = RecordFactory.createRecords(stream);
+        // read the whole Workbook document once and parse the records in
+        // place, rather than allocating a byte array for every record
+        DocumentInputStream stream = fs.createDocumentInputStream("Workbook");
+        byte[] data = new byte[ stream.available() ];
+
+        try
+        {
+            for (int read = 0, count; read < data.length; read += count)
+            {
+                count = stream.read(data, read, data.length - read);
+                if (count < 0)
+                {
+                    throw new IOException("Workbook document ended after "
+                                          + read + " of " + data.length
+                                          + " bytes");
+                }
+            }
+        }
+        finally
+        {
+            stream.close();
+        }
+        List records = RecordFactory.createRecords(data, 0, data.length);
 
         workbook = Workbook.createWorkbook(records);
         setPropertiesFromWorkbook(workbook);
         int recOffset = workbook.getNumRecords();
         int sheetNum = 0;
 
+        if (threads > 1)
+        {
+            createSheets(records, recOffset, threads);
+            recOffset = records.size();
+        }
         while (recOffset < records.size())
         {
             Sheet sheet = Sheet.createSheet(records, sheetNum++, recOffset );
@@ -212,6 +276,7 @@ public class HSSFWorkbook
                     workbook);   // convert all LabelRecord records to LabelSSTRecord
             HSSFSheet hsheet = new HSSFSheet(workbook, sheet);
 
+            hsheet.setOwner(this);
             sheets.add(hsheet);
 
             // workbook.setSheetName(sheets.size() -1, "Sheet"+sheets.size());
@@ -223,6 +288,85 @@ public class HSSFWorkbook
         }
     }
 
+    /**
+     * builds the sheets of a workbook being read on several threads
+     *
+     * @param records all of the workbook's records
+     * @param offset the position of the first sheet's records
+     * @param threads the most threads to use
+     */
+
+    private void createSheets(final List records, int offset, int threads)
+            throws IOException
+    {
+        final List    offsets   = findSheetOffsets(records, offset);
+        final Sheet[] lowsheets = new Sheet[ offsets.size() ];
+        final HSSFSheet[] hsheets = new HSSFSheet[ offsets.size() ];
+
+        new SheetTask()
+        {
+            void run(int sheet)
+            {
+                lowsheets[ sheet ] = Sheet.createSheet(records, sheet,
+                        ((Integer) offsets.get(sheet)).intValue());
+            }
+        }.runAll(lowsheets.length, threads);
+
+        // adds to the shared string table, so not in parallel.  The cells
+        // themselves don't look their strings up until they are read.
+        for (int k = 0; k < lowsheets.length; k++)
+        {
+            lowsheets[ k ].convertLabelRecords(workbook);
+        }
+        new SheetTask()
+        {
+            void run(int sheet)
+            {
+                hsheets[ sheet ] = new HSSFSheet(workbook, lowsheets[ sheet ]);
+            }
+        }.runAll(hsheets.length, threads);
+        for (int k = 0; k < hsheets.length; k++)
+        {
+            hsheets[ k ].setOwner(this);
+            sheets.add(hsheets[ k ]);
+        }
+    }
+
+    /**
+     * splits the records after the workbook's own into sheets the same way
+     * Sheet.createSheet does, each sheet ending at the EOF record that
+     * closes its BOF
+     *
+     * @return the position of each sheet's first record, as Integers
+     */
+
+    private static List findSheetOffsets(List records, int offset)
+    {
+        List offsets = new ArrayList();
+        int  start   = offset;
+        int  nesting = 0;
+
+        for (int k = offset; k < records.size(); k++)
+        {
+            short sid = ((Record) records.get(k)).getSid();
+
+            if (sid == BOFRecord.sid)
+            {
+                nesting++;
+            }
+            else if ((sid == EOFRecord.sid) && (--nesting == 0))
+            {
+                offsets.add(new Integer(start));
+                start = k + 1;
+            }
+        }
+        if (start < records.size())
+        {
+            offsets.add(new Integer(start));
+        }
+        return offsets;
+    }
+
      public HSSFWorkbook(InputStream s) throws IOException {
          this(s,true);
      }
@@ -246,6 +390,24 @@ public class HSSFWorkbook
         this(new POIFSFileSystem(s), preserveNodes);
     }
 
+    /**
+     * Companion to HSSFWorkbook(POIFSFileSystem, boolean, int), this
+     * constructs the POI filesystem around your inputstream.
+     *
+     * @param s  the POI filesystem that contains the Workbook stream.
+     * @param preserveNodes whether to preseve other nodes, such as
+     *        macros.
+     * @param threads the most threads to build sheets on
+     * @see #HSSFWorkbook(POIFSFileSystem, boolean, int)
+     * @exception IOException if the stream cannot be read
+     */
+
+    public HSSFWorkbook(InputStream s, boolean preserveNodes, int threads)
+            throws IOException
+    {
+        this(new POIFSFileSystem(s), preserveNodes, threads);
+    }
+
     /**
      * used internally to set the workbook properties.
      */
@@ -349,6 +511,7 @@ public class HSSFWorkbook
 //            throw new RuntimeException("You cannot have more than three sheets in HSSF 1.0");
         HSSFSheet sheet = new HSSFSheet(workbook);
 
+        sheet.setOwner(this);
         sheets.add(sheet);
         workbook.setSheetName(sheets.size() - 1,
                 "Sheet" + (sheets.size() - 1));
@@ -373,6 +536,7 @@ public class HSSFWorkbook
         windowTwo.setSelected(sheets.size() == 1);
         windowTwo.setPaged(sheets.size() == 1);
 
+        clonedSheet.setOwner(this);
         sheets.add(clonedSheet);
         workbook.setSheetName(sheets.size()-1, srcName+"[1]");
         return clonedSheet;
@@ -395,6 +559,55 @@ public class HSSFWorkbook
 //            throw new RuntimeException("You cannot have more than three sheets in HSSF 1.0");
         HSSFSheet sheet = new HSSFSheet(workbook);
 
+        sheet.setOwner(this);
+        sheets.add(sheet);
+        workbook.setSheetName(sheets.size() - 1, sheetname);
+        WindowTwoRecord windowTwo = (WindowTwoRecord) sheet.getSheet().findFirstRecordBySid(WindowTwoRecord.sid);
+        windowTwo.setSelected(sheets.size() == 1);
+        windowTwo.setPaged(sheets.size() == 1);
+        return sheet;
+    }
+
+    /**
+     * create a sheet for streaming generation of large worksheets.  Rows must be
+     * created in ascending order and only the last windowSize rows are kept in
+     * memory; older rows are spilled to a temporary file, which is deleted
+     * by close() once the workbook has been written.
+     *
+     * @param sheetname sheetname to set for the sheet.
+     * @param windowSize number of rows to keep in memory
+     * @return HSSFStreamingSheet representing the new sheet.
+     * @see org.apache.poi.hssf.usermodel.HSSFStreamingSheet
+     */
+
+    public HSSFStreamingSheet createStreamingSheet(String sheetname, int windowSize)
+    {
+        return createStreamingSheet(sheetname, windowSize, false);
+    }
+
+    /**
+     * create a sheet for streaming generation of large worksheets.  As
+     * createStreamingSheet(String, int), except that with inMemory set the
+     * rows that leave the window are kept in memory rather than in a
+     * temporary file, their cells packed into primitive arrays.  Large sheets
+     * of plain values then take a fraction of the heap that the same sheet
+     * built from HSSFRow and HSSFCell objects would, without touching the
+     * disk.
+     *
+     * @param sheetname sheetname to set for the sheet.
+     * @param windowSize number of rows to keep as HSSFRow objects
+     * @param inMemory whether older rows are packed in memory
+     * @return HSSFStreamingSheet representing the new sheet.
+     * @see org.apache.poi.hssf.usermodel.HSSFStreamingSheet
+     */
+
+    public HSSFStreamingSheet createStreamingSheet(String sheetname, int windowSize,
+                                                   boolean inMemory)
+    {
+        HSSFStreamingSheet sheet = new HSSFStreamingSheet(workbook, windowSize,
+                                                          inMemory);
+
+        sheet.setOwner(this);
         sheets.add(sheet);
         workbook.setSheetName(sheets.size() - 1, sheetname);
         WindowTwoRecord windowTwo = (WindowTwoRecord) sheet.getSheet().findFirstRecordBySid(WindowTwoRecord.sid);
@@ -453,10 +666,34 @@ public class HSSFWorkbook
 
     public void removeSheetAt(int index)
     {
-        sheets.remove(index);
+        Object sheet = sheets.remove(index);
+
+        if (sheet instanceof HSSFStreamingSheet)
+        {
+            (( HSSFStreamingSheet ) sheet).close();
+        }
         workbook.removeSheet(index);
     }
 
+    /**
+     * Releases the temporary files that streaming sheets spill their rows
+     * to.  The flushed rows of those sheets are lost, so call this once the
+     * workbook has been written for the last time.
+     *
+     * @see org.apache.poi.hssf.usermodel.HSSFStreamingSheet#close()
+     */
+
+    public void close()
+    {
+        for (int k = 0; k < sheets.size(); k++)
+        {
+            if (sheets.get(k) instanceof HSSFStreamingSheet)
+            {
+                (( HSSFStreamingSheet ) sheets.get(k)).close();
+            }
+        }
+    }
+
     /**
      * determine whether the Excel GUI will backup the workbook when saving.
      *
@@ -644,11 +881,38 @@ public class HSSFWorkbook
         {
             fontindex++;   // THERE IS NO FOUR!!
         }
-        HSSFFont retval = new HSSFFont(fontindex, font);
+        HSSFFont retval = new HSSFFont(fontindex, font, workbook);
 
         return retval;
     }
 
+    /**
+     * Finds a font that matches the one with the supplied attributes.
+     * Fonts are looked up through a hash index, so this stays cheap
+     * however many fonts the workbook holds.
+     *
+     * @param boldWeight the bold weight, see HSSFFont.BOLDWEIGHT_BOLD
+     * @param color the color palette index
+     * @param fontHeight the height in twips (1/20th of a point)
+     * @param name the font name
+     * @param italic whether the font is italic
+     * @param strikeout whether the font is struck out
+     * @param typeOffset super or subscript, see HSSFFont.SS_NONE
+     * @param underline the underline style, see HSSFFont.U_NONE
+     * @return the first matching font or null if there is none
+     */
+
+    public HSSFFont findFont(short boldWeight, short color, short fontHeight,
+                             String name, boolean italic, boolean strikeout,
+                             short typeOffset, byte underline)
+    {
+        int index = workbook.findFont(boldWeight, color, fontHeight, name,
+                                      italic, strikeout, typeOffset,
+                                      underline);
+
+        return (index < 0) ? null : getFontAt(( short ) index);
+    }
+
     /**
      * get the number of fonts in the font table
      * @return number of fonts
@@ -668,7 +932,7 @@ public class HSSFWorkbook
     public HSSFFont getFontAt(short idx)
     {
         FontRecord font = workbook.getFontRecordAt(idx);
-        HSSFFont retval = new HSSFFont(idx, font);
+        HSSFFont retval = new HSSFFont(idx, font, workbook);
 
         return retval;
     }
@@ -682,11 +946,70 @@ public class HSSFWorkbook
     {
         ExtendedFormatRecord xfr = workbook.createCellXF();
         short index = (short) (getNumCellStyles() - 1);
-        HSSFCellStyle style = new HSSFCellStyle(index, xfr);
+        HSSFCellStyle style = new HSSFCellStyle(index, xfr, workbook);
 
         return style;
     }
 
+    /**
+     * find a cell style with the same attributes (font, data format,
+     * alignment, borders and fill) as the given one.  The lookup is hashed,
+     * so it stays cheap however many styles the workbook holds, and styles
+     * changed through their setters since an earlier lookup are matched by
+     * their new attributes.
+     *
+     * @param style the style to match, need not belong to the workbook
+     * @return the first matching cell style, or null if there is none
+     */
+
+    public HSSFCellStyle findCellStyle(HSSFCellStyle style)
+    {
+        int index = workbook.findCellXF(style.getFormatRecord());
+
+        return (index < 0) ? null : getCellStyleAt(( short ) index);
+    }
+
+    /**
+     * get a cell style that is the given style with one attribute changed.
+     * An existing style is reused when one matches, otherwise a new style
+     * is added, which keeps the workbook below Excel's limit on the number
+     * of styles when cells are styled one attribute at a time.
+     *
+     * @param style the style to start from
+     * @param property the name of the attribute, after the setter of
+     *        HSSFCellStyle: "font", "alignment", "fillForegroundColor"...
+     * @param value the new value of the attribute, an HSSFFont for "font",
+     *        a Boolean for "hidden", "locked" and "wrapText" and a Short for
+     *        the others
+     * @return the cell style, reused or new
+     * @exception IllegalArgumentException if there is no such attribute
+     */
+
+    public HSSFCellStyle deriveCellStyle(HSSFCellStyle style, String property,
+                                         Object value)
+    {
+        ExtendedFormatRecord xfr =
+            ( ExtendedFormatRecord ) style.getFormatRecord().clone();
+
+        if (xfr.getXFType() != ExtendedFormatRecord.XF_CELL)
+        {
+            xfr.setXFType(ExtendedFormatRecord.XF_CELL);
+            xfr.setParentIndex(( short ) 0);
+        }
+        HSSFCellStyle derived = new HSSFCellStyle(( short ) -1, xfr);
+
+        derived.setProperty(property, value);
+        HSSFCellStyle existing = findCellStyle(derived);
+
+        if (existing != null)
+        {
+            return existing;
+        }
+        xfr = workbook.createCellXF(xfr);
+        return new HSSFCellStyle(( short ) (getNumCellStyles() - 1), xfr,
+                                 workbook);
+    }
+
     /**
      * get the number of styles the workbook contains
      * @return count of cell styles
@@ -706,15 +1029,18 @@ public class HSSFWorkbook
     public HSSFCellStyle getCellStyleAt(short idx)
     {
         ExtendedFormatRecord xfr = workbook.getExFormatAt(idx);
-        HSSFCellStyle style = new HSSFCellStyle(idx, xfr);
+        HSSFCellStyle style = new HSSFCellStyle(idx, xfr, workbook);
 
         return style;
     }
 
     /**
      * Method write - write out this workbook to an Outputstream.  Constructs
-     * a new POI POIFSFileSystem, passes in the workbook binary representation  and
-     * writes it out.
+     * a new POI POIFSFileSystem and streams the workbook and sheet records
+     * into it one record at a time as the filesystem is written, so the
+     * whole workbook is never held in memory as a single byte array.  If
+     * the workbook uses more than one thread the sheets are instead written
+     * in parallel by getBytes, trading that memory for speed.
      *
      * @param stream - the java OutputStream you wish to write the XLS to
      *
@@ -725,10 +1051,18 @@ public class HSSFWorkbook
     public void write(OutputStream stream)
             throws IOException
     {
-        byte[] bytes = getBytes();
         POIFSFileSystem fs = new POIFSFileSystem();
-      
-        fs.createDocument(new ByteArrayInputStream(bytes), "Workbook");
+        WorkbookWriter  writer = new WorkbookWriter();
+
+        if (threads > 1)
+        {
+            fs.createDocument(new ByteArrayInputStream(getBytes()), "Workbook");
+        }
+        else
+        {
+            recalculateFormulas();
+            fs.createDocument("Workbook", calculateSheetOffsets(null), writer);
+        }
 
         if (preserveNodes) { 
             List excepts = new ArrayList(1);
@@ -736,6 +1070,7 @@ public class HSSFWorkbook
             copyNodes(this.poifs,fs,excepts);
         }
         fs.writeFilesystem(stream);
+        writer.checkError();
         //poifs.writeFilesystem(stream);
     }
 
@@ -754,40 +1089,143 @@ public class HSSFWorkbook
     public byte[] getBytes()
     {
         log.log(DEBUG, "HSSFWorkbook.getBytes()");
-        int wbsize = workbook.getSize();
+        recalculateFormulas();
+        final int[] offsets = new int[ sheets.size() ];
+        int totalsize = calculateSheetOffsets(offsets);
+
+/*        if (totalsize < 4096)
+        {
+            totalsize = 4096;
+        }*/
+        final byte[] retval = new byte[totalsize];
+        workbook.serialize(0, retval);
+
+        // each sheet goes at its own offset, so they can be written at once
+        runSheetTask(new SheetTask()
+        {
+            void run(int sheet)
+            {
+                getSheetAt(sheet).getSheet().serialize(offsets[ sheet ],
+                        retval);
+            }
+        });
+        return retval;
+    }
+
+    /**
+     * set the most threads the workbook's sheets are written on.  With more
+     * than one, getBytes and write size and then serialize whole sheets on
+     * separate threads, each into its own part of the output.  The sheets
+     * must not be changed while they are written.
+     *
+     * @param threads the most threads to use, 1 to write the sheets one
+     *        after the other on the calling thread
+     */
+
+    public void setThreads(int threads)
+    {
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * @return the most threads the workbook's sheets are written on
+     */
+
+    public int getThreads()
+    {
+        return threads;
+    }
+
+    /**
+     * Sizes the workbook and each sheet, setting the BOF offset of every sheet
+     * in its BoundSheetRecord along the way.  The sheets are sized in
+     * parallel if the workbook uses more than one thread.
+     *
+     * @param offsets where to put the offset of each sheet, or null
+     * @return the total size in bytes of the serialized workbook stream
+     */
+
+    private int calculateSheetOffsets(int[] offsets)
+    {
+        final int[] sizes = new int[ sheets.size() ];
 
-        // log.debug("REMOVEME: old sizing method "+workbook.serialize().length);
-        // ArrayList sheetbytes = new ArrayList(sheets.size());
-        int totalsize = wbsize;
+        runSheetTask(new SheetTask()
+        {
+            void run(int sheet)
+            {
+                sizes[ sheet ] = getSheetAt(sheet).getSheet().getSize();
+            }
+        });
+        int totalsize = workbook.getSize();
 
         for (int k = 0; k < sheets.size(); k++)
         {
             workbook.setSheetBof(k, totalsize);
+            if (offsets != null)
+            {
+                offsets[ k ] = totalsize;
+            }
+            totalsize += sizes[ k ];
+        }
+        return totalsize;
+    }
 
-            // sheetbytes.add((( HSSFSheet ) sheets.get(k)).getSheet().getSize());
-            totalsize += ((HSSFSheet) sheets.get(k)).getSheet().getSize();
+    /**
+     * runs a task for every sheet on the workbook's threads
+     */
+
+    private void runSheetTask(SheetTask task)
+    {
+        try
+        {
+            task.runAll(sheets.size(), threads);
         }
-/*        if (totalsize < 4096)
+        catch (IOException e)
         {
-            totalsize = 4096;
-        }*/
-        byte[] retval = new byte[totalsize];
-        int pos = workbook.serialize(0, retval);
+            // the sheet tasks do no I/O, so only an interrupt gets here, and
+            // the interrupt must not be lost with it
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e.getMessage());
+        }
+    }
 
-        // System.arraycopy(wb, 0, retval, 0, wb.length);
-        for (int k = 0; k < sheets.size(); k++)
+    /**
+     * Writes the workbook stream into the POIFS "Workbook" document when the
+     * filesystem asks for it.  The listener interface cannot throw, so any
+     * IOException is kept and rethrown by checkError once writing is done.
+     */
+
+    private class WorkbookWriter
+            implements POIFSWriterListener
+    {
+        private IOException error = null;
+
+        public void processPOIFSWriterEvent(POIFSWriterEvent event)
         {
+            try
+            {
+                RecordWriter writer = new RecordWriter(event.getStream());
 
-            // byte[] sb = (byte[])sheetbytes.get(k);
-            // System.arraycopy(sb, 0, retval, pos, sb.length);
-            pos += ((HSSFSheet) sheets.get(k)).getSheet().serialize(pos,
-                    retval);   // sb.length;
+                workbook.serialize(writer);
+                for (int k = 0; k < sheets.size(); k++)
+                {
+                    ((HSSFSheet) sheets.get(k)).getSheet().serialize(writer);
+                }
+            }
+            catch (IOException e)
+            {
+                error = e;
+            }
         }
-/*        for (int k = pos; k < totalsize; k++)
+
+        void checkError()
+                throws IOException
         {
-            retval[k] = 0;
-        }*/
-        return retval;
+            if (error != null)
+            {
+                throw error;
+            }
+        }
     }
 
     public int addSSTString(String string)
@@ -800,10 +1238,58 @@ public class HSSFWorkbook
         return workbook.getSSTString(index);
     }
 
+    /**
+     * The string cells of a workbook that was read look their text up in
+     * the shared string table the first time it is asked for, and the first
+     * lookup normally decodes the whole table.  Decoding on demand instead
+     * decodes just the strings that are read, which is much cheaper when
+     * only a few cells of a large workbook are looked at.  Call this before
+     * reading any string cell; anything that adds a string (setting a
+     * string value, for one) or writes the workbook still decodes the whole
+     * table.<p>
+     *
+     * A string index means the same string either way, but strings read on
+     * demand are returned just as they are in the file, while decoding the
+     * whole table appends a space to a string that is duplicated earlier in
+     * the table, to tell the two apart.  A cell keeps the text it first
+     * read.
+     *
+     * @param decodeOnDemand true to decode shared strings one at a time
+     * @see org.apache.poi.hssf.model.Workbook#setDecodeSSTOnDemand(boolean)
+     */
+
+    public void setDecodeStringsOnDemand(boolean decodeOnDemand)
+    {
+        workbook.setDecodeSSTOnDemand(decodeOnDemand);
+    }
+
     Workbook getWorkbook()
     {
         return workbook;
     }
+
+    void setFormulaEvaluator(HSSFFormulaEvaluator evaluator)
+    {
+        formulaEvaluator = evaluator;
+    }
+
+    HSSFFormulaEvaluator getFormulaEvaluator()
+    {
+        return formulaEvaluator;
+    }
+
+    /**
+     * brings the cached formula values up to date before writing, the
+     * cell records must be final before the sheet sizes are calculated
+     */
+
+    private void recalculateFormulas()
+    {
+        if (formulaEvaluator != null)
+        {
+            formulaEvaluator.recalculate();
+        }
+    }
     
     /** gets the total number of named ranges in the workboko
      * @return number of named ranges
@@ -953,6 +1439,22 @@ public class HSSFWorkbook
     public HSSFDataFormat createDataFormat() {
         return new HSSFDataFormat(workbook);
     }
+
+    /**
+     * Parses a formula once, to be set on many cells with
+     * HSSFCell.setCellFormula(HSSFFormulaTemplate).  The relative parts of
+     * the formula's references move with the cell it is set on.
+     *
+     * @param formula the formula as written in the anchor cell
+     * @param row the anchor cell's row (0 based)
+     * @param column the anchor cell's column (0 based)
+     * @return the formula template
+     * @see HSSFFormulaTemplate
+     */
+    public HSSFFormulaTemplate createFormulaTemplate(String formula, int row,
+                                                    short column) {
+        return new HSSFFormulaTemplate(workbook, formula, row, column);
+    }
 	
     /** remove the named range by his name
      * @param name named range name
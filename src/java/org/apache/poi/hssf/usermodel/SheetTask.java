@@ -0,0 +1,230 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Work done once for each sheet of a workbook, which can be spread over a
+ * few threads.  The sheets of a workbook do not depend on each other once
+ * its records have been split up, so HSSFWorkbook builds them this way
+ * when asked to use more than one thread.  Each thread takes the next
+ * sheet not yet started until there are none left.
+ *
+ * @see HSSFWorkbook#HSSFWorkbook(org.apache.poi.poifs.filesystem.POIFSFileSystem, boolean, int)
+ */
+
+abstract class SheetTask
+{
+    private int       next    = 0;
+    private int       count   = 0;
+    private Throwable failure = null;
+
+    /**
+     * do the work for one sheet
+     *
+     * @param sheet the sheet's index
+     * @exception IOException if the work fails
+     */
+
+    abstract void run(int sheet)
+            throws IOException;
+
+    /**
+     * run the task for sheets 0 to count - 1 and wait for them to finish.
+     * With one thread, or one sheet, the task runs on the calling thread.
+     *
+     * @param count the number of sheets
+     * @param threads the most threads to use
+     * @exception IOException the first IOException thrown by the task, or
+     *            an InterruptedIOException (with the calling thread's
+     *            interrupt set again) if interrupted while waiting;
+     *            runtime exceptions and errors are thrown as they are
+     */
+
+    void runAll(int count, int threads)
+            throws IOException
+    {
+        this.count = count;
+        next       = 0;
+        failure    = null;
+        if ((threads <= 1) || (count <= 1))
+        {
+            for (int k = 0; k < count; k++)
+            {
+                run(k);
+            }
+            return;
+        }
+        Thread[] workers = new Thread[ Math.min(threads, count) ];
+
+        for (int k = 0; k < workers.length; k++)
+        {
+            workers[ k ] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    work();
+                }
+            }, "HSSF sheet worker " + k);
+            workers[ k ].start();
+        }
+        try
+        {
+            for (int k = 0; k < workers.length; k++)
+            {
+                workers[ k ].join();
+            }
+        }
+        catch (InterruptedException e)
+        {
+
+            // the failure stops the workers taking more sheets, but a sheet
+            // already started must be finished before the caller may touch
+            // the workbook again, so wait for them regardless
+            fail(e);
+            for (int k = 0; k < workers.length; k++)
+            {
+                joinUninterruptibly(workers[ k ]);
+            }
+
+            // leave the caller's interrupt set for whoever handles it
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                "interrupted while waiting for the sheets");
+        }
+        rethrow();
+    }
+
+    /**
+     * waits for a worker to finish, ignoring interrupts
+     */
+
+    private static void joinUninterruptibly(Thread worker)
+    {
+        while (worker.isAlive())
+        {
+            try
+            {
+                worker.join();
+            }
+            catch (InterruptedException ignored)
+            {
+
+                // the caller's interrupt is set again once all are done
+            }
+        }
+    }
+
+    /**
+     * the body of each worker thread
+     */
+
+    private void work()
+    {
+        for (int sheet = nextSheet(); sheet != -1; sheet = nextSheet())
+        {
+            try
+            {
+                run(sheet);
+            }
+            catch (Throwable t)
+            {
+                fail(t);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the next sheet to work on, or -1 if there are none left or
+     *         a worker has failed
+     */
+
+    private synchronized int nextSheet()
+    {
+        if ((failure != null) || (next >= count))
+        {
+            return -1;
+        }
+        return next++;
+    }
+
+    private synchronized void fail(Throwable t)
+    {
+        if (failure == null)
+        {
+            failure = t;
+        }
+    }
+
+    private synchronized void rethrow()
+            throws IOException
+    {
+        if (failure instanceof IOException)
+        {
+            throw ( IOException ) failure;
+        }
+        if (failure instanceof RuntimeException)
+        {
+            throw ( RuntimeException ) failure;
+        }
+        if (failure instanceof Error)
+        {
+            throw ( Error ) failure;
+        }
+    }
+}
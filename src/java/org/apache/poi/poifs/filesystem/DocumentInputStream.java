@@ -115,6 +115,7 @@ public class DocumentInputStream
         {
             throw new IOException("Cannot open internal document storage");
         }
+        _document.load();
     }
 
     /**
@@ -135,6 +136,7 @@ public class DocumentInputStream
         _closed         = false;
         _tiny_buffer    = null;
         _document       = document;
+        _document.load();
     }
 
     /**
@@ -63,6 +63,7 @@ import org.apache.poi.poifs.common.POIFSConstants;
 import org.apache.poi.poifs.dev.POIFSViewable;
 import org.apache.poi.poifs.property.DocumentProperty;
 import org.apache.poi.poifs.property.Property;
+import org.apache.poi.poifs.storage.BlockList;
 import org.apache.poi.poifs.storage.BlockWritable;
 import org.apache.poi.poifs.storage.ListManagedBlock;
 import org.apache.poi.poifs.storage.DocumentBlock;
@@ -82,6 +83,11 @@ public class POIFSDocument
     private DocumentProperty _property;
     private int              _size;
 
+    // set while the document's blocks are still in the filesystem's
+    // block list, waiting to be fetched
+    private BlockList        _blocks;
+    private int              _start_block;
+
     // one of these stores will be valid
     private SmallBlockStore  _small_store;
     private BigBlockStore    _big_store;
@@ -133,6 +139,26 @@ public class POIFSDocument
         _property.setDocument(this);
     }
 
+    /**
+     * Constructor for a document whose blocks are fetched from a block list
+     * only when the document is first read or written.  Until then the
+     * document holds nothing but its start block.
+     *
+     * @param name the name of the POIFSDocument
+     * @param blocks the block list (small or big, according to the
+     *               document's length) holding the document's blocks
+     * @param startBlock the index of the document's first block
+     * @param length the actual length of the POIFSDocument
+     */
+
+    public POIFSDocument(final String name, final BlockList blocks,
+                         final int startBlock, final int length)
+    {
+        this(name, new SmallDocumentBlock[ 0 ], length);
+        _blocks      = blocks;
+        _start_block = startBlock;
+    }
+
     /**
      * Constructor from small blocks
      *
@@ -251,6 +277,7 @@ public class POIFSDocument
 
     public BlockWritable [] getSmallBlocks()
     {
+        loadBlocks();
         return _small_store.getBlocks();
     }
 
@@ -272,6 +299,7 @@ public class POIFSDocument
 
     void read(final byte [] buffer, final int offset)
     {
+        loadBlocks();
         if (_property.shouldUseSmallBlocks())
         {
             SmallDocumentBlock.read(_small_store.getBlocks(), buffer, offset);
@@ -282,6 +310,50 @@ public class POIFSDocument
         }
     }
 
+    /**
+     * fetch the document's blocks, if that has not been done yet
+     *
+     * @exception IOException if the blocks cannot be fetched
+     */
+
+    void load()
+        throws IOException
+    {
+        if (_blocks != null)
+        {
+            ListManagedBlock[] blocks = _blocks.fetchBlocks(_start_block);
+
+            _blocks = null;
+            if (Property.isSmall(_size))
+            {
+                _small_store = new SmallBlockStore(blocks);
+            }
+            else
+            {
+                _big_store = new BigBlockStore(blocks);
+            }
+        }
+    }
+
+    /**
+     * load the blocks on behalf of a method that cannot throw IOException;
+     * readers and writers normally call load() first
+     */
+
+    private void loadBlocks()
+    {
+        try
+        {
+            load();
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Unable to read document "
+                                            + _property.getName() + ": "
+                                            + e.getMessage());
+        }
+    }
+
     /**
      * Get the DocumentProperty
      *
@@ -308,6 +380,7 @@ public class POIFSDocument
     public void writeBlocks(final OutputStream stream)
         throws IOException
     {
+        load();
         _big_store.writeBlocks(stream);
     }
 
@@ -322,6 +395,7 @@ public class POIFSDocument
 
     public int countBlocks()
     {
+        loadBlocks();
         return _big_store.countBlocks();
     }
 
@@ -357,6 +431,8 @@ public class POIFSDocument
             ByteArrayOutputStream output = new ByteArrayOutputStream();
             BlockWritable[]       blocks = null;
 
+            load();
+
             if (_big_store.isValid())
             {
                 blocks = _big_store.getBlocks();
@@ -57,6 +57,9 @@ package org.apache.poi.poifs.filesystem;
 
 import java.io.*;
 
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
 import java.util.*;
 
 import org.apache.poi.poifs.common.POIFSConstants;
@@ -122,6 +125,81 @@ public class POIFSFileSystem
         // read the rest of the stream into blocks
         RawDataBlockList  data_blocks         = new RawDataBlockList(stream);
 
+        readFileSystem(header_block_reader, data_blocks);
+    }
+
+    /**
+     * Create a POIFSFileSystem from a file.  The file is memory-mapped
+     * rather than read: the header, block allocation table and property
+     * table are read from the mapping, and the data of other blocks is
+     * only copied out of the mapping when it is used.
+     *
+     * @param file the file from which to read the data
+     *
+     * @exception IOException on errors reading, or on invalid data
+     */
+
+    public POIFSFileSystem(final File file)
+        throws IOException
+    {
+        this();
+        FileInputStream stream = new FileInputStream(file);
+
+        try
+        {
+            readFileSystem(stream.getChannel());
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    /**
+     * Create a POIFSFileSystem from a FileChannel, which is memory-mapped
+     * as for POIFSFileSystem(File). The channel may be closed once the
+     * POIFSFileSystem has been created.
+     *
+     * @param channel the FileChannel from which to read the data
+     *
+     * @exception IOException on errors reading, or on invalid data
+     */
+
+    public POIFSFileSystem(final FileChannel channel)
+        throws IOException
+    {
+        this();
+        readFileSystem(channel);
+    }
+
+    /**
+     * map the channel and read the filesystem from the mapping
+     */
+
+    private void readFileSystem(final FileChannel channel)
+        throws IOException
+    {
+        MappedByteBuffer mapping =
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        byte[]           header  =
+            new byte[ Math.min(POIFSConstants.BIG_BLOCK_SIZE,
+                               mapping.limit()) ];
+
+        mapping.get(header);
+        readFileSystem(
+            new HeaderBlockReader(new ByteArrayInputStream(header)),
+            new RawDataBlockList(mapping, POIFSConstants.BIG_BLOCK_SIZE));
+    }
+
+    /**
+     * set up the block allocation table, property table and documents from
+     * the header and the raw data blocks
+     */
+
+    private void readFileSystem(final HeaderBlockReader header_block_reader,
+                                final RawDataBlockList data_blocks)
+        throws IOException
+    {
         // set up the block allocation table (necessary for the
         // data_blocks to be manageable
         new BlockAllocationTableReader(header_block_reader.getBATCount(),
@@ -211,6 +289,14 @@ public class POIFSFileSystem
         throws IOException
     {
 
+        // fetch the blocks of any document that has not been read
+        Iterator documents = _documents.iterator();
+
+        while (documents.hasNext())
+        {
+            (( POIFSDocument ) documents.next()).load();
+        }
+
         // get the property table ready
         _property_table.preWrite();
 
@@ -433,18 +519,16 @@ public class POIFSFileSystem
                 int           size       = property.getSize();
                 POIFSDocument document   = null;
 
+                // the document's blocks are not fetched until it is used
                 if (property.shouldUseSmallBlocks())
                 {
-                    document =
-                        new POIFSDocument(name, small_blocks
-                            .fetchBlocks(startBlock), size);
+                    document = new POIFSDocument(name, small_blocks,
+                                                 startBlock, size);
                 }
                 else
                 {
-                    document =
-                        new POIFSDocument(name,
-                                          big_blocks.fetchBlocks(startBlock),
-                                          size);
+                    document = new POIFSDocument(name, big_blocks,
+                                                 startBlock, size);
                 }
                 parent.createDocument(document);
             }
@@ -59,8 +59,13 @@ import org.apache.poi.poifs.common.POIFSConstants;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+
 /**
- * A big block created from an InputStream, holding the raw data
+ * A big block created from an InputStream, holding the raw data.  A block
+ * may also be created over a region of a (typically memory-mapped) buffer,
+ * in which case its data is not copied out of the buffer until it is
+ * first asked for.  Blocks may be read from several threads at once.
  *
  * @author Marc Johnson (mjohnson at apache dot org
  */
@@ -68,8 +73,10 @@ import java.io.*;
 public class RawDataBlock
     implements ListManagedBlock
 {
-    private byte[]  _data;
-    private boolean _eof;
+    private byte[]     _data;
+    private boolean    _eof;
+    private ByteBuffer _mapping;
+    private int        _offset;
 
     /**
      * Constructor RawDataBlock
@@ -105,6 +112,22 @@ public class RawDataBlock
         }
     }
 
+    /**
+     * Constructor RawDataBlock for a block held in a buffer
+     *
+     * @param mapping the buffer holding the block; it must hold a full
+     *                block starting at offset
+     * @param offset the offset of the block within the buffer
+     */
+
+    public RawDataBlock(final ByteBuffer mapping, final int offset)
+    {
+        _data    = null;
+        _eof     = false;
+        _mapping = mapping;
+        _offset  = offset;
+    }
+
     /**
      * When we read the data, did we hit end of file?
      *
@@ -130,13 +153,26 @@ public class RawDataBlock
      * @exception IOException if there is no data
      */
 
-    public byte [] getData()
+    public synchronized byte [] getData()
         throws IOException
     {
         if (eof())
         {
             throw new IOException("Cannot return empty data");
         }
+        if (_data == null)
+        {
+            byte[] data = new byte[ POIFSConstants.BIG_BLOCK_SIZE ];
+
+            // the buffer's position is shared with the other blocks over it
+            synchronized (_mapping)
+            {
+                _mapping.position(_offset);
+                _mapping.get(data);
+            }
+            _data    = data;
+            _mapping = null;
+        }
         return _data;
     }
 
@@ -57,8 +57,12 @@ package org.apache.poi.poifs.storage;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+
 import java.util.*;
 
+import org.apache.poi.poifs.common.POIFSConstants;
+
 /**
  * A list of RawDataBlocks instances, and methods to manage the list
  *
@@ -95,5 +99,43 @@ public class RawDataBlockList
         }
         setBlocks(( RawDataBlock [] ) blocks.toArray(new RawDataBlock[ 0 ]));
     }
+
+    /**
+     * Constructor RawDataBlockList for blocks held in a buffer, such as a
+     * memory-mapped file. No block's data is read until it is used.
+     *
+     * @param mapping the buffer holding the blocks
+     * @param offset the offset of the first block within the buffer
+     *
+     * @exception IOException if the buffer ends with an incomplete block
+     */
+
+    public RawDataBlockList(final ByteBuffer mapping, final int offset)
+        throws IOException
+    {
+        int remaining = mapping.limit() - offset;
+        int count     = remaining / POIFSConstants.BIG_BLOCK_SIZE;
+
+        if (remaining % POIFSConstants.BIG_BLOCK_SIZE != 0)
+        {
+            int    partial = remaining % POIFSConstants.BIG_BLOCK_SIZE;
+            String type    = " byte" + ((partial == 1) ? ("")
+                                                       : ("s"));
+
+            throw new IOException("Unable to read entire block; " + partial
+                                  + type + " read; expected "
+                                  + POIFSConstants.BIG_BLOCK_SIZE + " bytes");
+        }
+        RawDataBlock[] blocks = new RawDataBlock[ count ];
+
+        for (int k = 0; k < count; k++)
+        {
+            blocks[ k ] = new RawDataBlock(mapping,
+                                           offset
+                                           + (k * POIFSConstants
+                                               .BIG_BLOCK_SIZE));
+        }
+        setBlocks(blocks);
+    }
 }   // end public class RawDataBlockList
 
@@ -494,7 +494,7 @@ public class IntList
         }
         int rval = _array[ index ];
 
-        System.arraycopy(_array, index + 1, _array, index, _limit - index);
+        System.arraycopy(_array, index + 1, _array, index, _limit - index - 1);
         _limit--;
         return rval;
     }
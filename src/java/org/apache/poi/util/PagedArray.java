@@ -0,0 +1,380 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.util;
+
+import java.util.*;
+
+/**
+ * A sparse array of Objects indexed by non-negative int. The array is
+ * split into fixed size pages, and a page is only allocated once
+ * something is stored in it, so a few entries with large indices (rows
+ * near the bottom of a sheet, say) cost little more than a few entries
+ * with small ones.
+ * <p>
+ * Unlike a Map keyed by an Integer (or by a dummy object standing in for
+ * the key), get, put and remove create no objects and take constant
+ * time, and iteration is in index order without any sorting.
+ */
+
+public class PagedArray
+{
+    private static final int _page_shift = 8;
+    private static final int _page_size  = 1 << _page_shift;
+    private static final int _page_mask  = _page_size - 1;
+    private Object[][]       _pages;
+    private int[]            _page_counts;
+    private int              _size;
+    private int              _first;
+    private int              _last;
+
+    /**
+     * create an empty PagedArray
+     */
+
+    public PagedArray()
+    {
+        _pages       = new Object[ 1 ][];
+        _page_counts = new int[ 1 ];
+        _size        = 0;
+        _first       = -1;
+        _last        = -1;
+    }
+
+    /**
+     * get the entry at an index
+     *
+     * @param index the index
+     *
+     * @return the entry, or null if there is none
+     */
+
+    public Object get(final int index)
+    {
+        int page = index >> _page_shift;
+
+        if ((index < 0) || (page >= _pages.length) || (_pages[ page ] == null))
+        {
+            return null;
+        }
+        return _pages[ page ][ index & _page_mask ];
+    }
+
+    /**
+     * set the entry at an index
+     *
+     * @param index the index
+     * @param value the new entry; may not be null (use remove instead)
+     *
+     * @return the previous entry, or null if there was none
+     *
+     * @exception IndexOutOfBoundsException if index is negative
+     * @exception IllegalArgumentException if value is null
+     */
+
+    public Object put(final int index, final Object value)
+    {
+        if (index < 0)
+        {
+            throw new IndexOutOfBoundsException("index " + index
+                                                + " is negative");
+        }
+        if (value == null)
+        {
+            throw new IllegalArgumentException("cannot put a null value");
+        }
+        int page = index >> _page_shift;
+
+        if (page >= _pages.length)
+        {
+            growPages(page + 1);
+        }
+        if (_pages[ page ] == null)
+        {
+            _pages[ page ] = new Object[ _page_size ];
+        }
+        Object rval = _pages[ page ][ index & _page_mask ];
+
+        _pages[ page ][ index & _page_mask ] = value;
+        if (rval == null)
+        {
+            _page_counts[ page ]++;
+            _size++;
+            if ((_first == -1) || (index < _first))
+            {
+                _first = index;
+            }
+            if (index > _last)
+            {
+                _last = index;
+            }
+        }
+        return rval;
+    }
+
+    /**
+     * remove the entry at an index
+     *
+     * @param index the index
+     *
+     * @return the removed entry, or null if there was none
+     */
+
+    public Object remove(final int index)
+    {
+        Object rval = get(index);
+
+        if (rval != null)
+        {
+            int page = index >> _page_shift;
+
+            _pages[ page ][ index & _page_mask ] = null;
+            if (--_page_counts[ page ] == 0)
+            {
+                _pages[ page ] = null;
+            }
+            _size--;
+            if (_size == 0)
+            {
+                _first = -1;
+                _last  = -1;
+            }
+            else
+            {
+                if (index == _first)
+                {
+                    _first = nextIndex(index + 1);
+                }
+                if (index == _last)
+                {
+                    _last = previousIndex(index - 1);
+                }
+            }
+        }
+        return rval;
+    }
+
+    /**
+     * remove all entries
+     */
+
+    public void clear()
+    {
+        _pages       = new Object[ 1 ][];
+        _page_counts = new int[ 1 ];
+        _size        = 0;
+        _first       = -1;
+        _last        = -1;
+    }
+
+    /**
+     * @return the number of entries
+     */
+
+    public int size()
+    {
+        return _size;
+    }
+
+    /**
+     * @return true if there are no entries
+     */
+
+    public boolean isEmpty()
+    {
+        return _size == 0;
+    }
+
+    /**
+     * @return the lowest index with an entry, or -1 if there are none
+     */
+
+    public int getFirstIndex()
+    {
+        return _first;
+    }
+
+    /**
+     * @return the highest index with an entry, or -1 if there are none
+     */
+
+    public int getLastIndex()
+    {
+        return _last;
+    }
+
+    /**
+     * find the lowest index at or after a given index that has an entry
+     *
+     * @param index the index to start looking at
+     *
+     * @return the index, or -1 if there is no entry at or after index
+     */
+
+    public int nextIndex(final int index)
+    {
+        int k = Math.max(index, 0);
+
+        while (k <= _last)
+        {
+            Object[] page = _pages[ k >> _page_shift ];
+
+            if (page == null)
+            {
+                k = (k | _page_mask) + 1;
+            }
+            else if (page[ k & _page_mask ] != null)
+            {
+                return k;
+            }
+            else
+            {
+                k++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * find the highest index at or before a given index that has an entry
+     *
+     * @param index the index to start looking at
+     *
+     * @return the index, or -1 if there is no entry at or before index
+     */
+
+    public int previousIndex(final int index)
+    {
+        int k = Math.min(index, _last);
+
+        while (k >= 0)
+        {
+            Object[] page = _pages[ k >> _page_shift ];
+
+            if (page == null)
+            {
+                k = (k & ~_page_mask) - 1;
+            }
+            else if (page[ k & _page_mask ] != null)
+            {
+                return k;
+            }
+            else
+            {
+                k--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return an Iterator over the entries in index order. The Iterator
+     *         supports remove, and tolerates entries being put or
+     *         removed elsewhere while it is in use
+     */
+
+    public Iterator iterator()
+    {
+        return new PagedArrayIterator();
+    }
+
+    private void growPages(final int minimum)
+    {
+        int        length    = Math.max(minimum, _pages.length * 2);
+        Object[][] new_pages = new Object[ length ][];
+        int[]      new_count = new int[ length ];
+
+        System.arraycopy(_pages, 0, new_pages, 0, _pages.length);
+        System.arraycopy(_page_counts, 0, new_count, 0, _page_counts.length);
+        _pages       = new_pages;
+        _page_counts = new_count;
+    }
+
+    private class PagedArrayIterator
+        implements Iterator
+    {
+        private int _current;
+
+        PagedArrayIterator()
+        {
+            _current = -1;
+        }
+
+        public boolean hasNext()
+        {
+            return nextIndex(_current + 1) != -1;
+        }
+
+        public Object next()
+        {
+            int next = nextIndex(_current + 1);
+
+            if (next == -1)
+            {
+                throw new NoSuchElementException();
+            }
+            _current = next;
+            return get(_current);
+        }
+
+        public void remove()
+        {
+            if ((_current == -1) || (get(_current) == null))
+            {
+                throw new IllegalStateException();
+            }
+            PagedArray.this.remove(_current);
+        }
+    }
+}   // end public class PagedArray
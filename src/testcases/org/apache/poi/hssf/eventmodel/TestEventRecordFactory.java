@@ -1,15 +1,25 @@
 package org.apache.poi.hssf.eventmodel;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Arrays;
+import java.util.List;
 
 import org.apache.poi.hssf.record.BOFRecord;
 import org.apache.poi.hssf.record.EOFRecord;
 import org.apache.poi.hssf.record.Record;
 import org.apache.poi.hssf.record.UnknownRecord;
 import org.apache.poi.hssf.record.ContinueRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 
 import junit.framework.TestCase;
 
@@ -231,5 +241,80 @@ public class TestEventRecordFactory extends TestCase
         assertEquals("nr. of processed bytes", data.length, offset[0]);
     }
 
+    /**
+     * continuation records after an unknown record that nobody listens
+     * for are still thrown on their own
+     */
+    public void testContinuedSkippedUnknownRecord()
+    {
+        byte[] data = new byte[]
+        {
+            0, -1, 0, 0, // an unknown record with 0 length
+            0x3C , 0, 3, 0, 1, 2, 3, // a continuation record with 3 bytes of data
+            0x3C , 0, 1, 0, 4 // one more continuation record with 1 byte of data
+        };
+        final List records = new ArrayList();
 
+        factory.registerListener(new ERFListener() {
+            public boolean processRecord(Record rec) {
+                records.add(rec);
+                return true;
+            }
+        }, new short[] {0x3C});
+        factory.processRecords(new ByteArrayInputStream(data));
+        assertEquals(2, records.size());
+        assertEquals(3, ((Record) records.get(0)).getRecordSize() - 4);
+        assertEquals(1, ((Record) records.get(1)).getRecordSize() - 4);
+    }
+
+    /**
+     * records nobody listens for are skipped, continuations and all, while
+     * the others come through as if everything had been built
+     */
+    public void testSkipUnsubscribedRecords() throws IOException
+    {
+        HSSFWorkbook wb    = new HSSFWorkbook();
+        HSSFSheet    sheet = wb.createSheet();
+
+        for (int r = 0; r < 2000; r++) {
+            HSSFRow row = sheet.createRow(r);
+
+            row.createCell((short) 0).setCellValue("a longer piece of text " + r);
+            row.createCell((short) 1).setCellValue(r);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        wb.write(out);
+        POIFSFileSystem fs = new POIFSFileSystem(
+            new ByteArrayInputStream(out.toByteArray()));
+        final short[] sids = new short[] {SSTRecord.sid, NumberRecord.sid};
+        final List    all  = new ArrayList();
+        final List    some = new ArrayList();
+
+        factory.registerListener(new ERFListener() {
+            public boolean processRecord(Record rec) {
+                if (rec.getSid() == sids[0] || rec.getSid() == sids[1]) {
+                    all.add(rec.serialize());
+                }
+                return true;
+            }
+        }, null);
+        factory.processRecords(fs.createDocumentInputStream("Workbook"));
+
+        factory = new EventRecordFactory();
+        factory.registerListener(new ERFListener() {
+            public boolean processRecord(Record rec) {
+                some.add(rec.serialize());
+                return true;
+            }
+        }, sids);
+        factory.processRecords(fs.createDocumentInputStream("Workbook"));
+
+        assertEquals(2001, all.size());
+        assertEquals(all.size(), some.size());
+        for (int k = 0; k < all.size(); k++) {
+            assertTrue("record " + k,
+                       Arrays.equals((byte[]) all.get(k), (byte[]) some.get(k)));
+        }
+    }
 }
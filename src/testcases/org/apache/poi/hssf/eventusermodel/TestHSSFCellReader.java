@@ -0,0 +1,309 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFCellStyle;
+import org.apache.poi.hssf.usermodel.HSSFDateUtil;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Tests the streaming cell reader against the user model.
+ */
+
+public class TestHSSFCellReader
+    extends TestCase
+{
+    public TestHSSFCellReader(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * every kind of cell comes through with its value, dates included
+     */
+
+    public void testCells()
+        throws IOException
+    {
+        HSSFWorkbook  wb    = new HSSFWorkbook();
+        HSSFSheet     sheet = wb.createSheet("first");
+        HSSFCellStyle style = wb.createCellStyle();
+        Date          date  = HSSFDateUtil.getJavaDate(37000.5);
+
+        style.setDataFormat(( short ) 0xe);
+        for (int r = 0; r < 100; r++)
+        {
+            HSSFRow row = sheet.createRow(r);
+
+            row.createCell(( short ) 0).setCellValue(r * 0.5);
+            row.createCell(( short ) 1).setCellValue("text " + r);
+            row.createCell(( short ) 2).setCellValue((r % 2) == 0);
+            HSSFCell cell = row.createCell(( short ) 3);
+
+            cell.setCellValue(date);
+            cell.setCellStyle(style);
+            row.createCell(( short ) 4);
+        }
+        wb.createSheet("second").createRow(5).createCell(( short ) 2)
+            .setCellErrorValue(( byte ) 7);
+        HSSFCellReader reader = new HSSFCellReader();
+        List           cells  = new ArrayList();
+
+        reader.setDateDetection(true);
+        reader.setIncludeBlanks(true);
+        reader.process(write(wb), new Collector(cells));
+        assertEquals("first", reader.getSheetName(0));
+        assertEquals("second", reader.getSheetName(1));
+        assertEquals(501, cells.size());
+        for (int r = 0; r < 100; r++)
+        {
+            assertCell(( Object [] ) cells.get(r * 5), 0, r, 0,
+                       HSSFCell.CELL_TYPE_NUMERIC, new Double(r * 0.5));
+            assertCell(( Object [] ) cells.get(r * 5 + 1), 0, r, 1,
+                       HSSFCell.CELL_TYPE_STRING, "text " + r);
+            assertCell(( Object [] ) cells.get(r * 5 + 2), 0, r, 2,
+                       HSSFCell.CELL_TYPE_BOOLEAN,
+                       new Boolean((r % 2) == 0));
+            assertCell(( Object [] ) cells.get(r * 5 + 3), 0, r, 3,
+                       HSSFCell.CELL_TYPE_NUMERIC, date);
+            assertCell(( Object [] ) cells.get(r * 5 + 4), 0, r, 4,
+                       HSSFCell.CELL_TYPE_BLANK, null);
+        }
+        assertCell(( Object [] ) cells.get(500), 1, 5, 2,
+                   HSSFCell.CELL_TYPE_ERROR, new Byte(( byte ) 7));
+    }
+
+    /**
+     * only the projected columns are reported
+     */
+
+    public void testColumns()
+        throws IOException
+    {
+        HSSFWorkbook wb    = new HSSFWorkbook();
+        HSSFSheet    sheet = wb.createSheet();
+
+        for (int r = 0; r < 100; r++)
+        {
+            HSSFRow row = sheet.createRow(r);
+
+            for (short c = 0; c < 10; c++)
+            {
+                row.createCell(c).setCellValue(r * 10 + c);
+            }
+        }
+        HSSFCellReader reader = new HSSFCellReader();
+        List           cells  = new ArrayList();
+
+        reader.setColumns(new short[]
+        {
+            2, 7
+        });
+        reader.process(write(wb), new Collector(cells));
+        assertEquals(200, cells.size());
+        for (int k = 0; k < cells.size(); k++)
+        {
+            Object[] cell   = ( Object [] ) cells.get(k);
+            int      row    = k / 2;
+            int      column = ((k % 2) == 0) ? 2
+                                             : 7;
+
+            assertCell(cell, 0, row, column, HSSFCell.CELL_TYPE_NUMERIC,
+                       new Double(row * 10 + column));
+        }
+    }
+
+    /**
+     * a string formula is reported with the text of its StringRecord
+     */
+
+    public void testStringFormula()
+        throws IOException
+    {
+        List cells = new ArrayList();
+
+        new HSSFCellReader().process(open("StringFormulas.xls"),
+                                     new Collector(cells));
+        assertCell(( Object [] ) cells.get(0), 0, 0, 0,
+                   HSSFCell.CELL_TYPE_STRING, "XYZ");
+    }
+
+    /**
+     * the reader sees the same numbers and strings as the user model,
+     * MulRK and MulBlank cells included
+     */
+
+    public void testMatchesUserModel()
+        throws IOException
+    {
+        String[] files =
+        {
+            "SimpleMultiCell.xls", "Employee.xls", "SimpleChart.xls",
+            "duprich1.xls"
+        };
+
+        for (int k = 0; k < files.length; k++)
+        {
+            POIFSFileSystem fs    = open(files[ k ]);
+            HSSFWorkbook    wb    = new HSSFWorkbook(fs);
+            List            cells = new ArrayList();
+
+            new HSSFCellReader().process(fs, new Collector(cells));
+            assertTrue(files[ k ], cells.size() > 0);
+            for (int i = 0; i < cells.size(); i++)
+            {
+                Object[] cell   = ( Object [] ) cells.get(i);
+                HSSFCell actual = wb
+                    .getSheetAt((( Integer ) cell[ 0 ]).intValue())
+                    .getRow((( Integer ) cell[ 1 ]).intValue())
+                    .getCell((( Short ) cell[ 2 ]).shortValue());
+                int      type   = (( Integer ) cell[ 3 ]).intValue();
+
+                if (actual.getCellType() == HSSFCell.CELL_TYPE_FORMULA)
+                {
+                    continue;
+                }
+                assertEquals(files[ k ] + " cell " + i,
+                             actual.getCellType(), type);
+                if (type == HSSFCell.CELL_TYPE_NUMERIC)
+                {
+                    assertEquals(files[ k ] + " cell " + i,
+                                 actual.getNumericCellValue(),
+                                 (( Double ) cell[ 4 ]).doubleValue(), 0.0);
+                }
+                else if (type == HSSFCell.CELL_TYPE_STRING)
+                {
+                    assertEquals(files[ k ] + " cell " + i,
+                                 actual.getStringCellValue(), cell[ 4 ]);
+                }
+            }
+        }
+    }
+
+    private static void assertCell(Object [] cell, int sheet, int row,
+                                   int column, int type, Object value)
+    {
+        assertEquals(new Integer(sheet), cell[ 0 ]);
+        assertEquals(new Integer(row), cell[ 1 ]);
+        assertEquals(new Short(( short ) column), cell[ 2 ]);
+        assertEquals(new Integer(type), cell[ 3 ]);
+        assertEquals(value, cell[ 4 ]);
+    }
+
+    private static POIFSFileSystem open(String file)
+        throws IOException
+    {
+        String          dir = System.getProperty("HSSF.testdata.path");
+        FileInputStream in  = new FileInputStream(dir + "/" + file);
+
+        try
+        {
+            return new POIFSFileSystem(in);
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static POIFSFileSystem write(HSSFWorkbook wb)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        wb.write(out);
+        return new POIFSFileSystem(new ByteArrayInputStream(out
+            .toByteArray()));
+    }
+
+    /**
+     * keeps every cell it is given as { sheet, row, column, type, value }
+     */
+
+    private static class Collector
+        implements HSSFCellListener
+    {
+        private List cells;
+
+        Collector(List cells)
+        {
+            this.cells = cells;
+        }
+
+        public void processCell(int sheet, int row, short column, int type,
+                                Object value)
+        {
+            cells.add(new Object[]
+            {
+                new Integer(sheet), new Integer(row), new Short(column),
+                new Integer(type), value
+            });
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Tests that the event factory only builds the records that are listened for.
+ */
+
+public class TestHSSFEventFactory
+    extends TestCase
+{
+    public TestHSSFEventFactory(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * every listener added for a sid is called, and the request reports
+     * the sids it has listeners for
+     */
+
+    public void testSubscribedSids()
+    {
+        HSSFRequest  req       = new HSSFRequest();
+        final List   heard     = new ArrayList();
+        HSSFListener listener  = new HSSFListener()
+        {
+            public void processRecord(Record record)
+            {
+                heard.add(record);
+            }
+        };
+
+        req.addListener(listener, NumberRecord.sid);
+        req.addListener(listener, NumberRecord.sid);
+        req.addListener(listener, SSTRecord.sid);
+        assertTrue(req.isSubscribed(NumberRecord.sid));
+        assertTrue(req.isSubscribed(SSTRecord.sid));
+        assertTrue(!req.isSubscribed(BlankRecord.sid));
+        short[] sids = req.getSubscribedSids();
+
+        Arrays.sort(sids);
+        assertEquals(2, sids.length);
+        assertEquals(SSTRecord.sid, sids[ 0 ]);
+        assertEquals(NumberRecord.sid, sids[ 1 ]);
+        try
+        {
+            req.processRecord(new NumberRecord());
+        }
+        catch (HSSFUserException e)
+        {
+            fail(e.getMessage());
+        }
+        assertEquals(2, heard.size());
+    }
+
+    /**
+     * listening for a few sids gives the same records as picking them out
+     * of everything, including the cells of MulRK and MulBlank records and
+     * a continued SSTRecord
+     */
+
+    public void testSkipUnsubscribedRecords()
+        throws IOException
+    {
+        String   dir   = System.getProperty("HSSF.testdata.path");
+        String[] files =
+        {
+            "SimpleMultiCell.xls", "Employee.xls", "sumifformula.xls"
+        };
+        short[]  sids  =
+        {
+            NumberRecord.sid, BlankRecord.sid, SSTRecord.sid
+        };
+
+        for (int k = 0; k < files.length; k++)
+        {
+            FileInputStream in = new FileInputStream(dir + "/" + files[ k ]);
+            POIFSFileSystem fs = new POIFSFileSystem(in);
+
+            in.close();
+            assertSameRecords(files[ k ], fs, sids);
+        }
+        HSSFWorkbook wb    = new HSSFWorkbook();
+        HSSFSheet    sheet = wb.createSheet();
+
+        for (int r = 0; r < 2000; r++)
+        {
+            sheet.createRow(r).createCell(( short ) 0)
+                .setCellValue("a longer piece of text " + r);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        wb.write(out);
+        assertSameRecords("generated",
+                          new POIFSFileSystem(new ByteArrayInputStream(out
+                              .toByteArray())), sids);
+    }
+
+    private static void assertSameRecords(String name, POIFSFileSystem fs,
+                                          final short [] sids)
+        throws IOException
+    {
+        final List  all = new ArrayList();
+        HSSFRequest req = new HSSFRequest();
+
+        req.addListenerForAllRecords(new HSSFListener()
+        {
+            public void processRecord(Record record)
+            {
+                for (int k = 0; k < sids.length; k++)
+                {
+                    if (record.getSid() == sids[ k ])
+                    {
+                        all.add(record.serialize());
+                    }
+                }
+            }
+        });
+        new HSSFEventFactory().processWorkbookEvents(req, fs);
+        final List   some     = new ArrayList();
+        HSSFListener listener = new HSSFListener()
+        {
+            public void processRecord(Record record)
+            {
+                some.add(record.serialize());
+            }
+        };
+
+        req = new HSSFRequest();
+        for (int k = 0; k < sids.length; k++)
+        {
+            req.addListener(listener, sids[ k ]);
+        }
+        new HSSFEventFactory().processWorkbookEvents(req, fs);
+        assertTrue(name, all.size() > 0);
+        assertEquals(name, all.size(), some.size());
+        for (int k = 0; k < all.size(); k++)
+        {
+            assertTrue(name + " record " + k,
+                       Arrays.equals(( byte [] ) all.get(k),
+                                     ( byte [] ) some.get(k)));
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.eventusermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.hssf.record.UnknownRecord;
+import org.apache.poi.hssf.usermodel.HSSFCell;
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Tests the pull based record cursor against the user and event models.
+ */
+
+public class TestHSSFRecordCursor
+    extends TestCase
+{
+    public TestHSSFRecordCursor(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * reads back a generated sheet cell by cell
+     */
+
+    public void testCells()
+        throws IOException
+    {
+        HSSFWorkbook wb    = new HSSFWorkbook();
+        HSSFSheet    sheet = wb.createSheet();
+
+        for (int r = 0; r < 50; r++)
+        {
+            HSSFRow row = sheet.createRow(r);
+
+            row.createCell(( short ) 0).setCellValue(r * 1.5);
+            row.createCell(( short ) 1).setCellValue("text " + r);
+            row.createCell(( short ) 2).setCellValue((r % 2) == 0);
+            row.createCell(( short ) 3);
+        }
+        POIFSFileSystem  fs      = new POIFSFileSystem(
+            new ByteArrayInputStream(write(wb)));
+        HSSFRecordCursor cursor  = new HSSFRecordCursor(fs);
+        SSTRecord        sst     = null;
+        NumberRecord     numbers = null;
+        int              cells   = 0;
+
+        while (cursor.next())
+        {
+            if (cursor.sid() == SSTRecord.sid)
+            {
+                sst = ( SSTRecord ) cursor.createRecord();
+            }
+            if (!cursor.isCell())
+            {
+                continue;
+            }
+            int   r   = cursor.getRow();
+            short col = cursor.getColumn();
+
+            cells++;
+            switch (col)
+            {
+
+                case 0 :
+                    assertEquals(r * 1.5, cursor.getDouble(), 0.0);
+                    NumberRecord number = cursor.getNumberRecord();
+
+                    assertEquals(r, number.getRow());
+                    assertEquals(r * 1.5, number.getValue(), 0.0);
+                    if (numbers != null)
+                    {
+                        assertSame(numbers, number);
+                    }
+                    numbers = number;
+                    break;
+
+                case 1 :
+                    assertEquals("text " + r,
+                                 sst.getString(cursor.getSSTIndex()));
+                    LabelSSTRecord label = cursor.getLabelSSTRecord();
+
+                    assertEquals(cursor.getSSTIndex(), label.getSSTIndex());
+                    break;
+
+                case 2 :
+                    assertEquals((r % 2) == 0, cursor.getBoolean());
+                    assertTrue(!cursor.isError());
+                    BoolErrRecord boolErr = cursor.getBoolErrRecord();
+
+                    assertEquals((r % 2) == 0, boolErr.getBooleanValue());
+                    break;
+
+                case 3 :
+                    BlankRecord blank = cursor.getBlankRecord();
+
+                    assertEquals(r, blank.getRow());
+                    assertEquals(3, blank.getColumn());
+                    break;
+
+                default :
+                    fail("unexpected column " + col);
+            }
+        }
+        assertEquals(200, cells);
+        assertTrue(!cursor.next());
+    }
+
+    /**
+     * the typed accessors refuse records that do not hold their value
+     */
+
+    public void testWrongRecord()
+        throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+
+        wb.createSheet().createRow(0).createCell(( short ) 0)
+            .setCellValue("x");
+        HSSFRecordCursor cursor = new HSSFRecordCursor(
+            new POIFSFileSystem(new ByteArrayInputStream(write(wb))));
+
+        assertTrue(cursor.next());
+        assertTrue(!cursor.isCell());
+        try
+        {
+            cursor.getColumn();
+            fail("a BOF record has no column");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        while (cursor.next() && (cursor.sid() != LabelSSTRecord.sid))
+        {
+        }
+        assertEquals(LabelSSTRecord.sid, cursor.sid());
+        try
+        {
+            cursor.getDouble();
+            fail("a LabelSST record has no number");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+    }
+
+    /**
+     * walking the cursor and creating every record gives the same records
+     * as the event factory, MulRK and MulBlank cells included
+     */
+
+    public void testMatchesEventFactory()
+        throws IOException
+    {
+        String[] files =
+        {
+            "rk.xls", "SimpleMultiCell.xls", "SimpleWithFormula.xls",
+            "StringFormulas.xls", "Employee.xls", "SimpleChart.xls"
+        };
+        String   dir   = System.getProperty("HSSF.testdata.path");
+
+        for (int k = 0; k < files.length; k++)
+        {
+            FileInputStream in = new FileInputStream(dir + "/" + files[ k ]);
+            POIFSFileSystem fs = new POIFSFileSystem(in);
+
+            in.close();
+            assertMatchesEventFactory(files[ k ], fs);
+        }
+    }
+
+    /**
+     * a string formula caches its value in the StringRecord that follows it
+     */
+
+    public void testStringFormula()
+        throws IOException
+    {
+        String           dir    = System.getProperty("HSSF.testdata.path");
+        FileInputStream  in     = new FileInputStream(dir
+                                                      + "/StringFormulas.xls");
+        HSSFRecordCursor cursor = new HSSFRecordCursor(
+            new POIFSFileSystem(in));
+
+        in.close();
+        while (cursor.next() && (cursor.sid() != FormulaRecord.sid))
+        {
+        }
+        assertEquals(HSSFCell.CELL_TYPE_STRING,
+                     cursor.getFormulaResultType());
+        assertTrue(cursor.next());
+        assertEquals(StringRecord.sid, cursor.sid());
+        assertEquals("XYZ", cursor.getString());
+    }
+
+    /**
+     * the SST of a large workbook spills into ContinueRecords
+     */
+
+    public void testContinuedRecords()
+        throws IOException
+    {
+        HSSFWorkbook wb    = new HSSFWorkbook();
+        HSSFSheet    sheet = wb.createSheet();
+
+        for (int r = 0; r < 2000; r++)
+        {
+            sheet.createRow(r).createCell(( short ) 0)
+                .setCellValue("a longer piece of text " + r);
+        }
+        POIFSFileSystem  fs     = new POIFSFileSystem(
+            new ByteArrayInputStream(write(wb)));
+        HSSFRecordCursor cursor = new HSSFRecordCursor(fs);
+
+        while (cursor.next() && (cursor.sid() != SSTRecord.sid))
+        {
+        }
+        assertTrue(cursor.getContinueCount() > 0);
+        SSTRecord sst = ( SSTRecord ) cursor.createRecord();
+
+        assertEquals("a longer piece of text 1999", sst.getString(1999));
+        assertMatchesEventFactory("generated", fs);
+    }
+
+    private static void assertMatchesEventFactory(String name,
+                                                  POIFSFileSystem fs)
+        throws IOException
+    {
+        final List  expected = new ArrayList();
+        HSSFRequest req      = new HSSFRequest();
+
+        req.addListenerForAllRecords(new HSSFListener()
+        {
+            public void processRecord(Record record)
+            {
+                expected.add(record.serialize());
+            }
+        });
+        new HSSFEventFactory().processWorkbookEvents(req, fs);
+        HSSFRecordCursor cursor = new HSSFRecordCursor(fs);
+        int              count  = 0;
+
+        while (cursor.next())
+        {
+            Record rec = cursor.createRecord();
+
+            // the request only knows the sids of the record classes
+            if ((rec != null) && !(rec instanceof UnknownRecord))
+            {
+                assertTrue(name + " record " + count,
+                           Arrays.equals(( byte [] ) expected.get(count),
+                                         rec.serialize()));
+                count++;
+            }
+        }
+        assertEquals(name, expected.size(), count);
+    }
+
+    private static byte [] write(HSSFWorkbook wb)
+        throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        wb.write(out);
+        return out.toByteArray();
+    }
+}
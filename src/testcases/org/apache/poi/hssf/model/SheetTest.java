@@ -73,6 +73,27 @@ public class SheetTest extends TestCase
 		//TODO
 	}
 
+	public void testColumnWidth()
+	{
+		Sheet sheet = Sheet.createSheet();
+		short defaultWidth = sheet.getColumnWidth((short) 5);
+		int dimsloc = sheet.getDimsLoc();
+
+		sheet.setColumnWidth((short) 3, (short) 1000);
+		sheet.setColumnWidth((short) 4, (short) 1000);
+		sheet.setColumnWidth((short) 10, (short) 2000);
+		assertEquals(dimsloc + 1, sheet.getDimsLoc());
+		assertEquals(defaultWidth, sheet.getColumnWidth((short) 2));
+		assertEquals(1000, sheet.getColumnWidth((short) 3));
+		assertEquals(1000, sheet.getColumnWidth((short) 4));
+		assertEquals(defaultWidth, sheet.getColumnWidth((short) 5));
+		assertEquals(2000, sheet.getColumnWidth((short) 10));
+
+		Sheet clone = sheet.cloneSheet();
+		assertEquals(1000, clone.getColumnWidth((short) 4));
+		assertEquals(2000, clone.getColumnWidth((short) 10));
+	}
+
 }
 
 
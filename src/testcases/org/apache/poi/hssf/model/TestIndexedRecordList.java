@@ -0,0 +1,227 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.ExtendedFormatRecord;
+import org.apache.poi.hssf.record.FormatRecord;
+import org.apache.poi.hssf.record.NameRecord;
+import org.apache.poi.hssf.record.Record;
+
+/**
+ * Tests that IndexedRecordList finds records by sid the same way a walk
+ * over the list would, whatever changes are made to it.
+ */
+
+public class TestIndexedRecordList
+    extends TestCase
+{
+    private final static short[] SIDS =
+    {
+        ExtendedFormatRecord.sid, FormatRecord.sid, NameRecord.sid,
+        BlankRecord.sid
+    };
+
+    public TestIndexedRecordList(String name)
+    {
+        super(name);
+    }
+
+    private static Record createRecord(short sid)
+    {
+        switch (sid)
+        {
+            case ExtendedFormatRecord.sid :
+                return new ExtendedFormatRecord();
+
+            case FormatRecord.sid :
+                return new FormatRecord();
+
+            case NameRecord.sid :
+                return new NameRecord();
+
+            default :
+                return new BlankRecord();
+        }
+    }
+
+    private static int walk(List records, short sid, int n)
+    {
+        for (int k = 0; k < records.size(); k++)
+        {
+            if ((( Record ) records.get(k)).getSid() == sid && n-- == 0)
+            {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    private static void check(List expected, IndexedRecordList records)
+    {
+        assertEquals(expected, records);
+        for (int s = 0; s < SIDS.length; s++)
+        {
+            for (int n = 0; n < 3; n++)
+            {
+                assertEquals(walk(expected, SIDS[ s ], n),
+                             records.find(SIDS[ s ], n));
+            }
+            int from = expected.size() / 2;
+            int next = -1;
+
+            for (int k = from; k < expected.size() && next < 0; k++)
+            {
+                if ((( Record ) expected.get(k)).getSid() == SIDS[ s ])
+                {
+                    next = k;
+                }
+            }
+            assertEquals(next, records.findNext(SIDS[ s ], from));
+        }
+        assertEquals(-1, records.findFirst(EOFRecord.sid));
+    }
+
+    public void testRandomChanges()
+    {
+        Random            random   = new Random(17);
+        List              expected = new ArrayList();
+        IndexedRecordList records  = new IndexedRecordList();
+
+        for (int k = 0; k < 2000; k++)
+        {
+            int    op  = random.nextInt(10);
+            Record rec = createRecord(SIDS[ random.nextInt(SIDS.length) ]);
+
+            if (expected.isEmpty() || op < 4)
+            {
+                int pos = random.nextInt(expected.size() + 1);
+
+                expected.add(pos, rec);
+                records.add(pos, rec);
+            }
+            else if (op < 6)
+            {
+                expected.add(rec);
+                records.add(rec);
+            }
+            else if (op < 8)
+            {
+                int pos = random.nextInt(expected.size());
+
+                assertSame(expected.remove(pos), records.remove(pos));
+            }
+            else
+            {
+                int pos = random.nextInt(expected.size());
+
+                assertSame(expected.set(pos, rec), records.set(pos, rec));
+            }
+            if (k % 50 == 0)
+            {
+                check(expected, records);
+            }
+        }
+        check(expected, records);
+    }
+
+    public void testBulkChanges()
+    {
+        List expected = new ArrayList();
+
+        for (int k = 0; k < 40; k++)
+        {
+            expected.add(createRecord(SIDS[ k % SIDS.length ]));
+        }
+        IndexedRecordList records = new IndexedRecordList(expected);
+
+        check(expected, records);
+        expected.subList(5, 15).clear();
+        records.subList(5, 15).clear();
+        check(expected, records);
+        expected.addAll(3, expected.subList(10, 20));
+        records.addAll(3, new ArrayList(records.subList(10, 20)));
+        check(expected, records);
+        for (Iterator e = expected.iterator(), r = records.iterator();
+                e.hasNext(); )
+        {
+            boolean drop = e.next() instanceof NameRecord;
+
+            r.next();
+            if (drop)
+            {
+                e.remove();
+                r.remove();
+            }
+        }
+        check(expected, records);
+        assertEquals(0, records.count(NameRecord.sid));
+        records.clear();
+        assertEquals(-1, records.findFirst(FormatRecord.sid));
+    }
+
+    public static void main(String [] args)
+    {
+        junit.textui.TestRunner.run(TestIndexedRecordList.class);
+    }
+}
@@ -56,6 +56,12 @@
 package org.apache.poi.hssf.record;
 
 import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 
 import junit.framework.TestCase;
 
@@ -202,6 +208,82 @@ public class TestRecordFactory
         assertEquals("4th data byte", 4, record.getData()[ 0 ]);
     }
 
+    /**
+     * TEST NAME:  Test The Sid Indexed Record Table <P>
+     * OBJECTIVE:  Test that every known sid has a creator and that unknown
+     *             sids produce UnknownRecords.<P>
+     * SUCCESS:    The table lookups match the known record types.<P>
+     * FAILURE:    A known sid has no creator or an unknown one has one.<P>
+     *
+     */
+    public void testRecordCreators()
+    {
+        short[] sids = RecordFactory.getAllKnownRecordSIDs();
+
+        assertTrue(sids.length > 0);
+        for (int k = 0; k < sids.length; k++)
+        {
+            assertNotNull("creator for sid " + sids[ k ],
+                          RecordCreators.getCreator(sids[ k ]));
+            if (k > 0)
+            {
+                assertTrue("sids are ascending", sids[ k - 1 ] < sids[ k ]);
+            }
+        }
+        assertNull(RecordCreators.getCreator(( short ) 0x7FFF));
+        assertNull(RecordCreators.getCreator(( short ) -256));
+
+        Record unknown = RecordCreators.createRecord(( short ) 0x7FFF,
+                                                     ( short ) 0, new byte[ 0 ]);
+        assertEquals(UnknownRecord.class, unknown.getClass());
+
+        Record mms = RecordCreators.createRecord(MMSRecord.sid, ( short ) 2,
+                                                 new byte[] { 0, 0 });
+        assertEquals(MMSRecord.class, mms.getClass());
+    }
+
+    /**
+     * TEST NAME:  Test Creating Records From A Buffer <P>
+     * OBJECTIVE:  Test that parsing a whole Workbook stream in place gives the
+     *             same records as reading them one at a time from a stream.<P>
+     * SUCCESS:    Every record serializes to the same bytes.<P>
+     * FAILURE:    The record lists differ.<P>
+     *
+     */
+    public void testCreateRecordsFromBuffer()
+        throws Exception
+    {
+        String          filename = System.getProperty("HSSF.testdata.path")
+                                   + "/SimpleWithFormula.xls";
+        FileInputStream fin      = new FileInputStream(filename);
+        POIFSFileSystem fs       = new POIFSFileSystem(fin);
+
+        fin.close();
+        DocumentInputStream stream = fs.createDocumentInputStream("Workbook");
+        byte[]              data   = new byte[ stream.available() + 8 ];
+
+        // put the stream part way into the buffer, with junk either side
+        Arrays.fill(data, ( byte ) 0x5A);
+        stream.read(data, 4, data.length - 8);
+        stream.close();
+
+        List fromBuffer = RecordFactory.createRecords(data, 4, data.length - 8);
+        List fromStream = RecordFactory.createRecords(
+            fs.createDocumentInputStream("Workbook"));
+
+        assertEquals(fromStream.size(), fromBuffer.size());
+        Arrays.fill(data, ( byte ) 0);
+        for (int k = 0; k < fromStream.size(); k++)
+        {
+            Record expected = ( Record ) fromStream.get(k);
+            Record actual   = ( Record ) fromBuffer.get(k);
+
+            assertEquals(expected.getClass(), actual.getClass());
+            assertTrue("record " + k + " " + expected.getClass().getName(),
+                       Arrays.equals(expected.serialize(), actual.serialize()));
+        }
+    }
+
     public static void main(String [] ignored_args)
     {
         System.out
@@ -55,7 +55,6 @@
 package org.apache.poi.hssf.record;
 
 import org.apache.poi.util.HexRead;
-import org.apache.poi.util.BinaryTree;
 
 import java.io.File;
 
@@ -86,27 +85,27 @@ public class TestSSTDeserializer
             throws Exception
     {
         byte[] bytes = HexRead.readData( _test_file_path + File.separator + "richtextdata.txt", "header" );
-        BinaryTree strings = new BinaryTree();
+        SSTStringTable strings = new SSTStringTable();
         SSTDeserializer deserializer = new SSTDeserializer( strings );
         deserializer.manufactureStrings( bytes, 0, (short)bytes.length );
         byte[] continueBytes = HexRead.readData( _test_file_path + File.separator + "richtextdata.txt", "continue1" );
         deserializer.processContinueRecord( continueBytes );
 
-        assertEquals( "At a dinner party orAt At At ", strings.get( new Integer( 0 ) ) + "" );
+        assertEquals( "At a dinner party orAt At At ", strings.getString( 0 ) );
     }
 
     public void testContinuationWithNoOverlap()
             throws Exception
     {
         byte[] bytes = HexRead.readData( _test_file_path + File.separator + "evencontinuation.txt", "header" );
-        BinaryTree strings = new BinaryTree();
+        SSTStringTable strings = new SSTStringTable();
         SSTDeserializer deserializer = new SSTDeserializer( strings );
         deserializer.manufactureStrings( bytes, 0, (short)bytes.length );
         byte[] continueBytes = HexRead.readData( _test_file_path + File.separator + "evencontinuation.txt", "continue1" );
         deserializer.processContinueRecord( continueBytes );
 
-        assertEquals( "At a dinner party or", strings.get( new Integer( 0 ) ) + "" );
-        assertEquals( "At a dinner party", strings.get( new Integer( 1 ) ) + "" );
+        assertEquals( "At a dinner party or", strings.getString( 0 ) );
+        assertEquals( "At a dinner party", strings.getString( 1 ) );
 
     }
 
@@ -117,7 +116,7 @@ public class TestSSTDeserializer
             throws Exception
     {
         byte[] bytes = HexRead.readData( _test_file_path + File.separator + "stringacross2continuations.txt", "header" );
-        BinaryTree strings = new BinaryTree();
+        SSTStringTable strings = new SSTStringTable();
         SSTDeserializer deserializer = new SSTDeserializer( strings );
         deserializer.manufactureStrings( bytes, 0, (short)bytes.length );
         bytes = HexRead.readData( _test_file_path + File.separator + "stringacross2continuations.txt", "continue1" );
@@ -125,8 +124,8 @@ public class TestSSTDeserializer
         bytes = HexRead.readData( _test_file_path + File.separator + "stringacross2continuations.txt", "continue2" );
         deserializer.processContinueRecord( bytes );
 
-        assertEquals( "At a dinner party or", strings.get( new Integer( 0 ) ) + "" );
-        assertEquals( "At a dinner partyAt a dinner party", strings.get( new Integer( 1 ) ) + "" );
+        assertEquals( "At a dinner party or", strings.getString( 0 ) );
+        assertEquals( "At a dinner partyAt a dinner party", strings.getString( 1 ) );
 
     }
 
@@ -134,23 +133,23 @@ public class TestSSTDeserializer
             throws Exception
     {
         byte[] bytes = HexRead.readData( _test_file_path + File.separator + "extendedtextstrings.txt", "rich-header" );
-        BinaryTree strings = new BinaryTree();
+        SSTStringTable strings = new SSTStringTable();
         SSTDeserializer deserializer = new SSTDeserializer( strings );
         deserializer.manufactureStrings( bytes, 0, (short)bytes.length );
         byte[] continueBytes = HexRead.readData( _test_file_path + File.separator + "extendedtextstrings.txt", "rich-continue1" );
         deserializer.processContinueRecord( continueBytes );
 
-        assertEquals( "At a dinner party orAt At At ", strings.get( new Integer( 0 ) ) + "" );
+        assertEquals( "At a dinner party orAt At At ", strings.getString( 0 ) );
 
 
         bytes = HexRead.readData( _test_file_path + File.separator + "extendedtextstrings.txt", "norich-header" );
-        strings = new BinaryTree();
+        strings = new SSTStringTable();
         deserializer = new SSTDeserializer( strings );
         deserializer.manufactureStrings( bytes, 0, (short)bytes.length );
         continueBytes = HexRead.readData( _test_file_path + File.separator + "extendedtextstrings.txt", "norich-continue1" );
         deserializer.processContinueRecord( continueBytes );
 
-        assertEquals( "At a dinner party orAt At At ", strings.get( new Integer( 0 ) ) + "" );
+        assertEquals( "At a dinner party orAt At At ", strings.getString( 0 ) );
 
     }
 
@@ -59,7 +59,6 @@ import junit.framework.TestCase;
 import java.util.List;
 import java.util.ArrayList;
 
-import org.apache.poi.util.BinaryTree;
 import org.apache.poi.util.LittleEndian;
 import org.apache.poi.util.LittleEndianConsts;
 
@@ -74,7 +73,7 @@ public class TestSSTRecordSizeCalculator
     private static final String SMALL_STRING = "Small string";
     private static final int COMPRESSED_PLAIN_STRING_OVERHEAD = 3;
 //    private List recordLengths;
-    private BinaryTree strings;
+    private SSTStringTable strings;
     private static final int OPTION_FIELD_SIZE = 1;
 
     public TestSSTRecordSizeCalculator( String s )
@@ -85,7 +84,7 @@ public class TestSSTRecordSizeCalculator
     public void testBasic()
             throws Exception
     {
-        strings.put(new Integer(0), makeUnicodeString(SMALL_STRING));
+        strings.add(makeUnicodeString(SMALL_STRING));
         SSTRecordSizeCalculator calculator = new SSTRecordSizeCalculator(strings);
         assertEquals(SSTRecord.SST_RECORD_OVERHEAD + COMPRESSED_PLAIN_STRING_OVERHEAD + SMALL_STRING.length(),
                 calculator.getRecordSize());
@@ -95,7 +94,7 @@ public class TestSSTRecordSizeCalculator
             throws Exception
     {
         String bigString = new String(new char[SSTRecord.MAX_DATA_SPACE + 100]);
-        strings.put(new Integer(0), makeUnicodeString(bigString));
+        strings.add(makeUnicodeString(bigString));
         SSTRecordSizeCalculator calculator = new SSTRecordSizeCalculator(strings);
         assertEquals(SSTRecord.SST_RECORD_OVERHEAD
                 + COMPRESSED_PLAIN_STRING_OVERHEAD
@@ -111,7 +110,7 @@ public class TestSSTRecordSizeCalculator
             throws Exception
     {
         String perfectFit = new String(new char[SSTRecord.MAX_DATA_SPACE - COMPRESSED_PLAIN_STRING_OVERHEAD]);
-        strings.put(new Integer(0), makeUnicodeString(perfectFit));
+        strings.add(makeUnicodeString(perfectFit));
         SSTRecordSizeCalculator calculator = new SSTRecordSizeCalculator(strings);
         assertEquals(SSTRecord.SST_RECORD_OVERHEAD
                 + COMPRESSED_PLAIN_STRING_OVERHEAD
@@ -123,7 +122,7 @@ public class TestSSTRecordSizeCalculator
             throws Exception
     {
         String tooBig = new String(new char[SSTRecord.MAX_DATA_SPACE - COMPRESSED_PLAIN_STRING_OVERHEAD + 1]);
-        strings.put(new Integer(0), makeUnicodeString(tooBig));
+        strings.add(makeUnicodeString(tooBig));
         SSTRecordSizeCalculator calculator = new SSTRecordSizeCalculator(strings);
         assertEquals(SSTRecord.SST_RECORD_OVERHEAD
                 + COMPRESSED_PLAIN_STRING_OVERHEAD
@@ -140,8 +139,8 @@ public class TestSSTRecordSizeCalculator
             throws Exception
     {
         String perfectFit = new String(new char[SSTRecord.MAX_DATA_SPACE - COMPRESSED_PLAIN_STRING_OVERHEAD]);
-        strings.put(new Integer(0), makeUnicodeString(perfectFit));
-        strings.put(new Integer(1), makeUnicodeString(SMALL_STRING));
+        strings.add(makeUnicodeString(perfectFit));
+        strings.add(makeUnicodeString(SMALL_STRING));
         SSTRecordSizeCalculator calculator = new SSTRecordSizeCalculator(strings);
         assertEquals(SSTRecord.SST_RECORD_OVERHEAD
                 + SSTRecord.MAX_DATA_SPACE
@@ -156,9 +155,9 @@ public class TestSSTRecordSizeCalculator
             throws Exception
     {
         String almostPerfectFit = new String(new char[SSTRecord.MAX_DATA_SPACE - COMPRESSED_PLAIN_STRING_OVERHEAD - 2]);
-        strings.put(new Integer(0), makeUnicodeString(almostPerfectFit));
+        strings.add(makeUnicodeString(almostPerfectFit));
         String oneCharString = new String(new char[1]);
-        strings.put(new Integer(1), makeUnicodeString(oneCharString));
+        strings.add(makeUnicodeString(oneCharString));
         SSTRecordSizeCalculator calculator = new SSTRecordSizeCalculator(strings);
         assertEquals(SSTRecord.SST_RECORD_OVERHEAD
                 + COMPRESSED_PLAIN_STRING_OVERHEAD
@@ -174,7 +173,7 @@ public class TestSSTRecordSizeCalculator
 
     public void setUp()
     {
-        strings = new BinaryTree();
+        strings = new SSTStringTable();
     }
 
 
@@ -0,0 +1,227 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.util.HexRead;
+import org.apache.poi.util.LittleEndian;
+
+/**
+ * Class to test SSTStringReader, and on demand decoding in SSTRecord
+ */
+
+public class TestSSTStringReader
+    extends TestCase
+{
+    private String _test_file_path;
+
+    /**
+     * Constructor TestSSTStringReader
+     *
+     * @param name
+     */
+
+    public TestSSTStringReader(String name)
+    {
+        super(name);
+        _test_file_path = System.getProperty("HSSF.testdata.path");
+    }
+
+    /**
+     * test decoding strings one at a time, out of order, from an SST record
+     * with several Continue records, against decoding them all at once
+     */
+
+    public void testDecodeOnDemand()
+        throws IOException
+    {
+        SSTRecord eager     = readBigSSTRecord();
+        SSTRecord on_demand = readBigSSTRecord();
+
+        on_demand.setDecodeOnDemand(true);
+        assertTrue(on_demand.isDecodeOnDemand());
+        int count = eager.countStrings();
+
+        assertEquals(5249, count);
+        for (int k = count - 1; k >= 0; k -= 7)
+        {
+            assertEquals(eager.getString(k), on_demand.getString(k));
+            assertEquals(eager.isString16bit(k), on_demand.isString16bit(k));
+        }
+        for (int k = 0; k < count; k++)
+        {
+            assertEquals(eager.getString(k), on_demand.getString(k));
+        }
+        try
+        {
+            on_demand.getString(count);
+            fail("should have caught ArrayIndexOutOfBoundsException");
+        }
+        catch (ArrayIndexOutOfBoundsException ignored)
+        {
+
+            // as expected
+        }
+
+        // anything needing the whole table decodes it
+        assertEquals(count, on_demand.countStrings());
+        assertEquals(eager, on_demand);
+    }
+
+    /**
+     * test finding strings through the buckets of an ExtSST record
+     */
+
+    public void testExtSSTBuckets()
+        throws IOException
+    {
+        InputStream     stream = new FileInputStream(_test_file_path
+                                     + File.separator + "duprich1.xls");
+        POIFSFileSystem fs     = new POIFSFileSystem(stream);
+
+        stream.close();
+        InputStream           in   = fs.createDocumentInputStream("Workbook");
+        ByteArrayOutputStream out  = new ByteArrayOutputStream();
+        byte[]                buf  = new byte[ 4096 ];
+        int                   read;
+
+        while ((read = in.read(buf)) > 0)
+        {
+            out.write(buf, 0, read);
+        }
+        byte[]          data      = out.toByteArray();
+        SSTStringReader plain     = null;
+        SSTStringReader bucketed  = null;
+        SSTRecord       eager     = null;
+        boolean         found_ext = false;
+
+        for (int pos = 0; pos + 4 <= data.length; )
+        {
+            short sid  = LittleEndian.getShort(data, pos);
+            short size = LittleEndian.getShort(data, pos + 2);
+
+            pos += 4;
+            if (sid == SSTRecord.sid)
+            {
+                plain    = new SSTStringReader(data, pos + 8, size - 8);
+                bucketed = new SSTStringReader(data, pos + 8, size - 8);
+                eager    = new SSTRecord(sid, size, data, pos);
+            }
+            else if ((sid == ContinueRecord.sid) && (plain != null)
+                     && !found_ext)
+            {
+                byte[] record = new byte[ size ];
+
+                System.arraycopy(data, pos, record, 0, size);
+                plain.addContinueRecord(record);
+                bucketed.addContinueRecord(record);
+                eager.processContinueRecord(record);
+            }
+            else if (sid == ExtSSTRecord.sid)
+            {
+                bucketed.setBuckets(new ExtSSTRecord(sid, size, data, pos));
+                found_ext = true;
+            }
+            pos += size;
+        }
+        assertTrue(found_ext);
+        int count = eager.countStrings();
+
+        assertEquals(78, count);
+        for (int k = count - 1; k >= 0; k--)
+        {
+            String string = bucketed.getString(k);
+
+            assertEquals(plain.getString(k), string);
+
+            // duplicates get a space appended when the table is decoded
+            assertTrue(eager.getString(k).startsWith(string));
+            assertEquals("", eager.getString(k).substring(string.length())
+                .trim());
+        }
+    }
+
+    private SSTRecord readBigSSTRecord()
+        throws IOException
+    {
+        byte[]    testdata = HexRead.readData(_test_file_path
+                                              + File.separator
+                                              + "BigSSTRecord2");
+        SSTRecord record   = new SSTRecord(LittleEndian.getShort(testdata,
+                                 0), LittleEndian.getShort(testdata, 2),
+                                     testdata, 4);
+
+        for (int k = 1; k <= 7; k++)
+        {
+            byte[] continue_record = HexRead.readData(_test_file_path
+                                                      + File.separator
+                                                      + "BigSSTRecord2CR"
+                                                      + k);
+            byte[] input           = new byte[ continue_record.length - 4 ];
+
+            System.arraycopy(continue_record, 4, input, 0, input.length);
+            record.processContinueRecord(input);
+        }
+        return record;
+    }
+}
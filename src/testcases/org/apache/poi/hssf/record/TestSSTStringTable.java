@@ -0,0 +1,232 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record;
+
+import java.util.Iterator;
+
+import junit.framework.TestCase;
+
+/**
+ * Class to test SSTStringTable
+ */
+
+public class TestSSTStringTable
+    extends TestCase
+{
+
+    /**
+     * Constructor TestSSTStringTable
+     *
+     * @param name
+     */
+
+    public TestSSTStringTable(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * test add, indexOf and the index-ordered accessors
+     */
+
+    public void testAddAndLookup()
+    {
+        SSTStringTable table = new SSTStringTable();
+
+        assertEquals(0, table.size());
+        assertEquals(-1, table.indexOf("Hello"));
+        assertNull(table.get(0));
+        assertEquals(0, table.add(makeString("Hello", false)));
+        assertEquals(1, table.add(makeString("Hello\u2122", true)));
+        assertEquals(2, table.add(makeString("caf\u00e9", false)));
+        assertEquals(3, table.size());
+        assertEquals(0, table.indexOf("Hello"));
+        assertEquals(1, table.indexOf("Hello\u2122"));
+        assertEquals(2, table.indexOf("caf\u00e9"));
+        assertEquals(-1, table.indexOf("Hell"));
+        assertEquals("Hello\u2122", table.getString(1));
+        assertEquals("caf\u00e9", table.getString(2));
+        assertEquals(( byte ) 0, table.getOptionFlags(0));
+        assertEquals(( byte ) 1, table.getOptionFlags(1));
+        assertEquals(makeString("caf\u00e9", false), table.get(2));
+        assertEquals(makeString("Hello\u2122", true).getRecordSize(),
+                     table.getRecordSize(1));
+        assertEquals(makeString("Hello", false).getRecordSize(),
+                     table.getRecordSize(0));
+        try
+        {
+            table.add(makeString("Hello", true));
+            fail("should have caught IllegalArgumentException");
+        }
+        catch (IllegalArgumentException ignored)
+        {
+
+            // as expected
+        }
+        try
+        {
+            table.getString(3);
+            fail("should have caught ArrayIndexOutOfBoundsException");
+        }
+        catch (ArrayIndexOutOfBoundsException ignored)
+        {
+
+            // as expected
+        }
+    }
+
+    /**
+     * test that a compressed string is decoded once and then kept, without
+     * changing how the table sizes, finds or compares it
+     */
+
+    public void testStringKeptOnceRead()
+    {
+        SSTStringTable table = new SSTStringTable();
+        SSTStringTable other = new SSTStringTable();
+
+        table.add(makeString("Hello", false));
+        other.add(makeString("Hello", false));
+        int    size   = table.getRecordSize(0);
+        String string = table.getString(0);
+
+        assertEquals("Hello", string);
+        assertSame(string, table.getString(0));
+        assertEquals(size, table.getRecordSize(0));
+        assertEquals(0, table.indexOf("Hello"));
+        assertEquals(makeString("Hello", false), table.get(0));
+        assertEquals(other, table);
+        assertEquals(other.hashCode(), table.hashCode());
+    }
+
+    /**
+     * test a compressed string holding a character that does not fit in a
+     * byte; it must survive intact
+     */
+
+    public void testWideCharInCompressedString()
+    {
+        SSTStringTable table = new SSTStringTable();
+
+        table.add(makeString("x\u2122", false));
+        assertEquals("x\u2122", table.getString(0));
+        assertEquals(0, table.indexOf("x\u2122"));
+        assertEquals(-1, table.indexOf("x\u2121"));
+    }
+
+    /**
+     * test that the table keeps working as it grows
+     */
+
+    public void testGrowth()
+    {
+        SSTStringTable table = new SSTStringTable();
+
+        for (int k = 0; k < 5000; k++)
+        {
+            assertEquals(k, table.add(makeString("s" + k, (k % 3) == 0)));
+        }
+        assertEquals(5000, table.size());
+        for (int k = 0; k < 5000; k++)
+        {
+            assertEquals(k, table.indexOf("s" + k));
+            assertEquals("s" + k, table.getString(k));
+        }
+        Iterator iter  = table.iterator();
+        int      count = 0;
+
+        while (iter.hasNext())
+        {
+            UnicodeString string = ( UnicodeString ) iter.next();
+
+            assertEquals("s" + count, string.getString());
+            assertEquals(((count % 3) == 0) ? 1
+                                            : 0, string.getOptionFlags());
+            count++;
+        }
+        assertEquals(5000, count);
+    }
+
+    /**
+     * test equals
+     */
+
+    public void testEquals()
+    {
+        SSTStringTable a = new SSTStringTable();
+        SSTStringTable b = new SSTStringTable();
+
+        assertEquals(a, b);
+        a.add(makeString("one", false));
+        assertTrue(!a.equals(b));
+        b.add(makeString("one", false));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        a.add(makeString("two", false));
+        b.add(makeString("two", true));
+        assertTrue(!a.equals(b));
+    }
+
+    private static UnicodeString makeString(String s, boolean wide)
+    {
+        UnicodeString rval = new UnicodeString();
+
+        rval.setString(s);
+        rval.setCharCount(( short ) s.length());
+        rval.setOptionFlags(( byte ) (wide ? 1
+                                           : 0));
+        return rval;
+    }
+}
@@ -0,0 +1,184 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.model.FormulaParser;
+import org.apache.poi.hssf.model.Workbook;
+import org.apache.poi.hssf.record.formula.ExpPtg;
+import org.apache.poi.hssf.record.formula.Ptg;
+
+/**
+ * Tests the serialization and deserialization of the SharedFormulaRecord
+ * class and the conversion of formulas to and from the shared form.
+ */
+
+public class TestSharedFormulaRecord
+    extends TestCase
+{
+    private Workbook workbook;
+
+    public TestSharedFormulaRecord(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp()
+    {
+        workbook = Workbook.createWorkbook();
+    }
+
+    private List parse(String formula)
+    {
+        FormulaParser parser = new FormulaParser(formula + ";", workbook);
+
+        parser.parse();
+        return Arrays.asList(parser.getRPNPtg());
+    }
+
+    private String toFormulaString(List ptgs)
+    {
+        return FormulaParser.toFormulaString(null, ptgs);
+    }
+
+    public void testRelativeReferencesFollowTheCell()
+    {
+        byte[] shared = SharedFormulaRecord.toSharedExpression(
+            parse("A1*2+SUM(B1:C3)"), 0, 3);
+
+        assertNotNull(shared);
+        assertTrue("same expression one row down",
+                   Arrays.equals(shared, SharedFormulaRecord
+                       .toSharedExpression(parse("A2*2+SUM(B2:C4)"), 1, 3)));
+
+        SharedFormulaRecord record = new SharedFormulaRecord();
+
+        record.setFirstRow(0);
+        record.setLastRow(9);
+        record.setFirstColumn(( short ) 3);
+        record.setLastColumn(( short ) 3);
+        record.setSharedExpression(shared);
+        assertEquals("A6*2+SUM(B6:C8)",
+                     toFormulaString(record.getFormulaTokens(5, 3)));
+    }
+
+    public void testAbsoluteReferencesStay()
+    {
+        byte[] shared = SharedFormulaRecord.toSharedExpression(
+            parse("$A$1+A$1+$A1"), 0, 1);
+
+        assertFalse("absolute parts differ once moved",
+                    Arrays.equals(shared, SharedFormulaRecord
+                        .toSharedExpression(parse("$A$2+A$2+$A2"), 1, 1)));
+
+        SharedFormulaRecord record = new SharedFormulaRecord();
+
+        record.setSharedExpression(shared);
+        assertEquals("$A$1+B$1+$A5",
+                     toFormulaString(record.getFormulaTokens(4, 2)));
+    }
+
+    public void testNotShareable()
+    {
+        assertNull(SharedFormulaRecord.toSharedExpression(null, 0, 0));
+        assertNull(SharedFormulaRecord.toSharedExpression(
+            Arrays.asList(new Ptg[]
+        {
+            new ExpPtg(0, ( short ) 0)
+        }), 0, 0));
+    }
+
+    public void testSerialize()
+    {
+        SharedFormulaRecord record = new SharedFormulaRecord();
+
+        record.setFirstRow(2);
+        record.setLastRow(300);
+        record.setFirstColumn(( short ) 200);
+        record.setLastColumn(( short ) 200);
+        record.setUseCount(( short ) 255);
+        record.setSharedExpression(SharedFormulaRecord.toSharedExpression(
+            parse("A3+1"), 2, 200));
+
+        byte[] data = record.serialize();
+
+        assertEquals(record.getRecordSize(), data.length);
+
+        SharedFormulaRecord read = new SharedFormulaRecord(SharedFormulaRecord.sid,
+                                       ( short ) (data.length - 4), data, 4);
+
+        assertEquals(2, read.getFirstRow());
+        assertEquals(300, read.getLastRow());
+        assertEquals(200, read.getFirstColumn());
+        assertEquals(200, read.getLastColumn());
+        assertEquals(255, read.getUseCount() & 0xFF);
+        assertTrue(read.isInRange(300, 200));
+        assertFalse(read.isInRange(301, 200));
+        assertTrue(read.isAnchoredAt(new ExpPtg(2, ( short ) 200)));
+        assertEquals("A11+1",
+                     toFormulaString(read.getFormulaTokens(10, 200)));
+    }
+
+    public static void main(String [] ignored_args)
+    {
+        System.out
+            .println("Testing org.apache.poi.hssf.record.SharedFormulaRecord");
+        junit.textui.TestRunner.run(TestSharedFormulaRecord.class);
+    }
+}
@@ -0,0 +1,139 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+package org.apache.poi.hssf.record.aggregates;
+
+import org.apache.poi.hssf.record.*;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+public class TestColumnInfoRecordsAggregate extends junit.framework.TestCase {
+    public TestColumnInfoRecordsAggregate(String name) {
+        super (name);
+    }
+
+    private static ColumnInfoRecord colInfo(int first, int last, int width) {
+        ColumnInfoRecord ci = ColumnInfoRecordsAggregate.createColInfo((short) first);
+        ci.setLastColumn((short) last);
+        ci.setColumnWidth((short) width);
+        return ci;
+    }
+
+    public void testFindColumnInfo() {
+        ColumnInfoRecordsAggregate agg = new ColumnInfoRecordsAggregate();
+        agg.insertColumn(colInfo(10, 20, 500));
+        agg.insertColumn(colInfo(2, 4, 300));
+
+        assertNull(agg.findColumnInfo(1));
+        assertEquals(300, agg.findColumnInfo(2).getColumnWidth());
+        assertEquals(300, agg.findColumnInfo(4).getColumnWidth());
+        assertNull(agg.findColumnInfo(5));
+        assertEquals(500, agg.findColumnInfo(15).getColumnWidth());
+        assertEquals(500, agg.findColumnInfo(20).getColumnWidth());
+        assertNull(agg.findColumnInfo(21));
+    }
+
+    public void testSplitAndCoalesce() {
+        ColumnInfoRecordsAggregate agg = new ColumnInfoRecordsAggregate();
+        agg.insertColumn(colInfo(10, 20, 500));
+
+        agg.setColumnWidth((short) 15, (short) 800);
+        assertEquals(500, agg.findColumnInfo(14).getColumnWidth());
+        assertEquals(800, agg.findColumnInfo(15).getColumnWidth());
+        assertEquals(500, agg.findColumnInfo(16).getColumnWidth());
+        assertEquals(3, agg.getNumColumns());
+
+        agg.setColumnWidth((short) 15, (short) 500);
+        assertEquals(1, agg.getNumColumns());
+        ColumnInfoRecord ci = agg.findColumnInfo(15);
+        assertEquals(10, ci.getFirstColumn());
+        assertEquals(20, ci.getLastColumn());
+
+        agg.setColumnWidth((short) 21, (short) 500);
+        agg.setColumnWidth((short) 22, (short) 500);
+        assertEquals(1, agg.getNumColumns());
+        assertEquals(22, agg.findColumnInfo(10).getLastColumn());
+    }
+
+    public void testSerialize() {
+        ColumnInfoRecordsAggregate agg = new ColumnInfoRecordsAggregate();
+        for (int k = 0; k < 100; k++) {
+            agg.setColumnWidth((short) k, (short) (k < 50 ? 400 : 600));
+        }
+        byte[] data = new byte[agg.getRecordSize()];
+        assertEquals(data.length, agg.serialize(0, data));
+        assertEquals(2 * new ColumnInfoRecord().getRecordSize(), data.length);
+
+        List records = new ArrayList();
+        for (Iterator itr = agg.getIterator(); itr.hasNext(); ) {
+            records.add(itr.next());
+        }
+        records.add(new EOFRecord());
+        ColumnInfoRecordsAggregate read = new ColumnInfoRecordsAggregate();
+        assertEquals(2, read.construct(0, records));
+        assertEquals(400, read.findColumnInfo(49).getColumnWidth());
+        assertEquals(600, read.findColumnInfo(50).getColumnWidth());
+
+        ColumnInfoRecordsAggregate clone = (ColumnInfoRecordsAggregate) agg.clone();
+        clone.setColumnWidth((short) 0, (short) 100);
+        assertEquals(400, agg.findColumnInfo(0).getColumnWidth());
+    }
+
+    public static void main(String [] args) {
+        System.out
+        .println("Testing org.apache.poi.hssf.record.aggregates.ColumnInfoRecordsAggregate");
+        junit.textui.TestRunner.run(TestColumnInfoRecordsAggregate.class);
+    }
+}
@@ -0,0 +1,175 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.record.aggregates;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.apache.poi.hssf.record.*;
+
+public class TestValueRecordsAggregate extends junit.framework.TestCase {
+    public TestValueRecordsAggregate(String name) {
+        super (name);
+    }
+
+    private static CellValueRecordInterface[] createCells() {
+        NumberRecord number = new NumberRecord();
+        number.setRow(3); number.setColumn((short) 2); number.setXFIndex((short) 15);
+        number.setValue(3.25);
+        NumberRecord number2 = new NumberRecord();
+        number2.setRow(0); number2.setColumn((short) 200); number2.setXFIndex((short) 16);
+        number2.setValue(-1);
+        BlankRecord blank = new BlankRecord();
+        blank.setRow(3); blank.setColumn((short) 0); blank.setXFIndex((short) 17);
+        LabelSSTRecord label = new LabelSSTRecord();
+        label.setRow(70000 % 65536); label.setColumn((short) 1); label.setXFIndex((short) 18);
+        label.setSSTIndex(123456);
+        BoolErrRecord bool = new BoolErrRecord();
+        bool.setRow(3); bool.setColumn((short) 7); bool.setXFIndex((short) 19);
+        bool.setValue(true);
+        BoolErrRecord error = new BoolErrRecord();
+        error.setRow(3); error.setColumn((short) 5); error.setXFIndex((short) 20);
+        error.setValue((byte) 7);
+        FormulaRecord formula = new FormulaRecord();
+        formula.setRow(3); formula.setColumn((short) 6); formula.setXFIndex((short) 21);
+        FormulaRecordAggregate agg = new FormulaRecordAggregate(formula, null);
+        return new CellValueRecordInterface[] {
+            number, number2, blank, label, bool, error, agg
+        };
+    }
+
+    public void testPackedMatchesUnpacked() {
+        ValueRecordsAggregate plain  = new ValueRecordsAggregate();
+        ValueRecordsAggregate packed = new ValueRecordsAggregate(true);
+        CellValueRecordInterface[] cells = createCells();
+
+        assertTrue(packed.isPacked());
+        assertTrue(!plain.isPacked());
+        for (int k = 0; k < cells.length; k++) {
+            plain.insertCell(cells[k]);
+            packed.insertCell(cells[k]);
+        }
+        assertEquals(cells.length, packed.getPhysicalNumberOfCells());
+        assertEquals(plain.getRecordSize(), packed.getRecordSize());
+
+        // replace a packed cell with one of a different type
+        NumberRecord replacement = new NumberRecord();
+        replacement.setRow(3); replacement.setColumn((short) 0); replacement.setValue(9);
+        plain.insertCell(replacement);
+        packed.insertCell(replacement);
+        plain.removeCell(cells[4]);
+        packed.removeCell(cells[4]);
+        packed.removeCell(cells[4]);
+        assertEquals(cells.length - 1, packed.getPhysicalNumberOfCells());
+
+        byte[] plainData  = new byte[plain.getRecordSize()];
+        byte[] packedData = new byte[packed.getRecordSize()];
+        plain.serialize(0, plainData);
+        packed.serialize(0, packedData);
+        assertTrue(Arrays.equals(plainData, packedData));
+
+        Iterator plainIter  = plain.getIterator();
+        Iterator packedIter = packed.getIterator();
+        while (plainIter.hasNext()) {
+            assertTrue(packedIter.hasNext());
+            Record expected = (Record) plainIter.next();
+            Record actual   = (Record) packedIter.next();
+            assertEquals(expected.getClass(), actual.getClass());
+            assertTrue(Arrays.equals(expected.serialize(), actual.serialize()));
+        }
+        assertTrue(!packedIter.hasNext());
+
+        ValueRecordsAggregate clone = (ValueRecordsAggregate) packed.clone();
+        assertTrue(clone.isPacked());
+        assertTrue(Arrays.equals(packedData, clone.serialize()));
+    }
+
+    public void testShiftRows() {
+        ValueRecordsAggregate plain  = new ValueRecordsAggregate();
+        ValueRecordsAggregate packed = new ValueRecordsAggregate(true);
+        CellValueRecordInterface[] plainCells  = createCells();
+        CellValueRecordInterface[] packedCells = createCells();
+        for (int k = 0; k < plainCells.length; k++) {
+            plain.insertCell(plainCells[k]);
+            packed.insertCell(packedCells[k]);
+        }
+
+        // row 3 moves onto row 0, dropping its cell; row 4464 moves off the sheet
+        plain.shiftRows(3, 4464, -3);
+        packed.shiftRows(3, 4464, -3);
+        plain.shiftRows(4461, 4461, 65535);
+        packed.shiftRows(4461, 4461, 65535);
+        assertEquals(5, plain.getPhysicalNumberOfCells());
+        assertEquals(5, packed.getPhysicalNumberOfCells());
+
+        Iterator plainIter  = plain.getIterator();
+        Iterator packedIter = packed.getIterator();
+        while (plainIter.hasNext()) {
+            CellValueRecordInterface expected = (CellValueRecordInterface) plainIter.next();
+            CellValueRecordInterface actual   = (CellValueRecordInterface) packedIter.next();
+            assertEquals(0, expected.getRow());
+            assertEquals(0, actual.getRow());
+            assertEquals(expected.getColumn(), actual.getColumn());
+        }
+        assertTrue(!packedIter.hasNext());
+        assertTrue(Arrays.equals(plain.serialize(), packed.serialize()));
+    }
+
+     public static void main(String [] args) {
+        System.out
+        .println("Testing org.apache.poi.hssf.record.aggregates.ValueRecordsAggregate");
+        junit.textui.TestRunner.run(TestValueRecordsAggregate.class);
+    }
+}
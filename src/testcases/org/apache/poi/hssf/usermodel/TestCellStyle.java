@@ -236,6 +236,104 @@ public class TestCellStyle
         // assert((s.getLastRowNum() == 99));
     }
 
+    /**
+     * deriving a style reuses an identical style instead of adding one
+     */
+
+    public void testDeriveCellStyle()
+    {
+        HSSFWorkbook  wb    = new HSSFWorkbook();
+        HSSFCellStyle base  = wb.createCellStyle();
+        HSSFFont      font  = wb.createFont();
+
+        base.setBorderTop(HSSFCellStyle.BORDER_THIN);
+        short         count = wb.getNumCellStyles();
+        short         fill  = base.getFillForegroundColor();
+        HSSFCellStyle red   = wb.deriveCellStyle(base, "fillForegroundColor",
+                                  new Short(( short ) 10));
+
+        assertEquals(count + 1, wb.getNumCellStyles());
+        assertEquals(10, red.getFillForegroundColor());
+        assertEquals(HSSFCellStyle.BORDER_THIN, red.getBorderTop());
+        assertEquals(fill, base.getFillForegroundColor());
+        assertEquals(red.getIndex(), wb.deriveCellStyle(base,
+                     "fillForegroundColor", new Short(( short ) 10)).getIndex());
+        assertEquals(count + 1, wb.getNumCellStyles());
+
+        HSSFCellStyle bold = wb.deriveCellStyle(red, "font", font);
+
+        assertEquals(font.getIndex(), bold.getFontIndex());
+        assertEquals(bold.getIndex(),
+                     wb.deriveCellStyle(red, "font", font).getIndex());
+        assertEquals(count + 2, wb.getNumCellStyles());
+
+        // changing the value back finds the style it came from
+        assertEquals(base.getIndex(), wb.deriveCellStyle(red,
+                     "fillForegroundColor", new Short(fill)).getIndex());
+        try
+        {
+            wb.deriveCellStyle(base, "colour", new Short(( short ) 1));
+            fail("unknown property");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+    }
+
+    /**
+     * styles changed after they were looked up are not matched by their
+     * old attributes
+     */
+
+    public void testFindCellStyle()
+    {
+        HSSFWorkbook  wb    = new HSSFWorkbook();
+        HSSFCellStyle style = wb.createCellStyle();
+        HSSFCellStyle probe = wb.createCellStyle();
+
+        style.setAlignment(HSSFCellStyle.ALIGN_CENTER);
+        probe.setAlignment(HSSFCellStyle.ALIGN_RIGHT);
+        assertEquals(style.getIndex(), wb.findCellStyle(style).getIndex());
+
+        style.setAlignment(HSSFCellStyle.ALIGN_LEFT);
+        probe.setAlignment(HSSFCellStyle.ALIGN_CENTER);
+        assertEquals("the changed style is not matched", probe.getIndex(),
+                     wb.findCellStyle(probe).getIndex());
+        assertEquals(style.getIndex(), wb.findCellStyle(style).getIndex());
+
+        HSSFCellStyle centered = wb.deriveCellStyle(style, "alignment",
+                                     new Short(HSSFCellStyle.ALIGN_CENTER));
+
+        assertEquals(probe.getIndex(), centered.getIndex());
+    }
+
+    /**
+     * styles changed through their setters after a lookup are matched by
+     * their new attributes, including a duplicate that was passed over
+     */
+
+    public void testFindChangedCellStyle()
+    {
+        HSSFWorkbook  wb     = new HSSFWorkbook();
+        HSSFCellStyle first  = wb.createCellStyle();
+        HSSFCellStyle second = wb.createCellStyle();
+
+        first.setBorderLeft(HSSFCellStyle.BORDER_THIN);
+        second.setBorderLeft(HSSFCellStyle.BORDER_THIN);
+        assertEquals(first.getIndex(), wb.findCellStyle(second).getIndex());
+
+        first.setBorderLeft(HSSFCellStyle.BORDER_THICK);
+        assertEquals("the changed style is found by its new attributes",
+                     first.getIndex(), wb.findCellStyle(first).getIndex());
+        assertEquals("the duplicate is found once the first has changed",
+                     second.getIndex(), wb.findCellStyle(second).getIndex());
+
+        HSSFFont font = wb.createFont();
+
+        second.setFont(font);
+        assertEquals(second.getIndex(), wb.findCellStyle(second).getIndex());
+    }
+
     public static void main(String [] ignored_args)
     {
         System.out
@@ -60,10 +60,15 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Date;
+import java.util.List;
 
 import junit.framework.TestCase;
 
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RecordFactory;
+import org.apache.poi.hssf.record.SharedFormulaRecord;
 import org.apache.poi.hssf.util.CellReference;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 
 /**
  * @author Andrew C. Oliver (acoliver at apache dot org)
@@ -977,6 +982,143 @@ extends TestCase {
 		assertTrue("length of nestedIf file is zero", (nestedIf.length()>0));             
     }
 
+    /**
+     * Formulas copied down a column are written as one shared formula
+     * and read back with each cell's own references.
+     */
+    public void testSharedFormulas()
+        throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet    s  = wb.createSheet();
+
+        for (short k = 0; k < 300; k++) {
+            HSSFRow r = s.createRow(k);
+            r.createCell((short)0).setCellValue(k);
+            r.createCell((short)1).setCellFormula("A" + (k + 1) + "*2+$A$1");
+        }
+        s.getRow(150).getCell((short)1).setCellFormula("A1+1");
+
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        wb.write(out);
+        int size = out.size();
+
+        wb = new HSSFWorkbook(new java.io.ByteArrayInputStream(out.toByteArray()));
+        s  = wb.getSheetAt(0);
+        for (short k = 0; k < 300; k++) {
+            String expected = (k == 150) ? "A1+1" : "A" + (k + 1) + "*2+$A$1";
+            assertEquals("row " + k, expected,
+                         s.getRow(k).getCell((short)1).getCellFormula());
+        }
+
+        java.io.ByteArrayOutputStream again = new java.io.ByteArrayOutputStream();
+        wb.write(again);
+        assertEquals("same size rewritten", size, again.size());
+
+        HSSFWorkbook unshared = new HSSFWorkbook();
+        HSSFSheet    u        = unshared.createSheet();
+        for (short k = 0; k < 300; k++) {
+            HSSFRow r = u.createRow(k);
+            r.createCell((short)0).setCellValue(k);
+            r.createCell((short)1).setCellFormula("A" + (k + 1) + "*2+$A$" + (k + 1));
+        }
+        java.io.ByteArrayOutputStream plain = new java.io.ByteArrayOutputStream();
+        unshared.write(plain);
+        assertTrue("shared formulas are smaller", size < plain.size());
+    }
+
+    /**
+     * SHRFMLA records read from a file are not written back out next to
+     * the ones built on write.
+     */
+    public void testSharedFormulasRoundTrip()
+        throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet    s  = wb.createSheet();
+
+        for (short k = 0; k < 20; k++) {
+            HSSFRow r = s.createRow(k);
+            r.createCell((short)0).setCellValue(k);
+            r.createCell((short)1).setCellFormula("A" + (k + 1) + "*2");
+        }
+        byte[] data = writeBytes(wb);
+        assertEquals(1, countSharedFormulas(data));
+
+        wb   = new HSSFWorkbook(new java.io.ByteArrayInputStream(data));
+        data = writeBytes(wb);
+        assertEquals(1, countSharedFormulas(data));
+
+        wb = new HSSFWorkbook(new java.io.ByteArrayInputStream(data));
+        wb.getSheetAt(0).getRow(10).getCell((short)1).setCellFormula("A1+1");
+        data = writeBytes(wb);
+        assertEquals(2, countSharedFormulas(data));
+
+        wb = new HSSFWorkbook(new java.io.ByteArrayInputStream(data));
+        s  = wb.getSheetAt(0);
+        for (short k = 0; k < 20; k++) {
+            String expected = (k == 10) ? "A1+1" : "A" + (k + 1) + "*2";
+            assertEquals("row " + k, expected,
+                         s.getRow(k).getCell((short)1).getCellFormula());
+        }
+    }
+
+    /**
+     * A formula changed after the sheet was sized is written with its new
+     * expression rather than as part of the shared formula grouped then.
+     */
+    public void testSharedFormulasChangedAfterSizing()
+        throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet    s  = wb.createSheet();
+
+        for (short k = 0; k < 20; k++) {
+            HSSFRow r = s.createRow(k);
+            r.createCell((short)0).setCellValue(k);
+            r.createCell((short)1).setCellFormula("A" + (k + 1) + "*2");
+        }
+        int size = s.getSheet().getSize();
+        assertEquals(size, s.getSheet().getSize());
+
+        s.getRow(10).getCell((short)1).setCellFormula("A1+1");
+        byte[] data = writeBytes(wb);
+        assertEquals(2, countSharedFormulas(data));
+
+        wb = new HSSFWorkbook(new java.io.ByteArrayInputStream(data));
+        s  = wb.getSheetAt(0);
+        for (short k = 0; k < 20; k++) {
+            String expected = (k == 10) ? "A1+1" : "A" + (k + 1) + "*2";
+            assertEquals("row " + k, expected,
+                         s.getRow(k).getCell((short)1).getCellFormula());
+        }
+    }
+
+    private static byte[] writeBytes(HSSFWorkbook wb)
+        throws IOException
+    {
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        wb.write(out);
+        return out.toByteArray();
+    }
+
+    private static int countSharedFormulas(byte[] data)
+        throws IOException
+    {
+        POIFSFileSystem fs = new POIFSFileSystem(
+            new java.io.ByteArrayInputStream(data));
+        List recs  = RecordFactory.createRecords(
+            fs.createDocumentInputStream("Workbook"));
+        int  count = 0;
+
+        for (int k = 0; k < recs.size(); k++) {
+            if (((Record) recs.get(k)).getSid() == SharedFormulaRecord.sid) {
+                count++;
+            }
+        }
+        return count;
+    }
+
 	public void testSumIf()
 		throws java.io.IOException
 	{
@@ -0,0 +1,308 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.record.aggregates.FormulaRecordAggregate;
+
+/**
+ * Tests HSSFFormulaEvaluator
+ */
+
+public class TestHSSFFormulaEvaluator
+    extends TestCase
+{
+    private HSSFWorkbook workbook;
+    private HSSFSheet    sheet;
+
+    public TestHSSFFormulaEvaluator(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp()
+    {
+        workbook = new HSSFWorkbook();
+        sheet    = workbook.createSheet("DATA");
+        setNumber(0, 0, 2);
+        setNumber(0, 1, 3);
+        setNumber(1, 0, 1);
+        setNumber(2, 0, 2);
+        setNumber(3, 0, 3);
+        cell(4, 0).setCellValue("text");
+    }
+
+    public void testArithmetic()
+    {
+        setFormula(5, 0, "A1+B1*2");
+        setFormula(5, 1, "(A1+B1)/2");
+        setFormula(5, 2, "A1^3-B1");
+        setFormula(5, 3, "A1/0");
+        setFormula(5, 4, "A1&\"x\"");
+        setFormula(5, 5, "A1=2");
+        HSSFFormulaEvaluator evaluator = new HSSFFormulaEvaluator(workbook);
+
+        assertEquals(new Double(8), evaluator.evaluate(cell(5, 0)));
+        assertEquals(new Double(2.5), evaluator.evaluate(cell(5, 1)));
+        assertEquals(new Double(5), evaluator.evaluate(cell(5, 2)));
+        assertEquals(new Byte(HSSFErrorConstants.ERROR_DIV_0),
+                     evaluator.evaluate(cell(5, 3)));
+        assertEquals("2x", evaluator.evaluate(cell(5, 4)));
+        assertEquals(Boolean.TRUE, evaluator.evaluate(cell(5, 5)));
+        assertEquals(new Double(3), evaluator.evaluate(cell(0, 1)));
+    }
+
+    public void testFunctions()
+    {
+        setFormula(6, 0, "SUM(A2:A5)");
+        setFormula(6, 1, "AVERAGE(A2:A4)");
+        setFormula(6, 2, "MAX(A1:B5)");
+        setFormula(6, 3, "COUNT(A1:A5)");
+        setFormula(6, 4, "ROUND(B1/7,2)");
+        setFormula(6, 5, "UPPER(A5)");
+        setFormula(6, 6, "STDEV(A1:A4)");
+        HSSFFormulaEvaluator evaluator = new HSSFFormulaEvaluator(workbook);
+
+        assertEquals(new Double(6), evaluator.evaluate(cell(6, 0)));
+        assertEquals(new Double(2), evaluator.evaluate(cell(6, 1)));
+        assertEquals(new Double(3), evaluator.evaluate(cell(6, 2)));
+        assertEquals(new Double(4), evaluator.evaluate(cell(6, 3)));
+        assertEquals(new Double(0.43), evaluator.evaluate(cell(6, 4)));
+        assertEquals("TEXT", evaluator.evaluate(cell(6, 5)));
+        assertEquals(new Byte(HSSFErrorConstants.ERROR_NAME),
+                     evaluator.evaluate(cell(6, 6)));
+    }
+
+    public void testIf()
+    {
+        setFormula(7, 0, "IF(A1=2,\"two\",\"other\")");
+        setFormula(7, 1, "IF(A1=3,10)");
+        setFormula(7, 2, "IF(B1=1,1,IF(B1=2,2,IF(B1=3,SUM(A2:A4),4)))");
+        setFormula(7, 3, "IF(A1/0,1,2)+1");
+        HSSFFormulaEvaluator evaluator = new HSSFFormulaEvaluator(workbook);
+
+        assertEquals("two", evaluator.evaluate(cell(7, 0)));
+        assertEquals(Boolean.FALSE, evaluator.evaluate(cell(7, 1)));
+        assertEquals(new Double(6), evaluator.evaluate(cell(7, 2)));
+        assertEquals(new Byte(HSSFErrorConstants.ERROR_DIV_0),
+                     evaluator.evaluate(cell(7, 3)));
+    }
+
+    public void testOtherSheet()
+    {
+        HSSFSheet other = workbook.createSheet("TOTALS");
+        HSSFCell  cell  = other.createRow(0).createCell(( short ) 0);
+
+        cell.setCellFormula("DATA!A1*10+SUM(DATA!A2:A4)");
+        HSSFFormulaEvaluator evaluator = new HSSFFormulaEvaluator(workbook);
+
+        assertEquals(new Double(26), evaluator.evaluate(cell));
+        setNumber(0, 0, 4);
+        evaluator.notifyCellChanged(cell(0, 0));
+        assertEquals(new Double(46), evaluator.evaluate(cell));
+    }
+
+    public void testIncrementalRecalculation()
+    {
+        setFormula(8, 0, "A1*2");
+        setFormula(8, 1, "A9+1");
+        setFormula(8, 2, "B9+SUM(A2:A4)");
+        setFormula(8, 3, "B1*2");
+        HSSFFormulaEvaluator evaluator = new HSSFFormulaEvaluator(workbook);
+
+        assertEquals(4, evaluator.recalculate());
+        assertEquals(0, evaluator.recalculate());
+        assertEquals(11, cell(8, 2).getNumericCellValue(), 0);
+
+        setNumber(0, 0, 5);
+        evaluator.notifyCellChanged(cell(0, 0));
+        assertEquals(3, evaluator.recalculate());
+        assertEquals(17, cell(8, 2).getNumericCellValue(), 0);
+        assertEquals(6, cell(8, 3).getNumericCellValue(), 0);
+
+        setNumber(2, 0, 20);
+        evaluator.notifyCellChanged(cell(2, 0));
+        assertEquals(1, evaluator.recalculate());
+        assertEquals(35, cell(8, 2).getNumericCellValue(), 0);
+
+        setFormula(8, 0, "B1");
+        evaluator.notifyCellChanged(cell(8, 0));
+        assertEquals(3, evaluator.recalculate());
+        assertEquals(28, cell(8, 2).getNumericCellValue(), 0);
+        assertEquals(4, evaluator.recalculateAll());
+    }
+
+    public void testCircularReference()
+    {
+        setFormula(9, 0, "B10+1");
+        setFormula(9, 1, "A10+1");
+        setFormula(9, 2, "A1+1");
+        HSSFFormulaEvaluator evaluator = new HSSFFormulaEvaluator(workbook);
+
+        assertEquals(3, evaluator.recalculate());
+        assertEquals(new Byte(HSSFErrorConstants.ERROR_VALUE),
+                     evaluator.evaluate(cell(9, 0)));
+        assertEquals(new Byte(HSSFErrorConstants.ERROR_VALUE),
+                     evaluator.evaluate(cell(9, 1)));
+        assertEquals(new Double(3), evaluator.evaluate(cell(9, 2)));
+    }
+
+    /**
+     * Cells set or removed and rows removed or shifted through the
+     * usermodel tell the evaluator themselves.
+     */
+
+    public void testChangesReported()
+        throws Exception
+    {
+        setFormula(8, 0, "A1*2");
+        setFormula(8, 1, "SUM(A2:A4)");
+        setFormula(8, 2, "A9+B9");
+        HSSFFormulaEvaluator evaluator = new HSSFFormulaEvaluator(workbook);
+
+        assertEquals(3, evaluator.recalculate());
+        assertEquals(10, cell(8, 2).getNumericCellValue(), 0);
+
+        setNumber(0, 0, 5);
+        assertEquals(2, evaluator.recalculate());
+        assertEquals(16, cell(8, 2).getNumericCellValue(), 0);
+
+        sheet.getRow(2).removeCell(cell(2, 0));
+        assertEquals(2, evaluator.recalculate());
+        assertEquals(14, cell(8, 2).getNumericCellValue(), 0);
+
+        // A4 moves over A2
+        sheet.shiftRows(3, 3, -2);
+        assertEquals(2, evaluator.recalculate());
+        assertEquals(3, cell(8, 1).getNumericCellValue(), 0);
+        assertEquals(13, cell(8, 2).getNumericCellValue(), 0);
+
+        sheet.removeRow(sheet.getRow(0));
+        assertEquals(2, evaluator.recalculate());
+        assertEquals(3, cell(8, 2).getNumericCellValue(), 0);
+
+        // the formulas move along with their references, C11 is A11+B11
+        sheet.shiftRows(8, 8, 2);
+        assertEquals(3, evaluator.recalculate());
+        assertEquals("A11+B11", cell(10, 2).getCellFormula());
+        assertEquals(3, cell(10, 2).getNumericCellValue(), 0);
+
+        // write() brings the change into the cached values
+        setNumber(1, 0, 7);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        workbook.write(out);
+        HSSFRow row = new HSSFWorkbook(new ByteArrayInputStream(
+            out.toByteArray())).getSheetAt(0).getRow(10);
+
+        assertEquals(7, row.getCell(( short ) 1).getNumericCellValue(), 0);
+        assertEquals(0, evaluator.recalculate());
+    }
+
+    /**
+     * The results are written as the formulas' cached values.
+     */
+
+    public void testResultsWritten()
+        throws Exception
+    {
+        setFormula(10, 0, "SUM(A1:A4)*2");
+        setFormula(10, 1, "A5&\"s\"");
+        new HSSFFormulaEvaluator(workbook);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        workbook.write(out);
+        assertNotNull((( FormulaRecordAggregate ) cell(10, 1)
+            .getCellValueRecord()).getStringRecord());
+        HSSFWorkbook read =
+            new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        HSSFCell     sum  = read.getSheetAt(0).getRow(10).getCell(( short ) 0);
+
+        assertEquals(HSSFCell.CELL_TYPE_FORMULA, sum.getCellType());
+        assertEquals(16, sum.getNumericCellValue(), 0);
+        assertEquals("SUM(A1:A4)*2", sum.getCellFormula());
+    }
+
+    private HSSFCell cell(int row, int column)
+    {
+        HSSFRow r = sheet.getRow(row);
+
+        if (r == null)
+        {
+            r = sheet.createRow(( short ) row);
+        }
+        HSSFCell c = r.getCell(( short ) column);
+
+        if (c == null)
+        {
+            c = r.createCell(( short ) column);
+        }
+        return c;
+    }
+
+    private void setNumber(int row, int column, double value)
+    {
+        cell(row, column).setCellValue(value);
+    }
+
+    private void setFormula(int row, int column, String formula)
+    {
+        cell(row, column).setCellFormula(formula);
+    }
+}
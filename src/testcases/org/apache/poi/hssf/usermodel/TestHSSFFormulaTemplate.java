@@ -0,0 +1,213 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests HSSFFormulaTemplate and the formula cache behind
+ * HSSFCell.setCellFormula(String)
+ */
+
+public class TestHSSFFormulaTemplate
+    extends TestCase
+{
+    private HSSFWorkbook workbook;
+    private HSSFSheet    sheet;
+
+    public TestHSSFFormulaTemplate(String name)
+    {
+        super(name);
+    }
+
+    protected void setUp()
+    {
+        workbook = new HSSFWorkbook();
+        sheet    = workbook.createSheet("DATA");
+        workbook.createSheet("OTHER");
+        FormulaCache.clear();
+    }
+
+    private HSSFCell cell(int row, int column)
+    {
+        HSSFRow r = sheet.getRow(row);
+
+        if (r == null)
+        {
+            r = sheet.createRow(row);
+        }
+        return r.createCell(( short ) column);
+    }
+
+    public void testRelativeReferencesMove()
+    {
+        HSSFFormulaTemplate template =
+            workbook.createFormulaTemplate("A1*2+SUM(A1:C3)", 0, ( short ) 3);
+        HSSFCell            anchor   = cell(0, 3);
+        HSSFCell            moved    = cell(9, 5);
+
+        anchor.setCellFormula(template);
+        moved.setCellFormula(template);
+        assertEquals("A1*2+SUM(A1:C3)", anchor.getCellFormula());
+        assertEquals("C10*2+SUM(C10:E12)", moved.getCellFormula());
+    }
+
+    public void testAbsoluteReferencesStay()
+    {
+        HSSFFormulaTemplate template =
+            workbook.createFormulaTemplate("$A$1+B$1+$C1+SUM($A1:B$2)", 0,
+                                           ( short ) 5);
+        HSSFCell            moved    = cell(4, 6);
+
+        moved.setCellFormula(template);
+        assertEquals("$A$1+C$1+$C5+SUM($A5:C$2)", moved.getCellFormula());
+    }
+
+    public void testOtherSheetReferencesMove()
+    {
+        HSSFFormulaTemplate template =
+            workbook.createFormulaTemplate("OTHER!A1+SUM(OTHER!$A$1:B2)", 0,
+                                           ( short ) 0);
+        HSSFCell            moved    = cell(2, 1);
+
+        moved.setCellFormula(template);
+        assertEquals("OTHER!B3+SUM(OTHER!$A$1:C4)", moved.getCellFormula());
+    }
+
+    public void testOffTheSheet()
+    {
+        HSSFFormulaTemplate template =
+            workbook.createFormulaTemplate("B2", 5, ( short ) 5);
+
+        try
+        {
+            cell(0, 5).setCellFormula(template);
+            fail("row moved above the sheet");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+        cell(4, 4).setCellFormula(template);
+        assertEquals("A1", sheet.getRow(4).getCell(( short ) 4).getCellFormula());
+    }
+
+    public void testWriteAndRead()
+        throws Exception
+    {
+        HSSFFormulaTemplate template =
+            workbook.createFormulaTemplate("A1+1", 0, ( short ) 1);
+
+        for (int k = 0; k < 100; k++)
+        {
+            cell(k, 0).setCellValue(k);
+            cell(k, 1).setCellFormula(template);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        workbook.write(out);
+        workbook = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        sheet    = workbook.getSheetAt(0);
+        for (int k = 0; k < 100; k++)
+        {
+            assertEquals("A" + (k + 1) + "+1",
+                         sheet.getRow(k).getCell(( short ) 1).getCellFormula());
+        }
+    }
+
+    public void testCache()
+    {
+        cell(0, 0).setCellFormula("1 + A1");
+        cell(1, 0).setCellFormula("1+A1");
+        assertEquals(1, FormulaCache.size());
+        assertEquals("1+A1", sheet.getRow(1).getCell(( short ) 0).getCellFormula());
+
+        cell(2, 0).setCellFormula("\" a \"");
+        cell(3, 0).setCellFormula("\"a\"");
+        assertEquals("string literals keep their spaces", 3, FormulaCache.size());
+
+        cell(4, 0).setCellFormula("OTHER!A1");
+        assertEquals("sheet references are not kept", 3, FormulaCache.size());
+        assertEquals("OTHER!A1",
+                     sheet.getRow(4).getCell(( short ) 0).getCellFormula());
+
+        for (int k = 0; k < 1000; k++)
+        {
+            cell(5, 0).setCellFormula(k + "+1");
+        }
+        assertEquals(256, FormulaCache.size());
+        assertEquals("999+1", sheet.getRow(5).getCell(( short ) 0).getCellFormula());
+    }
+
+    public void testCachedTokensAreNotShared()
+    {
+        HSSFCell first  = cell(0, 0);
+        HSSFCell second = cell(1, 0);
+
+        first.setCellFormula("B1*2");
+        second.setCellFormula("B1*2");
+        first.setCellFormula("B1*3");
+        assertEquals("B1*2", second.getCellFormula());
+        assertEquals("B1*'x y'!A1",
+                     FormulaCache.normalize(" B1 * 'x y'!A1 "));
+    }
+
+    public static void main(String [] args)
+    {
+        junit.textui.TestRunner.run(TestHSSFFormulaTemplate.class);
+    }
+}
@@ -59,6 +59,7 @@ import junit.framework.TestCase;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.util.Iterator;
 
 /**
  * Test HSSFRow is okay.
@@ -133,4 +134,36 @@ public class TestHSSFRow
 
 
     }
+
+    public void testCellIterator()
+    {
+        HSSFWorkbook workbook = new HSSFWorkbook();
+        HSSFSheet sheet = workbook.createSheet();
+        HSSFRow row = sheet.createRow((short) 0);
+
+        row.createCell((short) 200);
+        row.createCell((short) 7);
+        row.createCell((short) 0);
+        row.createCell((short) 30);
+        assertEquals(4, row.getPhysicalNumberOfCells());
+        assertNull(row.getCell((short) 8));
+        assertNull(row.getCell((short) 255));
+        assertNull(row.getCell((short) -1));
+
+        short[] expected = {0, 7, 30, 200};
+        Iterator it = row.cellIterator();
+        for (int k = 0; k < expected.length; k++)
+        {
+            assertTrue(it.hasNext());
+            assertEquals(expected[k], ((HSSFCell) it.next()).getCellNum());
+        }
+        assertFalse(it.hasNext());
+
+        row.removeCell(row.getCell((short) 7));
+        assertEquals(3, row.getPhysicalNumberOfCells());
+        assertNull(row.getCell((short) 7));
+        it = row.cellIterator();
+        assertEquals(0, ((HSSFCell) it.next()).getCellNum());
+        assertEquals(30, ((HSSFCell) it.next()).getCellNum());
+    }
 }
@@ -62,6 +62,8 @@ import org.apache.poi.hssf.record.WSBoolRecord;
 import org.apache.poi.hssf.record.SCLRecord;
 import org.apache.poi.hssf.record.WindowTwoRecord;
 
+import org.apache.poi.hssf.util.Region;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -254,4 +256,60 @@ public class TestHSSFSheet
         assertTrue(sclLoc == window2Loc + 1);
 
     }
+
+    public void testMergedRegionLookup()
+            throws Exception
+    {
+        HSSFWorkbook workbook = new HSSFWorkbook();
+        HSSFSheet sheet = workbook.createSheet("Merged");
+
+        // 2 x 2 blocks over 3000 rows plus one region 1000 rows tall
+        for (int row = 0; row < 3000; row += 2)
+        {
+            for (short col = 0; col < 10; col += 2)
+            {
+                sheet.addMergedRegion(new Region(row, col, row + 1, (short) (col + 1)));
+            }
+        }
+        sheet.addMergedRegion(new Region(500, (short) 20, 1499, (short) 20));
+        assertEquals(7501, sheet.getNumMergedRegions());
+
+        File tempFile = File.createTempFile("merged", "test.xls");
+        FileOutputStream stream = new FileOutputStream(tempFile);
+        workbook.write(stream);
+        stream.close();
+        FileInputStream readStream = new FileInputStream(tempFile);
+        sheet = new HSSFWorkbook(readStream).getSheetAt(0);
+        readStream.close();
+        tempFile.delete();
+
+        assertTrue(new Region(1234, (short) 6, 1235, (short) 7).equals(
+                   sheet.getMergedRegionContaining(1235, (short) 6)));
+        assertEquals(500, sheet.getMergedRegionContaining(999, (short) 20).getRowFrom());
+        assertNull(sheet.getMergedRegionContaining(3000, (short) 0));
+        assertNull(sheet.getMergedRegionContaining(10, (short) 15));
+
+        Region[] overlapping = sheet.getMergedRegionsOverlapping(
+                new Region(1, (short) 1, 4, (short) 2));
+        assertEquals(6, overlapping.length);
+        assertEquals(1, sheet.getMergedRegionsOverlapping(
+                new Region(0, (short) 19, 2999, (short) 30)).length);
+
+        assertEquals(6, sheet.removeMergedRegions(new Region(1, (short) 1, 4, (short) 2)));
+        assertEquals(7495, sheet.getNumMergedRegions());
+        assertNull(sheet.getMergedRegionContaining(0, (short) 0));
+        assertNotNull(sheet.getMergedRegionContaining(0, (short) 4));
+
+        // single removal keeps the index in step
+        Region last = sheet.getMergedRegionAt(sheet.getNumMergedRegions() - 1);
+        sheet.removeMergedRegion(sheet.getNumMergedRegions() - 1);
+        assertNull(sheet.getMergedRegionContaining(last.getRowFrom(), last.getColumnFrom()));
+        sheet.addMergedRegion(new Region(4000, (short) 0, 4000, (short) 3));
+        assertEquals(4000, sheet.getMergedRegionContaining(4000, (short) 2).getRowFrom());
+
+        assertEquals(7495, sheet.removeMergedRegions(new Region(0, (short) 0, 65535, (short) 255)));
+        assertEquals(0, sheet.getNumMergedRegions());
+        sheet.addMergedRegion(new Region(1, (short) 1, 2, (short) 2));
+        assertEquals(1, sheet.getNumMergedRegions());
+    }
 }
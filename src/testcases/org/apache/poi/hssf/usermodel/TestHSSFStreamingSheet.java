@@ -0,0 +1,318 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.hssf.usermodel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+
+/**
+ * Tests generating a sheet in streaming mode.
+ */
+
+public class TestHSSFStreamingSheet
+        extends TestCase
+{
+    public TestHSSFStreamingSheet(String name)
+    {
+        super(name);
+    }
+
+    public void testWriteAndReadBack()
+            throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFStreamingSheet sheet = wb.createStreamingSheet("Streamed", 50);
+
+        for (int r = 0; r < 2000; r += 2)
+        {
+            HSSFRow row = sheet.createRow(r);
+
+            row.createCell(( short ) 0).setCellValue(r);
+            row.createCell(( short ) 3).setCellValue("row " + r);
+            assertTrue(sheet.getPhysicalNumberOfRows() <= 50);
+        }
+        assertNull("flushed rows are not live", sheet.getRow(0));
+        assertNotNull(sheet.getRow(1998));
+
+        wb.createSheet("Normal").createRow(0).createCell(( short ) 0).setCellValue(1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+
+        assertEquals(wb.getBytes().length, getWorkbookSize(out));
+        wb.close();
+
+        HSSFWorkbook read = new HSSFWorkbook(new POIFSFileSystem(
+                new ByteArrayInputStream(out.toByteArray())));
+        HSSFSheet s = read.getSheetAt(0);
+
+        assertEquals(1000, s.getPhysicalNumberOfRows());
+        assertEquals(0, s.getFirstRowNum());
+        assertEquals(1998, s.getLastRowNum());
+        for (int r = 0; r < 2000; r += 2)
+        {
+            HSSFRow row = s.getRow(r);
+
+            assertEquals(r, row.getCell(( short ) 0).getNumericCellValue(), 0);
+            assertEquals("row " + r, row.getCell(( short ) 3).getStringCellValue());
+        }
+        assertEquals(1, read.getSheetAt(1).getRow(0).getCell(( short ) 0).getNumericCellValue(), 0);
+    }
+
+    public void testRowsMustAscend()
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFStreamingSheet sheet = wb.createStreamingSheet("Streamed", 10);
+
+        sheet.createRow(5);
+        try
+        {
+            sheet.createRow(5);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+        wb.close();
+    }
+
+    public void testShiftAndRemoveAfterFlush()
+            throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFStreamingSheet sheet = wb.createStreamingSheet("Streamed", 3);
+
+        for (int r = 0; r < 3; r++)
+        {
+            sheet.createRow(r).createCell(( short ) 0).setCellValue(r);
+        }
+
+        // nothing flushed yet, so the window follows the shift
+        sheet.shiftRows(1, 2, 5);
+        assertNull(sheet.getRow(1));
+        assertEquals(2, sheet.getRow(7).getCell(( short ) 0).getNumericCellValue(), 0);
+        try
+        {
+            sheet.createRow(7);
+            fail("expected IllegalArgumentException");
+        }
+        catch (IllegalArgumentException expected)
+        {
+        }
+        HSSFRow first = sheet.getRow(0);
+
+        sheet.createRow(8);
+        assertNull(sheet.getRow(0));
+        try
+        {
+            sheet.removeRow(first);
+            fail("expected IllegalStateException");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        try
+        {
+            sheet.shiftRows(6, 8, 1);
+            fail("expected IllegalStateException");
+        }
+        catch (IllegalStateException expected)
+        {
+        }
+        sheet.removeRow(sheet.getRow(8));
+        sheet.createRow(9);
+        assertEquals(3, sheet.getPhysicalNumberOfRows());
+        wb.close();
+    }
+
+    public void testCloseDeletesSpillFile()
+            throws IOException
+    {
+        File[]             before = getSpillFiles();
+        HSSFWorkbook       wb     = new HSSFWorkbook();
+        HSSFStreamingSheet sheet  = wb.createStreamingSheet("Streamed", 10);
+
+        for (int r = 0; r < 100; r++)
+        {
+            sheet.createRow(r).createCell(( short ) 0).setCellValue(r);
+        }
+        assertEquals(before.length + 1, getSpillFiles().length);
+        wb.write(new ByteArrayOutputStream());
+        wb.close();
+        assertEquals(before.length, getSpillFiles().length);
+
+        // a removed sheet lets go of its file straight away
+        sheet = wb.createStreamingSheet("Removed", 10);
+        for (int r = 0; r < 100; r++)
+        {
+            sheet.createRow(r).createCell(( short ) 0).setCellValue(r);
+        }
+        assertEquals(before.length + 1, getSpillFiles().length);
+        wb.removeSheetAt(1);
+        assertEquals(before.length, getSpillFiles().length);
+    }
+
+    public void testInMemory()
+            throws IOException
+    {
+        File[] before = getSpillFiles();
+        byte[] memory = buildWorkbook(true);
+
+        assertEquals("no spill file is used", before.length,
+                     getSpillFiles().length);
+
+        // the flushed rows are written ahead of their cells rather than
+        // interleaved, but the records themselves are the same
+        assertEquals(buildWorkbook(false).length, memory.length);
+
+        HSSFSheet s = new HSSFWorkbook(new POIFSFileSystem(
+                new ByteArrayInputStream(memory))).getSheetAt(0);
+
+        assertEquals(1000, s.getPhysicalNumberOfRows());
+        for (int r = 0; r < 1000; r++)
+        {
+            HSSFRow row = s.getRow(r);
+
+            assertEquals(r, row.getCell(( short ) 0).getNumericCellValue(), 0);
+            assertEquals("row " + r, row.getCell(( short ) 1).getStringCellValue());
+            assertEquals((r % 3) == 0, row.getCell(( short ) 2).getBooleanCellValue());
+            assertEquals("A" + (r + 1) + "*2",
+                         row.getCell(( short ) 3).getCellFormula());
+        }
+    }
+
+    private byte[] buildWorkbook(boolean streamed)
+            throws IOException
+    {
+        HSSFWorkbook wb    = new HSSFWorkbook();
+        HSSFSheet    sheet = streamed
+                ? wb.createStreamingSheet("Sheet", 20, true)
+                : wb.createSheet("Sheet");
+
+        for (int r = 0; r < 1000; r++)
+        {
+            HSSFRow row = sheet.createRow(r);
+
+            row.createCell(( short ) 0).setCellValue(r);
+            row.createCell(( short ) 1).setCellValue("row " + r);
+            row.createCell(( short ) 2).setCellValue((r % 3) == 0);
+            row.createCell(( short ) 3).setCellFormula("A" + (r + 1) + "*2");
+            row.createCell(( short ) 4);
+        }
+        if (streamed)
+        {
+            assertTrue((( HSSFStreamingSheet ) sheet).isInMemory());
+            (( HSSFStreamingSheet ) sheet).flushRows();
+            assertEquals(0, sheet.getPhysicalNumberOfRows());
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        wb.write(out);
+        assertEquals(wb.getBytes().length, getWorkbookSize(out));
+        wb.close();
+        return out.toByteArray();
+    }
+
+    private File[] getSpillFiles()
+    {
+        File[] files = new File(System.getProperty("java.io.tmpdir"))
+                .listFiles(new FilenameFilter()
+        {
+            public boolean accept(File dir, String name)
+            {
+                return name.startsWith("poi-sheet") && name.endsWith(".tmp");
+            }
+        });
+
+        return (files == null) ? new File[ 0 ] : files;
+    }
+
+    public void testFlushAll()
+            throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFStreamingSheet sheet = wb.createStreamingSheet("Streamed", 10);
+
+        sheet.createRow(0).createCell(( short ) 0).setCellValue(1);
+        sheet.flushRows();
+        assertEquals(0, sheet.getPhysicalNumberOfRows());
+        sheet.createRow(1).createCell(( short ) 0).setCellValue(2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        sheet.close();
+        HSSFSheet s = new HSSFWorkbook(new POIFSFileSystem(
+                new ByteArrayInputStream(out.toByteArray()))).getSheetAt(0);
+
+        assertEquals(1, s.getRow(0).getCell(( short ) 0).getNumericCellValue(), 0);
+        assertEquals(2, s.getRow(1).getCell(( short ) 0).getNumericCellValue(), 0);
+    }
+
+    private int getWorkbookSize(ByteArrayOutputStream out)
+            throws IOException
+    {
+        POIFSFileSystem fs = new POIFSFileSystem(
+                new ByteArrayInputStream(out.toByteArray()));
+
+        return fs.createDocumentInputStream("Workbook").available();
+    }
+}
@@ -57,6 +57,7 @@ package org.apache.poi.hssf.usermodel;
 import junit.framework.TestCase;
 import org.apache.poi.hssf.usermodel.HSSFSheet;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.hssf.util.Region;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -175,5 +176,98 @@ public class TestSheetShiftRows extends TestCase {
 	s.createRow(3).createCell((short)0).setCellValue("TEST2");
 	s.shiftRows(0,4,1);
     }
-}
 
+    /**
+     * Tests that cells, row heights, merged regions and formula references
+     * move with the shifted rows.
+     */
+    public void testShiftRowsInPlace() throws Exception
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet s = wb.createSheet();
+        for ( int k = 0; k < 2000; k++ )
+        {
+            HSSFRow row = s.createRow( k );
+            row.createCell( (short) 0 ).setCellValue( k );
+            row.createCell( (short) 1 ).setCellValue( "row " + k );
+        }
+        s.getRow( 10 ).setHeight( (short) 600 );
+        s.addMergedRegion( new Region( 10, (short) 1, 11, (short) 2 ) );
+        s.getRow( 5 ).createCell( (short) 2 ).setCellFormula( "A10+A11" );
+        s.getRow( 5 ).createCell( (short) 3 ).setCellFormula( "SUM(A1:A1999)" );
+
+        // insert three rows above row 10
+        s.shiftRows( 10, 1999, 3 );
+        assertEquals( 2002, s.getLastRowNum() );
+        assertNull( s.getRow( 10 ) );
+        assertEquals( 10, s.getRow( 13 ).getCell( (short) 0 ).getNumericCellValue(), 0 );
+        assertEquals( 13, s.getRow( 13 ).getCell( (short) 0 ).getCellValueRecord().getRow() );
+        assertEquals( 600, s.getRow( 13 ).getHeight() );
+        assertEquals( "row 1999", s.getRow( 2002 ).getCell( (short) 1 ).getStringCellValue() );
+        assertEquals( "A10+A14", s.getRow( 5 ).getCell( (short) 2 ).getCellFormula() );
+        assertEquals( "SUM(A1:A2002)", s.getRow( 5 ).getCell( (short) 3 ).getCellFormula() );
+        assertEquals( 13, s.getMergedRegionAt( 0 ).getRowFrom() );
+        assertEquals( 14, s.getMergedRegionAt( 0 ).getRowTo() );
+        assertNotNull( s.getMergedRegionContaining( 14, (short) 2 ) );
+        assertNull( s.getMergedRegionContaining( 10, (short) 1 ) );
+
+        // and remove them again, writing the result out
+        s.shiftRows( 13, 2002, -3 );
+        File tempFile = File.createTempFile( "shift", "test.xls" );
+        FileOutputStream fout = new FileOutputStream( tempFile );
+        wb.write( fout );
+        fout.close();
+        FileInputStream fin = new FileInputStream( tempFile );
+        wb = new HSSFWorkbook( fin );
+        fin.close();
+        tempFile.delete();
+        s = wb.getSheetAt( 0 );
+
+        assertEquals( 1999, s.getLastRowNum() );
+        assertNull( s.getRow( 2000 ) );
+        for ( int k = 0; k < 2000; k++ )
+        {
+            assertEquals( k, s.getRow( k ).getCell( (short) 0 ).getNumericCellValue(), 0 );
+        }
+        assertEquals( 600, s.getRow( 10 ).getHeight() );
+        assertEquals( "A10+A11", s.getRow( 5 ).getCell( (short) 2 ).getCellFormula() );
+        assertEquals( "SUM(A1:A1999)", s.getRow( 5 ).getCell( (short) 3 ).getCellFormula() );
+        assertEquals( 10, s.getMergedRegionAt( 0 ).getRowFrom() );
+    }
+
+    /**
+     * Tests that merged regions in the rows moved onto, and those only
+     * partly in the moved rows, are removed, and that shifting every row
+     * off the sheet leaves it empty.
+     */
+    public void testShiftRowsMergedRegions()
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+        HSSFSheet s = wb.createSheet();
+        for ( int k = 0; k < 20; k++ )
+        {
+            s.createRow( k ).createCell( (short) 0 ).setCellValue( k );
+        }
+        s.addMergedRegion( new Region( 2, (short) 0, 3, (short) 1 ) );   // moved
+        s.addMergedRegion( new Region( 4, (short) 0, 6, (short) 1 ) );   // crosses endRow
+        s.addMergedRegion( new Region( 12, (short) 2, 13, (short) 3 ) ); // moved onto
+        s.addMergedRegion( new Region( 15, (short) 0, 16, (short) 1 ) ); // untouched
+
+        s.shiftRows( 0, 4, 10 );
+        assertEquals( 2, s.getNumMergedRegions() );
+        assertNotNull( s.getMergedRegionContaining( 12, (short) 0 ) );
+        assertEquals( 13, s.getMergedRegionContaining( 12, (short) 0 ).getRowTo() );
+        assertNull( s.getMergedRegionContaining( 12, (short) 2 ) );
+        assertNull( s.getMergedRegionContaining( 5, (short) 0 ) );
+        assertNotNull( s.getMergedRegionContaining( 15, (short) 0 ) );
+
+        s.shiftRows( 0, 19, -20 );
+        assertEquals( 0, s.getPhysicalNumberOfRows() );
+        assertEquals( -1, s.getFirstRowNum() );
+        assertEquals( -1, s.getLastRowNum() );
+        assertEquals( 0, s.getNumMergedRegions() );
+        s.createRow( 7 );
+        assertEquals( 7, s.getFirstRowNum() );
+        assertEquals( 7, s.getLastRowNum() );
+    }
+}
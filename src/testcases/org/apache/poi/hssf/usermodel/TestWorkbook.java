@@ -55,11 +55,15 @@
 
 package org.apache.poi.hssf.usermodel;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -69,6 +73,7 @@ import org.apache.poi.hssf.record.LabelSSTRecord;
 import org.apache.poi.hssf.record.Record;
 import org.apache.poi.hssf.record.aggregates.ValueRecordsAggregate;
 import org.apache.poi.hssf.util.Region;
+import org.apache.poi.poifs.filesystem.DocumentInputStream;
 import org.apache.poi.poifs.filesystem.POIFSFileSystem;
 
 /**
@@ -750,7 +755,471 @@ public class TestWorkbook
     	
     }
   
+
+    /**
+     * The streaming write path must produce exactly the same Workbook stream
+     * as getBytes().
+     */
+    public void testWriteStreamMatchesGetBytes()
+        throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+
+        for (int s = 0; s < 3; s++)
+        {
+            HSSFSheet sheet = wb.createSheet("Sheet" + s);
+
+            for (int r = 0; r < 500; r++)
+            {
+                HSSFRow row = sheet.createRow(r);
+
+                row.createCell(( short ) 0).setCellValue(r * s);
+                row.createCell(( short ) 1).setCellValue("text " + r);
+            }
+        }
+        byte[] expected = wb.getBytes();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+
+        POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(out.toByteArray()));
+        DocumentInputStream in = fs.createDocumentInputStream("Workbook");
+        byte[] actual = new byte[ in.available() ];
+        in.read(actual);
+        in.close();
+
+        assertEquals(expected.length, actual.length);
+        for (int k = 0; k < expected.length; k++)
+        {
+            assertEquals("byte " + k, expected[ k ], actual[ k ]);
+        }
+
+        HSSFWorkbook read = new HSSFWorkbook(fs);
+        assertEquals(3, read.getNumberOfSheets());
+        assertEquals(499, read.getSheetAt(2).getLastRowNum());
+        assertEquals("text 499", read.getSheetAt(2).getRow(499).getCell(( short ) 1).getStringCellValue());
+    }
     
+    /**
+     * Test that findFont finds fonts by their attributes, including fonts
+     * added or changed after earlier lookups.
+     */
+
+    public void testFindFont()
+    {
+        HSSFWorkbook wb   = new HSSFWorkbook();
+        HSSFFont     bold = wb.createFont();
+
+        bold.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
+        bold.setFontHeightInPoints(( short ) 14);
+        assertEquals(bold.getIndex(),
+                     wb.findFont(HSSFFont.BOLDWEIGHT_BOLD,
+                                 HSSFFont.COLOR_NORMAL, ( short ) 280,
+                                 HSSFFont.FONT_ARIAL, false, false,
+                                 HSSFFont.SS_NONE, HSSFFont.U_NONE)
+                         .getIndex());
+        assertNull(wb.findFont(HSSFFont.BOLDWEIGHT_BOLD,
+                               HSSFFont.COLOR_RED, ( short ) 280,
+                               HSSFFont.FONT_ARIAL, false, false,
+                               HSSFFont.SS_NONE, HSSFFont.U_NONE));
+
+        HSSFFont red = wb.createFont();
+
+        red.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
+        red.setFontHeightInPoints(( short ) 14);
+        red.setColor(HSSFFont.COLOR_RED);
+        assertEquals(red.getIndex(),
+                     wb.findFont(HSSFFont.BOLDWEIGHT_BOLD,
+                                 HSSFFont.COLOR_RED, ( short ) 280,
+                                 HSSFFont.FONT_ARIAL, false, false,
+                                 HSSFFont.SS_NONE, HSSFFont.U_NONE)
+                         .getIndex());
+
+        bold.setItalic(true);
+        assertNull(wb.findFont(HSSFFont.BOLDWEIGHT_BOLD,
+                               HSSFFont.COLOR_NORMAL, ( short ) 280,
+                               HSSFFont.FONT_ARIAL, false, false,
+                               HSSFFont.SS_NONE, HSSFFont.U_NONE));
+        assertEquals(bold.getIndex(),
+                     wb.findFont(HSSFFont.BOLDWEIGHT_BOLD,
+                                 HSSFFont.COLOR_NORMAL, ( short ) 280,
+                                 HSSFFont.FONT_ARIAL, true, false,
+                                 HSSFFont.SS_NONE, HSSFFont.U_NONE)
+                         .getIndex());
+    }
+
+    /**
+     * Test that fonts changed through their setters after a lookup are found
+     * by their new attributes, including a duplicate that was passed over.
+     */
+
+    public void testFindChangedFont()
+    {
+        HSSFWorkbook wb     = new HSSFWorkbook();
+        HSSFFont     first  = wb.createFont();
+        HSSFFont     second = wb.createFont();
+
+        first.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
+        first.setFontHeightInPoints(( short ) 16);
+        second.setBoldweight(HSSFFont.BOLDWEIGHT_BOLD);
+        second.setFontHeightInPoints(( short ) 16);
+        assertEquals(first.getIndex(),
+                     wb.findFont(HSSFFont.BOLDWEIGHT_BOLD,
+                                 HSSFFont.COLOR_NORMAL, ( short ) 320,
+                                 HSSFFont.FONT_ARIAL, false, false,
+                                 HSSFFont.SS_NONE, HSSFFont.U_NONE)
+                         .getIndex());
+
+        first.setStrikeout(true);
+        assertEquals("the changed font is found by its new attributes",
+                     first.getIndex(),
+                     wb.findFont(HSSFFont.BOLDWEIGHT_BOLD,
+                                 HSSFFont.COLOR_NORMAL, ( short ) 320,
+                                 HSSFFont.FONT_ARIAL, false, true,
+                                 HSSFFont.SS_NONE, HSSFFont.U_NONE)
+                         .getIndex());
+        assertEquals("the duplicate is found once the first has changed",
+                     second.getIndex(),
+                     wb.findFont(HSSFFont.BOLDWEIGHT_BOLD,
+                                 HSSFFont.COLOR_NORMAL, ( short ) 320,
+                                 HSSFFont.FONT_ARIAL, false, false,
+                                 HSSFFont.SS_NONE, HSSFFont.U_NONE)
+                         .getIndex());
+    }
+
+    /**
+     * Test that data formats are created once and found again, in a new
+     * workbook and in one read back from a file.
+     */
+
+    public void testDataFormatLookup()
+        throws IOException
+    {
+        HSSFWorkbook   wb     = new HSSFWorkbook();
+        HSSFDataFormat format = wb.createDataFormat();
+        short          first  = format.getFormat("0.000");
+
+        for (int k = 0; k < 50; k++)
+        {
+            format.getFormat("0." + k);
+        }
+        assertEquals(first, format.getFormat("0.000"));
+        assertEquals(0xe, format.getFormat("m/d/yy"));
+        assertEquals(0x31, format.getFormat("text"));
+        assertEquals("0.000", format.getFormat(first));
+        assertEquals(first, wb.createDataFormat().getFormat("0.000"));
+
+        HSSFCellStyle style = wb.createCellStyle();
+
+        style.setDataFormat(first);
+        wb.createSheet().createRow(0).createCell(( short ) 0)
+            .setCellStyle(style);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        wb.write(out);
+        wb     = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        format = wb.createDataFormat();
+        assertEquals(first, format.getFormat("0.000"));
+        assertEquals("0.000", format.getFormat(wb.getSheetAt(0).getRow(0)
+            .getCell(( short ) 0).getCellStyle().getDataFormat()));
+
+        short added = format.getFormat("0.0000");
+
+        assertTrue(added > first);
+        assertEquals(added, format.getFormat("0.0000"));
+        out = new ByteArrayOutputStream();
+        wb.write(out);
+        wb = new HSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(added, wb.createDataFormat().getFormat("0.0000"));
+    }
+
+    /**
+     * Test that building the sheets on several threads reads the same
+     * workbook as building them one after the other, including a workbook
+     * with a chart (nested BOF/EOF records).
+     */
+
+    public void testParallelLoad()
+        throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+
+        for (int s = 0; s < 12; s++)
+        {
+            HSSFSheet sheet = wb.createSheet("Sheet" + s);
+
+            for (int r = 0; r < 200; r++)
+            {
+                HSSFRow row = sheet.createRow(r);
+
+                row.createCell(( short ) 0).setCellValue(r + s);
+                row.createCell(( short ) 1).setCellValue("text " + (r % 50));
+                row.createCell(( short ) 2).setCellFormula("A" + (r + 1) + "*2");
+            }
+            sheet.addMergedRegion(new Region(0, (short) 3, s, (short) 4));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        wb.write(out);
+        assertParallelLoadMatches(out.toByteArray(), 4);
+
+        String filename = System.getProperty("HSSF.testdata.path");
+        FileInputStream in = new FileInputStream(filename + "/SimpleChart.xls");
+        out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[ 4096 ];
+        for (int n = in.read(buffer); n > 0; n = in.read(buffer))
+        {
+            out.write(buffer, 0, n);
+        }
+        in.close();
+        assertParallelLoadMatches(out.toByteArray(), 3);
+    }
+
+    /**
+     * Test that writing the sheets on several threads gives the same
+     * Workbook stream as writing them on one, through getBytes and write.
+     */
+
+    public void testParallelWrite()
+        throws IOException
+    {
+        HSSFWorkbook wb = new HSSFWorkbook();
+
+        for (int s = 0; s < 10; s++)
+        {
+            HSSFSheet sheet = wb.createSheet("Sheet" + s);
+
+            for (int r = 0; r < 100 * s; r++)
+            {
+                HSSFRow row = sheet.createRow(r);
+
+                row.createCell(( short ) 0).setCellValue(r);
+                row.createCell(( short ) 1).setCellValue("text " + (r % 30));
+                row.createCell(( short ) 2).setCellFormula("A" + (r + 1) + "+1");
+            }
+        }
+        assertEquals(1, wb.getThreads());
+        byte[] expected = wb.getBytes();
+
+        wb.setThreads(4);
+        assertEquals(4, wb.getThreads());
+        byte[] actual = wb.getBytes();
+
+        assertEquals(expected.length, actual.length);
+        for (int k = 0; k < expected.length; k++)
+        {
+            assertEquals("byte " + k, expected[ k ], actual[ k ]);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        wb.write(out);
+        POIFSFileSystem fs = new POIFSFileSystem(new ByteArrayInputStream(out.toByteArray()));
+        DocumentInputStream in = fs.createDocumentInputStream("Workbook");
+        actual = new byte[ in.available() ];
+        in.read(actual);
+        in.close();
+        assertEquals(expected.length, actual.length);
+        for (int k = 0; k < expected.length; k++)
+        {
+            assertEquals("byte " + k, expected[ k ], actual[ k ]);
+        }
+        HSSFWorkbook read = new HSSFWorkbook(fs);
+        assertEquals("text 29", read.getSheetAt(9).getRow(899).getCell(( short ) 1).getStringCellValue());
+
+        // an interrupt while waiting for the sheets is not lost
+        Thread.currentThread().interrupt();
+        try
+        {
+            wb.getBytes();
+            fail("should have caught RuntimeException");
+        }
+        catch (RuntimeException ignored)
+        {
+
+            // as expected
+        }
+        assertTrue(Thread.interrupted());
+
+        // and getBytes only gave up once every worker had stopped
+        Thread[] threads = new Thread[ Thread.activeCount() + 8 ];
+        int      count   = Thread.enumerate(threads);
+
+        for (int k = 0; k < count; k++)
+        {
+            assertFalse(threads[ k ].getName().startsWith("HSSF sheet worker"));
+        }
+    }
+
+    /**
+     * Test that decoding the shared strings on demand gives each cell the
+     * same string index as decoding the whole table, and that only a string
+     * duplicated in the table reads differently: without the space the
+     * whole table decoding appends.
+     */
+
+    public void testDecodeStringsOnDemand()
+        throws IOException
+    {
+        HSSFWorkbook wb    = new HSSFWorkbook();
+        HSSFSheet    sheet = wb.createSheet("Strings");
+        String[]     text  =
+        {
+            "dup", "dux", "dux", "other"
+        };
+
+        for (int r = 0; r < text.length; r++)
+        {
+            sheet.createRow(r).createCell(( short ) 0).setCellValue(text[ r ]);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        wb.write(out);
+
+        // turn "dux" into a second "dup" in the shared string table
+        byte[] file = out.toByteArray();
+
+        for (int k = 0; k < file.length - 2; k++)
+        {
+            if ((file[ k ] == 'd') && (file[ k + 1 ] == 'u')
+                    && (file[ k + 2 ] == 'x'))
+            {
+                file[ k + 2 ] = ( byte ) 'p';
+            }
+        }
+        HSSFSheet whole    = new HSSFWorkbook(
+            new ByteArrayInputStream(file)).getSheetAt(0);
+        HSSFWorkbook read  = new HSSFWorkbook(new ByteArrayInputStream(file));
+        HSSFSheet onDemand = read.getSheetAt(0);
+
+        read.setDecodeStringsOnDemand(true);
+        assertEquals("dup", cell(whole, 0).getStringCellValue());
+        assertEquals("dup ", cell(whole, 1).getStringCellValue());
+        assertEquals("dup ", cell(whole, 2).getStringCellValue());
+        assertEquals("other", cell(whole, 3).getStringCellValue());
+        assertEquals("dup", cell(onDemand, 0).getStringCellValue());
+        assertEquals("dup", cell(onDemand, 1).getStringCellValue());
+        assertEquals("other", cell(onDemand, 3).getStringCellValue());
+        for (int r = 0; r < text.length; r++)
+        {
+            assertEquals(sstIndex(whole, r), sstIndex(onDemand, r));
+        }
+
+        // adding a string decodes the whole table, a cell already read
+        // keeps its text
+        onDemand.createRow(4).createCell(( short ) 0).setCellValue("new");
+        assertEquals("dup", cell(onDemand, 1).getStringCellValue());
+        assertEquals("dup ", cell(onDemand, 2).getStringCellValue());
+    }
+
+    /**
+     * Test that several threads may read the string cells of a workbook
+     * that has just been read, the first of them decoding the shared
+     * strings while the others wait for it.
+     */
+
+    public void testConcurrentStringReads()
+        throws Exception
+    {
+        HSSFWorkbook wb    = new HSSFWorkbook();
+        HSSFSheet    sheet = wb.createSheet("Strings");
+
+        for (int r = 0; r < 2000; r++)
+        {
+            sheet.createRow(r).createCell(( short ) 0).setCellValue("text " + r);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        wb.write(out);
+        for (int pass = 0; pass < 5; pass++)
+        {
+            final HSSFSheet read   = new HSSFWorkbook(new ByteArrayInputStream(
+                out.toByteArray())).getSheetAt(0);
+            final List      errors = new ArrayList();
+            Thread[]        reader = new Thread[ 4 ];
+
+            for (int k = 0; k < reader.length; k++)
+            {
+                final int start = k * 500;
+
+                reader[ k ] = new Thread()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            for (int r = start; r < start + 500; r++)
+                            {
+                                if (!("text " + r).equals(cell(read, r)
+                                        .getStringCellValue()))
+                                {
+                                    throw new IllegalStateException("row " + r);
+                                }
+                            }
+                        }
+                        catch (Throwable t)
+                        {
+                            synchronized (errors)
+                            {
+                                errors.add(t);
+                            }
+                        }
+                    }
+                };
+            }
+            for (int k = 0; k < reader.length; k++)
+            {
+                reader[ k ].start();
+            }
+            for (int k = 0; k < reader.length; k++)
+            {
+                reader[ k ].join();
+            }
+            assertEquals(errors.toString(), 0, errors.size());
+        }
+    }
+
+    private static HSSFCell cell(HSSFSheet sheet, int row)
+    {
+        return sheet.getRow(row).getCell(( short ) 0);
+    }
+
+    private static int sstIndex(HSSFSheet sheet, int row)
+    {
+        return (( LabelSSTRecord ) cell(sheet, row).getCellValueRecord())
+            .getSSTIndex();
+    }
+
+    private void assertParallelLoadMatches(byte[] file, int threads)
+        throws IOException
+    {
+        HSSFWorkbook sequential = new HSSFWorkbook(new ByteArrayInputStream(file));
+        HSSFWorkbook parallel   = new HSSFWorkbook(new ByteArrayInputStream(file),
+                                                   true, threads);
+
+        assertEquals(sequential.getNumberOfSheets(), parallel.getNumberOfSheets());
+
+        // the threads used to read don't carry over to writing
+        assertEquals(1, parallel.getThreads());
+        for (int s = 0; s < sequential.getNumberOfSheets(); s++)
+        {
+            HSSFSheet expected = sequential.getSheetAt(s);
+            HSSFSheet actual   = parallel.getSheetAt(s);
+
+            assertEquals(sequential.getSheetName(s), parallel.getSheetName(s));
+            assertEquals(expected.getPhysicalNumberOfRows(), actual.getPhysicalNumberOfRows());
+            assertEquals(expected.getNumMergedRegions(), actual.getNumMergedRegions());
+        }
+        byte[] expected = sequential.getBytes();
+        byte[] actual   = parallel.getBytes();
+
+        assertEquals(expected.length, actual.length);
+        for (int k = 0; k < expected.length; k++)
+        {
+            assertEquals("byte " + k, expected[ k ], actual[ k ]);
+        }
+    }
+
     public static void main(String [] ignored_args)
     {
         String filename = System.getProperty("HSSF.testdata.path");
@@ -0,0 +1,230 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.poifs.filesystem;
+
+import java.io.*;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Class to test POIFSFileSystem functionality
+ */
+
+public class TestPOIFSFileSystem
+    extends TestCase
+{
+    private File   _file;
+    private byte[] _small_data;
+    private byte[] _big_data;
+
+    /**
+     * Constructor TestPOIFSFileSystem
+     *
+     * @param name
+     */
+
+    public TestPOIFSFileSystem(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * write a filesystem with one small and one large document to a
+     * temporary file
+     *
+     * @exception IOException
+     */
+
+    protected void setUp()
+        throws IOException
+    {
+        _small_data = new byte[ 1000 ];
+        _big_data   = new byte[ 10000 ];
+        for (int j = 0; j < _small_data.length; j++)
+        {
+            _small_data[ j ] = ( byte ) (j * 3);
+        }
+        for (int j = 0; j < _big_data.length; j++)
+        {
+            _big_data[ j ] = ( byte ) (j * j);
+        }
+        POIFSFileSystem fs = new POIFSFileSystem();
+
+        fs.createDocument(new ByteArrayInputStream(_small_data), "Small");
+        fs.getRoot().createDirectory("Dir")
+            .createDocument("Big", new ByteArrayInputStream(_big_data));
+        _file = File.createTempFile("poifs", ".tmp");
+        FileOutputStream stream = new FileOutputStream(_file);
+
+        fs.writeFilesystem(stream);
+        stream.close();
+    }
+
+    protected void tearDown()
+    {
+        _file.delete();
+    }
+
+    /**
+     * Test reading a memory-mapped file
+     *
+     * @exception IOException
+     */
+
+    public void testMappedFile()
+        throws IOException
+    {
+        checkFileSystem(new POIFSFileSystem(_file));
+    }
+
+    /**
+     * Test reading a memory-mapped FileChannel
+     *
+     * @exception IOException
+     */
+
+    public void testMappedChannel()
+        throws IOException
+    {
+        FileInputStream stream = new FileInputStream(_file);
+        POIFSFileSystem fs     = new POIFSFileSystem(stream.getChannel());
+
+        stream.close();
+        checkFileSystem(fs);
+    }
+
+    /**
+     * Test reading a file that is not a POIFS file
+     *
+     * @exception IOException
+     */
+
+    public void testBadFile()
+        throws IOException
+    {
+        FileOutputStream stream = new FileOutputStream(_file);
+
+        stream.write(new byte[ 700 ]);
+        stream.close();
+        try
+        {
+            new POIFSFileSystem(_file);
+            fail("Should have thrown IOException reading a bad file");
+        }
+        catch (IOException ignored)
+        {
+
+            // as expected
+        }
+    }
+
+    /**
+     * Test writing a filesystem in which only some documents have been
+     * read; the others must still be written out in full
+     *
+     * @exception IOException
+     */
+
+    public void testRewriteUnreadDocuments()
+        throws IOException
+    {
+        FileInputStream stream = new FileInputStream(_file);
+        POIFSFileSystem fs     = new POIFSFileSystem(stream);
+
+        stream.close();
+        checkDocument(fs.createDocumentInputStream("Small"), _small_data);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        fs.writeFilesystem(output);
+        checkFileSystem(
+            new POIFSFileSystem(
+                new ByteArrayInputStream(output.toByteArray())));
+    }
+
+    private void checkFileSystem(final POIFSFileSystem fs)
+        throws IOException
+    {
+        checkDocument(fs.createDocumentInputStream("Small"), _small_data);
+        DirectoryEntry dir = ( DirectoryEntry ) fs.getRoot().getEntry("Dir");
+
+        checkDocument(new DocumentInputStream(( DocumentEntry ) dir
+            .getEntry("Big")), _big_data);
+    }
+
+    private void checkDocument(final DocumentInputStream stream,
+                               final byte [] expected)
+        throws IOException
+    {
+        byte[] data = new byte[ stream.available() ];
+
+        stream.read(data);
+        assertTrue(Arrays.equals(expected, data));
+    }
+
+    /**
+     * main method to run the unit tests
+     *
+     * @param ignored_args
+     */
+
+    public static void main(String [] ignored_args)
+    {
+        System.out.println(
+            "Testing org.apache.poi.poifs.filesystem.POIFSFileSystem");
+        junit.textui.TestRunner.run(TestPOIFSFileSystem.class);
+    }
+}
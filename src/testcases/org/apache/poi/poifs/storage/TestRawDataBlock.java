@@ -57,6 +57,10 @@ package org.apache.poi.poifs.storage;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+
+import java.util.*;
+
 import junit.framework.*;
 
 /**
@@ -161,6 +165,67 @@ public class TestRawDataBlock
         }
     }
 
+    /**
+     * Test reading the blocks of a shared buffer from several threads
+     */
+
+    public void testConcurrentMappedBlocks()
+        throws Exception
+    {
+        final int    blocks = 64;
+        byte[]       data   = new byte[ blocks * 512 ];
+
+        for (int j = 0; j < data.length; j++)
+        {
+            data[ j ] = ( byte ) (j / 512);
+        }
+        ByteBuffer           buffer = ByteBuffer.wrap(data);
+        final RawDataBlock[] raw    = new RawDataBlock[ blocks ];
+
+        for (int k = 0; k < blocks; k++)
+        {
+            raw[ k ] = new RawDataBlock(buffer, k * 512);
+        }
+        final List failures = Collections.synchronizedList(new ArrayList());
+        Thread[]   threads  = new Thread[ 4 ];
+
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[ t ] = new Thread()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        for (int k = 0; k < blocks; k++)
+                        {
+                            byte[] block = raw[ k ].getData();
+
+                            for (int j = 0; j < 512; j++)
+                            {
+                                if (block[ j ] != ( byte ) k)
+                                {
+                                    failures.add("block " + k + " byte " + j);
+                                    return;
+                                }
+                            }
+                        }
+                    }
+                    catch (Throwable e)
+                    {
+                        failures.add(e.toString());
+                    }
+                }
+            };
+            threads[ t ].start();
+        }
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[ t ].join();
+        }
+        assertEquals(failures.toString(), 0, failures.size());
+    }
+
     /**
      * main method to run the unit tests
      *
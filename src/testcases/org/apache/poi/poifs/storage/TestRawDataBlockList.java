@@ -57,6 +57,8 @@ package org.apache.poi.poifs.storage;
 
 import java.io.*;
 
+import java.nio.ByteBuffer;
+
 import junit.framework.*;
 
 /**
@@ -137,6 +139,56 @@ public class TestRawDataBlockList
         }
     }
 
+    /**
+     * Test creating a RawDataBlockList over a buffer
+     *
+     * @exception IOException
+     */
+
+    public void testBufferConstructor()
+        throws IOException
+    {
+        byte[] data = new byte[ 2600 ];
+
+        for (int j = 0; j < data.length; j++)
+        {
+            data[ j ] = ( byte ) j;
+        }
+        RawDataBlockList list = new RawDataBlockList(ByteBuffer.wrap(data),
+                                                     40);
+
+        for (int k = 0; k < 5; k++)
+        {
+            byte[] block = list.remove(k).getData();
+
+            assertEquals(512, block.length);
+            for (int j = 0; j < 512; j++)
+            {
+                assertEquals(( byte ) (40 + (k * 512) + j), block[ j ]);
+            }
+        }
+        try
+        {
+            list.remove(5);
+            fail("Should have thrown IOException for a missing block");
+        }
+        catch (IOException ignored)
+        {
+
+            // as expected
+        }
+        try
+        {
+            new RawDataBlockList(ByteBuffer.wrap(data), 0);
+            fail("Should have thrown IOException creating short block");
+        }
+        catch (IOException ignored)
+        {
+
+            // as expected
+        }
+    }
+
     /**
      * main method to run the unit tests
      *
@@ -499,6 +499,16 @@ public class TestIntList
             assertEquals(999 - j, list.remove(999 - j));
             assertEquals(999 - j, list.size());
         }
+
+        // removing from a list filled to its exact capacity
+        IntList full = new IntList(3);
+
+        full.add(1);
+        full.add(2);
+        full.add(3);
+        assertEquals(1, full.remove(0));
+        assertEquals(2, full.get(0));
+        assertEquals(3, full.get(1));
         try
         {
             list.remove(0);
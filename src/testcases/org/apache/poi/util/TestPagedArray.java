@@ -0,0 +1,198 @@
+/* ====================================================================
+ * The Apache Software License, Version 1.1
+ *
+ * Copyright (c) 2003 The Apache Software Foundation.  All rights
+ * reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright
+ *    notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright
+ *    notice, this list of conditions and the following disclaimer in
+ *    the documentation and/or other materials provided with the
+ *    distribution.
+ *
+ * 3. The end-user documentation included with the redistribution,
+ *    if any, must include the following acknowledgment:
+ *       "This product includes software developed by the
+ *        Apache Software Foundation (http://www.apache.org/)."
+ *    Alternately, this acknowledgment may appear in the software itself,
+ *    if and wherever such third-party acknowledgments normally appear.
+ *
+ * 4. The names "Apache" and "Apache Software Foundation" and
+ *    "Apache POI" must not be used to endorse or promote products
+ *    derived from this software without prior written permission. For
+ *    written permission, please contact apache@apache.org.
+ *
+ * 5. Products derived from this software may not be called "Apache",
+ *    "Apache POI", nor may "Apache" appear in their name, without
+ *    prior written permission of the Apache Software Foundation.
+ *
+ * THIS SOFTWARE IS PROVIDED ``AS IS'' AND ANY EXPRESSED OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED.  IN NO EVENT SHALL THE APACHE SOFTWARE FOUNDATION OR
+ * ITS CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF
+ * USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND
+ * ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT
+ * OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF
+ * SUCH DAMAGE.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ */
+
+package org.apache.poi.util;
+
+import java.util.*;
+
+import junit.framework.*;
+
+/**
+ * Class to test PagedArray
+ */
+
+public class TestPagedArray
+    extends TestCase
+{
+
+    /**
+     * Constructor TestPagedArray
+     *
+     * @param name
+     */
+
+    public TestPagedArray(String name)
+    {
+        super(name);
+    }
+
+    /**
+     * test put, get and remove, including indices on different pages
+     */
+
+    public void testPutGetRemove()
+    {
+        PagedArray array = new PagedArray();
+
+        assertTrue(array.isEmpty());
+        assertEquals(-1, array.getFirstIndex());
+        assertEquals(-1, array.getLastIndex());
+        assertNull(array.get(0));
+        assertNull(array.get(-1));
+        assertNull(array.get(65535));
+        assertNull(array.put(300, "a"));
+        assertNull(array.put(5, "b"));
+        assertNull(array.put(65535, "c"));
+        assertEquals("b", array.put(5, "d"));
+        assertEquals(3, array.size());
+        assertEquals("d", array.get(5));
+        assertEquals("a", array.get(300));
+        assertEquals("c", array.get(65535));
+        assertNull(array.get(6));
+        assertEquals(5, array.getFirstIndex());
+        assertEquals(65535, array.getLastIndex());
+        assertEquals(300, array.nextIndex(6));
+        assertEquals(300, array.previousIndex(65534));
+        assertEquals(-1, array.nextIndex(65536));
+        assertEquals(-1, array.previousIndex(4));
+        assertNull(array.remove(7));
+        assertEquals("d", array.remove(5));
+        assertEquals(300, array.getFirstIndex());
+        assertEquals("c", array.remove(65535));
+        assertEquals(300, array.getLastIndex());
+        assertEquals(1, array.size());
+        assertEquals("a", array.remove(300));
+        assertTrue(array.isEmpty());
+        assertEquals(-1, array.getFirstIndex());
+        assertEquals(-1, array.getLastIndex());
+        try
+        {
+            array.put(-1, "x");
+            fail("should have caught IndexOutOfBoundsException");
+        }
+        catch (IndexOutOfBoundsException e)
+        {
+
+            // as expected
+        }
+        try
+        {
+            array.put(0, null);
+            fail("should have caught IllegalArgumentException");
+        }
+        catch (IllegalArgumentException e)
+        {
+
+            // as expected
+        }
+    }
+
+    /**
+     * test that iteration is in index order and that the iterator can
+     * remove entries
+     */
+
+    public void testIterator()
+    {
+        PagedArray array   = new PagedArray();
+        int[]      indices =
+        {
+            1000, 3, 70000, 255, 256, 0
+        };
+
+        for (int k = 0; k < indices.length; k++)
+        {
+            array.put(indices[ k ], new Integer(indices[ k ]));
+        }
+        Arrays.sort(indices);
+        Iterator iter = array.iterator();
+
+        for (int k = 0; k < indices.length; k++)
+        {
+            assertTrue(iter.hasNext());
+            assertEquals(new Integer(indices[ k ]), iter.next());
+            if (indices[ k ] == 255)
+            {
+                iter.remove();
+            }
+        }
+        assertTrue(!iter.hasNext());
+        try
+        {
+            iter.next();
+            fail("should have caught NoSuchElementException");
+        }
+        catch (NoSuchElementException e)
+        {
+
+            // as expected
+        }
+        assertEquals(indices.length - 1, array.size());
+        assertNull(array.get(255));
+        array.clear();
+        assertTrue(!array.iterator().hasNext());
+    }
+
+    /**
+     * main method to run the unit tests
+     *
+     * @param ignored_args
+     */
+
+    public static void main(String [] ignored_args)
+    {
+        System.out.println("Testing util.PagedArray functionality");
+        junit.textui.TestRunner.run(TestPagedArray.class);
+    }
+}